@@ -0,0 +1,148 @@
+package com.maintenance.maintenance.service;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Lance les benchmarks d'entités et compare débit / allocation à la référence enregistrée
+ * Arguments : fichier de référence, écart toléré (0.15 = 15 %), true pour enregistrer une nouvelle référence,
+ * true pour activer la comparaison (jmh.gate).
+ * Comparaison active : code de sortie 1 si une mesure régresse au-delà de l'écart toléré ou n'a pas de référence,
+ * ce qui fait échouer le profil Maven. Comparaison désactivée : les mesures sont seulement affichées.
+ */
+public final class BenchmarkGate {
+
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+
+    private BenchmarkGate() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path baselineFile = Path.of(args.length > 0 ? args[0] : "src/jmh/resources/jmh-baseline.properties");
+        double threshold = args.length > 1 ? Double.parseDouble(args[1]) : 0.15;
+        boolean record = args.length > 2 && Boolean.parseBoolean(args[2]);
+        boolean gate = args.length > 3 && Boolean.parseBoolean(args[3]);
+
+        Options options = new OptionsBuilder()
+            .include(EntityMappingBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        // Clé : méthode + paramètres, ex. mapTicket.commentaires-300
+        TreeMap<String, double[]> measures = new TreeMap<>();
+        for (RunResult result : results) {
+            String key = key(result);
+            Result<?> alloc = result.getSecondaryResults().get(ALLOC_METRIC);
+            measures.put(key, new double[] {
+                result.getPrimaryResult().getScore(),
+                alloc != null ? alloc.getScore() : Double.NaN
+            });
+        }
+
+        if (record) {
+            writeBaseline(baselineFile, measures);
+            System.out.println("Référence enregistrée dans " + baselineFile + " (" + measures.size() + " mesures)");
+            return;
+        }
+
+        Properties baseline = readBaseline(baselineFile);
+        List<String> regressions = new ArrayList<>();
+        System.out.println();
+        System.out.printf("%-55s %14s %14s %12s %12s%n", "Benchmark", "ops/s", "référence", "octets/op", "référence");
+        for (var entry : measures.entrySet()) {
+            String key = entry.getKey();
+            double throughput = entry.getValue()[0];
+            double allocation = entry.getValue()[1];
+            double baseThroughput = parse(baseline.getProperty(key + ".throughput"));
+            double baseAllocation = parse(baseline.getProperty(key + ".alloc"));
+            System.out.printf("%-55s %14.0f %14.0f %12.0f %12.0f%n", key, throughput, baseThroughput, allocation, baseAllocation);
+
+            if (!Double.isNaN(baseThroughput) && throughput < baseThroughput * (1 - threshold)) {
+                regressions.add(String.format("%s : débit %.0f ops/s < référence %.0f", key, throughput, baseThroughput));
+            }
+            // Petite marge absolue : quelques octets d'écart sur de faibles allocations ne sont pas une régression
+            if (!Double.isNaN(baseAllocation) && !Double.isNaN(allocation)
+                    && allocation > baseAllocation * (1 + threshold) + 16) {
+                regressions.add(String.format("%s : allocation %.0f o/op > référence %.0f", key, allocation, baseAllocation));
+            }
+            if (Double.isNaN(baseThroughput)) {
+                System.out.println("  (pas de référence pour " + key + ", relancer avec -Djmh.record=true)");
+                regressions.add(key + " : pas de référence");
+            }
+        }
+
+        if (!gate) {
+            System.out.println("Comparaison à la référence désactivée (-Djmh.gate=true pour l'activer)");
+            return;
+        }
+        if (!regressions.isEmpty()) {
+            System.err.println();
+            System.err.println("Régressions au-delà de " + Math.round(threshold * 100) + " % ou mesures sans référence :");
+            regressions.forEach(regression -> System.err.println("  - " + regression));
+            System.exit(1);
+        }
+        System.out.println("Aucune régression au-delà de " + Math.round(threshold * 100) + " %");
+    }
+
+    private static String key(RunResult result) {
+        String benchmark = result.getParams().getBenchmark();
+        StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.') + 1));
+        for (String param : result.getParams().getParamsKeys()) {
+            key.append('.').append(param).append('-').append(result.getParams().getParam(param));
+        }
+        return key.toString();
+    }
+
+    private static Properties readBaseline(Path file) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+
+    private static void writeBaseline(Path file, TreeMap<String, double[]> measures) throws IOException {
+        // Écriture manuelle plutôt que Properties.store : ordre stable pour des diffs lisibles
+        List<String> lines = new ArrayList<>();
+        lines.add("# Référence des benchmarks JMH (ops/s et octets/op)");
+        lines.add("# Regénérer : mvn -Pbenchmarks -DskipTests -Djmh.record=true verify");
+        for (var entry : measures.entrySet()) {
+            lines.add(entry.getKey() + ".throughput=" + String.format(Locale.ROOT, "%.0f", entry.getValue()[0]));
+            if (!Double.isNaN(entry.getValue()[1])) {
+                lines.add(entry.getKey() + ".alloc=" + String.format(Locale.ROOT, "%.0f", entry.getValue()[1]));
+            }
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    private static double parse(String value) {
+        if (value == null || value.isBlank()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.maintenance.maintenance.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nœuds Firebase synthétiques, sous la forme rendue par DataSnapshot.getValue()
+ * (Long pour les entiers, Double pour les décimaux, ArrayList / HashMap pour les sous-nœuds)
+ */
+final class EntityFixtures {
+
+    static final long NOW = 1_760_000_000_000L;
+
+    private EntityFixtures() {
+    }
+
+    /**
+     * Machine complète ; photos au format "list", "map" (ancien format à clés) ou "string"
+     */
+    static Map<String, Object> machine(String photoFormat, int champsCount) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("nom", "Presse hydraulique PH-200");
+        data.put("numeroSerie", "SN-2024-000187");
+        data.put("emplacement", "Atelier B - Ligne 3");
+        data.put("notes", "Contrôle des joints tous les 3 mois, huile ISO VG 46");
+        data.put("categoryId", "12"); // identifiant stocké en texte par d'anciennes versions
+        data.put("categoryName", "Presses");
+        data.put("categoryDescription", "Presses et équipements hydrauliques");
+        data.put("operationnel", Boolean.TRUE);
+        data.put("enReparation", "false"); // booléen stocké en texte
+        data.put("enProgrammation", Boolean.FALSE);
+        data.put("adresseIP", "192.168.10.42");
+        data.put("estMachineSecours", Boolean.FALSE);
+        data.put("estMachineEntrepot", Boolean.FALSE);
+        data.put("creePar", "uid-8f2c1a");
+        data.put("creeLe", NOW - 86_400_000L * 200);
+        data.put("modifiePar", "uid-3b7d90");
+        data.put("modifieLe", NOW - 86_400_000L);
+        data.put("supprime", Boolean.FALSE);
+        data.put("dateCreation", NOW - 86_400_000L * 200);
+        data.put("dateMiseAJour", NOW - 86_400_000L);
+        data.put("photos", photos(photoFormat, 4));
+
+        Map<String, Object> champs = new HashMap<>();
+        for (int i = 0; i < champsCount; i++) {
+            champs.put("champ_" + i, i % 3 == 0 ? (Object) (long) (i * 10) : "valeur " + i);
+        }
+        data.put("champsPersonnalises", champs);
+        return data;
+    }
+
+    static Object photos(String format, int count) {
+        switch (format) {
+            case "map": {
+                Map<String, Object> photos = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    photos.put("-Nphoto" + i, photoUrl(i));
+                }
+                return photos;
+            }
+            case "string":
+                return photoUrl(0);
+            default: {
+                List<Object> photos = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    photos.add(photoUrl(i));
+                }
+                return photos;
+            }
+        }
+    }
+
+    /**
+     * Ticket avec commentaires ; un commentaire sur cinq est au format historique (texte seul)
+     */
+    static Map<String, Object> ticket(int commentCount) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("titre", "Fuite d'huile sur le vérin principal");
+        data.put("description", "Fuite constatée lors du contrôle du matin, flaque sous la machine.");
+        data.put("statut", "en_cours");
+        data.put("priorite", "urgente");
+        data.put("machineId", "-Nmachine0001");
+        data.put("machineNom", "Presse hydraulique PH-200");
+        data.put("assigneA", "uid-3b7d90");
+        data.put("assigneANom", "Jean Martin");
+        data.put("creePar", "uid-8f2c1a");
+        data.put("creeParNom", "Claire Dubois");
+        data.put("dateCreation", NOW - 3_600_000L * 30);
+        data.put("dateModification", NOW - 3_600_000L);
+        data.put("dateEcheance", String.valueOf(NOW + 86_400_000L)); // date stockée en texte
+        data.put("categorie", "hydraulique");
+
+        List<Object> commentaires = new ArrayList<>();
+        for (int i = 0; i < commentCount; i++) {
+            if (i % 5 == 4) {
+                commentaires.add("Commentaire historique n°" + i);
+                continue;
+            }
+            Map<String, Object> commentaire = new HashMap<>();
+            commentaire.put("texte", "Intervention " + i + " : remplacement du joint et purge du circuit.");
+            commentaire.put("auteurId", "uid-" + (i % 7));
+            commentaire.put("auteurNom", "Technicien " + (i % 7));
+            if (i % 10 == 0) {
+                commentaire.put("imageUrl", photoUrl(i));
+            }
+            commentaire.put("dateCreation", NOW - 60_000L * (commentCount - i));
+            commentaires.add(commentaire);
+        }
+        data.put("commentaires", commentaires);
+        return data;
+    }
+
+    static Map<String, Object> alerte() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("entrepriseId", "-Nentreprise01");
+        data.put("machineId", "-Nmachine0001");
+        data.put("machineNom", "Presse hydraulique PH-200");
+        data.put("description", "Vérification trimestrielle des joints");
+        data.put("dateVerification", NOW + 86_400_000L * 7);
+        data.put("envoye", Boolean.TRUE);
+        data.put("dateEnvoi", NOW - 3_600_000L);
+        data.put("creePar", "uid-8f2c1a");
+        data.put("creeParNom", "Claire Dubois");
+        data.put("dateCreation", NOW - 86_400_000L * 90);
+        data.put("dateModification", NOW - 86_400_000L);
+        data.put("activerRelance", Boolean.TRUE);
+        data.put("nombreRelances", 3L);
+        data.put("nombreRelancesEnvoyees", 1L);
+        data.put("dateDerniereRelance", NOW - 3_600_000L * 12);
+        data.put("verifie", Boolean.FALSE);
+        return data;
+    }
+
+    private static String photoUrl(int index) {
+        return "https://storage.example.com/maintenance/photos/machine-0001/photo-" + index + ".jpg";
+    }
+}
@@ -0,0 +1,102 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.Machine;
+import com.maintenance.maintenance.model.entity.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût du décodage (mapXSnapshot, après getValue()) et de la sérialisation des entités Firebase
+ * Lancement : mvn -Pbenchmarks -DskipTests verify (débit + allocation via le profileur GC, voir BenchmarkGate)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityMappingBenchmark {
+
+    // Les sérialiseurs n'utilisent aucun champ injecté
+    private static final FirebaseRealtimeService SERVICE = new FirebaseRealtimeService();
+
+    @State(Scope.Benchmark)
+    public static class MachineState {
+        @Param({"list", "map", "string"})
+        String photoFormat;
+
+        @Param({"0", "20"})
+        int champsPersonnalises;
+
+        Map<String, Object> data;
+        Machine machine;
+
+        @Setup
+        public void setUp() {
+            data = EntityFixtures.machine(photoFormat, champsPersonnalises);
+            machine = FirebaseEntityDecoder.machine(data, "-Nentreprise01", "-Nmachine0001");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class TicketState {
+        @Param({"0", "20", "300"})
+        int commentaires;
+
+        Map<String, Object> data;
+        Ticket ticket;
+
+        @Setup
+        public void setUp() {
+            data = EntityFixtures.ticket(commentaires);
+            ticket = FirebaseEntityDecoder.ticket(data, "-Nentreprise01", "-Nticket0001");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class AlerteState {
+        Map<String, Object> data;
+
+        @Setup
+        public void setUp() {
+            data = EntityFixtures.alerte();
+        }
+    }
+
+    @Benchmark
+    public Machine mapMachine(MachineState state) {
+        return FirebaseEntityDecoder.machine(state.data, "-Nentreprise01", "-Nmachine0001");
+    }
+
+    @Benchmark
+    public Map<String, Object> serializeMachine(MachineState state) {
+        return SERVICE.serializeMachine(state.machine);
+    }
+
+    @Benchmark
+    public Ticket mapTicket(TicketState state) {
+        return FirebaseEntityDecoder.ticket(state.data, "-Nentreprise01", "-Nticket0001");
+    }
+
+    @Benchmark
+    public Map<String, Object> serializeTicket(TicketState state) {
+        return SERVICE.serializeTicket(state.ticket);
+    }
+
+    @Benchmark
+    public Alerte mapAlerte(AlerteState state) {
+        return FirebaseEntityDecoder.alerte(state.data, "-Nalerte0001");
+    }
+}
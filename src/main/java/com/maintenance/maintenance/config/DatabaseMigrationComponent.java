@@ -4,6 +4,7 @@ import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.ValueEventListener;
+import com.maintenance.maintenance.service.FirebaseRealtimeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,6 +20,9 @@ import java.util.concurrent.TimeUnit;
 /**
  * Composant de migration pour nettoyer la structure de base de données
  * Supprime le nœud entreprises/ sous utilisateurs/ (migration vers entreprises/ au niveau racine)
+ * Construit l'annuaire entreprisesIndex/ s'il n'existe pas encore
+ * Construit l'index des échéances echeances/ (alertes et rappels) s'il n'existe pas encore
+ * Construit l'index des rôles rolesIndex/ s'il n'existe pas encore
  */
 @Component
 @Order(1) // S'exécute avant UserInitializationComponent
@@ -29,6 +33,9 @@ public class DatabaseMigrationComponent implements CommandLineRunner {
     @Autowired
     private DatabaseReference databaseReference;
 
+    @Autowired
+    private FirebaseRealtimeService firebaseRealtimeService;
+
     @Override
     public void run(String... args) throws Exception {
         logger.info("Démarrage de la migration de la structure de base de données...");
@@ -38,6 +45,60 @@ public class DatabaseMigrationComponent implements CommandLineRunner {
         } catch (Exception e) {
             logger.error("Erreur lors de la migration: " + e.getMessage(), e);
         }
+
+        try {
+            migrateEnterpriseIndex();
+        } catch (Exception e) {
+            logger.error("Erreur lors de la construction de l'annuaire des entreprises: " + e.getMessage(), e);
+        }
+
+        try {
+            migrateDueIndex();
+        } catch (Exception e) {
+            logger.error("Erreur lors de la construction de l'index des échéances: " + e.getMessage(), e);
+        }
+
+        try {
+            migrateRoleIndex();
+        } catch (Exception e) {
+            logger.error("Erreur lors de la construction de l'index des rôles: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Construit l'index des échéances des alertes et rappels existants (une seule fois)
+     */
+    private void migrateDueIndex() throws Exception {
+        if (firebaseRealtimeService.dueIndexExists()) {
+            logger.info("Index des échéances déjà présent, pas de migration nécessaire");
+            return;
+        }
+        int count = firebaseRealtimeService.rebuildDueIndex();
+        logger.info("Index des échéances construit: {} alerte(s)/rappel(s) en attente indexé(s)", count);
+    }
+
+    /**
+     * Construit l'index des rôles des utilisateurs existants (une seule fois)
+     */
+    private void migrateRoleIndex() throws Exception {
+        if (firebaseRealtimeService.roleIndexExists()) {
+            logger.info("Index des rôles déjà présent, pas de migration nécessaire");
+            return;
+        }
+        int count = firebaseRealtimeService.rebuildRoleIndex();
+        logger.info("Index des rôles construit: {} utilisateur(s) indexé(s)", count);
+    }
+
+    /**
+     * Construit l'annuaire entreprisesIndex/ pour les entreprises existantes (une seule fois)
+     */
+    private void migrateEnterpriseIndex() throws Exception {
+        if (firebaseRealtimeService.enterpriseIndexExists()) {
+            logger.info("Annuaire des entreprises déjà présent, pas de migration nécessaire");
+            return;
+        }
+        int count = firebaseRealtimeService.rebuildEnterpriseIndex();
+        logger.info("Annuaire des entreprises construit: {} entreprise(s) indexée(s)", count);
     }
 
     /**
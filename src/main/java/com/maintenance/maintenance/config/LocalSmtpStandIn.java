@@ -0,0 +1,155 @@
+package com.maintenance.maintenance.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Serveur SMTP minimal en mémoire pour les essais locaux (aucun e-mail ne sort de la machine)
+ * Activation : mail.smtp-stand-in.enabled=true puis spring.mail.host=localhost, spring.mail.port=2525,
+ * authentification et STARTTLS désactivés. Les derniers messages reçus sont conservés et journalisés.
+ */
+@Component
+@ConditionalOnProperty(name = "mail.smtp-stand-in.enabled", havingValue = "true")
+public class LocalSmtpStandIn {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalSmtpStandIn.class);
+
+    @Value("${mail.smtp-stand-in.port:2525}")
+    private int port;
+
+    @Value("${mail.smtp-stand-in.keep:100}")
+    private int keep;
+
+    private ServerSocket serverSocket;
+    private final Deque<ReceivedMail> received = new ArrayDeque<>();
+
+    public record ReceivedMail(String from, List<String> to, String data, long receivedAt) {
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread.ofVirtual().name("smtp-stand-in").start(this::accept);
+        logger.info("Serveur SMTP local démarré sur localhost:{}", port);
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * Derniers messages reçus, du plus ancien au plus récent
+     */
+    public synchronized List<ReceivedMail> getReceived() {
+        return new ArrayList<>(received);
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().name("smtp-stand-in-session").start(() -> session(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.warn("Serveur SMTP local : connexion refusée: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void session(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            reply(out, "220 localhost SMTP stand-in");
+            String from = null;
+            List<String> to = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                switch (command) {
+                    case "EHLO" -> {
+                        out.print("250-localhost\r\n");
+                        reply(out, "250 8BITMIME");
+                    }
+                    case "HELO" -> reply(out, "250 localhost");
+                    case "MAIL" -> {
+                        from = address(line);
+                        to.clear();
+                        reply(out, "250 OK");
+                    }
+                    case "RCPT" -> {
+                        to.add(address(line));
+                        reply(out, "250 OK");
+                    }
+                    case "DATA" -> {
+                        reply(out, "354 Fin des données par <CRLF>.<CRLF>");
+                        StringBuilder data = new StringBuilder();
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            data.append(line.startsWith("..") ? line.substring(1) : line).append("\n");
+                        }
+                        store(new ReceivedMail(from, List.copyOf(to), data.toString(), System.currentTimeMillis()));
+                        from = null;
+                        to.clear();
+                        reply(out, "250 OK");
+                    }
+                    case "RSET" -> {
+                        from = null;
+                        to.clear();
+                        reply(out, "250 OK");
+                    }
+                    case "NOOP" -> reply(out, "250 OK");
+                    case "QUIT" -> {
+                        reply(out, "221 Bye");
+                        return;
+                    }
+                    default -> reply(out, "502 Commande non prise en charge");
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Session SMTP locale interrompue: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void store(ReceivedMail mail) {
+        received.addLast(mail);
+        while (received.size() > Math.max(1, keep)) {
+            received.removeFirst();
+        }
+        logger.info("Serveur SMTP local : message reçu de {} pour {} ({} octets)", mail.from(), mail.to(), mail.data().length());
+    }
+
+    private static void reply(PrintWriter out, String line) {
+        out.print(line + "\r\n");
+        out.flush();
+    }
+
+    private static String address(String line) {
+        int start = line.indexOf('<');
+        int end = line.indexOf('>', start + 1);
+        if (start >= 0 && end > start) {
+            return line.substring(start + 1, end);
+        }
+        int colon = line.indexOf(':');
+        return colon >= 0 ? line.substring(colon + 1).trim() : "";
+    }
+}
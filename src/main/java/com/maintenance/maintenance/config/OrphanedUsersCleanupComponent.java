@@ -5,6 +5,7 @@ import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.ValueEventListener;
 import com.maintenance.maintenance.service.FirebaseAuthService;
+import com.maintenance.maintenance.service.FirebaseRealtimeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,7 +14,9 @@ import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -50,6 +53,7 @@ public class OrphanedUsersCleanupComponent implements CommandLineRunner {
     private void cleanupOrphanedUsers() throws Exception {
         CountDownLatch latch = new CountDownLatch(1);
         List<String> orphanedUsers = new ArrayList<>();
+        Map<String, Object> orphanedRoles = new HashMap<>();
         
         databaseReference.child("utilisateurs").addListenerForSingleValueEvent(new ValueEventListener() {
             @Override
@@ -62,6 +66,7 @@ public class OrphanedUsersCleanupComponent implements CommandLineRunner {
                                 // Vérifier si l'utilisateur existe dans Firebase Authentication
                                 if (!firebaseAuthService.userExistsInAuth(userId)) {
                                     orphanedUsers.add(userId);
+                                    orphanedRoles.put(userId, userSnapshot.child("role").getValue());
                                 }
                             }
                         }
@@ -72,7 +77,13 @@ public class OrphanedUsersCleanupComponent implements CommandLineRunner {
                             
                             for (String userId : orphanedUsers) {
                                 try {
-                                    databaseReference.child("utilisateurs").child(userId).removeValue(
+                                    // Profil et entrée de l'index des rôles supprimés ensemble
+                                    Map<String, Object> updates = new HashMap<>();
+                                    updates.put("utilisateurs/" + userId, null);
+                                    if (orphanedRoles.get(userId) != null) {
+                                        updates.put(FirebaseRealtimeService.roleIndexPath(orphanedRoles.get(userId), userId), null);
+                                    }
+                                    databaseReference.updateChildren(updates,
                                         new DatabaseReference.CompletionListener() {
                                             @Override
                                             public void onComplete(DatabaseError error, DatabaseReference ref) {
@@ -3,6 +3,7 @@ package com.maintenance.maintenance.controller;
 import com.maintenance.maintenance.model.entity.Alerte;
 import com.maintenance.maintenance.model.entity.HistoriqueVerification;
 import com.maintenance.maintenance.service.AlertService;
+import com.maintenance.maintenance.service.DataVersionService;
 import com.maintenance.maintenance.service.FirebaseRealtimeService;
 import com.maintenance.maintenance.service.MachineService;
 import jakarta.servlet.http.HttpServletRequest;
@@ -21,6 +22,7 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Controller
 @RequestMapping("/alertes")
@@ -35,6 +37,9 @@ public class AlertController {
     @Autowired
     private MachineService machineService;
 
+    @Autowired
+    private DataVersionService dataVersionService;
+
     /**
      * Vérifie si l'utilisateur est connecté (tous les rôles autorisés)
      */
@@ -408,17 +413,17 @@ public class AlertController {
         }
 
         try {
-            Alerte alerte = alertService.getAlerte(entrepriseId, alerteId);
-            if (alerte == null) {
+            Alerte lue = alertService.getAlerte(entrepriseId, alerteId);
+            if (lue == null) {
                 redirectAttributes.addFlashAttribute("error", "Alerte introuvable.");
                 return "redirect:/alertes?entrepriseId=" + entrepriseId;
             }
 
-            // Marquer l'alerte comme vérifiée
+            // Marquer l'alerte comme vérifiée, sur une copie : l'objet lu reste l'état précédent du lot
+            Alerte alerte = firebaseRealtimeService.copyAlerte(lue);
             alerte.setVerifie(true);
             long now = System.currentTimeMillis();
             alerte.setDateVerificationReelle(now);
-            alertService.updateAlerte(entrepriseId, alerteId, alerte);
             
             // Créer une entrée dans l'historique
             HistoriqueVerification historique = new HistoriqueVerification();
@@ -448,8 +453,11 @@ public class AlertController {
                 }
             }
             
-            // Sauvegarder dans l'historique Firebase
-            firebaseRealtimeService.createHistoriqueVerification(entrepriseId, historique);
+            // Alerte vérifiée et entrée d'historique : une seule écriture
+            FirebaseRealtimeService.WriteBatch batch = firebaseRealtimeService.batch(entrepriseId);
+            batch.updateAlerte(alerteId, alerte);
+            batch.createHistoriqueVerification(historique);
+            batch.commit();
             
             redirectAttributes.addFlashAttribute("success", "Alerte marquée comme vérifiée et ajoutée à l'historique.");
             
@@ -466,39 +474,41 @@ public class AlertController {
      */
     @GetMapping("/api/list")
     @ResponseBody
-    public ResponseEntity<List<Alerte>> getAlertesApi(
+    public CompletableFuture<ResponseEntity<List<Alerte>>> getAlertesApi(
             @RequestParam(value = "entrepriseId", required = false) String entrepriseId,
             HttpServletRequest request) {
-        try {
-            HttpSession session = request.getSession(false);
-            if (session == null) {
-                return ResponseEntity.status(401).body(new ArrayList<>());
-            }
-            
-            Boolean authenticated = (Boolean) session.getAttribute("authenticated");
-            if (authenticated == null || !authenticated) {
-                return ResponseEntity.status(401).body(new ArrayList<>());
-            }
-
-            if (!StringUtils.hasText(entrepriseId)) {
-                entrepriseId = (String) session.getAttribute("lastSelectedEntrepriseId");
-            }
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(401).body(new ArrayList<>()));
+        }
+        
+        Boolean authenticated = (Boolean) session.getAttribute("authenticated");
+        if (authenticated == null || !authenticated) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(401).body(new ArrayList<>()));
+        }
 
-            List<Alerte> alertes = new ArrayList<>();
-            if (StringUtils.hasText(entrepriseId)) {
-                alertes = alertService.listAlertes(entrepriseId);
-                if (alertes == null) {
-                    alertes = new ArrayList<>();
-                }
-            }
+        if (!StringUtils.hasText(entrepriseId)) {
+            entrepriseId = (String) session.getAttribute("lastSelectedEntrepriseId");
+        }
 
-            return ResponseEntity.ok()
+        if (!StringUtils.hasText(entrepriseId)) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok()
                     .header("Content-Type", "application/json")
-                    .body(alertes);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).body(new ArrayList<>());
+                    .body(new ArrayList<>()));
         }
+
+        // Alertes inchangées depuis le dernier appel : 304 sans lecture Firebase
+        DataVersionService.Validator validator = dataVersionService.validator(entrepriseId, "alertes");
+        if (validator.isNotModified(request)) {
+            return CompletableFuture.completedFuture(validator.notModified());
+        }
+
+        return alertService.listAlertesAsync(entrepriseId)
+                .thenApply(alertes -> validator.ok(alertes != null ? alertes : new ArrayList<Alerte>()))
+                .exceptionally(e -> {
+                    e.printStackTrace();
+                    return ResponseEntity.status(500).body(new ArrayList<>());
+                });
     }
 }
 
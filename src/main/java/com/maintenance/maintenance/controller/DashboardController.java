@@ -1,13 +1,26 @@
 package com.maintenance.maintenance.controller;
 
+import com.maintenance.maintenance.service.DataVersionService;
+import com.maintenance.maintenance.service.EmailDispatchService;
+import com.maintenance.maintenance.service.EmailOutboxService;
+import com.maintenance.maintenance.service.EnterpriseReplicaService;
+import com.maintenance.maintenance.service.EnterpriseStatsService;
 import com.maintenance.maintenance.service.FirebaseRealtimeService;
+import com.maintenance.maintenance.service.LiveEventService;
+import com.maintenance.maintenance.service.PageDataLoader;
+import com.maintenance.maintenance.service.RecipientResolver;
+import com.maintenance.maintenance.service.ReminderLeaseService;
+import com.maintenance.maintenance.service.ReminderTimerService;
+import com.maintenance.maintenance.service.SnapshotDecodeExecutor;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
@@ -15,6 +28,7 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Controller
 public class DashboardController {
@@ -22,6 +36,39 @@ public class DashboardController {
     @Autowired
     private FirebaseRealtimeService firebaseRealtimeService;
 
+    @Autowired
+    private EnterpriseReplicaService replicaService;
+
+    @Autowired
+    private SnapshotDecodeExecutor snapshotDecoder;
+
+    @Autowired
+    private ReminderTimerService reminderTimerService;
+
+    @Autowired
+    private ReminderLeaseService reminderLeaseService;
+
+    @Autowired
+    private EmailDispatchService emailDispatchService;
+
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
+    @Autowired
+    private RecipientResolver recipientResolver;
+
+    @Autowired
+    private EnterpriseStatsService enterpriseStatsService;
+
+    @Autowired
+    private PageDataLoader pageDataLoader;
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @Autowired
+    private LiveEventService liveEventService;
+
     @GetMapping("/dashboard")
     public String dashboard(@RequestParam(value = "entrepriseId", required = false) String entrepriseId,
                            Model model,
@@ -102,113 +149,168 @@ public class DashboardController {
 
     @GetMapping("/dashboard/api/stats")
     @ResponseBody
-    public Map<String, Object> getStats(@RequestParam(value = "entrepriseId", required = false) String entrepriseId,
-                                        HttpServletRequest request) {
-        Map<String, Object> stats = new HashMap<>();
-        try {
-            stats = calculateStatistics(entrepriseId);
-        } catch (Exception e) {
-            e.printStackTrace();
-            stats.put("error", e.getMessage());
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getStats(@RequestParam(value = "entrepriseId", required = false) String entrepriseId,
+                                                                           HttpServletRequest request) {
+        // Statistiques inchangées depuis le dernier appel : 304 sans lecture des compteurs
+        DataVersionService.Validator validator = dataVersionService.validator(entrepriseId, "stats");
+        if (StringUtils.hasText(entrepriseId) && validator.isNotModified(request)) {
+            return CompletableFuture.completedFuture(validator.notModified());
+        }
+        return calculateStatisticsAsync(entrepriseId)
+            .thenApply(validator::ok)
+            .exceptionally(e -> {
+                e.printStackTrace();
+                Map<String, Object> stats = new HashMap<>();
+                stats.put("error", e.getMessage());
+                return ResponseEntity.ok(stats);
+            });
+    }
+
+    /**
+     * Indicateurs des compteurs statistiques : lectures directes, recomptages, dérives corrigées (réservé au super administrateur)
+     */
+    @GetMapping("/dashboard/api/stats/counters")
+    @ResponseBody
+    public Map<String, Object> getStatsCounters(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null || !"superadmin".equalsIgnoreCase((String) session.getAttribute("role"))) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Accès réservé au super administrateur");
+            return error;
         }
+        return enterpriseStatsService.getStats();
+    }
+
+    /**
+     * Indicateurs de la réplique mémoire Firebase (réservé au super administrateur)
+     */
+    @GetMapping("/dashboard/api/replica")
+    @ResponseBody
+    public Map<String, Object> getReplicaStats(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null || !"superadmin".equalsIgnoreCase((String) session.getAttribute("role"))) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Accès réservé au super administrateur");
+            return error;
+        }
+        return replicaService.getStats();
+    }
+
+    /**
+     * Occupation du thread d'événements Firebase et activité du pool de décodage (réservé au super administrateur)
+     */
+    @GetMapping("/dashboard/api/decode")
+    @ResponseBody
+    public Map<String, Object> getDecodeStats(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null || !"superadmin".equalsIgnoreCase((String) session.getAttribute("role"))) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Accès réservé au super administrateur");
+            return error;
+        }
+        return snapshotDecoder.getStats();
+    }
+
+    /**
+     * Requêtes conditionnelles des API JSON : versions incrémentées, requêtes avec ETag, réponses 304 (réservé au super administrateur)
+     */
+    @GetMapping("/dashboard/api/versions")
+    @ResponseBody
+    public Map<String, Object> getDataVersionStats(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null || !"superadmin".equalsIgnoreCase((String) session.getAttribute("role"))) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Accès réservé au super administrateur");
+            return error;
+        }
+        return dataVersionService.getStats();
+    }
+
+    /**
+     * Flux d'événements en direct : flux ouverts et refusés, événements publiés et rejoués (réservé au super administrateur)
+     */
+    @GetMapping("/dashboard/api/events")
+    @ResponseBody
+    public Map<String, Object> getLiveEventStats(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null || !"superadmin".equalsIgnoreCase((String) session.getAttribute("role"))) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Accès réservé au super administrateur");
+            return error;
+        }
+        return liveEventService.getStats();
+    }
+
+    /**
+     * Chargements parallèles des pages (tickets, machines, rappels) : lectures, échecs, dépassements (réservé au super administrateur)
+     */
+    @GetMapping("/dashboard/api/page-loader")
+    @ResponseBody
+    public Map<String, Object> getPageLoaderStats(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null || !"superadmin".equalsIgnoreCase((String) session.getAttribute("role"))) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Accès réservé au super administrateur");
+            return error;
+        }
+        return pageDataLoader.getStats();
+    }
+
+    /**
+     * Minuteries des alertes et rappels en attente (réservé au super administrateur)
+     */
+    @GetMapping("/dashboard/api/reminders")
+    @ResponseBody
+    public Map<String, Object> getReminderStats(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null || !"superadmin".equalsIgnoreCase((String) session.getAttribute("role"))) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Accès réservé au super administrateur");
+            return error;
+        }
+        Map<String, Object> stats = new HashMap<>(reminderTimerService.getStats());
+        stats.put("lease", reminderLeaseService.getStats());
         return stats;
     }
 
-    private Map<String, Object> calculateStatistics(String entrepriseId) throws Exception {
-        Map<String, Object> stats = new HashMap<>();
-        
-        int totalMachines = 0;
-        int openTickets = 0;
-        int pendingMaintenance = 0;
-        int activeRepairs = 0;
-        int completedMaintenance = 0;
-        int urgentTickets = 0;
-        int pendingRappels = 0;
-        int pendingAlertes = 0;
-        
-        if (StringUtils.hasText(entrepriseId)) {
-            // Compter les machines
-            try {
-                List<com.maintenance.maintenance.model.entity.Machine> machines = 
-                    firebaseRealtimeService.getMachinesForEnterprise(entrepriseId);
-                totalMachines = machines != null ? machines.size() : 0;
-            } catch (Exception e) {
-                System.err.println("Erreur lors du comptage des machines: " + e.getMessage());
-            }
-            
-            // Compter les tickets
-            try {
-                List<com.maintenance.maintenance.model.entity.Ticket> tickets = 
-                    firebaseRealtimeService.getTicketsForEnterprise(entrepriseId);
-                if (tickets != null) {
-                    for (com.maintenance.maintenance.model.entity.Ticket ticket : tickets) {
-                        String statut = ticket.getStatut();
-                        if (statut != null && (statut.equals("a_faire") || statut.equals("en_cours"))) {
-                            openTickets++;
-                        }
-                        if (ticket.getPriorite() != null && ticket.getPriorite().equals("urgente") 
-                            && (statut != null && (statut.equals("a_faire") || statut.equals("en_cours")))) {
-                            urgentTickets++;
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                System.err.println("Erreur lors du comptage des tickets: " + e.getMessage());
-            }
-            
-            // Compter les rappels non vérifiés
-            try {
-                List<com.maintenance.maintenance.model.entity.Rappel> rappels = 
-                    firebaseRealtimeService.getRappelsForEnterprise(entrepriseId);
-                if (rappels != null) {
-                    for (com.maintenance.maintenance.model.entity.Rappel rappel : rappels) {
-                        if (rappel.getVerifie() == null || !rappel.getVerifie()) {
-                            pendingRappels++;
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                System.err.println("Erreur lors du comptage des rappels: " + e.getMessage());
-            }
-            
-            // Compter les alertes non vérifiées
-            try {
-                List<com.maintenance.maintenance.model.entity.Alerte> alertes = 
-                    firebaseRealtimeService.getAlertesForEnterprise(entrepriseId);
-                if (alertes != null) {
-                    for (com.maintenance.maintenance.model.entity.Alerte alerte : alertes) {
-                        if (alerte.getVerifie() == null || !alerte.getVerifie()) {
-                            pendingAlertes++;
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                System.err.println("Erreur lors du comptage des alertes: " + e.getMessage());
-            }
-            
-            // Compter les maintenances complétées (historique)
-            try {
-                List<com.maintenance.maintenance.model.entity.HistoriqueVerification> historiques = 
-                    firebaseRealtimeService.getHistoriqueVerificationsForEnterprise(entrepriseId);
-                completedMaintenance = historiques != null ? historiques.size() : 0;
-            } catch (Exception e) {
-                System.err.println("Erreur lors du comptage de l'historique: " + e.getMessage());
-            }
-            
-            // Maintenances en attente = rappels + alertes non vérifiés
-            pendingMaintenance = pendingRappels + pendingAlertes;
+    @GetMapping("/dashboard/api/mail")
+    @ResponseBody
+    public Map<String, Object> getMailStats(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null || !"superadmin".equalsIgnoreCase((String) session.getAttribute("role"))) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Accès réservé au super administrateur");
+            return error;
         }
-        
-        stats.put("totalMachines", totalMachines);
-        stats.put("openTickets", openTickets);
-        stats.put("pendingMaintenance", pendingMaintenance);
-        stats.put("activeRepairs", activeRepairs);
-        stats.put("completedMaintenance", completedMaintenance);
-        stats.put("urgentTickets", urgentTickets);
-        stats.put("pendingRappels", pendingRappels);
-        stats.put("pendingAlertes", pendingAlertes);
-        
+        Map<String, Object> stats = new HashMap<>(emailDispatchService.getStats());
+        stats.put("outbox", emailOutboxService.getStats());
+        stats.put("recipients", recipientResolver.getStats());
         return stats;
     }
+
+    @PostMapping("/dashboard/api/mail/retry")
+    @ResponseBody
+    public Map<String, Object> retryDeadLetters(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        Map<String, Object> response = new HashMap<>();
+        if (session == null || !"superadmin".equalsIgnoreCase((String) session.getAttribute("role"))) {
+            response.put("error", "Accès réservé au super administrateur");
+            return response;
+        }
+        response.put("success", true);
+        response.put("remisEnFile", emailOutboxService.retryDeadLetters());
+        return response;
+    }
+
+    private Map<String, Object> calculateStatistics(String entrepriseId) throws Exception {
+        return calculateStatisticsAsync(entrepriseId).get();
+    }
+
+    /**
+     * Une seule lecture du nœud des compteurs de l'entreprise (voir EnterpriseStatsService)
+     */
+    private CompletableFuture<Map<String, Object>> calculateStatisticsAsync(String entrepriseId) {
+        return enterpriseStatsService.getStatisticsAsync(entrepriseId);
+    }
 }
 
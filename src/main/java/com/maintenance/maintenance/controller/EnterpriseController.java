@@ -1,8 +1,10 @@
 package com.maintenance.maintenance.controller;
 
 import com.maintenance.maintenance.model.entity.Enterprise;
+import com.maintenance.maintenance.service.DataVersionService;
 import com.maintenance.maintenance.service.EnterpriseService;
 import com.maintenance.maintenance.service.FirebaseRealtimeService;
+import com.maintenance.maintenance.service.SecoursFailoverService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,6 +30,12 @@ public class EnterpriseController {
     @Autowired
     private FirebaseRealtimeService firebaseRealtimeService;
 
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @Autowired
+    private SecoursFailoverService secoursFailoverService;
+
     /**
      * Vérifie si l'utilisateur connecté est superadmin
      */
@@ -215,6 +223,7 @@ public class EnterpriseController {
                                    @RequestParam(required = false) String ville,
                                    @RequestParam String email,
                                    @RequestParam String numero,
+                                   @RequestParam(value = "basculementAutomatique", required = false) String basculementAutomatique,
                                    HttpServletRequest request,
                                    RedirectAttributes redirectAttributes) {
         System.out.println("=== EnterpriseController.createEnterprise ===");
@@ -349,6 +358,7 @@ public class EnterpriseController {
             }
             
             model.addAttribute("entreprise", entreprise);
+            model.addAttribute("basculementAutomatique", secoursFailoverService.isAutomatique(id));
             
         } catch (Exception e) {
             System.err.println("ERREUR lors de la récupération de l'entreprise: " + e.getMessage());
@@ -370,6 +380,7 @@ public class EnterpriseController {
                                    @RequestParam(required = false) String ville,
                                    @RequestParam String email,
                                    @RequestParam String numero,
+                                   @RequestParam(value = "basculementAutomatique", required = false) String basculementAutomatique,
                                    HttpServletRequest request,
                                    RedirectAttributes redirectAttributes) {
         System.out.println("=== EnterpriseController.updateEnterprise ===");
@@ -416,6 +427,7 @@ public class EnterpriseController {
             entrepriseData.put("numero", numero.trim());
             
             firebaseRealtimeService.updateEnterprise(id, entrepriseData);
+            secoursFailoverService.setAutomatique(id, "true".equalsIgnoreCase(basculementAutomatique));
             redirectAttributes.addFlashAttribute("success", "Entreprise mise à jour avec succès");
             System.out.println("Entreprise mise à jour dans Firebase: " + id);
             
@@ -482,6 +494,13 @@ public class EnterpriseController {
             System.out.println("=== Aucune session trouvée (accès anonyme autorisé) ===");
         }
         
+        // Annuaire inchangé depuis le dernier appel : 304 sans lecture Firebase
+        DataVersionService.Validator validator = dataVersionService.validator(DataVersionService.ENTREPRISES);
+        if (validator.isNotModified(request)) {
+            System.out.println("=== EnterpriseController.getAllEnterprisesApi: Annuaire inchangé (304) ===");
+            return validator.notModified();
+        }
+
         try {
             // Récupérer toutes les entreprises depuis Firebase (accessible à tous)
             List<Map<String, Object>> enterprises = firebaseRealtimeService.getAllEnterprises();
@@ -497,7 +516,7 @@ public class EnterpriseController {
                 System.out.println("=== Aucune entreprise trouvée dans Firebase ===");
             }
             
-            return ResponseEntity.ok()
+            return validator.headers(ResponseEntity.ok())
                     .header("Content-Type", "application/json")
                     .header("Access-Control-Allow-Origin", "*")
                     .body(enterprises != null ? enterprises : new ArrayList<>());
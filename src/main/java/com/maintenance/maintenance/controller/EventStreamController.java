@@ -0,0 +1,54 @@
+package com.maintenance.maintenance.controller;
+
+import com.maintenance.maintenance.service.LiveEventService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Flux d'événements en direct (Server-Sent Events) d'une entreprise
+ * Remplace l'interrogation périodique des pages : tickets créés ou modifiés, nouveaux commentaires,
+ * alertes échues et statistiques modifiées sont poussés dès leur écriture dans Firebase.
+ */
+@Controller
+@RequestMapping("/api/events")
+public class EventStreamController {
+
+    @Autowired
+    private LiveEventService liveEventService;
+
+    /**
+     * Ouvre le flux de l'entreprise pour l'utilisateur connecté
+     * Last-Event-ID (en-tête envoyé par EventSource à la reconnexion, ou paramètre lastEventId) : reprise des événements manqués
+     */
+    @GetMapping(value = "/{entrepriseId}", produces = "text/event-stream")
+    @ResponseBody
+    public ResponseEntity<SseEmitter> stream(@PathVariable String entrepriseId,
+                                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+                                             @RequestParam(value = "lastEventId", required = false) String lastEventIdParam,
+                                             HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null || !Boolean.TRUE.equals(session.getAttribute("authenticated"))) {
+            return ResponseEntity.status(401).build();
+        }
+
+        String userId = (String) session.getAttribute("userId");
+        String lastEventId = StringUtils.hasText(lastEventIdHeader) ? lastEventIdHeader : lastEventIdParam;
+        SseEmitter emitter = liveEventService.subscribe(entrepriseId, userId, lastEventId);
+        if (emitter == null) {
+            // Nombre maximal de flux atteint sur ce nœud : le client repassera plus tard
+            return ResponseEntity.status(503)
+                .header("Retry-After", "60")
+                .build();
+        }
+        return ResponseEntity.ok()
+            .header("Cache-Control", "no-cache")
+            .header("X-Accel-Buffering", "no")
+            .body(emitter);
+    }
+}
@@ -0,0 +1,73 @@
+package com.maintenance.maintenance.controller;
+
+import com.maintenance.maintenance.service.CsvExportService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports CSV d'une entreprise : /export/machines.csv, /export/tickets.csv, /export/components.csv, /export/historique.csv
+ * Le fichier est écrit pendant la lecture (voir CsvExportService), compressé en gzip si le client l'accepte.
+ */
+@Controller
+@RequestMapping("/export")
+public class ExportController {
+
+    @Autowired
+    private CsvExportService csvExportService;
+
+    @GetMapping("/{entity}.csv")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> exportCsv(@PathVariable String entity,
+                                                           @RequestParam(value = "entrepriseId", required = false) String entrepriseId,
+                                                           HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null || !Boolean.TRUE.equals(session.getAttribute("authenticated"))) {
+            return ResponseEntity.status(401).build();
+        }
+        if (!csvExportService.supports(entity)) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!StringUtils.hasText(entrepriseId)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        String filename = entity + "-" + entrepriseId + "-" + LocalDate.now() + ".csv";
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                // syncFlush : chaque page écrite part immédiatement vers le client
+                GZIPOutputStream compressed = new GZIPOutputStream(out, 8192, true);
+                csvExportService.export(entity, entrepriseId, compressed);
+                compressed.finish();
+            } else {
+                csvExportService.export(entity, entrepriseId, out);
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .header("Content-Type", "text/csv;charset=UTF-8")
+            .header("Content-Disposition", ContentDisposition.attachment().filename(filename).build().toString())
+            .header("Cache-Control", "no-store")
+            .header("Vary", "Accept-Encoding");
+        if (gzip) {
+            response.header("Content-Encoding", "gzip");
+        }
+        return response.body(body);
+    }
+}
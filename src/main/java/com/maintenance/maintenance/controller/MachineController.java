@@ -6,7 +6,12 @@ import com.maintenance.maintenance.model.entity.Component;
 import com.maintenance.maintenance.model.entity.Machine;
 import com.maintenance.maintenance.service.FirebaseRealtimeService;
 import com.maintenance.maintenance.service.MachineService;
+import com.maintenance.maintenance.service.PageDataLoader;
 import com.maintenance.maintenance.service.LocalFileStorageService;
+import com.maintenance.maintenance.service.MachineFacetIndexService;
+import com.maintenance.maintenance.service.SearchIndexService;
+import com.maintenance.maintenance.service.SecoursFailoverService;
+import com.maintenance.maintenance.service.SecoursGraphService;
 import com.maintenance.maintenance.service.CategoryService;
 import com.maintenance.maintenance.service.ComponentService;
 import com.maintenance.maintenance.service.TicketService;
@@ -23,13 +28,17 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -55,6 +64,21 @@ public class MachineController {
     @Autowired
     private TicketService ticketService;
 
+    @Autowired
+    private PageDataLoader pageDataLoader;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private MachineFacetIndexService machineFacetIndexService;
+
+    @Autowired
+    private SecoursGraphService secoursGraphService;
+
+    @Autowired
+    private SecoursFailoverService secoursFailoverService;
+
     /**
      * Vérifie si l'utilisateur est connecté (tous les rôles autorisés)
      */
@@ -142,146 +166,87 @@ public class MachineController {
             return "redirect:/login";
         }
 
-        try {
+        try (PageDataLoader.Load load = pageDataLoader.open()) {
             // Préserver la session
             HttpSession session = request.getSession(true);
             session.setAttribute("authenticated", true);
-            
-            List<Map<String, Object>> enterprises = firebaseRealtimeService.getAllEnterprises();
-            if (enterprises == null) {
-                enterprises = new ArrayList<>();
-            }
+
+            // Entreprises, machines et catégories lues en parallèle
+            PageDataLoader.Part<List<Map<String, Object>>> enterprisesPart =
+                load.fork("des entreprises", firebaseRealtimeService::getAllEnterprises, new ArrayList<>());
+            // Récupérer toutes les catégories pour le filtre
+            PageDataLoader.Part<List<Category>> categoriesPart =
+                load.fork("des catégories", categoryService::findAll, new ArrayList<>());
 
             // Récupérer depuis la session si pas fourni dans la requête
             if (!StringUtils.hasText(entrepriseId)) {
                 String lastEntrepriseId = (String) session.getAttribute("lastSelectedEntrepriseId");
                 if (StringUtils.hasText(lastEntrepriseId)) {
                     entrepriseId = lastEntrepriseId;
-                } else if (!enterprises.isEmpty()) {
-                    // Prendre la première entreprise par défaut
-                entrepriseId = enterprises.get(0).get("entrepriseId").toString();
+                } else {
+                    List<Map<String, Object>> enterprises = enterprisesPart.require();
+                    if (!enterprises.isEmpty()) {
+                        // Prendre la première entreprise par défaut
+                        entrepriseId = enterprises.get(0).get("entrepriseId").toString();
+                    }
                 }
             }
 
+            PageDataLoader.Part<List<Machine>> machinesPart = null;
+            if (StringUtils.hasText(entrepriseId)) {
+                String selectedEntrepriseId = entrepriseId;
+                machinesPart = load.fork("des machines", () -> machineService.listMachines(selectedEntrepriseId), new ArrayList<>());
+            }
+            load.join();
+
+            List<Map<String, Object>> enterprises = enterprisesPart.require();
             List<Machine> allMachines = new ArrayList<>();
             List<Machine> machines = new ArrayList<>();
+            Map<String, Machine> machineLookup = new HashMap<>();
+            MachineFacetIndexService.Result facets = null;
             
             if (StringUtils.hasText(entrepriseId)) {
-                try {
-                    allMachines = machineService.listMachines(entrepriseId);
-                    if (allMachines == null) {
-                        System.err.println("=== listMachines a retourné null pour entrepriseId: " + entrepriseId + " ===");
-                        allMachines = new ArrayList<>();
-                    }
+                allMachines = machinesPart.get();
+                if (machinesPart.failed()) {
+                    System.err.println("=== Erreur lors de la récupération des machines: " + machinesPart.getError() + " ===");
+                    redirectAttributes.addFlashAttribute("error", "Erreur lors du chargement des machines: " + machinesPart.getError());
+                } else {
                     System.out.println("=== Machines récupérées: " + allMachines.size() + " pour entrepriseId: " + entrepriseId + " ===");
                     session.setAttribute("lastSelectedEntrepriseId", entrepriseId);
-                } catch (Exception e) {
-                    System.err.println("=== Erreur lors de la récupération des machines: " + e.getMessage() + " ===");
-                    e.printStackTrace();
-                    allMachines = new ArrayList<>();
-                    redirectAttributes.addFlashAttribute("error", "Erreur lors du chargement des machines: " + e.getMessage());
                 }
-                
-                // Appliquer tous les filtres en une seule passe
-                machines = allMachines.stream()
-                    .filter(m -> {
-                        if (m == null) return false;
-                        
-                        // Filtre : exclure les machines de secours qui sont déjà rattachées à une machine principale
-                        // (sauf si on filtre spécifiquement pour les secours)
-                        if (estSecours == null || estSecours.isEmpty() || !"true".equalsIgnoreCase(estSecours)) {
-                            // Si c'est une machine de secours rattachée, l'exclure
-                            if (m.getEstMachineSecours() != null && m.getEstMachineSecours() 
-                                && m.getMachinePrincipaleId() != null && !m.getMachinePrincipaleId().isEmpty()) {
-                                return false;
-                            }
-                        }
-                        
-                        // Filtre par recherche (nom, numéro de série, IP, emplacement, catégorie)
-                        if (StringUtils.hasText(search)) {
-                            String searchLower = search.toLowerCase();
-                            boolean matchesSearch = false;
-                            
-                            if (m.getNom() != null && m.getNom().toLowerCase().contains(searchLower)) {
-                                matchesSearch = true;
-                            } else if (m.getNumeroSerie() != null && m.getNumeroSerie().toLowerCase().contains(searchLower)) {
-                                matchesSearch = true;
-                            } else if (m.getAdresseIP() != null && m.getAdresseIP().toLowerCase().contains(searchLower)) {
-                                matchesSearch = true;
-                            } else if (m.getEmplacement() != null && m.getEmplacement().toLowerCase().contains(searchLower)) {
-                                matchesSearch = true;
-                            } else if (m.getCategoryName() != null && m.getCategoryName().toLowerCase().contains(searchLower)) {
-                                matchesSearch = true;
-                            } else if (m.getNotes() != null && m.getNotes().toLowerCase().contains(searchLower)) {
-                                matchesSearch = true;
-                            }
-                            
-                            if (!matchesSearch) {
-                                return false;
-                            }
-                        }
-                        
-                        // Filtre par catégorie
-                        if (categoryId != null) {
-                            if (m.getCategoryId() == null || !m.getCategoryId().equals(categoryId)) {
-                                return false;
-                            }
-                        }
-                        
-                        // Filtre par statut opérationnel
-                        if (StringUtils.hasText(operationnel)) {
-                            boolean isOperationnel = "true".equalsIgnoreCase(operationnel);
-                            Boolean machineOperationnel = m.getOperationnel();
-                            
-                            if (isOperationnel) {
-                                // Filtrer pour les machines opérationnelles
-                                // Une machine est opérationnelle si operationnel == true ET enReparation != true
-                                if (machineOperationnel == null || !machineOperationnel || 
-                                    (m.getEnReparation() != null && m.getEnReparation())) {
-                                    return false;
-                                }
-                            } else {
-                                // Filtrer pour les machines non opérationnelles
-                                // Une machine est non opérationnelle si operationnel == false OU enReparation == true
-                                if (machineOperationnel != null && machineOperationnel && 
-                                    (m.getEnReparation() == null || !m.getEnReparation())) {
-                                    return false;
-                                }
-                            }
-                        }
-                        
-                        // Filtre par type (secours/principale)
-                        if (StringUtils.hasText(estSecours)) {
-                            Boolean machineEstSecours = m.getEstMachineSecours();
-                            Boolean machineEstEntrepot = m.getEstMachineEntrepot() != null ? m.getEstMachineEntrepot() : false;
-                            
-                            if ("entrepot".equals(estSecours)) {
-                                if (!machineEstEntrepot) {
-                                    return false;
-                                }
-                            } else if ("true".equalsIgnoreCase(estSecours)) {
-                                if (machineEstEntrepot || machineEstSecours == null || !machineEstSecours) {
-                                    return false;
-                                }
-                            } else {
-                                if (machineEstEntrepot || (machineEstSecours != null && machineEstSecours)) {
-                                    return false;
-                                }
-                            }
+
+                machineLookup = allMachines.stream()
+                    .filter(m -> m != null && m.getMachineId() != null)
+                    .collect(Collectors.toMap(Machine::getMachineId, Function.identity(), (existing, replacement) -> existing));
+
+                if (!machinesPart.failed()) {
+                    // Recherche (nom, numéro de série, IP, emplacement, catégorie, notes) via l'index, du plus pertinent au moins pertinent
+                    List<String> rankedIds = null;
+                    if (StringUtils.hasText(search)) {
+                        List<Machine> indexSource = allMachines;
+                        rankedIds = searchIndexService.searchMachines(entrepriseId, search, () -> indexSource);
+                    }
+
+                    // Catégorie, statut, type et masquage des machines de secours rattachées (sauf filtre "Secours")
+                    // résolus sur les bitsets de l'index, avec le nombre de machines de chaque valeur de filtre
+                    facets = machineFacetIndexService.filter(entrepriseId, allMachines,
+                        new MachineFacetIndexService.Filter(categoryId, operationnel, estSecours,
+                            rankedIds != null ? new HashSet<>(rankedIds) : null));
+                    List<String> machineIds = facets.machineIds();
+                    if (rankedIds != null) {
+                        Set<String> retenues = new HashSet<>(machineIds);
+                        machineIds = rankedIds.stream().filter(retenues::contains).collect(Collectors.toList());
+                    }
+                    for (String id : machineIds) {
+                        Machine machine = machineLookup.get(id);
+                        if (machine != null) {
+                            machines.add(machine);
                         }
-                        
-                        return true;
-                    })
-                    .collect(Collectors.toList());
+                    }
+                }
             }
             
-            // Récupérer toutes les catégories pour le filtre
-            List<Category> categories = categoryService.findAll();
-
-            List<Machine> lookupSource = allMachines != null ? allMachines : new ArrayList<>();
-            Map<String, Machine> machineLookup = lookupSource.stream()
-                .filter(m -> m != null && m.getMachineId() != null)
-                .collect(Collectors.toMap(Machine::getMachineId, Function.identity(), (existing, replacement) -> existing));
+            List<Category> categories = categoriesPart.require();
 
             // Créer une map pour compter rapidement les machines de secours par machine principale
             Map<String, Long> secoursCountMap = new HashMap<>();
@@ -289,48 +254,36 @@ public class MachineController {
             // Clé: machineId, Valeur: Map contenant "machine" (Machine principale) et "secours" (List<Machine>)
             Map<String, Map<String, Object>> machinesPrincipalesNonFonctionnelles = new HashMap<>();
             
-            if (StringUtils.hasText(entrepriseId) && allMachines != null) {
-                for (Machine m : allMachines) {
-                    if (m != null && m.getEstMachineSecours() != null && m.getEstMachineSecours() 
-                        && m.getMachinePrincipaleId() != null && !m.getMachinePrincipaleId().isEmpty()
-                        && m.getMachineId() != null) {
-                        String principaleId = m.getMachinePrincipaleId();
-                        secoursCountMap.put(principaleId, 
-                            secoursCountMap.getOrDefault(principaleId, 0L) + 1);
-                    }
-                }
-                
+            if (StringUtils.hasText(entrepriseId) && !machinesPart.failed()) {
+                // Rattachements lus dans le graphe des machines de secours : pas de parcours de toutes les machines par principale
+                SecoursGraphService.Graph graph = secoursGraphService.graph(entrepriseId, allMachines);
+                secoursCountMap = graph.counts();
+
                 // Détecter les machines principales non fonctionnelles avec des machines de secours disponibles
                 for (Machine machine : allMachines) {
-                    if (machine != null && machine.getMachineId() != null) {
-                        if (machine.getEstMachineEntrepot() != null && machine.getEstMachineEntrepot()) {
-                            continue;
-                        }
-                        // Vérifier si c'est une machine principale
-                        boolean isMachinePrincipale = machine.getEstMachineSecours() == null || !machine.getEstMachineSecours();
-                        
-                        if (isMachinePrincipale) {
-                            // Vérifier si elle est non fonctionnelle
-                            boolean isNonFonctionnelle = machine.getOperationnel() == null || !machine.getOperationnel();
-                            
-                            if (isNonFonctionnelle) {
-                                // Chercher les machines de secours fonctionnelles attachées à cette machine principale
-                                List<Machine> secoursDisponibles = allMachines.stream()
-                                    .filter(m -> m.getEstMachineSecours() != null && m.getEstMachineSecours())
-                                    .filter(m -> machine.getMachineId().equals(m.getMachinePrincipaleId()))
-                                    .filter(m -> m.getEnReparation() == null || !m.getEnReparation()) // Exclure celles en réparation
-                                    .filter(m -> m.getOperationnel() != null && m.getOperationnel()) // Seulement les fonctionnelles
-                                    .collect(Collectors.toList());
-                                
-                                // Si des machines de secours sont disponibles, ajouter à la map
-                                if (!secoursDisponibles.isEmpty()) {
-                                    Map<String, Object> info = new HashMap<>();
-                                    info.put("machine", machine);
-                                    info.put("secours", secoursDisponibles);
-                                    machinesPrincipalesNonFonctionnelles.put(machine.getMachineId(), info);
-                                }
+                    if (machine == null || machine.getMachineId() == null) {
+                        continue;
+                    }
+                    if (machine.getEstMachineEntrepot() != null && machine.getEstMachineEntrepot()) {
+                        continue;
+                    }
+                    boolean isMachinePrincipale = machine.getEstMachineSecours() == null || !machine.getEstMachineSecours();
+                    boolean isNonFonctionnelle = machine.getOperationnel() == null || !machine.getOperationnel();
+                    if (isMachinePrincipale && isNonFonctionnelle) {
+                        // Machines de secours fonctionnelles (et pas en réparation) rattachées à cette machine principale
+                        List<Machine> secoursDisponibles = new ArrayList<>();
+                        for (String secoursId : graph.disponibles(machine.getMachineId())) {
+                            Machine secours = machineLookup.get(secoursId);
+                            if (secours != null) {
+                                secoursDisponibles.add(secours);
                             }
                         }
+                        if (!secoursDisponibles.isEmpty()) {
+                            Map<String, Object> info = new HashMap<>();
+                            info.put("machine", machine);
+                            info.put("secours", secoursDisponibles);
+                            machinesPrincipalesNonFonctionnelles.put(machine.getMachineId(), info);
+                        }
                     }
                 }
             }
@@ -347,6 +300,7 @@ public class MachineController {
             model.addAttribute("selectedEstSecours", estSecours);
             model.addAttribute("searchQuery", search != null ? search : "");
             model.addAttribute("machineLookup", machineLookup);
+            model.addAttribute("facets", facets);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -357,6 +311,57 @@ public class MachineController {
         return "machines/list";
     }
 
+    /**
+     * Recherche de machines ou de composants (type=components) : identifiants classés par pertinence
+     */
+    @GetMapping("/api/search")
+    @ResponseBody
+    public Map<String, Object> search(@RequestParam("entrepriseId") String entrepriseId,
+                                      @RequestParam("q") String query,
+                                      @RequestParam(value = "type", defaultValue = "machines") String type,
+                                      @RequestParam(value = "limit", defaultValue = "50") int limit,
+                                      HttpServletRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        HttpSession session = request.getSession(false);
+        if (session == null || !Boolean.TRUE.equals(session.getAttribute("authenticated"))) {
+            response.put("error", "Non authentifié");
+            return response;
+        }
+        try {
+            List<String> ids = "components".equals(type)
+                ? searchIndexService.searchComponents(entrepriseId, query, () -> componentService.listComponentsForEnterprise(entrepriseId))
+                : searchIndexService.searchMachines(entrepriseId, query, () -> machineService.listMachines(entrepriseId));
+            response.put("total", ids.size());
+            response.put("ids", limit > 0 && ids.size() > limit ? ids.subList(0, limit) : ids);
+        } catch (Exception e) {
+            response.put("error", "Erreur lors de la recherche: " + e.getMessage());
+        }
+        return response;
+    }
+
+    /**
+     * Journal des basculements vers une machine de secours (automatiques et manuels), du plus récent au plus ancien
+     */
+    @GetMapping("/api/basculements")
+    @ResponseBody
+    public Map<String, Object> basculements(@RequestParam("entrepriseId") String entrepriseId,
+                                            @RequestParam(value = "limit", defaultValue = "50") int limit,
+                                            HttpServletRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        HttpSession session = request.getSession(false);
+        if (session == null || !Boolean.TRUE.equals(session.getAttribute("authenticated"))) {
+            response.put("error", "Non authentifié");
+            return response;
+        }
+        try {
+            response.put("basculementAutomatique", secoursFailoverService.isAutomatique(entrepriseId));
+            response.put("basculements", firebaseRealtimeService.getBasculementsAsync(entrepriseId, Math.max(1, Math.min(limit, 500))).get());
+        } catch (Exception e) {
+            response.put("error", "Erreur lors de la lecture des basculements: " + e.getMessage());
+        }
+        return response;
+    }
+
     @GetMapping("/{entrepriseId}/{machineId}/attach-secours")
     public String showAttachSecoursForm(@PathVariable String entrepriseId,
                                         @PathVariable String machineId,
@@ -379,31 +384,33 @@ public class MachineController {
             
             if (isMachinePrincipale) {
                 // Si c'est une machine principale, récupérer les machines de secours disponibles (non rattachées)
-                List<Machine> allMachines = new ArrayList<>();
+                // et celles déjà rattachées : identifiants lus dans le graphe, seules ces machines sont relues
+                List<Machine> machinesSecoursDisponibles = new ArrayList<>();
+                List<Machine> machinesSecoursRattachees = new ArrayList<>();
                 try {
-                    allMachines = machineService.listMachines(entrepriseId);
-                    if (allMachines == null) {
-                        allMachines = new ArrayList<>();
+                    SecoursGraphService.Graph graph = secoursGraphService.graph(entrepriseId, () -> machineService.listMachines(entrepriseId));
+                    Set<String> libres = graph.libres();
+                    Set<String> ids = new LinkedHashSet<>(libres);
+                    ids.addAll(graph.rattachees(machineId));
+                    for (Machine m : machineService.getMachines(entrepriseId, ids)) {
+                        // Le graphe peut précéder une écriture d'une autre instance : état revérifié sur la machine relue
+                        if (m.getMachineId() == null || m.getEstMachineSecours() == null || !m.getEstMachineSecours()) {
+                            continue;
+                        }
+                        if (m.getMachinePrincipaleId() == null || m.getMachinePrincipaleId().isEmpty()) {
+                            if ((m.getEnReparation() == null || !m.getEnReparation()) // Exclure les machines en réparation
+                                && !m.getMachineId().equals(machineId)) { // Exclure la machine courante
+                                machinesSecoursDisponibles.add(m);
+                            }
+                        } else if (m.getMachinePrincipaleId().equals(machineId)) {
+                            machinesSecoursRattachees.add(m);
+                        }
                     }
                 } catch (Exception e) {
-                    allMachines = new ArrayList<>();
+                    machinesSecoursDisponibles = new ArrayList<>();
+                    machinesSecoursRattachees = new ArrayList<>();
                 }
                 
-                List<Machine> machinesSecoursDisponibles = allMachines.stream()
-                    .filter(m -> m != null && m.getMachineId() != null)
-                    .filter(m -> m.getEstMachineSecours() != null && m.getEstMachineSecours())
-                    .filter(m -> m.getMachinePrincipaleId() == null || m.getMachinePrincipaleId().isEmpty())
-                    .filter(m -> m.getEnReparation() == null || !m.getEnReparation()) // Exclure les machines en réparation
-                    .filter(m -> !m.getMachineId().equals(machineId)) // Exclure la machine courante
-                    .collect(Collectors.toList());
-                
-                // Récupérer les machines de secours déjà rattachées à cette machine principale
-                List<Machine> machinesSecoursRattachees = allMachines.stream()
-                    .filter(m -> m != null && m.getMachineId() != null)
-                    .filter(m -> m.getEstMachineSecours() != null && m.getEstMachineSecours())
-                    .filter(m -> m.getMachinePrincipaleId() != null && m.getMachinePrincipaleId().equals(machineId))
-                    .collect(Collectors.toList());
-                
                 model.addAttribute("machinesSecoursDisponibles", machinesSecoursDisponibles);
                 model.addAttribute("machinesSecoursRattachees", machinesSecoursRattachees);
             } else {
@@ -481,14 +488,10 @@ public class MachineController {
                 return "redirect:/machines?entrepriseId=" + entrepriseId;
             }
             
-            // Récupérer toutes les machines de secours rattachées à cette machine principale
-            List<Machine> allMachines = machineService.listMachines(entrepriseId);
-            if (allMachines == null) {
-                allMachines = new ArrayList<>();
-            }
-            
-            List<Machine> machinesSecoursRattachees = allMachines.stream()
-                .filter(m -> m != null)
+            // Récupérer toutes les machines de secours rattachées à cette machine principale (graphe relu : détachement et promotion partent de cette page)
+            String selectedEntrepriseId = entrepriseId;
+            SecoursGraphService.Graph graph = secoursGraphService.freshGraph(entrepriseId, () -> machineService.listMachines(selectedEntrepriseId));
+            List<Machine> machinesSecoursRattachees = machineService.getMachines(entrepriseId, graph.rattachees(machineId)).stream()
                 .filter(m -> m.getEstMachineSecours() != null && m.getEstMachineSecours())
                 .filter(m -> m.getMachinePrincipaleId() != null && m.getMachinePrincipaleId().equals(machineId))
                 .collect(Collectors.toList());
@@ -620,17 +623,25 @@ public class MachineController {
                     return "redirect:/machines/" + entrepriseId + "/" + machineId + "/attach-secours";
                 }
                 
-                int count = 0;
+                // Machines sélectionnées lues en parallèle, rattachements écrits en une seule fois
+                Set<String> selection = new LinkedHashSet<>();
                 for (String secoursId : machinesSecoursIds) {
                     if (StringUtils.hasText(secoursId)) {
-                        Machine machineSecours = machineService.getMachine(entrepriseId, secoursId);
-                        if (machineSecours != null && machineSecours.getEstMachineSecours() != null && machineSecours.getEstMachineSecours()) {
-                            machineSecours.setMachinePrincipaleId(machineId);
-                            machineService.updateMachine(entrepriseId, secoursId, machineSecours);
-                            count++;
-                        }
+                        selection.add(secoursId);
+                    }
+                }
+                FirebaseRealtimeService.WriteBatch batch = firebaseRealtimeService.batch(entrepriseId);
+                int count = 0;
+                for (Machine machineSecours : machineService.getMachines(entrepriseId, selection)) {
+                    if (machineSecours.getEstMachineSecours() != null && machineSecours.getEstMachineSecours()) {
+                        // Copie modifiée : la machine lue reste l'état précédent du lot
+                        Machine rattachee = firebaseRealtimeService.copyMachine(machineSecours);
+                        rattachee.setMachinePrincipaleId(machineId);
+                        batch.updateMachine(rattachee.getMachineId(), rattachee);
+                        count++;
                     }
                 }
+                batch.commit();
                 
                 redirectAttributes.addFlashAttribute("success", count + " machine(s) de secours rattachée(s) avec succès.");
             } else {
@@ -695,9 +706,9 @@ public class MachineController {
                 return "redirect:/machines?entrepriseId=" + entrepriseId;
             }
 
-            // Récupérer toutes les machines de secours rattachées à cette principale et fonctionnelles
-            List<Machine> allMachines = machineService.listMachines(entrepriseId);
-            List<Machine> machinesSecoursDisponibles = allMachines.stream()
+            // Récupérer toutes les machines de secours rattachées à cette principale et fonctionnelles (graphe relu : la promotion suit)
+            SecoursGraphService.Graph graph = secoursGraphService.freshGraph(entrepriseId, () -> machineService.listMachines(entrepriseId));
+            List<Machine> machinesSecoursDisponibles = machineService.getMachines(entrepriseId, graph.disponibles(machineId)).stream()
                 .filter(m -> m.getEstMachineSecours() != null && m.getEstMachineSecours())
                 .filter(m -> m.getMachinePrincipaleId() != null && m.getMachinePrincipaleId().equals(machineId))
                 .filter(m -> m.getEnReparation() == null || !m.getEnReparation()) // Exclure celles déjà en réparation
@@ -733,7 +744,10 @@ public class MachineController {
         }
 
         try {
-            Machine machinePrincipale = machineService.getMachine(entrepriseId, machineId);
+            // Les deux machines lues en parallèle
+            Map<String, Machine> lues = machineService.getMachines(entrepriseId, List.of(machineId, nouvellePrincipaleId)).stream()
+                .collect(Collectors.toMap(Machine::getMachineId, Function.identity(), (existing, replacement) -> existing));
+            Machine machinePrincipale = lues.get(machineId);
             if (machinePrincipale == null) {
                 redirectAttributes.addFlashAttribute("error", "Machine principale introuvable.");
                 return "redirect:/machines?entrepriseId=" + entrepriseId;
@@ -745,7 +759,7 @@ public class MachineController {
                 return "redirect:/machines/" + entrepriseId + "/" + machineId + "/promote-secours-form";
             }
 
-            Machine nouvellePrincipale = machineService.getMachine(entrepriseId, nouvellePrincipaleId);
+            Machine nouvellePrincipale = lues.get(nouvellePrincipaleId);
             if (nouvellePrincipale == null) {
                 redirectAttributes.addFlashAttribute("error", "Machine de secours introuvable.");
                 return "redirect:/machines/" + entrepriseId + "/" + machineId + "/promote-secours-form";
@@ -758,70 +772,18 @@ public class MachineController {
                 return "redirect:/machines/" + entrepriseId + "/" + machineId + "/promote-secours-form";
             }
 
-            // Récupérer toutes les machines de secours rattachées à cette principale
-            List<Machine> allMachines = machineService.listMachines(entrepriseId);
-            List<Machine> machinesSecours = allMachines.stream()
-                .filter(m -> m.getEstMachineSecours() != null && m.getEstMachineSecours())
-                .filter(m -> machineId.equals(m.getMachinePrincipaleId()))
-                .collect(Collectors.toList());
-
-            // Promouvoir la machine sélectionnée en principale
-            nouvellePrincipale.setEstMachineSecours(false);
-            nouvellePrincipale.setMachinePrincipaleId(null);
-            nouvellePrincipale.setOperationnel(true);
-            nouvellePrincipale.setEnReparation(false);
-            machineService.updateMachine(entrepriseId, nouvellePrincipaleId, nouvellePrincipale);
-
-            // Transférer les périphériques de l'ancienne machine principale vers la nouvelle
-            try {
-                List<Component> composantsAnciennePrincipale = componentService.listComponentsForMachine(entrepriseId, machineId);
-                if (composantsAnciennePrincipale != null && !composantsAnciennePrincipale.isEmpty()) {
-                    int peripheriquesTransferes = 0;
-                    for (Component composant : composantsAnciennePrincipale) {
-                        if (composant != null && composant.getComponentId() != null) {
-                            composant.setMachineId(nouvellePrincipaleId);
-                            composant.setModifieLe(System.currentTimeMillis());
-                            componentService.updateComponent(entrepriseId, composant.getComponentId(), composant);
-                            peripheriquesTransferes++;
-                        }
-                    }
-                    if (peripheriquesTransferes > 0) {
-                        System.out.println("=== " + peripheriquesTransferes + " périphérique(s) transféré(s) de la machine " + machineId + " vers " + nouvellePrincipaleId + " ===");
-                    }
-                }
-            } catch (Exception e) {
-                // Ne pas bloquer la promotion si le transfert des périphériques échoue
-                System.err.println("Erreur lors du transfert des périphériques: " + e.getMessage());
-                e.printStackTrace();
-            }
-
-            // Mettre les autres machines de secours en réparation (non fonctionnelles)
-            for (Machine secours : machinesSecours) {
-                if (!secours.getMachineId().equals(nouvellePrincipaleId)) {
-                    secours.setEnReparation(true);
-                    secours.setOperationnel(false);
-                    secours.setEstMachineSecours(false); // Plus une machine de secours
-                    secours.setMachinePrincipaleId(null); // Plus rattachée
-                    machineService.updateMachine(entrepriseId, secours.getMachineId(), secours);
-                }
+            // Promotion, passage en réparation des autres machines de secours et de l'ancienne principale,
+            // transfert des périphériques : une seule écriture, journalisée (voir SecoursFailoverService)
+            String utilisateur = (String) request.getSession(true).getAttribute("userId");
+            SecoursFailoverService.Basculement basculement = secoursFailoverService.basculer(entrepriseId, machinePrincipale,
+                nouvellePrincipale, SecoursFailoverService.DECLENCHEUR_MANUEL, utilisateur);
+            if (basculement == null) {
+                redirectAttributes.addFlashAttribute("error", "Un basculement de cette machine principale est déjà en cours.");
+                return "redirect:/machines/" + entrepriseId + "/" + machineId + "/promote-secours-form";
             }
-
-            // Mettre l'ancienne principale en réparation
-            machinePrincipale.setEnReparation(true);
-            machinePrincipale.setOperationnel(false);
-            machinePrincipale.setEstMachineSecours(false);
-            machinePrincipale.setMachinePrincipaleId(null);
-            machineService.updateMachine(entrepriseId, machineId, machinePrincipale);
-
-            // Compter les périphériques transférés pour le message
-            int peripheriquesTransferes = 0;
-            try {
-                List<Component> peripheriques = componentService.listComponentsForMachine(entrepriseId, nouvellePrincipaleId);
-                if (peripheriques != null) {
-                    peripheriquesTransferes = peripheriques.size();
-                }
-            } catch (Exception e) {
-                // Ignorer l'erreur
+            int peripheriquesTransferes = basculement.peripheriquesTransferes();
+            if (peripheriquesTransferes > 0) {
+                System.out.println("=== " + peripheriquesTransferes + " périphérique(s) transféré(s) de la machine " + machineId + " vers " + nouvellePrincipaleId + " ===");
             }
             
             String messageSuccess = "Machine de secours promue avec succès. Les autres machines sont passées en réparation.";
@@ -1502,8 +1464,8 @@ public class MachineController {
                         && (existingMachine.getOperationnel() == null || existingMachine.getOperationnel())) {
                         boolean isMachinePrincipale = existingMachine.getEstMachineSecours() == null || !existingMachine.getEstMachineSecours();
                         if (isMachinePrincipale) {
-                            List<Machine> allMachines = machineService.listMachines(entrepriseId);
-                            List<Machine> machinesSecoursRattachees = allMachines.stream()
+                            SecoursGraphService.Graph graph = secoursGraphService.freshGraph(entrepriseId, () -> machineService.listMachines(entrepriseId));
+                            List<Machine> machinesSecoursRattachees = machineService.getMachines(entrepriseId, graph.disponibles(machineId)).stream()
                                 .filter(m -> m.getEstMachineSecours() != null && m.getEstMachineSecours())
                                 .filter(m -> m.getMachinePrincipaleId() != null && m.getMachinePrincipaleId().equals(machineId))
                                 .filter(m -> m.getEnReparation() == null || !m.getEnReparation())
@@ -1513,10 +1475,16 @@ public class MachineController {
                             if (!machinesSecoursRattachees.isEmpty()) {
                                 machineService.updateMachine(entrepriseId, machineId, machine);
                                 
-                                redirectAttributes.addFlashAttribute("info", "Cette machine principale est maintenant non fonctionnelle. Veuillez sélectionner une machine de secours pour la remplacer.");
                                 HttpSession session = request.getSession(true);
                                 session.setAttribute("authenticated", true);
                                 session.setAttribute("lastSelectedEntrepriseId", entrepriseId);
+                                // Basculement automatique activé : une machine de secours est promue en arrière-plan
+                                // (écouteur des machines de SecoursFailoverService)
+                                if (secoursFailoverService.isAutomatique(entrepriseId)) {
+                                    redirectAttributes.addFlashAttribute("success", "Machine mise à jour. Basculement automatique en cours : une machine de secours va la remplacer.");
+                                    return "redirect:/machines?entrepriseId=" + entrepriseId;
+                                }
+                                redirectAttributes.addFlashAttribute("info", "Cette machine principale est maintenant non fonctionnelle. Veuillez sélectionner une machine de secours pour la remplacer.");
                                 return "redirect:/machines/" + entrepriseId + "/" + machineId + "/promote-secours-form";
                             }
                         }
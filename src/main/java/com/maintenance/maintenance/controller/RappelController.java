@@ -2,9 +2,11 @@ package com.maintenance.maintenance.controller;
 
 import com.maintenance.maintenance.model.entity.Rappel;
 import com.maintenance.maintenance.model.entity.HistoriqueVerification;
+import com.maintenance.maintenance.service.DataVersionService;
 import com.maintenance.maintenance.service.RappelService;
 import com.maintenance.maintenance.service.FirebaseRealtimeService;
 import com.maintenance.maintenance.service.MachineService;
+import com.maintenance.maintenance.service.PageDataLoader;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,6 +40,12 @@ public class RappelController {
     @Autowired
     private com.maintenance.maintenance.service.HistoriqueVerificationService historiqueVerificationService;
 
+    @Autowired
+    private PageDataLoader pageDataLoader;
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
     /**
      * Vérifie si l'utilisateur est connecté (tous les rôles autorisés)
      */
@@ -131,20 +139,21 @@ public class RappelController {
             return "redirect:/dashboard";
         }
 
-        try {
+        try (PageDataLoader.Load load = pageDataLoader.open()) {
             session.setAttribute("authenticated", true);
-            
-            List<Map<String, Object>> enterprises = firebaseRealtimeService.getAllEnterprises();
-            if (enterprises == null) {
-                enterprises = new ArrayList<>();
-            }
+
+            PageDataLoader.Part<List<Map<String, Object>>> enterprisesPart =
+                load.fork("des entreprises", firebaseRealtimeService::getAllEnterprises, new ArrayList<>());
 
             if (!StringUtils.hasText(entrepriseId)) {
                 String lastEntrepriseId = (String) session.getAttribute("lastSelectedEntrepriseId");
                 if (StringUtils.hasText(lastEntrepriseId)) {
                     entrepriseId = lastEntrepriseId;
-                } else if (!enterprises.isEmpty()) {
-                    entrepriseId = enterprises.get(0).get("entrepriseId").toString();
+                } else {
+                    List<Map<String, Object>> enterprises = enterprisesPart.require();
+                    if (!enterprises.isEmpty()) {
+                        entrepriseId = enterprises.get(0).get("entrepriseId").toString();
+                    }
                 }
             }
 
@@ -154,54 +163,35 @@ public class RappelController {
                 filtre = "actif"; // Par défaut, afficher les rappels actifs
             }
 
-            List<Rappel> rappels = new ArrayList<>();
-            List<HistoriqueVerification> historiques = new ArrayList<>();
-            
+            // Rappels, historique des vérifications et machines du formulaire lus en parallèle
+            PageDataLoader.Part<List<Rappel>> rappelsPart = null;
+            PageDataLoader.Part<List<HistoriqueVerification>> historiquesPart = null;
+            PageDataLoader.Part<List<com.maintenance.maintenance.model.entity.Machine>> machinesPart = null;
             if (StringUtils.hasText(entrepriseId)) {
-                try {
-                    List<Rappel> allRappels = rappelService.listRappels(entrepriseId);
-                    if (allRappels != null) {
-                        if ("historique".equals(filtre)) {
-                            // Pour l'historique, récupérer les rappels vérifiés
-                            for (Rappel rappel : allRappels) {
-                                if (rappel.getVerifie() != null && rappel.getVerifie()) {
-                                    rappels.add(rappel);
-                                }
-                            }
-                            // Aussi récupérer l'historique des vérifications
-                            try {
-                                historiques = historiqueVerificationService.listHistoriqueVerifications(entrepriseId);
-                                if (historiques == null) {
-                                    historiques = new ArrayList<>();
-                                }
-                            } catch (Exception e) {
-                                System.err.println("Erreur lors de la récupération de l'historique: " + e.getMessage());
-                                historiques = new ArrayList<>();
-                            }
-                        } else {
-                            // Pour les rappels actifs, filtrer les rappels vérifiés
-                            for (Rappel rappel : allRappels) {
-                                if (rappel.getVerifie() == null || !rappel.getVerifie()) {
-                                    rappels.add(rappel);
-                                }
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err.println("Erreur lors de la récupération des rappels: " + e.getMessage());
-                    e.printStackTrace();
-                    rappels = new ArrayList<>();
+                String selectedEntrepriseId = entrepriseId;
+                rappelsPart = load.fork("des rappels", () -> rappelService.listRappels(selectedEntrepriseId), new ArrayList<>());
+                if ("historique".equals(filtre)) {
+                    historiquesPart = load.fork("de l'historique",
+                        () -> historiqueVerificationService.listHistoriqueVerifications(selectedEntrepriseId), new ArrayList<>());
                 }
+                machinesPart = load.fork("des machines", () -> machineService.listMachines(selectedEntrepriseId), new ArrayList<>());
                 session.setAttribute("lastSelectedEntrepriseId", entrepriseId);
             }
+            load.join();
 
-            // Récupérer les machines pour le formulaire
-            List<com.maintenance.maintenance.model.entity.Machine> machines = new ArrayList<>();
-            if (StringUtils.hasText(entrepriseId)) {
-                try {
-                    machines = machineService.listMachines(entrepriseId);
-                } catch (Exception e) {
-                    System.err.println("Erreur lors de la récupération des machines: " + e.getMessage());
+            List<Map<String, Object>> enterprises = enterprisesPart.require();
+            List<Rappel> rappels = new ArrayList<>();
+            List<HistoriqueVerification> historiques = historiquesPart != null ? historiquesPart.get() : new ArrayList<>();
+            List<com.maintenance.maintenance.model.entity.Machine> machines = machinesPart != null ? machinesPart.get() : new ArrayList<>();
+
+            if (rappelsPart != null) {
+                // Historique : rappels vérifiés ; actifs : rappels non vérifiés
+                boolean historique = "historique".equals(filtre);
+                for (Rappel rappel : rappelsPart.get()) {
+                    boolean verifie = rappel.getVerifie() != null && rappel.getVerifie();
+                    if (verifie == historique) {
+                        rappels.add(rappel);
+                    }
                 }
             }
 
@@ -445,17 +435,17 @@ public class RappelController {
         }
 
         try {
-            Rappel rappel = rappelService.getRappel(entrepriseId, rappelId);
-            if (rappel == null) {
+            Rappel lu = rappelService.getRappel(entrepriseId, rappelId);
+            if (lu == null) {
                 redirectAttributes.addFlashAttribute("error", "Rappel introuvable.");
                 return "redirect:/rappels?entrepriseId=" + entrepriseId;
             }
 
-            // Marquer le rappel comme vérifié
+            // Marquer le rappel comme vérifié, sur une copie : l'objet lu reste l'état précédent du lot
+            Rappel rappel = firebaseRealtimeService.copyRappel(lu);
             rappel.setVerifie(true);
             long now = System.currentTimeMillis();
             rappel.setDateVerificationReelle(now);
-            rappelService.updateRappel(entrepriseId, rappelId, rappel);
             
             // Créer une entrée dans l'historique
             HistoriqueVerification historique = new HistoriqueVerification();
@@ -485,8 +475,11 @@ public class RappelController {
                 }
             }
             
-            // Sauvegarder dans l'historique Firebase
-            firebaseRealtimeService.createHistoriqueVerification(entrepriseId, historique);
+            // Rappel vérifié et entrée d'historique : une seule écriture
+            FirebaseRealtimeService.WriteBatch batch = firebaseRealtimeService.batch(entrepriseId);
+            batch.updateRappel(rappelId, rappel);
+            batch.createHistoriqueVerification(historique);
+            batch.commit();
             
             redirectAttributes.addFlashAttribute("success", "Rappel marqué comme vérifié et ajouté à l'historique.");
             
@@ -521,17 +514,20 @@ public class RappelController {
                 entrepriseId = (String) session.getAttribute("lastSelectedEntrepriseId");
             }
 
-            List<Rappel> rappels = new ArrayList<>();
-            if (StringUtils.hasText(entrepriseId)) {
-                rappels = rappelService.listRappels(entrepriseId);
-                if (rappels == null) {
-                    rappels = new ArrayList<>();
-                }
+            if (!StringUtils.hasText(entrepriseId)) {
+                return ResponseEntity.ok()
+                        .header("Content-Type", "application/json")
+                        .body(new ArrayList<>());
+            }
+
+            // Rappels inchangés depuis le dernier appel : 304 sans lecture Firebase
+            DataVersionService.Validator validator = dataVersionService.validator(entrepriseId, "rappels");
+            if (validator.isNotModified(request)) {
+                return validator.notModified();
             }
 
-            return ResponseEntity.ok()
-                    .header("Content-Type", "application/json")
-                    .body(rappels);
+            List<Rappel> rappels = rappelService.listRappels(entrepriseId);
+            return validator.ok(rappels != null ? rappels : new ArrayList<>());
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(500).body(new ArrayList<>());
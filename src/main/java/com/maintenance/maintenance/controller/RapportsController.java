@@ -1,19 +1,29 @@
 package com.maintenance.maintenance.controller;
 
 import com.maintenance.maintenance.service.FirebaseRealtimeService;
+import com.maintenance.maintenance.service.GlobalReportService;
+import com.maintenance.maintenance.service.ReportRollupService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Controller
 @RequestMapping("/rapports")
@@ -22,6 +32,12 @@ public class RapportsController {
     @Autowired
     private FirebaseRealtimeService firebaseRealtimeService;
 
+    @Autowired
+    private ReportRollupService reportRollupService;
+
+    @Autowired
+    private GlobalReportService globalReportService;
+
     @GetMapping
     public String rapports(@RequestParam(value = "entrepriseId", required = false) String entrepriseId,
                           Model model,
@@ -77,177 +93,130 @@ public class RapportsController {
         }
     }
 
+    /**
+     * Données des rapports ; plage optionnelle (debut, fin au format yyyy-MM-dd) et granularité (mois ou jour)
+     */
     @GetMapping("/api/data")
     @ResponseBody
-    public Map<String, Object> getReportData(@RequestParam(value = "entrepriseId", required = false) String entrepriseId,
-                                             HttpServletRequest request) {
-        Map<String, Object> reportData = new HashMap<>();
+    public CompletableFuture<Map<String, Object>> getReportData(@RequestParam(value = "entrepriseId", required = false) String entrepriseId,
+                                                                @RequestParam(value = "debut", required = false) String debut,
+                                                                @RequestParam(value = "fin", required = false) String fin,
+                                                                @RequestParam(value = "granularite", required = false) String granularite,
+                                                                HttpServletRequest request) {
+        CompletableFuture<Map<String, Object>> future;
         try {
-            reportData = calculateReportData(entrepriseId);
-        } catch (Exception e) {
-            e.printStackTrace();
-            reportData.put("error", e.getMessage());
+            future = reportRollupService.getReportData(entrepriseId, parseDate(debut), parseDate(fin), granularite);
+        } catch (DateTimeParseException e) {
+            future = CompletableFuture.failedFuture(new IllegalArgumentException("Date invalide (format attendu : yyyy-MM-dd)"));
         }
-        return reportData;
+        return future
+            .exceptionally(e -> {
+                e.printStackTrace();
+                Map<String, Object> reportData = new HashMap<>();
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                reportData.put("error", cause.getMessage());
+                return reportData;
+            });
     }
 
-    private Map<String, Object> calculateReportData(String entrepriseId) throws Exception {
-        Map<String, Object> data = new HashMap<>();
-        
-        if (!StringUtils.hasText(entrepriseId)) {
-            return data;
-        }
-        
-        // Statistiques des tickets par statut
-        Map<String, Integer> ticketsByStatus = new HashMap<>();
-        Map<String, Integer> ticketsByPriority = new HashMap<>();
-        
-        // Statistiques des machines
-        int totalMachines = 0;
-        int machinesOperationnelles = 0;
-        int machinesEnReparation = 0;
-        
-        // Statistiques des rappels
-        Map<String, Integer> rappelsByStatus = new HashMap<>();
-        rappelsByStatus.put("envoye", 0);
-        rappelsByStatus.put("non_envoye", 0);
-        rappelsByStatus.put("verifie", 0);
-        
-        // Statistiques des alertes
-        Map<String, Integer> alertesByStatus = new HashMap<>();
-        alertesByStatus.put("envoye", 0);
-        alertesByStatus.put("non_envoye", 0);
-        alertesByStatus.put("verifie", 0);
-        
-        // Statistiques mensuelles (derniers 6 mois)
-        Map<String, Map<String, Integer>> monthlyStats = new LinkedHashMap<>();
-        Calendar cal = Calendar.getInstance();
-        for (int i = 5; i >= 0; i--) {
-            cal.setTime(new Date());
-            cal.add(Calendar.MONTH, -i);
-            String monthKey = String.format("%02d/%d", cal.get(Calendar.MONTH) + 1, cal.get(Calendar.YEAR));
-            monthlyStats.put(monthKey, new HashMap<>());
-            monthlyStats.get(monthKey).put("tickets", 0);
-            monthlyStats.get(monthKey).put("rappels", 0);
-            monthlyStats.get(monthKey).put("alertes", 0);
-        }
-        
-        try {
-            // Compter les machines
-            List<com.maintenance.maintenance.model.entity.Machine> machines = 
-                firebaseRealtimeService.getMachinesForEnterprise(entrepriseId);
-            if (machines != null) {
-                totalMachines = machines.size();
-                for (com.maintenance.maintenance.model.entity.Machine machine : machines) {
-                    if (machine.getOperationnel() != null && machine.getOperationnel()) {
-                        machinesOperationnelles++;
-                    }
-                    if (machine.getEnReparation() != null && machine.getEnReparation()) {
-                        machinesEnReparation++;
-                    }
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Erreur lors du calcul des statistiques machines: " + e.getMessage());
+    /**
+     * Recalcule les agrégats des rapports d'une entreprise à partir des données brutes (réservé au super administrateur)
+     */
+    @PostMapping("/api/backfill")
+    @ResponseBody
+    public CompletableFuture<Map<String, Object>> backfill(@RequestParam("entrepriseId") String entrepriseId,
+                                                           HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        Map<String, Object> response = new HashMap<>();
+        if (session == null || !"superadmin".equalsIgnoreCase((String) session.getAttribute("role"))) {
+            response.put("error", "Accès réservé au super administrateur");
+            return CompletableFuture.completedFuture(response);
         }
-        
-        try {
-            // Compter les tickets
-            List<com.maintenance.maintenance.model.entity.Ticket> tickets = 
-                firebaseRealtimeService.getTicketsForEnterprise(entrepriseId);
-            if (tickets != null) {
-                for (com.maintenance.maintenance.model.entity.Ticket ticket : tickets) {
-                    // Par statut
-                    String statut = ticket.getStatut() != null ? ticket.getStatut() : "unknown";
-                    ticketsByStatus.put(statut, ticketsByStatus.getOrDefault(statut, 0) + 1);
-                    
-                    // Par priorité
-                    String priorite = ticket.getPriorite() != null ? ticket.getPriorite() : "unknown";
-                    ticketsByPriority.put(priorite, ticketsByPriority.getOrDefault(priorite, 0) + 1);
-                    
-                    // Par mois
-                    if (ticket.getDateCreation() != null) {
-                        Calendar ticketCal = Calendar.getInstance();
-                        ticketCal.setTimeInMillis(ticket.getDateCreation());
-                        String monthKey = String.format("%02d/%d", ticketCal.get(Calendar.MONTH) + 1, ticketCal.get(Calendar.YEAR));
-                        if (monthlyStats.containsKey(monthKey)) {
-                            monthlyStats.get(monthKey).put("tickets", monthlyStats.get(monthKey).get("tickets") + 1);
-                        }
-                    }
+        return reportRollupService.backfill(entrepriseId)
+            .handle((v, e) -> {
+                if (e != null) {
+                    response.put("error", (e instanceof CompletionException && e.getCause() != null ? e.getCause() : e).getMessage());
+                } else {
+                    response.put("success", true);
                 }
-            }
-        } catch (Exception e) {
-            System.err.println("Erreur lors du calcul des statistiques tickets: " + e.getMessage());
+                return response;
+            });
+    }
+
+    /**
+     * Rapport global toutes entreprises (réservé au super administrateur) : disponibilité des machines,
+     * tickets en attente, rappels et alertes en retard ; servi depuis le cache si récent, refresh=true pour le recalculer
+     */
+    @GetMapping("/api/global")
+    @ResponseBody
+    public CompletableFuture<Map<String, Object>> getGlobalReport(@RequestParam(value = "refresh", defaultValue = "false") boolean refresh,
+                                                                  HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null || !"superadmin".equalsIgnoreCase((String) session.getAttribute("role"))) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("error", "Accès réservé au super administrateur");
+            return CompletableFuture.completedFuture(response);
         }
-        
-        try {
-            // Compter les rappels
-            List<com.maintenance.maintenance.model.entity.Rappel> rappels = 
-                firebaseRealtimeService.getRappelsForEnterprise(entrepriseId);
-            if (rappels != null) {
-                for (com.maintenance.maintenance.model.entity.Rappel rappel : rappels) {
-                    if (rappel.getVerifie() != null && rappel.getVerifie()) {
-                        rappelsByStatus.put("verifie", rappelsByStatus.get("verifie") + 1);
-                    } else if (rappel.getEnvoye() != null && rappel.getEnvoye()) {
-                        rappelsByStatus.put("envoye", rappelsByStatus.get("envoye") + 1);
-                    } else {
-                        rappelsByStatus.put("non_envoye", rappelsByStatus.get("non_envoye") + 1);
-                    }
-                    
-                    // Par mois
-                    if (rappel.getDateCreation() != null) {
-                        Calendar rappelCal = Calendar.getInstance();
-                        rappelCal.setTimeInMillis(rappel.getDateCreation());
-                        String monthKey = String.format("%02d/%d", rappelCal.get(Calendar.MONTH) + 1, rappelCal.get(Calendar.YEAR));
-                        if (monthlyStats.containsKey(monthKey)) {
-                            monthlyStats.get(monthKey).put("rappels", monthlyStats.get(monthKey).get("rappels") + 1);
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Erreur lors du calcul des statistiques rappels: " + e.getMessage());
+        return globalReportService.compute(refresh).result()
+            .exceptionally(e -> {
+                Map<String, Object> response = new HashMap<>();
+                response.put("error", (e instanceof CompletionException && e.getCause() != null ? e.getCause() : e).getMessage());
+                return response;
+            });
+    }
+
+    /**
+     * Même rapport en flux SSE : un événement "entreprise" par entreprise dès que son calcul est terminé,
+     * puis un événement "total" avec le rapport complet ("erreur" si le calcul échoue)
+     */
+    @GetMapping(value = "/api/global/stream", produces = "text/event-stream")
+    @ResponseBody
+    public ResponseEntity<SseEmitter> streamGlobalReport(@RequestParam(value = "refresh", defaultValue = "false") boolean refresh,
+                                                         HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null || !"superadmin".equalsIgnoreCase((String) session.getAttribute("role"))) {
+            return ResponseEntity.status(403).build();
         }
-        
+
+        SseEmitter emitter = new SseEmitter(0L);
+        globalReportService.compute(refresh).subscribe(
+            entreprise -> send(emitter, "entreprise", entreprise),
+            report -> {
+                send(emitter, "total", report);
+                emitter.complete();
+            },
+            e -> {
+                send(emitter, "erreur", Map.of("error", String.valueOf(e.getMessage())));
+                emitter.complete();
+            });
+        return ResponseEntity.ok()
+            .header("Cache-Control", "no-cache")
+            .header("X-Accel-Buffering", "no")
+            .body(emitter);
+    }
+
+    private static void send(SseEmitter emitter, String event, Object data) {
         try {
-            // Compter les alertes
-            List<com.maintenance.maintenance.model.entity.Alerte> alertes = 
-                firebaseRealtimeService.getAlertesForEnterprise(entrepriseId);
-            if (alertes != null) {
-                for (com.maintenance.maintenance.model.entity.Alerte alerte : alertes) {
-                    if (alerte.getVerifie() != null && alerte.getVerifie()) {
-                        alertesByStatus.put("verifie", alertesByStatus.get("verifie") + 1);
-                    } else if (alerte.getEnvoye() != null && alerte.getEnvoye()) {
-                        alertesByStatus.put("envoye", alertesByStatus.get("envoye") + 1);
-                    } else {
-                        alertesByStatus.put("non_envoye", alertesByStatus.get("non_envoye") + 1);
-                    }
-                    
-                    // Par mois
-                    if (alerte.getDateCreation() != null) {
-                        Calendar alerteCal = Calendar.getInstance();
-                        alerteCal.setTimeInMillis(alerte.getDateCreation());
-                        String monthKey = String.format("%02d/%d", alerteCal.get(Calendar.MONTH) + 1, alerteCal.get(Calendar.YEAR));
-                        if (monthlyStats.containsKey(monthKey)) {
-                            monthlyStats.get(monthKey).put("alertes", monthlyStats.get(monthKey).get("alertes") + 1);
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Erreur lors du calcul des statistiques alertes: " + e.getMessage());
+            emitter.send(SseEmitter.event().name(event).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // Client déconnecté : le calcul continue pour les autres abonnés et le cache
+            emitter.completeWithError(e);
         }
-        
-        data.put("totalMachines", totalMachines);
-        data.put("machinesOperationnelles", machinesOperationnelles);
-        data.put("machinesEnReparation", machinesEnReparation);
-        data.put("ticketsByStatus", ticketsByStatus);
-        data.put("ticketsByPriority", ticketsByPriority);
-        data.put("rappelsByStatus", rappelsByStatus);
-        data.put("alertesByStatus", alertesByStatus);
-        data.put("monthlyStats", monthlyStats);
-        
-        return data;
     }
-}
 
+    /**
+     * Page des rapports : une erreur de calcul affiche un rapport vide plutôt que de quitter la page
+     */
+    private Map<String, Object> calculateReportData(String entrepriseId) {
+        return reportRollupService.getReportData(entrepriseId, null, null, ReportRollupService.GRANULARITE_MOIS)
+            .exceptionally(e -> {
+                System.err.println("Erreur lors du calcul des rapports: " + e.getMessage());
+                return new HashMap<>();
+            })
+            .join();
+    }
+
+    private static LocalDate parseDate(String value) {
+        return StringUtils.hasText(value) ? LocalDate.parse(value) : null;
+    }
+}
@@ -2,8 +2,10 @@ package com.maintenance.maintenance.controller;
 
 import com.maintenance.maintenance.model.entity.Ticket;
 import com.maintenance.maintenance.model.entity.Commentaire;
+import com.maintenance.maintenance.service.DataVersionService;
 import com.maintenance.maintenance.service.FirebaseRealtimeService;
 import com.maintenance.maintenance.service.MachineService;
+import com.maintenance.maintenance.service.PageDataLoader;
 import com.maintenance.maintenance.service.TicketService;
 import com.maintenance.maintenance.service.LocalFileStorageService;
 import org.springframework.web.multipart.MultipartFile;
@@ -21,6 +23,7 @@ import org.springframework.http.HttpStatus;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Controller
@@ -39,6 +42,12 @@ public class TicketController {
     @Autowired
     private LocalFileStorageService localFileStorageService;
 
+    @Autowired
+    private PageDataLoader pageDataLoader;
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
     /**
      * Vérifie si l'utilisateur est connecté
      */
@@ -119,38 +128,44 @@ public class TicketController {
             return "redirect:/login";
         }
 
-        try {
+        try (PageDataLoader.Load load = pageDataLoader.open()) {
             HttpSession session = request.getSession(true);
             session.setAttribute("authenticated", true);
-            
-            List<Map<String, Object>> enterprises = firebaseRealtimeService.getAllEnterprises();
-            if (enterprises == null) {
-                enterprises = new ArrayList<>();
-            }
+
+            // Lectures indépendantes lancées ensemble ; seule l'entreprise par défaut attend la liste des entreprises
+            PageDataLoader.Part<List<Map<String, Object>>> enterprisesPart =
+                load.fork("des entreprises", firebaseRealtimeService::getAllEnterprises, new ArrayList<>());
+            // Récupérer les utilisateurs pour les assignations
+            PageDataLoader.Part<List<Map<String, Object>>> usersPart =
+                load.fork("des utilisateurs", firebaseRealtimeService::getAllUsers, new ArrayList<>());
 
             if (!StringUtils.hasText(entrepriseId)) {
                 String lastEntrepriseId = (String) session.getAttribute("lastSelectedEntrepriseId");
                 if (StringUtils.hasText(lastEntrepriseId)) {
                     entrepriseId = lastEntrepriseId;
-                } else if (!enterprises.isEmpty()) {
-                    entrepriseId = enterprises.get(0).get("entrepriseId").toString();
+                } else {
+                    List<Map<String, Object>> enterprises = enterprisesPart.require();
+                    if (!enterprises.isEmpty()) {
+                        entrepriseId = enterprises.get(0).get("entrepriseId").toString();
+                    }
                 }
             }
 
-            List<Ticket> allTickets = new ArrayList<>();
+            PageDataLoader.Part<List<Ticket>> ticketsPart = null;
+            // Récupérer les machines pour les assignations
+            PageDataLoader.Part<List<com.maintenance.maintenance.model.entity.Machine>> machinesPart = null;
             if (StringUtils.hasText(entrepriseId)) {
-                try {
-                    allTickets = ticketService.listTickets(entrepriseId);
-                    if (allTickets == null) {
-                        allTickets = new ArrayList<>();
-                    }
-                } catch (Exception e) {
-                    System.err.println("Erreur lors de la récupération des tickets: " + e.getMessage());
-                    e.printStackTrace();
-                    allTickets = new ArrayList<>();
-                }
+                String selectedEntrepriseId = entrepriseId;
+                ticketsPart = load.fork("des tickets", () -> ticketService.listTickets(selectedEntrepriseId), new ArrayList<>());
+                machinesPart = load.fork("des machines", () -> machineService.listMachines(selectedEntrepriseId), new ArrayList<>());
                 session.setAttribute("lastSelectedEntrepriseId", entrepriseId);
             }
+            load.join();
+
+            List<Map<String, Object>> enterprises = enterprisesPart.require();
+            List<Ticket> allTickets = ticketsPart != null ? ticketsPart.get() : new ArrayList<>();
+            List<Map<String, Object>> users = usersPart.get();
+            List<com.maintenance.maintenance.model.entity.Machine> machines = machinesPart != null ? machinesPart.get() : new ArrayList<>();
 
             // Séparer les tickets par statut
             List<Ticket> ticketsAFaire = allTickets.stream()
@@ -169,24 +184,6 @@ public class TicketController {
                 .filter(t -> "archive".equals(t.getStatut()))
                 .collect(Collectors.toList());
 
-            // Récupérer les utilisateurs pour les assignations
-            List<Map<String, Object>> users = new ArrayList<>();
-            try {
-                users = firebaseRealtimeService.getAllUsers();
-            } catch (Exception e) {
-                System.err.println("Erreur lors de la récupération des utilisateurs: " + e.getMessage());
-            }
-
-            // Récupérer les machines pour les assignations
-            List<com.maintenance.maintenance.model.entity.Machine> machines = new ArrayList<>();
-            if (StringUtils.hasText(entrepriseId)) {
-                try {
-                    machines = machineService.listMachines(entrepriseId);
-                } catch (Exception e) {
-                    System.err.println("Erreur lors de la récupération des machines: " + e.getMessage());
-                }
-            }
-
             model.addAttribute("enterprises", enterprises);
             model.addAttribute("selectedEntrepriseId", entrepriseId != null ? entrepriseId : "");
             model.addAttribute("ticketsAFaire", ticketsAFaire);
@@ -525,72 +522,81 @@ public class TicketController {
      */
     @GetMapping("/api/{entrepriseId}/{ticketId}")
     @ResponseBody
-    public ResponseEntity<Map<String, Object>> getTicketApi(@PathVariable String entrepriseId,
-                                                             @PathVariable String ticketId,
-                                                             HttpServletRequest request) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getTicketApi(@PathVariable String entrepriseId,
+                                                                                @PathVariable String ticketId,
+                                                                                HttpServletRequest request) {
         // Vérifier l'authentification
         HttpSession session = request.getSession(false);
         if (session == null || session.getAttribute("authenticated") == null) {
-            return ResponseEntity.status(401)
+            return CompletableFuture.completedFuture(ResponseEntity.status(401)
                 .header("Content-Type", "application/json")
-                .body(Map.of("error", "Non authentifié"));
+                .body(Map.of("error", "Non authentifié")));
         }
         
-        try {
-            Ticket ticket = ticketService.getTicket(entrepriseId, ticketId);
-            if (ticket == null) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .header("Content-Type", "application/json")
-                    .body(Map.of("error", "Ticket introuvable"));
-            }
-            
-            // Convertir le ticket en Map pour la sérialisation JSON
-            Map<String, Object> ticketMap = new java.util.HashMap<>();
-            ticketMap.put("ticketId", ticket.getTicketId());
-            ticketMap.put("entrepriseId", ticket.getEntrepriseId());
-            ticketMap.put("titre", ticket.getTitre());
-            ticketMap.put("description", ticket.getDescription());
-            ticketMap.put("statut", ticket.getStatut());
-            ticketMap.put("priorite", ticket.getPriorite());
-            ticketMap.put("machineId", ticket.getMachineId());
-            ticketMap.put("machineNom", ticket.getMachineNom());
-            ticketMap.put("assigneA", ticket.getAssigneA());
-            ticketMap.put("assigneANom", ticket.getAssigneANom());
-            ticketMap.put("creePar", ticket.getCreePar());
-            ticketMap.put("creeParNom", ticket.getCreeParNom());
-            ticketMap.put("dateCreation", ticket.getDateCreation());
-            ticketMap.put("dateModification", ticket.getDateModification());
-            ticketMap.put("dateTerminaison", ticket.getDateTerminaison());
-            ticketMap.put("dateArchivage", ticket.getDateArchivage());
-            ticketMap.put("dateEcheance", ticket.getDateEcheance());
-            ticketMap.put("categorie", ticket.getCategorie());
-            
-            // Convertir les commentaires en List<Map>
-            List<Map<String, Object>> commentairesList = new ArrayList<>();
-            if (ticket.getCommentaires() != null) {
-                for (com.maintenance.maintenance.model.entity.Commentaire commentaire : ticket.getCommentaires()) {
-                    Map<String, Object> commentMap = new java.util.HashMap<>();
-                    commentMap.put("texte", commentaire.getTexte());
-                    commentMap.put("auteurId", commentaire.getAuteurId());
-                    commentMap.put("auteurNom", commentaire.getAuteurNom());
-                    commentMap.put("imageUrl", commentaire.getImageUrl());
-                    commentMap.put("dateCreation", commentaire.getDateCreation());
-                    commentairesList.add(commentMap);
+        // Ticket inchangé depuis le dernier appel : 304 sans lecture Firebase
+        DataVersionService.Validator validator = dataVersionService.validator(entrepriseId, "ticket", ticketId);
+        if (validator.isNotModified(request)) {
+            return CompletableFuture.completedFuture(validator.notModified());
+        }
+
+        return ticketService.getTicketAsync(entrepriseId, ticketId)
+            .thenApply(ticket -> {
+                if (ticket == null) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .header("Content-Type", "application/json")
+                        .body(Map.<String, Object>of("error", "Ticket introuvable"));
                 }
+                return validator.ok(toTicketMap(ticket));
+            })
+            .exceptionally(e -> {
+                e.printStackTrace();
+                Map<String, Object> errorMap = new java.util.HashMap<>();
+                errorMap.put("error", "Erreur lors de la récupération du ticket: " + e.getMessage());
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .header("Content-Type", "application/json")
+                    .body(errorMap);
+            });
+    }
+
+    /**
+     * Convertit le ticket en Map pour la sérialisation JSON
+     */
+    private Map<String, Object> toTicketMap(Ticket ticket) {
+        Map<String, Object> ticketMap = new java.util.HashMap<>();
+        ticketMap.put("ticketId", ticket.getTicketId());
+        ticketMap.put("entrepriseId", ticket.getEntrepriseId());
+        ticketMap.put("titre", ticket.getTitre());
+        ticketMap.put("description", ticket.getDescription());
+        ticketMap.put("statut", ticket.getStatut());
+        ticketMap.put("priorite", ticket.getPriorite());
+        ticketMap.put("machineId", ticket.getMachineId());
+        ticketMap.put("machineNom", ticket.getMachineNom());
+        ticketMap.put("assigneA", ticket.getAssigneA());
+        ticketMap.put("assigneANom", ticket.getAssigneANom());
+        ticketMap.put("creePar", ticket.getCreePar());
+        ticketMap.put("creeParNom", ticket.getCreeParNom());
+        ticketMap.put("dateCreation", ticket.getDateCreation());
+        ticketMap.put("dateModification", ticket.getDateModification());
+        ticketMap.put("dateTerminaison", ticket.getDateTerminaison());
+        ticketMap.put("dateArchivage", ticket.getDateArchivage());
+        ticketMap.put("dateEcheance", ticket.getDateEcheance());
+        ticketMap.put("categorie", ticket.getCategorie());
+        
+        // Convertir les commentaires en List<Map>
+        List<Map<String, Object>> commentairesList = new ArrayList<>();
+        if (ticket.getCommentaires() != null) {
+            for (com.maintenance.maintenance.model.entity.Commentaire commentaire : ticket.getCommentaires()) {
+                Map<String, Object> commentMap = new java.util.HashMap<>();
+                commentMap.put("texte", commentaire.getTexte());
+                commentMap.put("auteurId", commentaire.getAuteurId());
+                commentMap.put("auteurNom", commentaire.getAuteurNom());
+                commentMap.put("imageUrl", commentaire.getImageUrl());
+                commentMap.put("dateCreation", commentaire.getDateCreation());
+                commentairesList.add(commentMap);
             }
-            ticketMap.put("commentaires", commentairesList);
-            
-            return ResponseEntity.ok()
-                .header("Content-Type", "application/json")
-                .body(ticketMap);
-        } catch (Exception e) {
-            e.printStackTrace();
-            Map<String, Object> errorMap = new java.util.HashMap<>();
-            errorMap.put("error", "Erreur lors de la récupération du ticket: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .header("Content-Type", "application/json")
-                .body(errorMap);
         }
+        ticketMap.put("commentaires", commentairesList);
+        return ticketMap;
     }
     
     /**
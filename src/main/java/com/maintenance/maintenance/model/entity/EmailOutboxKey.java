@@ -0,0 +1,84 @@
+package com.maintenance.maintenance.model.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import org.springframework.data.domain.Persistable;
+
+/**
+ * Clé d'idempotence d'un élément couvert par un message groupé (digest) de la file d'envoi
+ * Un élément déjà couvert n'est pas repris dans un digest suivant.
+ * Identifiant attribué : isNew() force une insertion (persist) au lieu d'un merge qui écraserait la clé existante.
+ */
+@Entity
+@Table(name = "email_outbox_cle")
+public class EmailOutboxKey implements Persistable<String> {
+
+    @Id
+    @Column(name = "cle", nullable = false)
+    private String cle;
+
+    @Column(name = "message_id", nullable = false)
+    private Long messageId;
+
+    @Column(name = "date_creation")
+    private Long dateCreation;
+
+    @Transient
+    private boolean nouveau = true;
+
+    public EmailOutboxKey() {
+        // For JPA
+    }
+
+    public EmailOutboxKey(String cle, Long messageId, Long dateCreation) {
+        this.cle = cle;
+        this.messageId = messageId;
+        this.dateCreation = dateCreation;
+    }
+
+    @PostLoad
+    @PostPersist
+    void marquerPersistee() {
+        this.nouveau = false;
+    }
+
+    @Override
+    public String getId() {
+        return cle;
+    }
+
+    @Override
+    public boolean isNew() {
+        return nouveau;
+    }
+
+    // Getters et Setters
+    public String getCle() {
+        return cle;
+    }
+
+    public void setCle(String cle) {
+        this.cle = cle;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(Long messageId) {
+        this.messageId = messageId;
+    }
+
+    public Long getDateCreation() {
+        return dateCreation;
+    }
+
+    public void setDateCreation(Long dateCreation) {
+        this.dateCreation = dateCreation;
+    }
+}
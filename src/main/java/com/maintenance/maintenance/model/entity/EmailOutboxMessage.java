@@ -0,0 +1,210 @@
+package com.maintenance.maintenance.model.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+
+/**
+ * Message en attente d'envoi dans la file durable (outbox)
+ * La clé d'idempotence identifie un envoi logique (alerte/rappel, date de vérification, numéro de relance) :
+ * un même envoi n'est mis en file qu'une seule fois, quel que soit le nombre de passages des schedulers.
+ */
+@Entity
+@Table(name = "email_outbox", indexes = {
+    @Index(name = "idx_email_outbox_statut", columnList = "statut, prochaine_tentative")
+})
+public class EmailOutboxMessage {
+
+    public static final String STATUT_EN_ATTENTE = "EN_ATTENTE";
+    public static final String STATUT_EN_COURS = "EN_COURS";
+    public static final String STATUT_ENVOYE = "ENVOYE";
+    public static final String STATUT_ECHEC_DEFINITIF = "ECHEC_DEFINITIF";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "cle_idempotence", nullable = false, unique = true)
+    private String cleIdempotence;
+
+    @Column(name = "type", nullable = false, length = 20)
+    private String type; // alerte ou rappel
+
+    @Column(name = "entreprise_id")
+    private String entrepriseId;
+
+    @Column(name = "item_id")
+    private String itemId;
+
+    @Column(name = "numero_relance")
+    private Integer numeroRelance; // 0 pour l'envoi initial
+
+    @Column(name = "destinataire", nullable = false)
+    private String destinataire;
+
+    @Column(name = "expediteur")
+    private String expediteur;
+
+    @Column(name = "sujet", length = 500)
+    private String sujet;
+
+    @Lob
+    @Column(name = "corps")
+    private String corps;
+
+    @Column(name = "statut", nullable = false, length = 20)
+    private String statut;
+
+    @Column(name = "tentatives", nullable = false)
+    private Integer tentatives;
+
+    @Column(name = "prochaine_tentative", nullable = false)
+    private Long prochaineTentative;
+
+    @Column(name = "derniere_erreur", length = 1000)
+    private String derniereErreur;
+
+    @Column(name = "date_creation")
+    private Long dateCreation;
+
+    @Column(name = "date_envoi")
+    private Long dateEnvoi;
+
+    public EmailOutboxMessage() {
+        // For JPA
+    }
+
+    // Getters et Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCleIdempotence() {
+        return cleIdempotence;
+    }
+
+    public void setCleIdempotence(String cleIdempotence) {
+        this.cleIdempotence = cleIdempotence;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getEntrepriseId() {
+        return entrepriseId;
+    }
+
+    public void setEntrepriseId(String entrepriseId) {
+        this.entrepriseId = entrepriseId;
+    }
+
+    public String getItemId() {
+        return itemId;
+    }
+
+    public void setItemId(String itemId) {
+        this.itemId = itemId;
+    }
+
+    public Integer getNumeroRelance() {
+        return numeroRelance;
+    }
+
+    public void setNumeroRelance(Integer numeroRelance) {
+        this.numeroRelance = numeroRelance;
+    }
+
+    public String getDestinataire() {
+        return destinataire;
+    }
+
+    public void setDestinataire(String destinataire) {
+        this.destinataire = destinataire;
+    }
+
+    public String getExpediteur() {
+        return expediteur;
+    }
+
+    public void setExpediteur(String expediteur) {
+        this.expediteur = expediteur;
+    }
+
+    public String getSujet() {
+        return sujet;
+    }
+
+    public void setSujet(String sujet) {
+        this.sujet = sujet;
+    }
+
+    public String getCorps() {
+        return corps;
+    }
+
+    public void setCorps(String corps) {
+        this.corps = corps;
+    }
+
+    public String getStatut() {
+        return statut;
+    }
+
+    public void setStatut(String statut) {
+        this.statut = statut;
+    }
+
+    public Integer getTentatives() {
+        return tentatives;
+    }
+
+    public void setTentatives(Integer tentatives) {
+        this.tentatives = tentatives;
+    }
+
+    public Long getProchaineTentative() {
+        return prochaineTentative;
+    }
+
+    public void setProchaineTentative(Long prochaineTentative) {
+        this.prochaineTentative = prochaineTentative;
+    }
+
+    public String getDerniereErreur() {
+        return derniereErreur;
+    }
+
+    public void setDerniereErreur(String derniereErreur) {
+        this.derniereErreur = derniereErreur;
+    }
+
+    public Long getDateCreation() {
+        return dateCreation;
+    }
+
+    public void setDateCreation(Long dateCreation) {
+        this.dateCreation = dateCreation;
+    }
+
+    public Long getDateEnvoi() {
+        return dateEnvoi;
+    }
+
+    public void setDateEnvoi(Long dateEnvoi) {
+        this.dateEnvoi = dateEnvoi;
+    }
+}
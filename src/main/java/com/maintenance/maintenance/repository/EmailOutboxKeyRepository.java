@@ -0,0 +1,11 @@
+package com.maintenance.maintenance.repository;
+
+import com.maintenance.maintenance.model.entity.EmailOutboxKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface EmailOutboxKeyRepository extends JpaRepository<EmailOutboxKey, String> {
+
+    long deleteByDateCreationLessThan(Long limite);
+}
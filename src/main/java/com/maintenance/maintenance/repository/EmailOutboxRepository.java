@@ -0,0 +1,25 @@
+package com.maintenance.maintenance.repository;
+
+import com.maintenance.maintenance.model.entity.EmailOutboxMessage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, Long> {
+
+    boolean existsByCleIdempotence(String cleIdempotence);
+
+    List<EmailOutboxMessage> findByCleIdempotenceIn(Collection<String> clesIdempotence);
+
+    List<EmailOutboxMessage> findByStatutAndProchaineTentativeLessThanEqualOrderByProchaineTentativeAsc(String statut, Long maintenant, Pageable page);
+
+    List<EmailOutboxMessage> findByStatut(String statut);
+
+    long countByStatut(String statut);
+
+    long deleteByStatutAndDateEnvoiLessThan(String statut, Long limite);
+}
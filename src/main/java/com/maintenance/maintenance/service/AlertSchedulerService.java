@@ -4,9 +4,11 @@ import com.maintenance.maintenance.model.entity.Alerte;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
 import java.util.List;
 
 @Service
@@ -20,11 +22,30 @@ public class AlertSchedulerService {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
+    @Autowired
+    private ReminderLeaseService reminderLeaseService;
+
+    @Autowired
+    private ReminderDigestService reminderDigestService;
+
+    // Mode digest : un seul e-mail par entreprise et par passage pour les alertes, rappels et relances
+    @Value("${mail.digest.enabled:false}")
+    private boolean digestEnabled;
+
     /**
-     * Vérifie toutes les heures les alertes à envoyer
+     * Dépose les alertes et relances échues dans la file d'envoi durable
+     * Déclenché à l'échéance par ReminderTimerService ; le passage horaire sert de réconciliation.
+     * synchronized : un passage de la minuterie et un passage périodique ne doivent pas envoyer deux fois.
      */
-    @Scheduled(fixedRate = 3600000) // Toutes les heures (3600000 ms = 1 heure)
-    public void checkAndSendAlertes() {
+    @Scheduled(fixedRateString = "${reminders.alertes.reconciliation-ms:3600000}") // Toutes les heures par défaut
+    public synchronized void checkAndSendAlertes() {
+        if (digestEnabled) {
+            reminderDigestService.runDigest();
+            return;
+        }
         try {
             logger.info("Vérification des alertes à envoyer...");
             List<Alerte> alertesAEnvoyer = alertService.getAlertesAEnvoyer();
@@ -33,24 +54,34 @@ public class AlertSchedulerService {
                 logger.info("{} alerte(s) à envoyer trouvée(s)", alertesAEnvoyer.size());
                 String superAdminEmail = emailService.getSuperAdminEmail();
                 
+                // Ordre aléatoire : les instances se répartissent les éléments au lieu de se disputer les mêmes
+                Collections.shuffle(alertesAEnvoyer);
                 for (Alerte alerte : alertesAEnvoyer) {
+                    String cle = EmailOutboxService.cleAlerte(alerte.getEntrepriseId(), alerte.getAlerteId(), alerte.getDateVerification(), 0);
+                    if (!reminderLeaseService.claim(EcheanceIndex.ALERTES, alerte.getEntrepriseId(), alerte.getAlerteId(), cle)) {
+                        continue; // Pris en charge par une autre instance
+                    }
                     try {
-                        // Envoyer l'email
-                        emailService.sendAlerteEmail(
-                            superAdminEmail,
-                            alerte.getMachineNom() != null ? alerte.getMachineNom() : "Machine inconnue",
-                            alerte.getDescription(),
-                            alerte.getDateVerification(),
-                            false
-                        );
+                        // Mettre l'email en file (une seule fois par alerte et date de vérification)
+                        emailOutboxService.enqueue(
+                            cle, "alerte", alerte.getEntrepriseId(), alerte.getAlerteId(), 0,
+                            emailService.buildAlerteMessage(
+                                superAdminEmail,
+                                alerte.getMachineNom() != null ? alerte.getMachineNom() : "Machine inconnue",
+                                alerte.getDescription(),
+                                alerte.getDateVerification(),
+                                false
+                            ));
                         
-                        // Marquer l'alerte comme envoyée
+                        // Marquer l'alerte comme envoyée : la file d'envoi se charge des nouvelles tentatives
                         alerte.setEnvoye(true);
                         alerte.setDateEnvoi(System.currentTimeMillis());
                         alertService.updateAlerte(alerte.getEntrepriseId(), alerte.getAlerteId(), alerte);
+                        reminderLeaseService.complete(EcheanceIndex.ALERTES, alerte.getEntrepriseId(), alerte.getAlerteId(), cle);
                         
-                        logger.info("Alerte envoyée pour la machine: {}", alerte.getMachineNom());
+                        logger.info("Alerte mise en file d'envoi pour la machine: {}", alerte.getMachineNom());
                     } catch (Exception e) {
+                        reminderLeaseService.release(EcheanceIndex.ALERTES, alerte.getEntrepriseId(), alerte.getAlerteId(), cle);
                         logger.error("Erreur lors de l'envoi de l'alerte pour la machine {}: {}", 
                             alerte.getMachineNom(), e.getMessage());
                     }
@@ -65,26 +96,35 @@ public class AlertSchedulerService {
                 logger.info("{} alerte(s) à relancer trouvée(s)", alertesARelancer.size());
                 String superAdminEmail = emailService.getSuperAdminEmail();
                 
+                Collections.shuffle(alertesARelancer);
                 for (Alerte alerte : alertesARelancer) {
+                    int nbRelancesEnvoyees = (alerte.getNombreRelancesEnvoyees() != null ? alerte.getNombreRelancesEnvoyees() : 0) + 1;
+                    String cle = EmailOutboxService.cleAlerte(alerte.getEntrepriseId(), alerte.getAlerteId(), alerte.getDateVerification(), nbRelancesEnvoyees);
+                    if (!reminderLeaseService.claim(EcheanceIndex.ALERTES, alerte.getEntrepriseId(), alerte.getAlerteId(), cle)) {
+                        continue; // Pris en charge par une autre instance
+                    }
                     try {
-                        // Envoyer la relance
-                        emailService.sendAlerteEmail(
-                            superAdminEmail,
-                            alerte.getMachineNom() != null ? alerte.getMachineNom() : "Machine inconnue",
-                            alerte.getDescription(),
-                            alerte.getDateVerification(),
-                            true
-                        );
+                        // Mettre la relance en file (clé propre au numéro de relance)
+                        emailOutboxService.enqueue(
+                            cle, "alerte", alerte.getEntrepriseId(), alerte.getAlerteId(), nbRelancesEnvoyees,
+                            emailService.buildAlerteMessage(
+                                superAdminEmail,
+                                alerte.getMachineNom() != null ? alerte.getMachineNom() : "Machine inconnue",
+                                alerte.getDescription(),
+                                alerte.getDateVerification(),
+                                true
+                            ));
                         
                         // Mettre à jour le nombre de relances envoyées
-                        int nbRelancesEnvoyees = (alerte.getNombreRelancesEnvoyees() != null ? alerte.getNombreRelancesEnvoyees() : 0) + 1;
                         alerte.setNombreRelancesEnvoyees(nbRelancesEnvoyees);
                         alerte.setDateDerniereRelance(System.currentTimeMillis());
                         alertService.updateAlerte(alerte.getEntrepriseId(), alerte.getAlerteId(), alerte);
+                        reminderLeaseService.complete(EcheanceIndex.ALERTES, alerte.getEntrepriseId(), alerte.getAlerteId(), cle);
                         
-                        logger.info("Relance envoyée pour la machine: {} ({}/{})", 
+                        logger.info("Relance mise en file d'envoi pour la machine: {} ({}/{})", 
                             alerte.getMachineNom(), nbRelancesEnvoyees, alerte.getNombreRelances());
                     } catch (Exception e) {
+                        reminderLeaseService.release(EcheanceIndex.ALERTES, alerte.getEntrepriseId(), alerte.getAlerteId(), cle);
                         logger.error("Erreur lors de l'envoi de la relance pour la machine {}: {}", 
                             alerte.getMachineNom(), e.getMessage());
                     }
@@ -92,7 +132,8 @@ public class AlertSchedulerService {
             }
         } catch (Exception e) {
             logger.error("Erreur lors de la vérification des alertes: {}", e.getMessage());
+        } finally {
+            emailOutboxService.wakeUp();
         }
     }
 }
-
@@ -5,6 +5,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class AlertService {
@@ -16,6 +17,10 @@ public class AlertService {
         return firebaseRealtimeService.getAlertesForEnterprise(entrepriseId);
     }
 
+    public CompletableFuture<List<Alerte>> listAlertesAsync(String entrepriseId) {
+        return firebaseRealtimeService.getAlertesForEnterpriseAsync(entrepriseId);
+    }
+
     public Alerte getAlerte(String entrepriseId, String alerteId) throws Exception {
         return firebaseRealtimeService.getAlerteById(entrepriseId, alerteId);
     }
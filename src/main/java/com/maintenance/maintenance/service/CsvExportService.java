@@ -0,0 +1,258 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Component;
+import com.maintenance.maintenance.model.entity.HistoriqueVerification;
+import com.maintenance.maintenance.model.entity.Machine;
+import com.maintenance.maintenance.model.entity.Ticket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Export CSV des machines, tickets, composants et de l'historique des vérifications d'une entreprise
+ * Les lignes sont écrites au fil de la lecture, page par page (export.csv.page-size éléments, triés par clé) :
+ * la mémoire utilisée ne dépend que de la taille d'une page, pas de celle de l'entreprise.
+ * Une collection déjà répliquée en mémoire (EnterpriseReplicaService) est écrite directement sans lecture Firebase,
+ * en décodant un élément à la fois (pas de liste de toute la collection).
+ */
+@Service
+public class CsvExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvExportService.class);
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+        .withZone(ZoneId.systemDefault());
+
+    @Autowired
+    private FirebaseRealtimeService firebaseRealtimeService;
+
+    @Autowired
+    private EnterpriseReplicaService replicaService;
+
+    @Value("${export.csv.page-size:500}")
+    private int pageSize;
+
+    /** Délai de lecture d'une page ; au-delà l'export est interrompu */
+    @Value("${export.csv.page-timeout-ms:30000}")
+    private long pageTimeoutMs;
+
+    /**
+     * Lecture d'une page de la collection, après la clé afterKey
+     */
+    @FunctionalInterface
+    private interface Pager<T> {
+        CompletableFuture<FirebaseRealtimeService.KeyPage<T>> page(String entrepriseId, String afterKey, int limit);
+    }
+
+    private record Column<T>(String titre, Function<T, Object> valeur) {
+    }
+
+    /**
+     * Définition d'un export : collection répliquée (null si non répliquée), filtre, lecture par pages et colonnes
+     */
+    private record Export<T>(String replicaCollection, Predicate<T> filtre, Pager<T> pager, List<Column<T>> colonnes) {
+    }
+
+    private final Map<String, Export<?>> exports = Map.of(
+        "machines", new Export<Machine>("machines",
+            machine -> machine.getSupprime() == null || !machine.getSupprime(),
+            (entrepriseId, afterKey, limit) -> firebaseRealtimeService.getMachinesPageAsync(entrepriseId, afterKey, limit),
+            List.of(
+                new Column<>("id", Machine::getMachineId),
+                new Column<>("nom", Machine::getNom),
+                new Column<>("numeroSerie", Machine::getNumeroSerie),
+                new Column<>("emplacement", Machine::getEmplacement),
+                new Column<>("categorie", Machine::getCategoryName),
+                new Column<>("operationnel", Machine::getOperationnel),
+                new Column<>("enReparation", Machine::getEnReparation),
+                new Column<>("enProgrammation", Machine::getEnProgrammation),
+                new Column<>("adresseIP", Machine::getAdresseIP),
+                new Column<>("machineSecours", Machine::getEstMachineSecours),
+                new Column<>("machinePrincipaleId", Machine::getMachinePrincipaleId),
+                new Column<>("machineEntrepot", Machine::getEstMachineEntrepot),
+                new Column<>("dateCreation", machine -> date(machine.getDateCreation())),
+                new Column<>("modifieLe", machine -> date(machine.getModifieLe())),
+                new Column<>("notes", Machine::getNotes))),
+        "tickets", new Export<Ticket>("tickets", ticket -> true,
+            (entrepriseId, afterKey, limit) -> firebaseRealtimeService.getTicketsPageAsync(entrepriseId, afterKey, limit),
+            List.of(
+                new Column<>("id", Ticket::getTicketId),
+                new Column<>("titre", Ticket::getTitre),
+                new Column<>("statut", Ticket::getStatut),
+                new Column<>("priorite", Ticket::getPriorite),
+                new Column<>("categorie", Ticket::getCategorie),
+                new Column<>("machineId", Ticket::getMachineId),
+                new Column<>("machine", Ticket::getMachineNom),
+                new Column<>("assigneA", Ticket::getAssigneANom),
+                new Column<>("creePar", Ticket::getCreeParNom),
+                new Column<>("dateCreation", ticket -> date(ticket.getDateCreation())),
+                new Column<>("dateModification", ticket -> date(ticket.getDateModification())),
+                new Column<>("dateEcheance", ticket -> date(ticket.getDateEcheance())),
+                new Column<>("dateTerminaison", ticket -> date(ticket.getDateTerminaison())),
+                new Column<>("commentaires", ticket -> ticket.getCommentaires() != null ? ticket.getCommentaires().size() : 0),
+                new Column<>("description", Ticket::getDescription))),
+        "components", new Export<Component>("components", component -> true,
+            (entrepriseId, afterKey, limit) -> firebaseRealtimeService.getComponentsPageAsync(entrepriseId, afterKey, limit),
+            List.of(
+                new Column<>("id", Component::getComponentId),
+                new Column<>("nom", Component::getNom),
+                new Column<>("numeroSerie", Component::getNumeroSerie),
+                new Column<>("categorie", Component::getCategoryName),
+                new Column<>("etat", Component::getEtat),
+                new Column<>("location", Component::getLocation),
+                new Column<>("type", Component::getTypePeripherique),
+                new Column<>("machineId", Component::getMachineId),
+                new Column<>("creeLe", component -> date(component.getCreeLe())),
+                new Column<>("modifieLe", component -> date(component.getModifieLe())),
+                new Column<>("notes", Component::getNotes))),
+        "historique", new Export<HistoriqueVerification>(null, historique -> true,
+            (entrepriseId, afterKey, limit) -> firebaseRealtimeService.getHistoriqueVerificationsPageAsync(entrepriseId, afterKey, limit),
+            List.of(
+                new Column<>("id", HistoriqueVerification::getHistoriqueId),
+                new Column<>("machineId", HistoriqueVerification::getMachineId),
+                new Column<>("machine", HistoriqueVerification::getMachineNom),
+                new Column<>("description", HistoriqueVerification::getDescription),
+                new Column<>("dateProgrammee", historique -> date(historique.getDateVerificationProgrammee())),
+                new Column<>("dateVerification", historique -> date(historique.getDateVerificationReelle())),
+                new Column<>("verifiePar", HistoriqueVerification::getVerifieParNom),
+                new Column<>("dateCreation", historique -> date(historique.getDateCreation())))));
+
+    public boolean supports(String entity) {
+        return entity != null && exports.containsKey(entity);
+    }
+
+    /**
+     * Écrit l'export CSV (UTF-8 avec BOM pour Excel) ; le flux est vidé après chaque page
+     */
+    public void export(String entity, String entrepriseId, OutputStream out) throws IOException {
+        Export<?> export = exports.get(entity);
+        if (export == null) {
+            throw new IllegalArgumentException("Export inconnu: " + entity);
+        }
+        long debut = System.currentTimeMillis();
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write('\uFEFF');
+        long lignes = write(export, entrepriseId, writer);
+        writer.flush();
+        logger.info("Export CSV {} de l'entreprise {} : {} ligne(s) en {} ms", entity, entrepriseId, lignes, System.currentTimeMillis() - debut);
+    }
+
+    private <T> long write(Export<T> export, String entrepriseId, Writer writer) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (Column<T> colonne : export.colonnes()) {
+            if (!line.isEmpty()) {
+                line.append(',');
+            }
+            appendCell(line, colonne.titre());
+        }
+        writeLine(writer, line);
+
+        long lignes = 0;
+        Stream<T> replicated = export.replicaCollection() != null
+            ? replicaService.streamCollection(entrepriseId, export.replicaCollection())
+            : null;
+        if (replicated != null) {
+            // Flux vidé tous les pageSize éléments, comme après une page lue dans Firebase
+            Iterator<T> items = replicated.iterator();
+            for (long parcourus = 1; items.hasNext(); parcourus++) {
+                lignes += writeRow(export, items.next(), writer, line);
+                if (parcourus % pageSize == 0) {
+                    writer.flush();
+                }
+            }
+            return lignes;
+        }
+
+        String afterKey = null;
+        while (true) {
+            FirebaseRealtimeService.KeyPage<T> page = await(export.pager().page(entrepriseId, afterKey, pageSize));
+            for (T item : page.items()) {
+                lignes += writeRow(export, item, writer, line);
+            }
+            writer.flush();
+            if (page.last() || page.lastKey() == null || page.lastKey().equals(afterKey)) {
+                return lignes;
+            }
+            afterKey = page.lastKey();
+        }
+    }
+
+    private <T> int writeRow(Export<T> export, T item, Writer writer, StringBuilder line) throws IOException {
+        if (!export.filtre().test(item)) {
+            return 0;
+        }
+        List<Column<T>> colonnes = export.colonnes();
+        for (int i = 0; i < colonnes.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            appendCell(line, colonnes.get(i).valeur().apply(item));
+        }
+        writeLine(writer, line);
+        return 1;
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get(pageTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export interrompu");
+        } catch (ExecutionException e) {
+            throw new IOException("Erreur lors de la lecture de l'export: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()), e);
+        } catch (TimeoutException e) {
+            throw new IOException("Délai dépassé lors de la lecture de l'export (" + pageTimeoutMs + " ms)");
+        }
+    }
+
+    private static void writeLine(Writer writer, StringBuilder line) throws IOException {
+        line.append("\r\n");
+        writer.append(line);
+        line.setLength(0);
+    }
+
+    /**
+     * Cellule RFC 4180 : guillemets si virgule, guillemet ou saut de ligne ; une valeur texte commençant par
+     * =, +, - ou @ est préfixée d'une apostrophe pour qu'un tableur ne l'évalue pas comme une formule
+     */
+    private static void appendCell(StringBuilder line, Object value) {
+        if (value == null) {
+            return;
+        }
+        String text = value instanceof Boolean b ? (b ? "oui" : "non") : value.toString();
+        if (value instanceof String && !text.isEmpty() && "=+-@".indexOf(text.charAt(0)) >= 0) {
+            text = "'" + text;
+        }
+        if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            line.append('"').append(text.replace("\"", "\"\"")).append('"');
+        } else {
+            line.append(text);
+        }
+    }
+
+    private static String date(Long timestamp) {
+        return timestamp != null ? DATE_FORMAT.format(Instant.ofEpochMilli(timestamp)) : null;
+    }
+}
@@ -0,0 +1,199 @@
+package com.maintenance.maintenance.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versions des données par entreprise, pour les requêtes conditionnelles (ETag / Last-Modified) des API JSON
+ * Chaque écriture passant par FirebaseRealtimeService incrémente la version de l'entreprise concernée
+ * (la liste des entreprises a sa propre version). Un client dont l'ETag correspond à la version courante
+ * reçoit un 304 sans lecture Firebase ni recalcul.
+ * Les versions sont tenues en mémoire : l'ETag porte l'identifiant du démarrage, un redémarrage invalide donc
+ * tous les ETag déjà distribués. Les écritures d'autres instances sont vues par les écouteurs Firebase
+ * (réplique, flux d'événements en direct) lorsqu'ils sont attachés ; sinon l'ETag porte aussi la période
+ * de validité en cours (data.version.max-age-seconds) et une réponse n'est pas resservie au-delà.
+ */
+@Service
+public class DataVersionService {
+
+    /** Version de la liste des entreprises (/ent/api/list) */
+    public static final String ENTREPRISES = "*entreprises";
+
+    /**
+     * Version d'un périmètre : numéro et date de la dernière écriture
+     */
+    public record Version(long numero, long dateModification) {
+    }
+
+    /** Durée de validité maximale d'un ETag (0 = illimitée, une seule instance) */
+    @Value("${data.version.max-age-seconds:30}")
+    private long maxAgeSeconds;
+
+    private final String demarrage = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final long dateDemarrage = System.currentTimeMillis();
+    private final Map<String, Version> versions = new ConcurrentHashMap<>();
+
+    private final AtomicLong bumps = new AtomicLong();
+    private final AtomicLong conditionalRequests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    /**
+     * Incrémente la version d'une entreprise (appelé après chaque écriture réussie, ou à la réception
+     * d'une modification par un écouteur Firebase)
+     */
+    public void bump(String entrepriseId) {
+        if (entrepriseId == null || entrepriseId.isEmpty()) {
+            return;
+        }
+        bumps.incrementAndGet();
+        long now = System.currentTimeMillis();
+        versions.compute(entrepriseId, (key, current) ->
+            new Version(current != null ? current.numero() + 1 : 1L, Math.max(now, current != null ? current.dateModification() : 0L)));
+    }
+
+    /**
+     * Incrémente la version de la liste des entreprises et celle de l'entreprise modifiée
+     */
+    public void bumpEnterprise(String entrepriseId) {
+        bump(ENTREPRISES);
+        bump(entrepriseId);
+    }
+
+    public Version current(String scope) {
+        Version version = scope != null ? versions.get(scope) : null;
+        return version != null ? version : new Version(0L, dateDemarrage);
+    }
+
+    /**
+     * Validateur d'une réponse : à créer AVANT de lire les données, pour qu'une écriture concurrente
+     * produise au pire un ETag déjà périmé (relu au prochain appel), jamais une réponse obsolète sous un ETag récent
+     * discriminants : paramètres qui changent la réponse pour une même URL (entreprise de la session par exemple)
+     */
+    public Validator validator(String scope, Object... discriminants) {
+        Version version = current(scope);
+        int variante = Objects.hash(scope, Objects.hash(discriminants));
+        // Période de validité : l'ETag et la date changent à chaque période, même sans écriture vue localement
+        long dureeMs = Math.max(0L, maxAgeSeconds) * 1000;
+        long periode = dureeMs > 0 ? System.currentTimeMillis() / dureeMs : 0L;
+        String etag = "\"" + demarrage + "-" + Integer.toHexString(variante) + "-" + version.numero() + "-" + periode + "\"";
+        // Last-Modified à la seconde (format HTTP)
+        long lastModified = Math.max(version.dateModification(), periode * dureeMs);
+        return new Validator(etag, lastModified / 1000 * 1000);
+    }
+
+    /**
+     * ETag et date d'une réponse ; compare les en-têtes If-None-Match / If-Modified-Since de la requête
+     */
+    public final class Validator {
+
+        private final String etag;
+        private final long lastModified;
+
+        private Validator(String etag, long lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * true si le client possède déjà cette version (If-None-Match prioritaire sur If-Modified-Since)
+         */
+        public boolean isNotModified(HttpServletRequest request) {
+            Enumeration<String> ifNoneMatch = request.getHeaders("If-None-Match");
+            boolean conditional;
+            boolean unchanged;
+            if (ifNoneMatch != null && ifNoneMatch.hasMoreElements()) {
+                conditional = true;
+                unchanged = matches(ifNoneMatch);
+            } else {
+                long ifModifiedSince = ifModifiedSince(request);
+                conditional = ifModifiedSince >= 0;
+                unchanged = conditional && lastModified <= ifModifiedSince;
+            }
+            if (conditional) {
+                conditionalRequests.incrementAndGet();
+            }
+            if (unchanged) {
+                notModified.incrementAndGet();
+            }
+            return unchanged;
+        }
+
+        private boolean matches(Enumeration<String> ifNoneMatch) {
+            while (ifNoneMatch.hasMoreElements()) {
+                for (String candidate : ifNoneMatch.nextElement().split(",")) {
+                    String tag = candidate.trim();
+                    // If-None-Match se compare en mode faible : W/"x" correspond à "x"
+                    if (tag.startsWith("W/")) {
+                        tag = tag.substring(2);
+                    }
+                    if ("*".equals(tag) || etag.equals(tag)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private long ifModifiedSince(HttpServletRequest request) {
+            try {
+                return request.getDateHeader("If-Modified-Since");
+            } catch (IllegalArgumentException e) {
+                return -1L;
+            }
+        }
+
+        /**
+         * Ajoute les validateurs à une réponse : ETag, Last-Modified et revalidation obligatoire à chaque appel
+         */
+        public <B extends ResponseEntity.HeadersBuilder<B>> B headers(B builder) {
+            return builder
+                .eTag(etag)
+                .lastModified(lastModified)
+                .cacheControl(CacheControl.noCache().cachePrivate());
+        }
+
+        /**
+         * Réponse 304 (sans corps) portant les mêmes validateurs
+         */
+        public <T> ResponseEntity<T> notModified() {
+            return headers(ResponseEntity.status(HttpStatus.NOT_MODIFIED)).build();
+        }
+
+        /**
+         * Réponse 200 JSON portant les validateurs
+         */
+        public <T> ResponseEntity<T> ok(T body) {
+            return headers(ResponseEntity.ok())
+                .header("Content-Type", "application/json")
+                .body(body);
+        }
+    }
+
+    /**
+     * Indicateurs : incréments de version, requêtes conditionnelles reçues et réponses 304
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bumps", bumps.get());
+        stats.put("conditionalRequests", conditionalRequests.get());
+        stats.put("notModified", notModified.get());
+        stats.put("scopes", versions.size());
+        return stats;
+    }
+}
@@ -0,0 +1,130 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.Rappel;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index global des échéances d'alertes et de rappels : echeances/{alertes|rappels}/{entrepriseId}:{id}
+ * Chaque entrée porte la date de la prochaine action (dueAt) : date de vérification pour le premier envoi,
+ * dernière action + 24h pour une relance. Les schedulers ne lisent que les entrées échues
+ * (orderByChild("dueAt").endAt(now)) au lieu de tout le nœud entreprises/.
+ * Règle Firebase conseillée : "echeances": { "alertes": { ".indexOn": "dueAt" }, "rappels": { ".indexOn": "dueAt" } }
+ */
+public final class EcheanceIndex {
+
+    public static final String NODE = "echeances";
+    public static final String ALERTES = "alertes";
+    public static final String RAPPELS = "rappels";
+    public static final String DUE_AT = "dueAt";
+    /** Baux d'envoi entre instances (ReminderLeaseService), mêmes clés que l'index */
+    public static final String LEASES_NODE = "echeancesBaux";
+
+    /** Délai minimum entre deux relances (ou entre l'envoi initial et la première relance) */
+    public static final long DELAI_RELANCE_MS = 86400000L;
+
+    private EcheanceIndex() {
+    }
+
+    public static String key(String entrepriseId, String itemId) {
+        return entrepriseId + ":" + itemId;
+    }
+
+    public static String path(String type, String entrepriseId, String itemId) {
+        return NODE + "/" + type + "/" + key(entrepriseId, itemId);
+    }
+
+    public static String leasePath(String type, String entrepriseId, String itemId) {
+        return LEASES_NODE + "/" + type + "/" + key(entrepriseId, itemId);
+    }
+
+    /**
+     * Entrée d'index de l'alerte, ou null si plus aucune action n'est prévue (à supprimer de l'index)
+     */
+    public static Map<String, Object> alerteEntry(String entrepriseId, Alerte alerte) {
+        if (Boolean.TRUE.equals(alerte.getVerifie()) || alerte.getDateVerification() == null) {
+            return null;
+        }
+        if (!Boolean.TRUE.equals(alerte.getEnvoye())) {
+            return entry(entrepriseId, alerte.getAlerteId(), alerte.getDateVerification(), false);
+        }
+        Long relanceAt = relanceDueAt(alerte.getDateVerification(), alerte.getActiverRelance(), alerte.getNombreRelances(),
+            alerte.getNombreRelancesEnvoyees(), alerte.getDateDerniereRelance(), alerte.getDateEnvoi());
+        return relanceAt != null ? entry(entrepriseId, alerte.getAlerteId(), relanceAt, true) : null;
+    }
+
+    /**
+     * Entrée d'index du rappel : le premier envoi part le jour de la date de vérification (à minuit)
+     */
+    public static Map<String, Object> rappelEntry(String entrepriseId, Rappel rappel) {
+        if (Boolean.TRUE.equals(rappel.getVerifie()) || rappel.getDateVerification() == null) {
+            return null;
+        }
+        if (!Boolean.TRUE.equals(rappel.getEnvoye())) {
+            return entry(entrepriseId, rappel.getRappelId(), startOfDayOnOrAfter(rappel.getDateVerification()), false);
+        }
+        Long relanceAt = relanceDueAt(rappel.getDateVerification(), rappel.getActiverRelance(), rappel.getNombreRelances(),
+            rappel.getNombreRelancesEnvoyees(), rappel.getDateDerniereRelance(), rappel.getDateEnvoi());
+        return relanceAt != null ? entry(entrepriseId, rappel.getRappelId(), relanceAt, true) : null;
+    }
+
+    public static boolean isRelance(Map<String, Object> entry) {
+        return Boolean.TRUE.equals(entry.get("relance"));
+    }
+
+    /**
+     * Même échéance et même type d'action : l'entrée stockée est à jour
+     */
+    public static boolean sameSchedule(Map<String, Object> stored, Map<String, Object> expected) {
+        if (stored == null || expected == null) {
+            return stored == expected;
+        }
+        return stored.get(DUE_AT) instanceof Number storedDue
+            && storedDue.longValue() == ((Number) expected.get(DUE_AT)).longValue()
+            && isRelance(stored) == isRelance(expected);
+    }
+
+    private static Long relanceDueAt(Long dateVerification, Boolean activerRelance, Integer nombreRelances,
+                                     Integer nombreRelancesEnvoyees, Long dateDerniereRelance, Long dateEnvoi) {
+        if (!Boolean.TRUE.equals(activerRelance) || nombreRelances == null || nombreRelances <= 0) {
+            return null;
+        }
+        if (nombreRelancesEnvoyees != null && nombreRelancesEnvoyees >= nombreRelances) {
+            return null;
+        }
+        Long derniereAction = dateDerniereRelance != null ? dateDerniereRelance : dateEnvoi;
+        if (derniereAction == null) {
+            return null;
+        }
+        return Math.max(dateVerification, derniereAction + DELAI_RELANCE_MS);
+    }
+
+    /**
+     * Premier minuit (heure locale) supérieur ou égal à la date : un rappel est dû dès que le début
+     * de la journée courante atteint sa date de vérification
+     */
+    static long startOfDayOnOrAfter(long timestamp) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(timestamp);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        if (cal.getTimeInMillis() < timestamp) {
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return cal.getTimeInMillis();
+    }
+
+    private static Map<String, Object> entry(String entrepriseId, String itemId, long dueAt, boolean relance) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("entrepriseId", entrepriseId);
+        entry.put("itemId", itemId);
+        entry.put(DUE_AT, dueAt);
+        entry.put("relance", relance);
+        return entry;
+    }
+}
@@ -0,0 +1,273 @@
+package com.maintenance.maintenance.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * File d'envoi des e-mails, vidée par des workers sur threads virtuels
+ * Chaque worker envoie par lots : JavaMailSender.send(SimpleMailMessage...) ouvre une seule connexion
+ * SMTP (Transport) pour tout le lot au lieu d'une par message.
+ * Un destinataire ne reçoit pas plus de N messages par minute : les messages excédentaires sont différés, pas perdus.
+ * Les messages différés attendent dans une DelayQueue vidée par un seul worker ; ils comptent dans la capacité de la file.
+ */
+@Service
+public class EmailDispatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailDispatchService.class);
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    @Value("${mail.dispatch.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${mail.dispatch.workers:2}")
+    private int workers;
+
+    @Value("${mail.dispatch.batch-size:50}")
+    private int batchSize;
+
+    @Value("${mail.dispatch.per-recipient-per-minute:30}")
+    private int perRecipientPerMinute;
+
+    private BlockingQueue<PendingMail> queue;
+    private final DelayQueue<DeferredMail> delayed = new DelayQueue<>();
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private volatile boolean running;
+
+    // Prochain créneau d'envoi autorisé par destinataire (espacement régulier)
+    private final Map<String, Long> nextSlotByRecipient = new ConcurrentHashMap<>();
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong latencyTotalMs = new AtomicLong();
+    private final AtomicLong latencyMaxMs = new AtomicLong();
+
+    private record PendingMail(SimpleMailMessage message, String recipient, long enqueuedAt, CompletableFuture<Void> result) {
+    }
+
+    /**
+     * Message différé jusqu'à son créneau d'envoi (timestamp)
+     */
+    private record DeferredMail(PendingMail mail, long sendAt) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(sendAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            workerThreads.add(Thread.ofVirtual().name("email-dispatch-" + i).start(this::drain));
+        }
+        workerThreads.add(Thread.ofVirtual().name("email-dispatch-delay").start(this::drainDeferred));
+        logger.info("File d'envoi des e-mails démarrée ({} workers, file de {}, lots de {})", Math.max(1, workers), queueCapacity, batchSize);
+    }
+
+    /**
+     * Arrête les workers ; les messages encore en file ou différés échouent (repris au prochain passage)
+     */
+    @PreDestroy
+    void stop() {
+        running = false;
+        workerThreads.forEach(Thread::interrupt);
+        RejectedExecutionException arret = new RejectedExecutionException("File d'envoi des e-mails arrêtée");
+        List<PendingMail> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        for (DeferredMail deferredMail : delayed.toArray(new DeferredMail[0])) {
+            if (delayed.remove(deferredMail)) {
+                pending.add(deferredMail.mail());
+            }
+        }
+        pending.forEach(mail -> mail.result().completeExceptionally(arret));
+    }
+
+    /**
+     * Place un message dans la file ; le futur se termine quand le serveur SMTP l'a accepté
+     * File pleine (messages différés compris) ou arrêtée : le futur échoue immédiatement
+     * (le message sera repris au prochain passage).
+     */
+    public CompletableFuture<Void> submit(SimpleMailMessage message) {
+        String[] to = message.getTo();
+        String recipient = to != null && to.length > 0 ? to[0] : "";
+        PendingMail mail = new PendingMail(message, recipient, System.currentTimeMillis(), new CompletableFuture<>());
+        if (!running) {
+            rejected.incrementAndGet();
+            mail.result().completeExceptionally(new RejectedExecutionException("File d'envoi des e-mails arrêtée"));
+            return mail.result();
+        }
+        if (queue.size() + delayed.size() >= queueCapacity || !queue.offer(mail)) {
+            rejected.incrementAndGet();
+            mail.result().completeExceptionally(new RejectedExecutionException("File d'envoi des e-mails pleine (" + queueCapacity + ")"));
+            return mail.result();
+        }
+        enqueued.incrementAndGet();
+        return mail.result();
+    }
+
+    private void drain() {
+        while (running) {
+            try {
+                PendingMail first = queue.take();
+                List<PendingMail> candidates = new ArrayList<>();
+                candidates.add(first);
+                queue.drainTo(candidates, Math.max(0, batchSize - 1));
+
+                List<PendingMail> batch = new ArrayList<>();
+                for (PendingMail mail : candidates) {
+                    long wait = reserveSlot(mail.recipient());
+                    if (wait > 0) {
+                        defer(mail, wait);
+                    } else {
+                        batch.add(mail);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    sendBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Erreur inattendue dans la file d'envoi des e-mails: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Réserve un créneau pour le destinataire ; renvoie le délai à attendre (0 si envoi immédiat)
+     */
+    private long reserveSlot(String recipient) {
+        if (perRecipientPerMinute <= 0 || recipient.isEmpty()) {
+            return 0L;
+        }
+        long interval = 60000L / perRecipientPerMinute;
+        long now = System.currentTimeMillis();
+        long slot = nextSlotByRecipient.merge(recipient, now + interval,
+            (current, proposed) -> current <= now ? now + interval : current + interval);
+        long start = slot - interval;
+        return Math.max(0L, start - now);
+    }
+
+    private void defer(PendingMail mail, long waitMs) {
+        if (!running) {
+            mail.result().completeExceptionally(new RejectedExecutionException("File d'envoi des e-mails arrêtée"));
+            return;
+        }
+        deferred.incrementAndGet();
+        delayed.put(new DeferredMail(mail, System.currentTimeMillis() + waitMs));
+    }
+
+    /**
+     * Envoie les messages différés arrivés à leur créneau, par lots
+     * Créneau déjà réservé : envoi direct, sans repasser par la limite.
+     */
+    private void drainDeferred() {
+        while (running) {
+            try {
+                List<DeferredMail> due = new ArrayList<>();
+                due.add(delayed.take());
+                delayed.drainTo(due, Math.max(0, batchSize - 1));
+                List<PendingMail> batch = new ArrayList<>(due.size());
+                due.forEach(deferredMail -> batch.add(deferredMail.mail()));
+                sendBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Erreur inattendue dans l'envoi des e-mails différés: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void sendBatch(List<PendingMail> batch) {
+        batches.incrementAndGet();
+        SimpleMailMessage[] messages = new SimpleMailMessage[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            messages[i] = batch.get(i).message();
+        }
+        Map<Object, Exception> failures = Map.of();
+        Exception globalFailure = null;
+        try {
+            mailSender.send(messages);
+        } catch (MailSendException e) {
+            // Échecs par message quand la connexion a pu être établie, sinon échec du lot entier
+            failures = e.getFailedMessages() != null ? e.getFailedMessages() : Map.of();
+            if (failures.isEmpty()) {
+                globalFailure = e;
+            }
+        } catch (Exception e) {
+            globalFailure = e;
+        }
+
+        long now = System.currentTimeMillis();
+        for (PendingMail mail : batch) {
+            Exception failure = globalFailure != null ? globalFailure : failures.get(mail.message());
+            if (failure != null) {
+                failed.incrementAndGet();
+                logger.error("Échec de l'envoi de l'e-mail à {}: {}", mail.recipient(), failure.getMessage());
+                mail.result().completeExceptionally(failure);
+            } else {
+                long latency = now - mail.enqueuedAt();
+                sent.incrementAndGet();
+                latencyTotalMs.addAndGet(latency);
+                latencyMaxMs.accumulateAndGet(latency, Math::max);
+                mail.result().complete(null);
+            }
+        }
+    }
+
+    /**
+     * Indicateurs : profondeur de file, envois, échecs, latence entre mise en file et acceptation SMTP
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long sentCount = sent.get();
+        stats.put("queueDepth", queue != null ? queue.size() : 0);
+        stats.put("deferredDepth", delayed.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("enqueued", enqueued.get());
+        stats.put("sent", sentCount);
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("deferred", deferred.get());
+        stats.put("batches", batches.get());
+        stats.put("avgLatencyMs", sentCount > 0 ? latencyTotalMs.get() / sentCount : 0L);
+        stats.put("maxLatencyMs", latencyMaxMs.get());
+        return stats;
+    }
+}
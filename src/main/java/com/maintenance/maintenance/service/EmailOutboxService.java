@@ -0,0 +1,318 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.EmailOutboxKey;
+import com.maintenance.maintenance.model.entity.EmailOutboxMessage;
+import com.maintenance.maintenance.repository.EmailOutboxKeyRepository;
+import com.maintenance.maintenance.repository.EmailOutboxRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * File d'envoi durable des e-mails de rappel (table email_outbox)
+ * Les schedulers y déposent chaque envoi une seule fois (clé d'idempotence) puis marquent l'élément
+ * dans Firebase : les nouvelles tentatives partent de la table, sans relire Firebase.
+ * Échec : nouvelle tentative avec délai exponentiel, puis passage en échec définitif (lettre morte).
+ * Durable seulement sur une base persistante (H2 fichier par défaut) : sur une base en mémoire, les envois
+ * en attente sont perdus à l'arrêt, un avertissement est journalisé au démarrage.
+ */
+@Service
+public class EmailOutboxService implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailOutboxService.class);
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Autowired
+    private EmailOutboxKeyRepository emailOutboxKeyRepository;
+
+    @Autowired
+    private EmailDispatchService emailDispatchService;
+
+    @Value("${mail.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${mail.outbox.backoff-initial-ms:60000}")
+    private long backoffInitialMs;
+
+    @Value("${mail.outbox.backoff-max-ms:21600000}")
+    private long backoffMaxMs;
+
+    @Value("${mail.outbox.retention-days:30}")
+    private int retentionDays;
+
+    @Value("${spring.datasource.url:}")
+    private String datasourceUrl;
+
+    // Un seul passage de livraison en file : les réveils simultanés sont regroupés
+    private final AtomicBoolean wakeUpQueued = new AtomicBoolean(false);
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "email-outbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Reprise après arrêt brutal : les messages restés en cours sont remis en attente
+     * (un message accepté par le serveur SMTP juste avant l'arrêt peut donc partir une seconde fois).
+     */
+    @Override
+    public void run(String... args) {
+        if (datasourceUrl == null || datasourceUrl.isEmpty() || datasourceUrl.startsWith("jdbc:h2:mem:")) {
+            logger.error("File d'envoi des e-mails sur une base en mémoire ({}) : les e-mails en attente seront perdus à l'arrêt. "
+                + "Utiliser une base persistante (spring.datasource.url=jdbc:h2:file:..., ddl-auto=update).",
+                datasourceUrl == null || datasourceUrl.isEmpty() ? "base embarquée par défaut" : datasourceUrl);
+        }
+        List<EmailOutboxMessage> enCours = emailOutboxRepository.findByStatut(EmailOutboxMessage.STATUT_EN_COURS);
+        if (!enCours.isEmpty()) {
+            long now = System.currentTimeMillis();
+            for (EmailOutboxMessage message : enCours) {
+                message.setStatut(EmailOutboxMessage.STATUT_EN_ATTENTE);
+                message.setProchaineTentative(now);
+            }
+            emailOutboxRepository.saveAll(enCours);
+            logger.warn("{} e-mail(s) interrompu(s) remis en file d'envoi", enCours.size());
+        }
+        wakeUp();
+    }
+
+    @PreDestroy
+    void stop() {
+        worker.shutdownNow();
+    }
+
+    public static String cleAlerte(String entrepriseId, String alerteId, Long dateVerification, int numeroRelance) {
+        return "alerte:" + entrepriseId + ":" + alerteId + ":" + dateVerification + ":" + numeroRelance;
+    }
+
+    public static String cleRappel(String entrepriseId, String rappelId, Long dateVerification, int numeroRelance) {
+        return "rappel:" + entrepriseId + ":" + rappelId + ":" + dateVerification + ":" + numeroRelance;
+    }
+
+    /**
+     * Dépose un envoi dans la file ; renvoie false s'il y figure déjà (même clé d'idempotence),
+     * seul ou couvert par un digest (changement de mode après un arrêt)
+     */
+    public boolean enqueue(String cleIdempotence, String type, String entrepriseId, String itemId, int numeroRelance, SimpleMailMessage mail) {
+        if (emailOutboxRepository.existsByCleIdempotence(cleIdempotence) || emailOutboxKeyRepository.existsById(cleIdempotence)) {
+            return false;
+        }
+        EmailOutboxMessage message = newMessage(cleIdempotence, type, entrepriseId, mail);
+        message.setItemId(itemId);
+        message.setNumeroRelance(numeroRelance);
+        try {
+            emailOutboxRepository.save(message);
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            // Déposé entre-temps par un autre passage : contrainte d'unicité sur la clé
+            return false;
+        }
+    }
+
+    /**
+     * Clés d'éléments déjà en file (ou envoyés), par un digest ou par un message individuel
+     * (même format de clé dans les deux modes)
+     */
+    public Set<String> clesDejaEnFile(Collection<String> cles) {
+        Set<String> couvertes = new HashSet<>();
+        for (EmailOutboxKey key : emailOutboxKeyRepository.findAllById(cles)) {
+            couvertes.add(key.getCle());
+        }
+        for (EmailOutboxMessage message : emailOutboxRepository.findByCleIdempotenceIn(cles)) {
+            couvertes.add(message.getCleIdempotence());
+        }
+        return couvertes;
+    }
+
+    /**
+     * Dépose un digest et les clés des éléments qu'il couvre dans la même transaction
+     * Une clé déjà couverte fait échouer l'ensemble (insertion en double sur la clé primaire, voir
+     * EmailOutboxKey.isNew) : DataIntegrityViolationException et rien n'est déposé.
+     */
+    @Transactional
+    public void enqueueDigest(String cleDigest, String entrepriseId, Collection<String> clesElements, SimpleMailMessage mail) {
+        EmailOutboxMessage message = emailOutboxRepository.save(newMessage(cleDigest, "digest", entrepriseId, mail));
+        List<EmailOutboxKey> keys = new ArrayList<>();
+        for (String cle : clesElements) {
+            keys.add(new EmailOutboxKey(cle, message.getId(), message.getDateCreation()));
+        }
+        emailOutboxKeyRepository.saveAll(keys);
+        emailOutboxKeyRepository.flush();
+    }
+
+    private static EmailOutboxMessage newMessage(String cleIdempotence, String type, String entrepriseId, SimpleMailMessage mail) {
+        long now = System.currentTimeMillis();
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setCleIdempotence(cleIdempotence);
+        message.setType(type);
+        message.setEntrepriseId(entrepriseId);
+        message.setDestinataire(mail.getTo() != null && mail.getTo().length > 0 ? mail.getTo()[0] : null);
+        message.setExpediteur(mail.getFrom());
+        message.setSujet(mail.getSubject());
+        message.setCorps(mail.getText());
+        message.setStatut(EmailOutboxMessage.STATUT_EN_ATTENTE);
+        message.setTentatives(0);
+        message.setProchaineTentative(now);
+        message.setDateCreation(now);
+        return message;
+    }
+
+    /**
+     * Demande un passage de livraison sans attendre la prochaine scrutation
+     */
+    public void wakeUp() {
+        if (wakeUpQueued.compareAndSet(false, true)) {
+            worker.execute(() -> {
+                wakeUpQueued.set(false);
+                deliverDue();
+            });
+        }
+    }
+
+    /**
+     * Transmet un lot de messages échus à la file d'envoi ; le résultat SMTP met à jour chaque ligne
+     * Lot complet : le lot suivant part quand celui-ci est terminé, sans saturer la file d'envoi.
+     */
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-ms:30000}", initialDelay = 30000)
+    public synchronized void deliverDue() {
+        try {
+            List<EmailOutboxMessage> dus = emailOutboxRepository.findByStatutAndProchaineTentativeLessThanEqualOrderByProchaineTentativeAsc(
+                EmailOutboxMessage.STATUT_EN_ATTENTE, System.currentTimeMillis(), PageRequest.of(0, Math.max(1, batchSize)));
+            if (dus.isEmpty()) {
+                return;
+            }
+            // Réservation avant l'envoi : un message en cours n'est jamais repris par un autre passage
+            for (EmailOutboxMessage message : dus) {
+                message.setStatut(EmailOutboxMessage.STATUT_EN_COURS);
+                message.setTentatives(message.getTentatives() + 1);
+            }
+            emailOutboxRepository.saveAll(dus);
+
+            CompletableFuture<?>[] resultats = new CompletableFuture<?>[dus.size()];
+            for (int i = 0; i < dus.size(); i++) {
+                EmailOutboxMessage message = dus.get(i);
+                resultats[i] = emailDispatchService.submit(toMail(message))
+                    .whenComplete((ignored, error) -> complete(message, error));
+            }
+            if (dus.size() >= batchSize) {
+                CompletableFuture.allOf(resultats).whenComplete((ignored, error) -> wakeUp());
+            }
+        } catch (Exception e) {
+            logger.error("Erreur lors de la livraison de la file d'envoi des e-mails: {}", e.getMessage(), e);
+        }
+    }
+
+    private void complete(EmailOutboxMessage message, Throwable error) {
+        long now = System.currentTimeMillis();
+        if (error == null) {
+            message.setStatut(EmailOutboxMessage.STATUT_ENVOYE);
+            message.setDateEnvoi(now);
+            message.setDerniereErreur(null);
+        } else {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            String erreur = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+            message.setDerniereErreur(erreur.length() > 1000 ? erreur.substring(0, 1000) : erreur);
+            if (message.getTentatives() >= maxAttempts) {
+                message.setStatut(EmailOutboxMessage.STATUT_ECHEC_DEFINITIF);
+                logger.error("E-mail {} abandonné après {} tentative(s): {}", message.getCleIdempotence(), message.getTentatives(), erreur);
+            } else {
+                message.setStatut(EmailOutboxMessage.STATUT_EN_ATTENTE);
+                message.setProchaineTentative(now + backoff(message.getTentatives()));
+                logger.warn("E-mail {} en échec (tentative {}/{}), nouvel essai le {}", message.getCleIdempotence(),
+                    message.getTentatives(), maxAttempts, new Date(message.getProchaineTentative()));
+            }
+        }
+        try {
+            emailOutboxRepository.save(message);
+        } catch (Exception e) {
+            // Ligne laissée en cours : remise en file au prochain démarrage
+            logger.error("Impossible d'enregistrer le résultat de l'e-mail {}: {}", message.getCleIdempotence(), e.getMessage());
+        }
+    }
+
+    private long backoff(int tentatives) {
+        int exposant = Math.min(Math.max(0, tentatives - 1), 30);
+        return Math.min(backoffMaxMs, backoffInitialMs << exposant);
+    }
+
+    private static SimpleMailMessage toMail(EmailOutboxMessage message) {
+        SimpleMailMessage mail = new SimpleMailMessage();
+        mail.setTo(message.getDestinataire());
+        mail.setFrom(message.getExpediteur());
+        mail.setSubject(message.getSujet());
+        mail.setText(message.getCorps());
+        return mail;
+    }
+
+    /**
+     * Remet en file les messages en échec définitif (après correction de la configuration SMTP par exemple)
+     */
+    public int retryDeadLetters() {
+        List<EmailOutboxMessage> mortes = emailOutboxRepository.findByStatut(EmailOutboxMessage.STATUT_ECHEC_DEFINITIF);
+        long now = System.currentTimeMillis();
+        for (EmailOutboxMessage message : mortes) {
+            message.setStatut(EmailOutboxMessage.STATUT_EN_ATTENTE);
+            message.setTentatives(0);
+            message.setProchaineTentative(now);
+        }
+        emailOutboxRepository.saveAll(mortes);
+        if (!mortes.isEmpty()) {
+            wakeUp();
+        }
+        return mortes.size();
+    }
+
+    /**
+     * Purge quotidienne des messages envoyés au-delà de la durée de conservation
+     */
+    @Scheduled(cron = "0 30 3 * * *")
+    @Transactional
+    public void purgeSent() {
+        long limite = System.currentTimeMillis() - retentionDays * 86400000L;
+        long supprimes = emailOutboxRepository.deleteByStatutAndDateEnvoiLessThan(EmailOutboxMessage.STATUT_ENVOYE, limite);
+        emailOutboxKeyRepository.deleteByDateCreationLessThan(limite);
+        if (supprimes > 0) {
+            logger.info("{} e-mail(s) envoyé(s) purgé(s) de la file d'envoi", supprimes);
+        }
+    }
+
+    /**
+     * Indicateurs : nombre de messages par statut
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enAttente", emailOutboxRepository.countByStatut(EmailOutboxMessage.STATUT_EN_ATTENTE));
+        stats.put("enCours", emailOutboxRepository.countByStatut(EmailOutboxMessage.STATUT_EN_COURS));
+        stats.put("envoyes", emailOutboxRepository.countByStatut(EmailOutboxMessage.STATUT_ENVOYE));
+        stats.put("echecsDefinitifs", emailOutboxRepository.countByStatut(EmailOutboxMessage.STATUT_ECHEC_DEFINITIF));
+        return stats;
+    }
+}
@@ -7,71 +7,34 @@ import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Locale;
-import java.util.Map;
 
 @Service
 public class EmailService {
 
     private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
 
+    static final String EXPEDITEUR = "hocinelampro@gmail.com";
+
+    // Formateur partagé, sans état (contrairement à SimpleDateFormat)
+    static final DateTimeFormatter DATE_VERIFICATION =
+        DateTimeFormatter.ofPattern("dd/MM/yyyy 'à' HH:mm", Locale.FRENCH).withZone(ZoneId.systemDefault());
+
     @Autowired
     private JavaMailSender mailSender;
 
     @Autowired
-    private FirebaseRealtimeService firebaseRealtimeService;
+    private RecipientResolver recipientResolver;
 
     /**
      * Envoie un email au super admin pour une alerte de vérification de machine
      */
     public void sendAlerteEmail(String superAdminEmail, String machineNom, String description, Long dateVerification, boolean isRelance) {
         try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setTo(superAdminEmail);
-            
-            SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy à HH:mm", Locale.FRENCH);
-            String dateVerifStr = dateFormat.format(new Date(dateVerification));
-            
-            if (isRelance) {
-                message.setSubject("RELANCE - Alerte de vérification de machine - " + machineNom);
-                String emailBody = String.format(
-                    "Bonjour,\n\n" +
-                    "Ceci est une relance concernant la vérification de machine.\n\n" +
-                    "Détails de l'alerte :\n" +
-                    "- Machine : %s\n" +
-                    "- Date de vérification programmée : %s\n" +
-                    "- Description : %s\n\n" +
-                    "La vérification n'a pas encore été effectuée. Veuillez procéder à la vérification de cette machine.\n\n" +
-                    "Cordialement,\n" +
-                    "Système de maintenance",
-                    machineNom,
-                    dateVerifStr,
-                    description != null ? description : "Aucune description"
-                );
-                message.setText(emailBody);
-            } else {
-                message.setSubject("Alerte de vérification de machine - " + machineNom);
-                String emailBody = String.format(
-                    "Bonjour,\n\n" +
-                    "Une vérification de machine est programmée pour aujourd'hui.\n\n" +
-                    "Détails de l'alerte :\n" +
-                    "- Machine : %s\n" +
-                    "- Date de vérification : %s\n" +
-                    "- Description : %s\n\n" +
-                    "Veuillez procéder à la vérification de cette machine.\n\n" +
-                    "Cordialement,\n" +
-                    "Système de maintenance",
-                    machineNom,
-                    dateVerifStr,
-                    description != null ? description : "Aucune description"
-                );
-                message.setText(emailBody);
-            }
-            
-            message.setFrom("hocinelampro@gmail.com");
+            SimpleMailMessage message = buildAlerteMessage(superAdminEmail, machineNom, description, dateVerification, isRelance);
             
             mailSender.send(message);
             System.out.println("Email " + (isRelance ? "de relance " : "") + "envoyé avec succès à " + superAdminEmail);
@@ -89,49 +52,7 @@ public class EmailService {
      */
     public void sendRappelEmail(String superAdminEmail, String machineNom, String description, Long dateVerification, boolean isRelance) throws Exception {
         try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setTo(superAdminEmail);
-            
-            SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy à HH:mm", Locale.FRENCH);
-            String dateVerifStr = dateFormat.format(new Date(dateVerification));
-            
-            if (isRelance) {
-                message.setSubject("RELANCE - Rappel de vérification de machine - " + machineNom);
-                String emailBody = String.format(
-                    "Bonjour,\n\n" +
-                    "Ceci est une relance concernant le rappel de vérification de machine.\n\n" +
-                    "Détails du rappel :\n" +
-                    "- Machine : %s\n" +
-                    "- Date de vérification programmée : %s\n" +
-                    "- Description : %s\n\n" +
-                    "La vérification n'a pas encore été effectuée. Veuillez procéder à la vérification de cette machine.\n\n" +
-                    "Cordialement,\n" +
-                    "Système de maintenance",
-                    machineNom,
-                    dateVerifStr,
-                    description != null ? description : "Aucune description"
-                );
-                message.setText(emailBody);
-            } else {
-                message.setSubject("Rappel de vérification de machine - " + machineNom);
-                String emailBody = String.format(
-                    "Bonjour,\n\n" +
-                    "Un rappel de vérification de machine est programmé pour aujourd'hui.\n\n" +
-                    "Détails du rappel :\n" +
-                    "- Machine : %s\n" +
-                    "- Date de vérification : %s\n" +
-                    "- Description : %s\n\n" +
-                    "Veuillez procéder à la vérification de cette machine.\n\n" +
-                    "Cordialement,\n" +
-                    "Système de maintenance",
-                    machineNom,
-                    dateVerifStr,
-                    description != null ? description : "Aucune description"
-                );
-                message.setText(emailBody);
-            }
-            
-            message.setFrom("hocinelampro@gmail.com");
+            SimpleMailMessage message = buildRappelMessage(superAdminEmail, machineNom, description, dateVerification, isRelance);
             
             mailSender.send(message);
             System.out.println("✅ Email de rappel " + (isRelance ? "de relance " : "") + "envoyé avec succès à " + superAdminEmail);
@@ -153,20 +74,108 @@ public class EmailService {
     }
 
     /**
-     * Récupère l'email du super admin
+     * Message d'alerte (ou de relance) prêt à être déposé dans la file d'envoi
      */
-    public String getSuperAdminEmail() throws Exception {
-        List<Map<String, Object>> users = firebaseRealtimeService.getAllUsers();
-        for (Map<String, Object> user : users) {
-            String role = (String) user.get("role");
-            if (role != null && "superadmin".equalsIgnoreCase(role)) {
-                String email = (String) user.get("email");
-                if (email != null && !email.isEmpty()) {
-                    return email;
-                }
-            }
+    public SimpleMailMessage buildAlerteMessage(String superAdminEmail, String machineNom, String description, Long dateVerification, boolean isRelance) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(superAdminEmail);
+        
+        String dateVerifStr = DATE_VERIFICATION.format(Instant.ofEpochMilli(dateVerification));
+        
+        if (isRelance) {
+            message.setSubject("RELANCE - Alerte de vérification de machine - " + machineNom);
+            String emailBody = String.format(
+                "Bonjour,\n\n" +
+                "Ceci est une relance concernant la vérification de machine.\n\n" +
+                "Détails de l'alerte :\n" +
+                "- Machine : %s\n" +
+                "- Date de vérification programmée : %s\n" +
+                "- Description : %s\n\n" +
+                "La vérification n'a pas encore été effectuée. Veuillez procéder à la vérification de cette machine.\n\n" +
+                "Cordialement,\n" +
+                "Système de maintenance",
+                machineNom,
+                dateVerifStr,
+                description != null ? description : "Aucune description"
+            );
+            message.setText(emailBody);
+        } else {
+            message.setSubject("Alerte de vérification de machine - " + machineNom);
+            String emailBody = String.format(
+                "Bonjour,\n\n" +
+                "Une vérification de machine est programmée pour aujourd'hui.\n\n" +
+                "Détails de l'alerte :\n" +
+                "- Machine : %s\n" +
+                "- Date de vérification : %s\n" +
+                "- Description : %s\n\n" +
+                "Veuillez procéder à la vérification de cette machine.\n\n" +
+                "Cordialement,\n" +
+                "Système de maintenance",
+                machineNom,
+                dateVerifStr,
+                description != null ? description : "Aucune description"
+            );
+            message.setText(emailBody);
         }
-        throw new Exception("Aucun super admin trouvé avec un email valide");
+        
+        message.setFrom(EXPEDITEUR);
+        return message;
+    }
+
+    /**
+     * Message de rappel (ou de relance) prêt à être déposé dans la file d'envoi
+     */
+    public SimpleMailMessage buildRappelMessage(String superAdminEmail, String machineNom, String description, Long dateVerification, boolean isRelance) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(superAdminEmail);
+        
+        String dateVerifStr = DATE_VERIFICATION.format(Instant.ofEpochMilli(dateVerification));
+        
+        if (isRelance) {
+            message.setSubject("RELANCE - Rappel de vérification de machine - " + machineNom);
+            String emailBody = String.format(
+                "Bonjour,\n\n" +
+                "Ceci est une relance concernant le rappel de vérification de machine.\n\n" +
+                "Détails du rappel :\n" +
+                "- Machine : %s\n" +
+                "- Date de vérification programmée : %s\n" +
+                "- Description : %s\n\n" +
+                "La vérification n'a pas encore été effectuée. Veuillez procéder à la vérification de cette machine.\n\n" +
+                "Cordialement,\n" +
+                "Système de maintenance",
+                machineNom,
+                dateVerifStr,
+                description != null ? description : "Aucune description"
+            );
+            message.setText(emailBody);
+        } else {
+            message.setSubject("Rappel de vérification de machine - " + machineNom);
+            String emailBody = String.format(
+                "Bonjour,\n\n" +
+                "Un rappel de vérification de machine est programmé pour aujourd'hui.\n\n" +
+                "Détails du rappel :\n" +
+                "- Machine : %s\n" +
+                "- Date de vérification : %s\n" +
+                "- Description : %s\n\n" +
+                "Veuillez procéder à la vérification de cette machine.\n\n" +
+                "Cordialement,\n" +
+                "Système de maintenance",
+                machineNom,
+                dateVerifStr,
+                description != null ? description : "Aucune description"
+            );
+            message.setText(emailBody);
+        }
+        
+        message.setFrom(EXPEDITEUR);
+        return message;
+    }
+
+    /**
+     * Récupère l'email du super admin (index des rôles, mis en cache)
+     */
+    public String getSuperAdminEmail() throws Exception {
+        return recipientResolver.getSuperAdminEmail();
     }
 }
 
@@ -0,0 +1,493 @@
+package com.maintenance.maintenance.service;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Réplique mémoire (optionnelle) des sous-arbres entreprises/{id}/*
+ * Des ChildEventListener persistants maintiennent les champs bruts de chaque élément à jour ;
+ * les lectures des entreprises récemment consultées sont servies localement.
+ * Chaque lecture décode un nouvel objet : l'appelant peut le modifier sans altérer la réplique ni les autres lecteurs.
+ * Désactivée par défaut (firebase.replica.enabled=false).
+ */
+@Service
+public class EnterpriseReplicaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EnterpriseReplicaService.class);
+
+    /**
+     * Décode les champs d'un enfant Firebase en objet métier (null si l'enfant doit être ignoré)
+     */
+    @FunctionalInterface
+    public interface SnapshotDecoder {
+        Object decode(Map<String, Object> data, String entrepriseId, String itemId);
+    }
+
+    @Autowired
+    private DatabaseReference databaseReference;
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @Value("${firebase.replica.enabled:false}")
+    private boolean enabled;
+
+    /** Budget mémoire exprimé en nombre total d'objets répliqués (toutes entreprises confondues) */
+    @Value("${firebase.replica.max-entries:20000}")
+    private long maxEntries;
+
+    /** Durée sans lecture au-delà de laquelle une entreprise est détachée */
+    @Value("${firebase.replica.idle-minutes:15}")
+    private long idleMinutes;
+
+    private final Map<String, SnapshotDecoder> decoders = new ConcurrentHashMap<>();
+    private final Map<String, EnterpriseReplica> replicas = new ConcurrentHashMap<>();
+    /** Entreprises dépassant seules le budget : lues dans Firebase jusqu'à l'échéance (timestamp) */
+    private final Map<String, Long> oversized = new ConcurrentHashMap<>();
+    /** Entreprises dont un listener a été annulé (droits, erreur réseau) : nouvel essai après l'échéance */
+    private final Map<String, Long> cancelled = new ConcurrentHashMap<>();
+
+    /** Délai avant de réattacher une entreprise dont un listener a été annulé */
+    private static final long CANCELLED_RETRY_MS = 60_000L;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private volatile boolean connected = true;
+    private volatile long disconnectedSince = 0L;
+    private volatile boolean connectionListenerAttached = false;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Déclare une collection à répliquer (machines, tickets...) avec son décodeur
+     */
+    public void registerCollection(String collection, SnapshotDecoder decoder) {
+        decoders.put(collection, decoder);
+    }
+
+    /**
+     * Retourne la collection répliquée si elle est prête, sinon null (l'appelant lit alors Firebase)
+     * Le premier accès à une entreprise déclenche l'attachement de ses listeners.
+     * Les objets renvoyés sont des copies décodées pour cet appel.
+     */
+    public <T> List<T> getCollection(String entrepriseId, String collection) {
+        Stream<T> items = streamCollection(entrepriseId, collection);
+        return items != null ? items.collect(Collectors.toCollection(ArrayList::new)) : null;
+    }
+
+    /**
+     * Comme getCollection, mais chaque élément n'est décodé qu'au moment où le flux le consomme (export d'une
+     * grande collection) : parcours trié par clé, faiblement cohérent avec les événements reçus pendant le parcours
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Stream<T> streamCollection(String entrepriseId, String collection) {
+        SnapshotDecoder decoder = collection != null ? decoders.get(collection) : null;
+        if (!enabled || entrepriseId == null || decoder == null) {
+            return null;
+        }
+        if (isBypassed(oversized, entrepriseId) || isBypassed(cancelled, entrepriseId)) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        EnterpriseReplica replica = replicas.computeIfAbsent(entrepriseId, this::attach);
+
+        // lastAccess n'est rafraîchi que sur un hit : une collection jamais prête finit détachée comme inactive
+        CollectionReplica collectionReplica = replica.collections.get(collection);
+        if (collectionReplica == null || !collectionReplica.ready) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        replica.lastAccess = System.currentTimeMillis();
+        hits.incrementAndGet();
+        if (!connected) {
+            staleHits.incrementAndGet();
+        }
+        return collectionReplica.items.entrySet().stream()
+            .map(entry -> (T) decoder.decode(entry.getValue(), entrepriseId, entry.getKey()))
+            .filter(Objects::nonNull);
+    }
+
+    /**
+     * Retourne une copie décodée de l'élément répliqué si la collection est prête
+     * found=false signifie que la réplique ne peut pas répondre (lecture Firebase nécessaire)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Lookup<T> getItem(String entrepriseId, String collection, String itemId) {
+        SnapshotDecoder decoder = collection != null ? decoders.get(collection) : null;
+        if (!enabled || entrepriseId == null || itemId == null || decoder == null) {
+            return Lookup.notFound();
+        }
+        EnterpriseReplica replica = replicas.get(entrepriseId);
+        CollectionReplica collectionReplica = replica != null ? replica.collections.get(collection) : null;
+        if (collectionReplica == null || !collectionReplica.ready) {
+            misses.incrementAndGet();
+            return Lookup.notFound();
+        }
+        replica.lastAccess = System.currentTimeMillis();
+        hits.incrementAndGet();
+        if (!connected) {
+            staleHits.incrementAndGet();
+        }
+        Map<String, Object> data = collectionReplica.items.get(itemId);
+        return Lookup.found(data != null ? (T) decoder.decode(data, entrepriseId, itemId) : null);
+    }
+
+    /**
+     * Détache une entreprise de la réplique (suppression d'entreprise, éviction)
+     */
+    public void evict(String entrepriseId) {
+        EnterpriseReplica replica = replicas.remove(entrepriseId);
+        if (replica != null) {
+            detach(replica);
+            evictions.incrementAndGet();
+            logger.info("Réplique de l'entreprise {} détachée", entrepriseId);
+        }
+    }
+
+    /**
+     * Détache les entreprises inactives puis applique le budget mémoire (moins récemment utilisées d'abord)
+     */
+    @Scheduled(fixedRate = 60000, initialDelay = 60000)
+    public void evictIdleReplicas() {
+        if (!enabled || replicas.isEmpty()) {
+            return;
+        }
+        long idleLimit = System.currentTimeMillis() - idleMinutes * 60_000L;
+        for (EnterpriseReplica replica : new ArrayList<>(replicas.values())) {
+            if (replica.lastAccess < idleLimit) {
+                evict(replica.entrepriseId);
+            }
+        }
+        enforceBudget(null);
+        long now = System.currentTimeMillis();
+        oversized.values().removeIf(until -> until < now);
+        cancelled.values().removeIf(until -> until < now);
+    }
+
+    /**
+     * Indicateurs de la réplique : hits/misses, lectures potentiellement obsolètes, taille, fraîcheur par entreprise
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        stats.put("enabled", enabled);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0.0);
+        stats.put("staleHits", staleHits.get());
+        stats.put("evictions", evictions.get());
+        stats.put("connected", connected);
+        stats.put("stalenessMs", connected ? 0L : now - disconnectedSince);
+        stats.put("entries", totalEntries());
+        stats.put("maxEntries", maxEntries);
+        stats.put("oversized", new ArrayList<>(oversized.keySet()));
+        stats.put("cancelled", new ArrayList<>(cancelled.keySet()));
+
+        List<Map<String, Object>> entreprises = new ArrayList<>();
+        for (EnterpriseReplica replica : replicas.values()) {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("entrepriseId", replica.entrepriseId);
+            info.put("entries", replica.size());
+            info.put("idleMs", now - replica.lastAccess);
+            info.put("lastEventAgeMs", now - replica.lastEvent);
+            Map<String, Boolean> ready = new HashMap<>();
+            replica.collections.forEach((name, c) -> ready.put(name, c.ready));
+            info.put("ready", ready);
+            entreprises.add(info);
+        }
+        stats.put("entreprises", entreprises);
+        return stats;
+    }
+
+    private EnterpriseReplica attach(String entrepriseId) {
+        ensureConnectionListener();
+        EnterpriseReplica replica = new EnterpriseReplica(entrepriseId);
+        for (Map.Entry<String, SnapshotDecoder> entry : decoders.entrySet()) {
+            CollectionReplica collectionReplica = new CollectionReplica(
+                databaseReference.child("entreprises").child(entrepriseId).child(entry.getKey()));
+            replica.collections.put(entry.getKey(), collectionReplica);
+            attachCollection(replica, collectionReplica, entry.getValue());
+        }
+        logger.info("Réplique de l'entreprise {} attachée ({} collections)", entrepriseId, replica.collections.size());
+        return replica;
+    }
+
+    private void attachCollection(EnterpriseReplica replica, CollectionReplica collectionReplica, SnapshotDecoder decoder) {
+        collectionReplica.childListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+                apply(snapshot);
+            }
+
+            @Override
+            public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+                apply(snapshot);
+            }
+
+            @Override
+            public void onChildRemoved(DataSnapshot snapshot) {
+                if (snapshot.getKey() != null) {
+                    collectionReplica.items.remove(snapshot.getKey());
+                }
+                changed();
+            }
+
+            @Override
+            public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+                // L'ordre est donné par la clé, rien à faire
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                logger.warn("Réplique {} de l'entreprise {} annulée: {}", collectionReplica.ref.getKey(), replica.entrepriseId, error.getMessage());
+                collectionReplica.ready = false;
+                dropCancelled(replica);
+            }
+
+            private void apply(DataSnapshot snapshot) {
+                String key = snapshot.getKey();
+                if (key == null || key.startsWith("_")) {
+                    return;
+                }
+                try {
+                    // Décodé une fois pour écarter les éléments invalides ; seuls les champs bruts sont conservés
+                    Map<String, Object> data = FirebaseEntityDecoder.fields(snapshot);
+                    if (decoder.decode(data, replica.entrepriseId, key) != null) {
+                        collectionReplica.items.put(key, data);
+                    } else {
+                        collectionReplica.items.remove(key);
+                    }
+                } catch (Exception e) {
+                    logger.warn("Décodage impossible pour {}/{}: {}", collectionReplica.ref.getKey(), key, e.getMessage());
+                }
+                changed();
+            }
+
+            /**
+             * Modification reçue après le chargement initial (écriture de cette instance ou d'une autre) :
+             * la version des données de l'entreprise est incrémentée, les ETag déjà distribués sont périmés
+             */
+            private void changed() {
+                replica.lastEvent = System.currentTimeMillis();
+                if (collectionReplica.ready) {
+                    dataVersionService.bump(replica.entrepriseId);
+                }
+            }
+        };
+        collectionReplica.ref.addChildEventListener(collectionReplica.childListener);
+
+        // L'événement "value" arrive après tous les onChildAdded initiaux : la collection est alors complète
+        collectionReplica.ref.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                collectionReplica.ready = true;
+                replica.lastEvent = System.currentTimeMillis();
+                enforceBudget(replica.entrepriseId);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                logger.warn("Chargement initial de la réplique {} impossible: {}", collectionReplica.ref.getKey(), error.getMessage());
+                dropCancelled(replica);
+            }
+        });
+    }
+
+    /**
+     * Listener annulé : l'entreprise est détachée (listeners retirés) et lue dans Firebase jusqu'au prochain essai
+     * Seule la réplique concernée est retirée, pas une réplique attachée depuis.
+     */
+    private void dropCancelled(EnterpriseReplica replica) {
+        cancelled.put(replica.entrepriseId, System.currentTimeMillis() + CANCELLED_RETRY_MS);
+        if (replicas.remove(replica.entrepriseId, replica)) {
+            detach(replica);
+            evictions.incrementAndGet();
+            logger.info("Réplique de l'entreprise {} détachée après annulation, nouvel essai dans {} s",
+                replica.entrepriseId, CANCELLED_RETRY_MS / 1000);
+        }
+    }
+
+    private void detach(EnterpriseReplica replica) {
+        for (CollectionReplica collectionReplica : replica.collections.values()) {
+            collectionReplica.ready = false;
+            if (collectionReplica.childListener != null) {
+                collectionReplica.ref.removeEventListener(collectionReplica.childListener);
+            }
+            collectionReplica.items.clear();
+        }
+    }
+
+    /**
+     * Évince les entreprises les moins récemment lues tant que le budget est dépassé
+     * L'entreprise en cours de chargement passe en dernier ; si elle dépasse seule le budget, elle est détachée
+     * et servie par Firebase pendant idle-minutes (pas de rechargement complet à chaque lecture).
+     */
+    private synchronized void enforceBudget(String keepEntrepriseId) {
+        if (totalEntries() <= maxEntries) {
+            return;
+        }
+        List<EnterpriseReplica> candidates = new ArrayList<>(replicas.values());
+        candidates.sort(Comparator.comparingLong(r -> r.lastAccess));
+        for (EnterpriseReplica replica : candidates) {
+            if (totalEntries() <= maxEntries) {
+                return;
+            }
+            if (!replica.entrepriseId.equals(keepEntrepriseId)) {
+                evict(replica.entrepriseId);
+            }
+        }
+        if (keepEntrepriseId != null && totalEntries() > maxEntries && replicas.containsKey(keepEntrepriseId)) {
+            logger.warn("Entreprise {} trop volumineuse pour la réplique ({} objets, budget {}) : lectures Firebase directes",
+                keepEntrepriseId, totalEntries(), maxEntries);
+            oversized.put(keepEntrepriseId, System.currentTimeMillis() + idleMinutes * 60_000L);
+            evict(keepEntrepriseId);
+        }
+    }
+
+    /**
+     * true si l'entreprise est écartée de la réplique jusqu'à une échéance pas encore atteinte
+     */
+    private static boolean isBypassed(Map<String, Long> bypass, String entrepriseId) {
+        Long until = bypass.get(entrepriseId);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            bypass.remove(entrepriseId, until);
+            return false;
+        }
+        return true;
+    }
+
+    private long totalEntries() {
+        long total = 0;
+        for (EnterpriseReplica replica : replicas.values()) {
+            total += replica.size();
+        }
+        return total;
+    }
+
+    /**
+     * Suit l'état de connexion Firebase pour mesurer l'obsolescence potentielle des données servies
+     */
+    private void ensureConnectionListener() {
+        if (connectionListenerAttached) {
+            return;
+        }
+        synchronized (this) {
+            if (connectionListenerAttached) {
+                return;
+            }
+            connectionListenerAttached = true;
+            databaseReference.child(".info/connected").addValueEventListener(new ValueEventListener() {
+                @Override
+                public void onDataChange(DataSnapshot snapshot) {
+                    boolean isConnected = Boolean.TRUE.equals(snapshot.getValue(Boolean.class));
+                    if (connected && !isConnected) {
+                        disconnectedSince = System.currentTimeMillis();
+                    }
+                    connected = isConnected;
+                }
+
+                @Override
+                public void onCancelled(DatabaseError error) {
+                    logger.warn("Suivi de connexion Firebase annulé: {}", error.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Résultat d'une lecture unitaire dans la réplique
+     */
+    public static final class Lookup<T> {
+        private static final Lookup<?> NOT_FOUND = new Lookup<>(false, null);
+
+        private final boolean found;
+        private final T value;
+
+        private Lookup(boolean found, T value) {
+            this.found = found;
+            this.value = value;
+        }
+
+        static <T> Lookup<T> found(T value) {
+            return new Lookup<>(true, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> Lookup<T> notFound() {
+            return (Lookup<T>) NOT_FOUND;
+        }
+
+        public boolean isFound() {
+            return found;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+
+    private static final class EnterpriseReplica {
+        private final String entrepriseId;
+        private final Map<String, CollectionReplica> collections = new ConcurrentHashMap<>();
+        private volatile long lastAccess = System.currentTimeMillis();
+        private volatile long lastEvent = System.currentTimeMillis();
+
+        private EnterpriseReplica(String entrepriseId) {
+            this.entrepriseId = entrepriseId;
+        }
+
+        private long size() {
+            long size = 0;
+            for (CollectionReplica collectionReplica : collections.values()) {
+                size += collectionReplica.items.size();
+            }
+            return size;
+        }
+    }
+
+    private static final class CollectionReplica {
+        private final DatabaseReference ref;
+        // Trié par clé, comme les lectures Firebase (clés push chronologiques)
+        private final Map<String, Map<String, Object>> items = new ConcurrentSkipListMap<>();
+        private volatile boolean ready = false;
+        private ChildEventListener childListener;
+
+        private CollectionReplica(DatabaseReference ref) {
+            this.ref = ref;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.HistoriqueVerification;
+import com.maintenance.maintenance.model.entity.Machine;
+import com.maintenance.maintenance.model.entity.Rappel;
+import com.maintenance.maintenance.model.entity.Ticket;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compteurs statistiques par entreprise : statistiquesEntreprises/{entrepriseId}
+ * Chaque élément contribue à certains compteurs selon son état (ticket ouvert, urgent, rappel non vérifié...) ;
+ * une écriture applique l'écart entre la contribution avant et après la modification.
+ * Le nœud est marqué "aReconcilier" lorsqu'un écart n'a pas pu être calculé : il est alors recompté entièrement.
+ */
+public final class EnterpriseStatsCounters {
+
+    public static final String NODE = "statistiquesEntreprises";
+    public static final String A_RECONCILIER = "aReconcilier";
+    public static final String DATE_MISE_A_JOUR = "dateMiseAJour";
+
+    public static final String TOTAL_MACHINES = "totalMachines";
+    public static final String OPEN_TICKETS = "openTickets";
+    public static final String URGENT_TICKETS = "urgentTickets";
+    public static final String PENDING_RAPPELS = "pendingRappels";
+    public static final String PENDING_ALERTES = "pendingAlertes";
+    public static final String COMPLETED_MAINTENANCE = "completedMaintenance";
+
+    private static final String[] COUNTERS = {
+        TOTAL_MACHINES, OPEN_TICKETS, URGENT_TICKETS, PENDING_RAPPELS, PENDING_ALERTES, COMPLETED_MAINTENANCE
+    };
+
+    private EnterpriseStatsCounters() {
+    }
+
+    public static String path(String entrepriseId) {
+        return NODE + "/" + entrepriseId;
+    }
+
+    /**
+     * Machine comptée tant qu'elle n'est pas supprimée (soft delete)
+     */
+    public static Map<String, Long> machine(Machine machine) {
+        Map<String, Long> contribution = new HashMap<>();
+        if (machine != null && !Boolean.TRUE.equals(machine.getSupprime())) {
+            contribution.put(TOTAL_MACHINES, 1L);
+        }
+        return contribution;
+    }
+
+    /**
+     * Ticket ouvert (à faire ou en cours), et urgent s'il est ouvert avec la priorité "urgente"
+     */
+    public static Map<String, Long> ticket(Ticket ticket) {
+        Map<String, Long> contribution = new HashMap<>();
+        if (ticket == null) {
+            return contribution;
+        }
+        String statut = ticket.getStatut();
+        if ("a_faire".equals(statut) || "en_cours".equals(statut)) {
+            contribution.put(OPEN_TICKETS, 1L);
+            if ("urgente".equals(ticket.getPriorite())) {
+                contribution.put(URGENT_TICKETS, 1L);
+            }
+        }
+        return contribution;
+    }
+
+    public static Map<String, Long> alerte(Alerte alerte) {
+        Map<String, Long> contribution = new HashMap<>();
+        if (alerte != null && !Boolean.TRUE.equals(alerte.getVerifie())) {
+            contribution.put(PENDING_ALERTES, 1L);
+        }
+        return contribution;
+    }
+
+    public static Map<String, Long> rappel(Rappel rappel) {
+        Map<String, Long> contribution = new HashMap<>();
+        if (rappel != null && !Boolean.TRUE.equals(rappel.getVerifie())) {
+            contribution.put(PENDING_RAPPELS, 1L);
+        }
+        return contribution;
+    }
+
+    public static Map<String, Long> historique(HistoriqueVerification historique) {
+        Map<String, Long> contribution = new HashMap<>();
+        if (historique != null) {
+            contribution.put(COMPLETED_MAINTENANCE, 1L);
+        }
+        return contribution;
+    }
+
+    /**
+     * Contribution d'un élément quelconque (null ou type non compté : aucune)
+     */
+    public static Map<String, Long> contribution(Object item) {
+        if (item instanceof Machine machine) {
+            return machine(machine);
+        }
+        if (item instanceof Ticket ticket) {
+            return ticket(ticket);
+        }
+        if (item instanceof Alerte alerte) {
+            return alerte(alerte);
+        }
+        if (item instanceof Rappel rappel) {
+            return rappel(rappel);
+        }
+        if (item instanceof HistoriqueVerification historique) {
+            return historique(historique);
+        }
+        return new HashMap<>();
+    }
+
+    /**
+     * Écart à appliquer aux compteurs (seuls les compteurs modifiés sont présents)
+     */
+    public static Map<String, Long> delta(Map<String, Long> avant, Map<String, Long> apres) {
+        Map<String, Long> delta = new HashMap<>();
+        for (String counter : COUNTERS) {
+            long ecart = apres.getOrDefault(counter, 0L) - avant.getOrDefault(counter, 0L);
+            if (ecart != 0) {
+                delta.put(counter, ecart);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Applique un écart au contenu du nœud ; un nœud absent repart de zéro et reste à réconcilier
+     */
+    public static Map<String, Object> apply(Object current, Map<String, Long> delta, long now) {
+        Map<String, Object> node = new HashMap<>();
+        if (current instanceof Map<?, ?> existing) {
+            for (Map.Entry<?, ?> entry : existing.entrySet()) {
+                node.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+        } else {
+            node.put(A_RECONCILIER, true);
+        }
+        for (String counter : COUNTERS) {
+            long value = node.get(counter) instanceof Number number ? number.longValue() : 0L;
+            // Un compteur négatif trahit une dérive : il est borné à zéro en attendant la réconciliation
+            node.put(counter, Math.max(0L, value + delta.getOrDefault(counter, 0L)));
+        }
+        node.put(DATE_MISE_A_JOUR, now);
+        return node;
+    }
+
+    /**
+     * Recomptage complet à partir des collections de l'entreprise (listes null comptées vides)
+     */
+    public static Map<String, Object> compute(List<Machine> machines, List<Ticket> tickets, List<Rappel> rappels,
+                                              List<Alerte> alertes, List<HistoriqueVerification> historiques) {
+        Map<String, Long> totals = new HashMap<>();
+        if (machines != null) {
+            machines.forEach(machine -> add(totals, machine(machine)));
+        }
+        if (tickets != null) {
+            tickets.forEach(ticket -> add(totals, ticket(ticket)));
+        }
+        if (rappels != null) {
+            rappels.forEach(rappel -> add(totals, rappel(rappel)));
+        }
+        if (alertes != null) {
+            alertes.forEach(alerte -> add(totals, alerte(alerte)));
+        }
+        if (historiques != null) {
+            historiques.forEach(historique -> add(totals, historique(historique)));
+        }
+        Map<String, Object> node = new HashMap<>();
+        for (String counter : COUNTERS) {
+            node.put(counter, totals.getOrDefault(counter, 0L));
+        }
+        node.put(A_RECONCILIER, false);
+        node.put(DATE_MISE_A_JOUR, System.currentTimeMillis());
+        return node;
+    }
+
+    public static Map<String, Object> empty() {
+        return compute(null, null, null, null, null);
+    }
+
+    /**
+     * Nœud exploitable tel quel par le tableau de bord
+     */
+    public static boolean isReliable(Map<String, Object> node) {
+        return node != null && !Boolean.TRUE.equals(node.get(A_RECONCILIER));
+    }
+
+    /**
+     * Mêmes valeurs de compteurs (dates et marqueur ignorés)
+     */
+    public static boolean sameCounters(Map<String, Object> stored, Map<String, Object> expected) {
+        if (stored == null) {
+            return false;
+        }
+        for (String counter : COUNTERS) {
+            if (counter(stored, counter) != counter(expected, counter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Statistiques au format attendu par le tableau de bord (index.html et /dashboard/api/stats)
+     */
+    public static Map<String, Object> toDashboard(Map<String, Object> node) {
+        int pendingRappels = counter(node, PENDING_RAPPELS);
+        int pendingAlertes = counter(node, PENDING_ALERTES);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("totalMachines", counter(node, TOTAL_MACHINES));
+        stats.put("openTickets", counter(node, OPEN_TICKETS));
+        // Maintenances en attente = rappels + alertes non vérifiés
+        stats.put("pendingMaintenance", pendingRappels + pendingAlertes);
+        stats.put("activeRepairs", 0);
+        stats.put("completedMaintenance", counter(node, COMPLETED_MAINTENANCE));
+        stats.put("urgentTickets", counter(node, URGENT_TICKETS));
+        stats.put("pendingRappels", pendingRappels);
+        stats.put("pendingAlertes", pendingAlertes);
+        return stats;
+    }
+
+    private static int counter(Map<String, Object> node, String counter) {
+        return node != null && node.get(counter) instanceof Number number ? number.intValue() : 0;
+    }
+
+    private static void add(Map<String, Long> totals, Map<String, Long> contribution) {
+        contribution.forEach((counter, value) -> totals.merge(counter, value, Long::sum));
+    }
+}
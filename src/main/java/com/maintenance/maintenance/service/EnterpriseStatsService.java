@@ -0,0 +1,152 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.HistoriqueVerification;
+import com.maintenance.maintenance.model.entity.Machine;
+import com.maintenance.maintenance.model.entity.Rappel;
+import com.maintenance.maintenance.model.entity.Ticket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistiques du tableau de bord servies par les compteurs statistiquesEntreprises/{entrepriseId}
+ * Les compteurs sont tenus à jour par FirebaseRealtimeService à chaque écriture ; le tableau de bord ne lit
+ * que ce petit nœud. Un nœud absent ou marqué à réconcilier est recompté à partir des collections,
+ * et un réconciliateur périodique recompte toutes les entreprises pour corriger une éventuelle dérive.
+ */
+@Service
+public class EnterpriseStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EnterpriseStatsService.class);
+
+    @Autowired
+    private FirebaseRealtimeService firebaseRealtimeService;
+
+    private final AtomicLong counterReads = new AtomicLong();
+    private final AtomicLong recounts = new AtomicLong();
+    private final AtomicLong driftsCorrected = new AtomicLong();
+    private volatile long lastReconciliation = 0L;
+
+    /**
+     * Statistiques d'une entreprise : une seule lecture du nœud des compteurs dans le cas courant
+     */
+    public CompletableFuture<Map<String, Object>> getStatisticsAsync(String entrepriseId) {
+        if (!StringUtils.hasText(entrepriseId)) {
+            return CompletableFuture.completedFuture(EnterpriseStatsCounters.toDashboard(EnterpriseStatsCounters.empty()));
+        }
+        return firebaseRealtimeService.getEnterpriseStatsAsync(entrepriseId)
+            .exceptionally(e -> {
+                logger.warn("Compteurs statistiques de {} illisibles: {}", entrepriseId, e.getMessage());
+                return null;
+            })
+            .thenCompose(node -> {
+                if (EnterpriseStatsCounters.isReliable(node)) {
+                    counterReads.incrementAndGet();
+                    return CompletableFuture.completedFuture(node);
+                }
+                // Recomptage impossible : dernières valeurs connues (ou zéro) plutôt qu'un tableau de bord en erreur
+                return recount(entrepriseId).exceptionally(e -> {
+                    logger.warn("Recomptage des statistiques de {} impossible: {}", entrepriseId, e.getMessage());
+                    return node != null ? node : EnterpriseStatsCounters.empty();
+                });
+            })
+            .thenApply(EnterpriseStatsCounters::toDashboard);
+    }
+
+    /**
+     * Recompte les compteurs d'une entreprise à partir de ses collections et les enregistre
+     */
+    public CompletableFuture<Map<String, Object>> recount(String entrepriseId) {
+        return count(entrepriseId).thenApply(counters -> {
+            save(entrepriseId, counters);
+            return counters;
+        });
+    }
+
+    private CompletableFuture<Map<String, Object>> count(String entrepriseId) {
+        recounts.incrementAndGet();
+        CompletableFuture<List<Machine>> machinesFuture = firebaseRealtimeService.getMachinesForEnterpriseAsync(entrepriseId);
+        CompletableFuture<List<Ticket>> ticketsFuture = firebaseRealtimeService.getTicketsForEnterpriseAsync(entrepriseId);
+        CompletableFuture<List<Rappel>> rappelsFuture = firebaseRealtimeService.getRappelsForEnterpriseAsync(entrepriseId);
+        CompletableFuture<List<Alerte>> alertesFuture = firebaseRealtimeService.getAlertesForEnterpriseAsync(entrepriseId);
+        CompletableFuture<List<HistoriqueVerification>> historiquesFuture =
+            firebaseRealtimeService.getHistoriqueVerificationsForEnterpriseAsync(entrepriseId);
+
+        // Une lecture en échec fait échouer le recomptage : des compteurs enregistrés
+        // à partir d'une collection manquante resteraient faux jusqu'à la réconciliation suivante
+        return CompletableFuture.allOf(machinesFuture, ticketsFuture, rappelsFuture, alertesFuture, historiquesFuture)
+            .thenApply(v -> EnterpriseStatsCounters.compute(machinesFuture.join(), ticketsFuture.join(),
+                rappelsFuture.join(), alertesFuture.join(), historiquesFuture.join()));
+    }
+
+    private void save(String entrepriseId, Map<String, Object> counters) {
+        try {
+            firebaseRealtimeService.saveEnterpriseStats(entrepriseId, counters);
+        } catch (Exception e) {
+            logger.warn("Compteurs statistiques de {} non enregistrés: {}", entrepriseId, e.getMessage());
+        }
+    }
+
+    /**
+     * Réconciliation périodique : recompte chaque entreprise et corrige les compteurs qui ont dérivé
+     */
+    @Scheduled(initialDelayString = "${stats.reconcile.initial-delay-ms:120000}",
+               fixedDelayString = "${stats.reconcile.interval-ms:3600000}")
+    public void reconcileAll() {
+        try {
+            int corriges = 0;
+            List<Map<String, Object>> enterprises = firebaseRealtimeService.getAllEnterprises();
+            for (Map<String, Object> enterprise : enterprises) {
+                Object entrepriseId = enterprise.get("entrepriseId");
+                if (entrepriseId != null && reconcile(entrepriseId.toString())) {
+                    corriges++;
+                }
+            }
+            lastReconciliation = System.currentTimeMillis();
+            if (corriges > 0) {
+                logger.info("Réconciliation des statistiques : {} entreprise(s) corrigée(s) sur {}", corriges, enterprises.size());
+            }
+        } catch (Exception e) {
+            logger.error("Erreur lors de la réconciliation des statistiques: {}", e.getMessage(), e);
+        }
+    }
+
+    private boolean reconcile(String entrepriseId) {
+        try {
+            Map<String, Object> stored = firebaseRealtimeService.getEnterpriseStatsAsync(entrepriseId).get();
+            Map<String, Object> counters = count(entrepriseId).get();
+            if (EnterpriseStatsCounters.isReliable(stored) && EnterpriseStatsCounters.sameCounters(stored, counters)) {
+                return false;
+            }
+            save(entrepriseId, counters);
+            driftsCorrected.incrementAndGet();
+            logger.info("Compteurs statistiques de {} corrigés: {} -> {}", entrepriseId, stored, counters);
+            return true;
+        } catch (Exception e) {
+            logger.warn("Réconciliation des statistiques de {} impossible: {}", entrepriseId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Indicateurs : lectures servies par les compteurs, recomptages, dérives corrigées
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("counterReads", counterReads.get());
+        stats.put("recounts", recounts.get());
+        stats.put("driftsCorrected", driftsCorrected.get());
+        stats.put("lastReconciliation", lastReconciliation);
+        return stats;
+    }
+}
@@ -0,0 +1,443 @@
+package com.maintenance.maintenance.service;
+
+import com.google.firebase.database.DataSnapshot;
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.Commentaire;
+import com.maintenance.maintenance.model.entity.Component;
+import com.maintenance.maintenance.model.entity.HistoriqueVerification;
+import com.maintenance.maintenance.model.entity.Machine;
+import com.maintenance.maintenance.model.entity.Rappel;
+import com.maintenance.maintenance.model.entity.Stock;
+import com.maintenance.maintenance.model.entity.Ticket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Décodage des entités Firebase en une seule passe
+ * Chaque nœud est matérialisé une fois via getValue() puis les champs sont lus dans la Map obtenue,
+ * au lieu d'un snapshot enfant (child().getValue()) par champ.
+ * Les règles de tolérance (valeurs absentes, nombres stockés en texte, anciens formats) sont celles des mappers d'origine.
+ */
+public final class FirebaseEntityDecoder {
+
+    private FirebaseEntityDecoder() {
+    }
+
+    /**
+     * Matérialise un nœud en Map ; un nœud absent ou qui n'est pas un objet donne une Map vide
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> fields(DataSnapshot snapshot) {
+        Object value = snapshot != null ? snapshot.getValue() : null;
+        return value instanceof Map ? (Map<String, Object>) value : Collections.emptyMap();
+    }
+
+    // ========== ENTITÉS ==========
+
+    public static Machine machine(Map<String, Object> data, String entrepriseId, String machineId) {
+        Machine machine = new Machine();
+        machine.setMachineId(machineId);
+        machine.setEntrepriseId(entrepriseId);
+        machine.setNom(text(data, "nom"));
+        machine.setNumeroSerie(text(data, "numeroSerie"));
+        machine.setEmplacement(text(data, "emplacement"));
+        machine.setNotes(text(data, "notes"));
+        machine.setCategoryId(readLong(data, "categoryId"));
+        machine.setCategoryName(readString(data, "categoryName"));
+        machine.setCategoryDescription(readString(data, "categoryDescription"));
+        machine.setOperationnel(flag(data, "operationnel", true)); // Par défaut opérationnel
+        machine.setEnReparation(flag(data, "enReparation", false));
+        machine.setEnProgrammation(flag(data, "enProgrammation", false));
+        machine.setAdresseIP(readString(data, "adresseIP"));
+        machine.setMachinePrincipaleId(readString(data, "machinePrincipaleId"));
+        machine.setEstMachineSecours(flag(data, "estMachineSecours", false));
+        machine.setEstMachineEntrepot(flag(data, "estMachineEntrepot", false));
+
+        // Suivi des modifications
+        machine.setCreePar(readString(data, "creePar"));
+        machine.setCreeLe(readLong(data, "creeLe"));
+        machine.setModifiePar(readString(data, "modifiePar"));
+        machine.setModifieLe(readLong(data, "modifieLe"));
+        machine.setSupprimePar(readString(data, "supprimePar"));
+        machine.setSupprimeLe(readLong(data, "supprimeLe"));
+        machine.setSupprime(flag(data, "supprime", false));
+
+        machine.setPhotos(photos(data.get("photos")));
+        Long dateCreation = number(data, "dateCreation");
+        if (dateCreation != null) {
+            machine.setDateCreation(dateCreation);
+        }
+        Long dateMiseAJour = number(data, "dateMiseAJour");
+        if (dateMiseAJour != null) {
+            machine.setDateMiseAJour(dateMiseAJour);
+        }
+
+        // Champs personnalisés : uniquement si le nœud existe
+        Map<String, Object> champsPersonnalises = champsPersonnalises(data.get("champsPersonnalises"));
+        if (champsPersonnalises != null) {
+            machine.setChampsPersonnalises(champsPersonnalises);
+        }
+        return machine;
+    }
+
+    public static Component component(Map<String, Object> data, String entrepriseId, String componentId) {
+        Component component = new Component();
+        component.setComponentId(componentId);
+        component.setEntrepriseId(entrepriseId);
+        component.setMachineId(readString(data, "machineId"));
+        component.setCategoryId(readLong(data, "categoryId"));
+        component.setCategoryName(readString(data, "categoryName"));
+        component.setNom(readString(data, "nom"));
+        component.setNumeroSerie(readString(data, "numeroSerie"));
+        component.setEtat(readString(data, "etat"));
+        component.setNotes(readString(data, "notes"));
+        component.setLocation(readString(data, "location"));
+        component.setTypePeripherique(readString(data, "typePeripherique"));
+        component.setPhotos(photos(data.get("photos")));
+        Long creeLe = number(data, "creeLe");
+        if (creeLe != null) {
+            component.setCreeLe(creeLe);
+        }
+        Long modifieLe = number(data, "modifieLe");
+        if (modifieLe != null) {
+            component.setModifieLe(modifieLe);
+        }
+        component.setCreePar(readString(data, "creePar"));
+        component.setModifiePar(readString(data, "modifiePar"));
+        return component;
+    }
+
+    public static Stock stock(Map<String, Object> data, String entrepriseId, String stockId) {
+        Stock stock = new Stock();
+        stock.setStockId(stockId);
+        stock.setEntrepriseId(entrepriseId);
+        stock.setMachineId(readString(data, "machineId"));
+        stock.setMachineNom(readString(data, "machineNom"));
+        stock.setNomProduit(readString(data, "nomProduit"));
+        stock.setReference(readString(data, "reference"));
+        stock.setQuantite(readInteger(data, "quantite"));
+        stock.setUnite(readString(data, "unite"));
+        stock.setPrixUnitaire(readDouble(data, "prixUnitaire"));
+        stock.setEmplacement(readString(data, "emplacement"));
+        stock.setSeuilMinimum(readInteger(data, "seuilMinimum"));
+        stock.setFournisseur(readString(data, "fournisseur"));
+        stock.setNotes(readString(data, "notes"));
+        Long dateCreation = number(data, "dateCreation");
+        if (dateCreation != null) {
+            stock.setDateCreation(dateCreation);
+        }
+        Long dateMiseAJour = number(data, "dateMiseAJour");
+        if (dateMiseAJour != null) {
+            stock.setDateMiseAJour(dateMiseAJour);
+        }
+        return stock;
+    }
+
+    public static Ticket ticket(Map<String, Object> data, String entrepriseId, String ticketId) {
+        Ticket ticket = new Ticket();
+        ticket.setTicketId(ticketId);
+        ticket.setEntrepriseId(entrepriseId);
+        ticket.setTitre(readString(data, "titre"));
+        ticket.setDescription(readString(data, "description"));
+        ticket.setStatut(readString(data, "statut"));
+        ticket.setPriorite(readString(data, "priorite"));
+        ticket.setMachineId(readString(data, "machineId"));
+        ticket.setMachineNom(readString(data, "machineNom"));
+        ticket.setAssigneA(readString(data, "assigneA"));
+        ticket.setAssigneANom(readString(data, "assigneANom"));
+        ticket.setCreePar(readString(data, "creePar"));
+        ticket.setCreeParNom(readString(data, "creeParNom"));
+        ticket.setDateCreation(readLong(data, "dateCreation"));
+        ticket.setDateModification(readLong(data, "dateModification"));
+        ticket.setDateTerminaison(readLong(data, "dateTerminaison"));
+        ticket.setDateArchivage(readLong(data, "dateArchivage"));
+        ticket.setDateEcheance(readLong(data, "dateEcheance"));
+        ticket.setCategorie(readString(data, "categorie"));
+
+        // Gérer les commentaires
+        List<Commentaire> commentaires = new ArrayList<>();
+        if (data.get("commentaires") instanceof List<?> list) {
+            for (Object value : list) {
+                if (value instanceof Map) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> commentMap = (Map<String, Object>) value;
+                    Commentaire commentaire = new Commentaire();
+                    commentaire.setTexte((String) commentMap.get("texte"));
+                    commentaire.setAuteurId((String) commentMap.get("auteurId"));
+                    commentaire.setAuteurNom((String) commentMap.get("auteurNom"));
+                    commentaire.setImageUrl((String) commentMap.get("imageUrl"));
+                    if (commentMap.get("dateCreation") instanceof Number dateCreation) {
+                        commentaire.setDateCreation(dateCreation.longValue());
+                    }
+                    commentaires.add(commentaire);
+                } else if (value != null) {
+                    // Compatibilité avec l'ancien format (String)
+                    Commentaire commentaire = new Commentaire();
+                    commentaire.setTexte(value.toString());
+                    commentaire.setAuteurId("unknown");
+                    commentaire.setAuteurNom("Utilisateur");
+                    commentaires.add(commentaire);
+                }
+            }
+        }
+        ticket.setCommentaires(commentaires);
+        return ticket;
+    }
+
+    /**
+     * Une valeur de type inattendu rejette l'alerte entière (null), comme getValue(Class) auparavant
+     */
+    public static Alerte alerte(Map<String, Object> data, String alerteId) {
+        try {
+            Alerte alerte = new Alerte();
+            alerte.setAlerteId(alerteId);
+            alerte.setEntrepriseId(strictString(data, "entrepriseId"));
+            alerte.setMachineId(strictString(data, "machineId"));
+            alerte.setMachineNom(strictString(data, "machineNom"));
+            alerte.setDescription(strictString(data, "description"));
+            alerte.setDateVerification(number(data, "dateVerification"));
+            alerte.setEnvoye(strictBoolean(data, "envoye"));
+            alerte.setDateEnvoi(number(data, "dateEnvoi"));
+            alerte.setCreePar(strictString(data, "creePar"));
+            alerte.setCreeParNom(strictString(data, "creeParNom"));
+            alerte.setDateCreation(number(data, "dateCreation"));
+            alerte.setDateModification(number(data, "dateModification"));
+            alerte.setActiverRelance(strictBoolean(data, "activerRelance"));
+            alerte.setNombreRelances(numberInt(data, "nombreRelances"));
+            alerte.setNombreRelancesEnvoyees(numberInt(data, "nombreRelancesEnvoyees"));
+            alerte.setDateDerniereRelance(number(data, "dateDerniereRelance"));
+            alerte.setVerifie(strictBoolean(data, "verifie"));
+            alerte.setDateVerificationReelle(number(data, "dateVerificationReelle"));
+            return alerte;
+        } catch (Exception e) {
+            System.err.println("Erreur lors du mapping de l'alerte: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static Rappel rappel(Map<String, Object> data, String rappelId) {
+        try {
+            Rappel rappel = new Rappel();
+            rappel.setRappelId(rappelId);
+            rappel.setEntrepriseId(strictString(data, "entrepriseId"));
+            rappel.setMachineId(strictString(data, "machineId"));
+            rappel.setMachineNom(strictString(data, "machineNom"));
+            rappel.setDescription(strictString(data, "description"));
+            rappel.setDateVerification(number(data, "dateVerification"));
+            rappel.setEnvoye(strictBoolean(data, "envoye"));
+            rappel.setDateEnvoi(number(data, "dateEnvoi"));
+            rappel.setCreePar(strictString(data, "creePar"));
+            rappel.setCreeParNom(strictString(data, "creeParNom"));
+            rappel.setDateCreation(number(data, "dateCreation"));
+            rappel.setDateModification(number(data, "dateModification"));
+            rappel.setActiverRelance(strictBoolean(data, "activerRelance"));
+            rappel.setNombreRelances(numberInt(data, "nombreRelances"));
+            rappel.setNombreRelancesEnvoyees(numberInt(data, "nombreRelancesEnvoyees"));
+            rappel.setDateDerniereRelance(number(data, "dateDerniereRelance"));
+            rappel.setVerifie(strictBoolean(data, "verifie"));
+            rappel.setDateVerificationReelle(number(data, "dateVerificationReelle"));
+            return rappel;
+        } catch (Exception e) {
+            System.err.println("Erreur lors du mapping du rappel: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static HistoriqueVerification historiqueVerification(Map<String, Object> data, String historiqueId) {
+        try {
+            HistoriqueVerification historique = new HistoriqueVerification();
+            historique.setHistoriqueId(historiqueId);
+            historique.setEntrepriseId(strictString(data, "entrepriseId"));
+            historique.setMachineId(strictString(data, "machineId"));
+            historique.setMachineNom(strictString(data, "machineNom"));
+            historique.setDescription(strictString(data, "description"));
+            historique.setDateVerificationProgrammee(number(data, "dateVerificationProgrammee"));
+            historique.setDateVerificationReelle(number(data, "dateVerificationReelle"));
+            historique.setVerifiePar(strictString(data, "verifiePar"));
+            historique.setVerifieParNom(strictString(data, "verifieParNom"));
+            historique.setDateCreation(number(data, "dateCreation"));
+            return historique;
+        } catch (Exception e) {
+            System.err.println("Erreur lors du mapping de l'historique: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // ========== LECTURE DES CHAMPS ==========
+
+    /**
+     * Texte nettoyé, null si absent ou vide
+     */
+    public static String readString(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        if (value == null) {
+            return null;
+        }
+        String stringValue = value.toString().trim();
+        return stringValue.isEmpty() ? null : stringValue;
+    }
+
+    /**
+     * Texte brut, chaîne vide si absent
+     */
+    public static String text(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        return value != null ? value.toString() : "";
+    }
+
+    /**
+     * Entier long, accepte un nombre ou un texte numérique
+     */
+    public static Long readLong(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        if (value instanceof String stringValue) {
+            String trimmed = stringValue.trim();
+            if (!trimmed.isEmpty()) {
+                try {
+                    return Long.parseLong(trimmed);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return null;
+    }
+
+    public static Integer readInteger(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        if (value instanceof Number number) {
+            return number.intValue();
+        }
+        if (value instanceof String stringValue) {
+            String trimmed = stringValue.trim();
+            if (!trimmed.isEmpty()) {
+                try {
+                    return Integer.parseInt(trimmed);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return null;
+    }
+
+    public static Double readDouble(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (value instanceof String stringValue) {
+            String trimmed = stringValue.trim();
+            if (!trimmed.isEmpty()) {
+                try {
+                    return Double.parseDouble(trimmed);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Entier long uniquement si la valeur stockée est numérique
+     */
+    public static Long number(Map<String, Object> data, String key) {
+        return data.get(key) instanceof Number number ? number.longValue() : null;
+    }
+
+    public static Integer numberInt(Map<String, Object> data, String key) {
+        return data.get(key) instanceof Number number ? number.intValue() : null;
+    }
+
+    /**
+     * Booléen tolérant ("true"/"false" en texte), valeur par défaut si absent
+     */
+    public static boolean flag(Map<String, Object> data, String key, boolean defaultValue) {
+        Object value = data.get(key);
+        if (value instanceof Boolean booleanValue) {
+            return booleanValue;
+        }
+        return value != null ? Boolean.parseBoolean(value.toString()) : defaultValue;
+    }
+
+    /**
+     * Texte strict : une valeur d'un autre type est une erreur
+     */
+    public static String strictString(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        throw new IllegalArgumentException("Impossible de convertir " + key + " (" + value.getClass().getSimpleName() + ") en String");
+    }
+
+    public static Boolean strictBoolean(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        if (value == null || value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        throw new IllegalArgumentException("Impossible de convertir " + key + " (" + value.getClass().getSimpleName() + ") en Boolean");
+    }
+
+    /**
+     * Photos : liste, ancien format objet (trié par clé) ou URL unique ; les entrées vides sont ignorées
+     */
+    public static List<String> photos(Object rawPhotos) {
+        List<String> photos = new ArrayList<>();
+        if (rawPhotos instanceof List<?> list) {
+            for (Object value : list) {
+                if (value instanceof String photo && !photo.isBlank()) {
+                    photos.add(photo);
+                }
+            }
+        } else if (rawPhotos instanceof Map<?, ?> map) {
+            List<String> keys = new ArrayList<>();
+            for (Object key : map.keySet()) {
+                if (key instanceof String stringKey) {
+                    keys.add(stringKey);
+                }
+            }
+            keys.sort(String::compareTo);
+            for (String key : keys) {
+                Object value = map.get(key);
+                if (value instanceof String photo && !photo.isBlank()) {
+                    photos.add(photo);
+                }
+            }
+        } else if (rawPhotos instanceof String photo && !photo.isBlank()) {
+            photos.add(photo);
+        }
+        return photos;
+    }
+
+    /**
+     * Champs personnalisés clé → valeur non nulle ; null si le nœud n'existe pas
+     * Firebase restitue sous forme de liste un objet dont les clés sont des indices consécutifs.
+     */
+    private static Map<String, Object> champsPersonnalises(Object raw) {
+        if (raw instanceof Map<?, ?> map) {
+            Map<String, Object> champs = new HashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    champs.put(entry.getKey().toString(), entry.getValue());
+                }
+            }
+            return champs;
+        }
+        if (raw instanceof List<?> list) {
+            Map<String, Object> champs = new HashMap<>();
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i) != null) {
+                    champs.put(String.valueOf(i), list.get(i));
+                }
+            }
+            return champs;
+        }
+        return raw != null ? new HashMap<>() : null;
+    }
+}
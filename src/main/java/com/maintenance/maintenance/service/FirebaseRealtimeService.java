@@ -3,27 +3,81 @@ package com.maintenance.maintenance.service;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.Transaction;
 import com.google.firebase.database.ValueEventListener;
 import com.maintenance.maintenance.model.entity.Component;
 import com.maintenance.maintenance.model.entity.Machine;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 public class FirebaseRealtimeService {
 
+    /**
+     * Annuaire léger des entreprises (infos de base uniquement, sans machines/tickets/alertes...)
+     * Maintenu à chaque création, modification et suppression d'entreprise
+     */
+    private static final String ENTERPRISE_INDEX_NODE = "entreprisesIndex";
+    // Index des rôles : rolesIndex/{rôle}/{userId} = email
+    public static final String ROLE_INDEX_NODE = "rolesIndex";
+    private static final String ROLE_INDEX_META_NODE = "rolesIndexMeta";
+
     @Autowired
     private DatabaseReference databaseReference;
 
+    @Autowired
+    private EnterpriseReplicaService replicaService;
+
+    @Autowired
+    private SnapshotDecodeExecutor snapshotDecoder;
+
+    @Autowired
+    private DataVersionService dataVersions;
+
+    @Autowired
+    private SearchIndexService searchIndex;
+
+    @Autowired
+    private MachineFacetIndexService machineFacets;
+
+    @Autowired
+    private SecoursGraphService secoursGraph;
+
+    /**
+     * Délai maximal des lectures asynchrones (méthodes *Async)
+     */
+    @Value("${firebase.async.deadline-seconds:15}")
+    private long asyncDeadlineSeconds;
+
+    /**
+     * Déclare les collections servies par la réplique mémoire (si activée)
+     */
+    @PostConstruct
+    void registerReplicaCollections() {
+        replicaService.registerCollection("machines", FirebaseEntityDecoder::machine);
+        replicaService.registerCollection("components", FirebaseEntityDecoder::component);
+        replicaService.registerCollection("tickets", FirebaseEntityDecoder::ticket);
+        replicaService.registerCollection("alertes", (data, entrepriseId, alerteId) -> FirebaseEntityDecoder.alerte(data, alerteId));
+        replicaService.registerCollection("rappels", (data, entrepriseId, rappelId) -> FirebaseEntityDecoder.rappel(data, rappelId));
+    }
+
     /**
      * Vérifie si c'est le premier utilisateur dans la base de données
      */
@@ -86,53 +140,14 @@ public class FirebaseRealtimeService {
             userStructure.put("horairesTravail", horairesTravail);
 
             // 3. Planning - Firebase Realtime Database supprime les objets vides
-            // On crée avec un objet vide qui sera conservé
+            // On le crée avec un marqueur pour que Firebase le conserve
             Map<String, Object> planning = new HashMap<>();
+            planning.put("_empty", false);
             userStructure.put("planning", planning);
 
-            // 4. Entreprises - Firebase Realtime Database supprime les objets vides
-            Map<String, Object> entreprises = new HashMap<>();
-            userStructure.put("entreprises", entreprises);
-
-            // Écrire dans la base de données
-            CompletableFuture<Void> future = new CompletableFuture<>();
-            CountDownLatch latch = new CountDownLatch(1);
-
-            // Créer le document utilisateur
-            databaseReference.child("utilisateurs").child(userId).setValue(userStructure, new DatabaseReference.CompletionListener() {
-                @Override
-                public void onComplete(DatabaseError error, DatabaseReference ref) {
-                    if (error != null) {
-                        future.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
-                        latch.countDown();
-                    } else {
-                        // Firebase peut avoir supprimé planning s'il était vide
-                        // On le recrée explicitement avec updateChildren
-                        Map<String, Object> updates = new HashMap<>();
-                        
-                        // Créer planning avec un marqueur pour que Firebase le conserve
-                        Map<String, Object> planningInit = new HashMap<>();
-                        planningInit.put("_empty", false); // Marqueur pour conserver la structure
-                        updates.put("planning", planningInit);
-                        
-                        // Supprimer le nœud entreprises s'il existe (ancienne structure)
-                        updates.put("entreprises", null);
-                        
-                        databaseReference.child("utilisateurs").child(userId).updateChildren(updates, new DatabaseReference.CompletionListener() {
-                            @Override
-                            public void onComplete(DatabaseError updateError, DatabaseReference updateRef) {
-                                // Note: Firebase Realtime Database supprime automatiquement les objets vides
-                                // On garde le placeholder _empty pour que la structure planning soit visible
-                                future.complete(null);
-                                latch.countDown();
-                            }
-                        });
-                    }
-                }
-            });
+            // 4. Entreprises : plus sous utilisateurs/ (ancienne structure), le nœud remplacé n'en contient pas
 
-            latch.await(10, TimeUnit.SECONDS);
-            future.get();
+            writeUserStructure(userId, userStructure);
 
         } catch (Exception e) {
             throw new Exception("Erreur lors de l'initialisation de la structure utilisateur: " + e.getMessage());
@@ -177,51 +192,47 @@ public class FirebaseRealtimeService {
                 userStructure.put("horairesTravail", horairesTravail);
             }
 
-            // 3. Planning (spécifique à l'utilisateur - événements exceptionnels)
+            // 3. Planning (spécifique à l'utilisateur - événements exceptionnels), avec un marqueur
+            // pour que Firebase conserve le nœud
             Map<String, Object> planning = new HashMap<>();
+            planning.put("_empty", false);
             userStructure.put("planning", planning);
 
             // Note: Les entreprises ne sont plus sous utilisateurs/, elles sont dans entreprises/ au niveau racine
 
-            // Écrire dans la base de données
-            CompletableFuture<Void> future = new CompletableFuture<>();
-            CountDownLatch latch = new CountDownLatch(1);
-
-            databaseReference.child("utilisateurs").child(userId).setValue(userStructure, new DatabaseReference.CompletionListener() {
-                @Override
-                public void onComplete(DatabaseError error, DatabaseReference ref) {
-                    if (error != null) {
-                        future.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
-                        latch.countDown();
-                    } else {
-                        // Forcer la création de planning avec un marqueur
-                        Map<String, Object> updates = new HashMap<>();
-                        Map<String, Object> planningInit = new HashMap<>();
-                        planningInit.put("_empty", false);
-                        updates.put("planning", planningInit);
-                        
-                        // Supprimer le nœud entreprises s'il existe (migration)
-                        updates.put("entreprises", null);
-                        
-                        databaseReference.child("utilisateurs").child(userId).updateChildren(updates, new DatabaseReference.CompletionListener() {
-                            @Override
-                            public void onComplete(DatabaseError updateError, DatabaseReference updateRef) {
-                                future.complete(null);
-                                latch.countDown();
-                            }
-                        });
-                    }
-                }
-            });
-
-            latch.await(10, TimeUnit.SECONDS);
-            future.get();
+            writeUserStructure(userId, userStructure);
 
         } catch (Exception e) {
             throw new Exception("Erreur lors de l'initialisation de la structure utilisateur: " + e.getMessage());
         }
     }
 
+    /**
+     * Écrit le profil (nœud utilisateurs/{id} remplacé) et son entrée de l'index des rôles
+     * en une seule mise à jour multi-chemins : les deux sont écrits, ou aucun
+     */
+    private void writeUserStructure(String userId, Map<String, Object> userStructure) throws Exception {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("utilisateurs/" + userId, userStructure);
+        updates.put(roleIndexPath(userStructure.get("role"), userId), userStructure.get("email"));
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        databaseReference.updateChildren(updates, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
+            } else {
+                future.complete(null);
+            }
+            latch.countDown();
+        });
+
+        if (!latch.await(10, TimeUnit.SECONDS)) {
+            throw new Exception("Timeout lors de l'écriture du profil (10 secondes)");
+        }
+        future.get();
+    }
+
     /**
      * Initialise la structure d'une entreprise (structure simplifiée)
      * Nouvelles entreprises dans entreprises/ au même niveau que utilisateurs/
@@ -258,10 +269,16 @@ public class FirebaseRealtimeService {
             CountDownLatch latch = new CountDownLatch(1);
 
             System.out.println("Écriture dans Firebase: entreprises/" + entrepriseId);
-            
-            databaseReference.child("entreprises")
-                .child(entrepriseId)
-                .setValue(entrepriseStructure, new DatabaseReference.CompletionListener() {
+
+            // Écriture multi-chemins : l'entreprise et son entrée d'annuaire sont créées ensemble
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("entreprises/" + entrepriseId, entrepriseStructure);
+            updates.put(ENTERPRISE_INDEX_NODE + "/" + entrepriseId, buildEnterpriseSummary(entrepriseStructure));
+            updates.put(EnterpriseStatsCounters.path(entrepriseId), EnterpriseStatsCounters.empty());
+            updates.put(ReportRollups.path(entrepriseId) + "/" + ReportRollups.META, ReportRollups.completeMeta());
+
+            databaseReference
+                .updateChildren(updates, new DatabaseReference.CompletionListener() {
                     @Override
                     public void onComplete(DatabaseError error, DatabaseReference ref) {
                         if (error != null) {
@@ -280,6 +297,7 @@ public class FirebaseRealtimeService {
                 throw new Exception("Timeout lors de l'écriture de l'entreprise (10 secondes)");
             }
             future.get();
+            dataVersions.bumpEnterprise(entrepriseId);
             System.out.println("=== initializeEnterpriseStructure: Terminé avec succès ===");
 
         } catch (Exception e) {
@@ -472,18 +490,20 @@ public class FirebaseRealtimeService {
                             
                             if (userId != null) {
                                 user.put("userId", userId);
-                                user.put("nom", userSnapshot.child("nom").getValue() != null ? userSnapshot.child("nom").getValue() : "");
-                                user.put("prenom", userSnapshot.child("prenom").getValue() != null ? userSnapshot.child("prenom").getValue() : "");
-                                user.put("email", userSnapshot.child("email").getValue() != null ? userSnapshot.child("email").getValue() : "");
-                                user.put("nomUtilisateur", userSnapshot.child("nomUtilisateur").getValue() != null ? userSnapshot.child("nomUtilisateur").getValue() : "");
-                                user.put("role", userSnapshot.child("role").getValue() != null ? userSnapshot.child("role").getValue() : "utilisateur");
-                                user.put("statut", userSnapshot.child("statut").getValue() != null ? userSnapshot.child("statut").getValue() : "inactif");
-                                user.put("telephone", userSnapshot.child("telephone").getValue() != null ? userSnapshot.child("telephone").getValue() : "");
-                                user.put("numeroTelephone", userSnapshot.child("numeroTelephone").getValue() != null ? userSnapshot.child("numeroTelephone").getValue() : "");
-                                user.put("dateCreation", userSnapshot.child("dateCreation").getValue());
+                                // Nœud matérialisé une seule fois, champs lus dans la Map
+                                Map<String, Object> data = FirebaseEntityDecoder.fields(userSnapshot);
+                                user.put("nom", data.getOrDefault("nom", ""));
+                                user.put("prenom", data.getOrDefault("prenom", ""));
+                                user.put("email", data.getOrDefault("email", ""));
+                                user.put("nomUtilisateur", data.getOrDefault("nomUtilisateur", ""));
+                                user.put("role", data.getOrDefault("role", "utilisateur"));
+                                user.put("statut", data.getOrDefault("statut", "inactif"));
+                                user.put("telephone", data.getOrDefault("telephone", ""));
+                                user.put("numeroTelephone", data.getOrDefault("numeroTelephone", ""));
+                                user.put("dateCreation", data.get("dateCreation"));
                                 
                                 // Récupérer les horaires de travail
-                                Object horairesTravail = userSnapshot.child("horairesTravail").getValue();
+                                Object horairesTravail = data.get("horairesTravail");
                                 if (horairesTravail != null) {
                                     user.put("horairesTravail", horairesTravail);
                                     System.out.println("Horaires récupérés pour " + userId + ": " + horairesTravail);
@@ -550,18 +570,19 @@ public class FirebaseRealtimeService {
                 if (snapshot.exists()) {
                     Map<String, Object> user = new HashMap<>();
                     user.put("userId", userId);
-                    user.put("nom", snapshot.child("nom").getValue());
-                    user.put("prenom", snapshot.child("prenom").getValue());
-                    user.put("email", snapshot.child("email").getValue());
-                    user.put("nomUtilisateur", snapshot.child("nomUtilisateur").getValue());
-                    user.put("role", snapshot.child("role").getValue());
-                    user.put("statut", snapshot.child("statut").getValue());
-                    user.put("telephone", snapshot.child("telephone").getValue());
-                    user.put("numeroTelephone", snapshot.child("numeroTelephone").getValue());
-                    user.put("dateCreation", snapshot.child("dateCreation").getValue());
+                    Map<String, Object> data = FirebaseEntityDecoder.fields(snapshot);
+                    user.put("nom", data.get("nom"));
+                    user.put("prenom", data.get("prenom"));
+                    user.put("email", data.get("email"));
+                    user.put("nomUtilisateur", data.get("nomUtilisateur"));
+                    user.put("role", data.get("role"));
+                    user.put("statut", data.get("statut"));
+                    user.put("telephone", data.get("telephone"));
+                    user.put("numeroTelephone", data.get("numeroTelephone"));
+                    user.put("dateCreation", data.get("dateCreation"));
                     
                     // Récupérer les horaires de travail
-                    Object horairesTravail = snapshot.child("horairesTravail").getValue();
+                    Object horairesTravail = data.get("horairesTravail");
                     if (horairesTravail != null) {
                         user.put("horairesTravail", horairesTravail);
                         System.out.println("=== getUserById: Horaires récupérés pour " + userId + ": " + horairesTravail);
@@ -640,10 +661,29 @@ public class FirebaseRealtimeService {
             }
             
             if (!updates.isEmpty()) {
+                // Écriture depuis la racine : champs de l'utilisateur et index des rôles ensemble
+                Map<String, Object> rootUpdates = new HashMap<>();
+                for (Map.Entry<String, Object> field : updates.entrySet()) {
+                    rootUpdates.put("utilisateurs/" + userId + "/" + field.getKey(), field.getValue());
+                }
+                if (updates.containsKey("role") || updates.containsKey("email")) {
+                    // Rôle et email actuels : deux petites lectures, uniquement quand l'index change
+                    Object currentRole = readUserField(userId, "role");
+                    Object currentEmail = readUserField(userId, "email");
+                    Object newRole = updates.containsKey("role") ? updates.get("role") : currentRole;
+                    Object newEmail = updates.containsKey("email") ? updates.get("email") : currentEmail;
+                    if (currentRole != null) {
+                        rootUpdates.put(roleIndexPath(currentRole, userId), null);
+                    }
+                    if (newRole != null) {
+                        rootUpdates.put(roleIndexPath(newRole, userId), newEmail != null ? newEmail : "");
+                    }
+                }
+
                 CompletableFuture<Void> future = new CompletableFuture<>();
                 CountDownLatch latch = new CountDownLatch(1);
 
-                databaseReference.child("utilisateurs").child(userId).updateChildren(updates, new DatabaseReference.CompletionListener() {
+                databaseReference.updateChildren(rootUpdates, new DatabaseReference.CompletionListener() {
                     @Override
                     public void onComplete(DatabaseError error, DatabaseReference ref) {
                         if (error != null) {
@@ -664,63 +704,101 @@ public class FirebaseRealtimeService {
     }
 
     /**
-     * Récupère toutes les entreprises depuis entreprises/
+     * Récupère toutes les entreprises depuis l'annuaire entreprisesIndex/
+     * Ne télécharge que les infos de base (quelques centaines d'octets par entreprise)
+     * au lieu de tout le sous-arbre entreprises/ (machines, tickets, alertes, rappels...)
      */
     public List<Map<String, Object>> getAllEnterprises() throws Exception {
+        System.out.println("=== getAllEnterprises: Début de la récupération ===");
+
+        List<Map<String, Object>> entreprisesList = readEnterpriseList(ENTERPRISE_INDEX_NODE);
+        if (entreprisesList == null) {
+            // L'annuaire n'existe pas encore (données antérieures) : lecture complète puis reconstruction
+            System.out.println("=== getAllEnterprises: Annuaire absent, lecture de entreprises/ et reconstruction ===");
+            entreprisesList = readEnterpriseList("entreprises");
+            if (entreprisesList == null) {
+                entreprisesList = new ArrayList<>();
+            }
+            writeEnterpriseIndex(entreprisesList);
+        }
+
+        System.out.println("=== getAllEnterprises: Résultat final: " + entreprisesList.size() + " entreprises ===");
+        return entreprisesList;
+    }
+
+    /**
+     * Reconstruit l'annuaire entreprisesIndex/ à partir du nœud complet entreprises/
+     * Migration ponctuelle pour les données créées avant l'annuaire
+     * @return le nombre d'entreprises indexées
+     */
+    public int rebuildEnterpriseIndex() throws Exception {
+        List<Map<String, Object>> entreprisesList = readEnterpriseList("entreprises");
+        if (entreprisesList == null) {
+            entreprisesList = new ArrayList<>();
+        }
+        writeEnterpriseIndex(entreprisesList);
+        dataVersions.bump(DataVersionService.ENTREPRISES);
+        return entreprisesList.size();
+    }
+
+    /**
+     * Indique si l'annuaire entreprisesIndex/ existe déjà
+     */
+    public boolean enterpriseIndexExists() throws Exception {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        databaseReference.child(ENTERPRISE_INDEX_NODE).limitToFirst(1).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                future.complete(snapshot.exists());
+                latch.countDown();
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                future.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
+                latch.countDown();
+            }
+        });
+
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+            return future.get();
+        } catch (Exception e) {
+            throw new Exception("Timeout ou erreur lors de la vérification de l'annuaire des entreprises");
+        }
+    }
+
+    /**
+     * Lit la liste des entreprises sous un nœud (annuaire ou nœud complet)
+     * @return null si le nœud n'existe pas
+     */
+    private List<Map<String, Object>> readEnterpriseList(String node) throws Exception {
         CompletableFuture<List<Map<String, Object>>> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
-        List<Map<String, Object>> entreprisesList = new ArrayList<>();
 
-        System.out.println("=== getAllEnterprises: Début de la récupération ===");
-        
-        databaseReference.child("entreprises").addListenerForSingleValueEvent(new ValueEventListener() {
+        databaseReference.child(node).addListenerForSingleValueEvent(new ValueEventListener() {
             @Override
             public void onDataChange(DataSnapshot snapshot) {
                 try {
-                    System.out.println("=== getAllEnterprises: onDataChange appelé ===");
-                    System.out.println("Snapshot existe: " + snapshot.exists());
-                    
                     if (snapshot.exists()) {
-                        System.out.println("Nombre d'enfants: " + snapshot.getChildrenCount());
-                        
+                        List<Map<String, Object>> entreprisesList = new ArrayList<>();
+                        System.out.println("Nombre d'enfants sous " + node + ": " + snapshot.getChildrenCount());
+
                         for (DataSnapshot entrepriseSnapshot : snapshot.getChildren()) {
                             String entrepriseId = entrepriseSnapshot.getKey();
-                            System.out.println("Entreprise ID trouvé: " + entrepriseId);
-                            
+
                             // Ignorer les clés spéciales comme "_empty"
                             if (entrepriseId != null && !entrepriseId.startsWith("_")) {
-                                Map<String, Object> entreprise = new HashMap<>();
-                                entreprise.put("entrepriseId", entrepriseId);
-                                entreprise.put("nom", entrepriseSnapshot.child("nom").getValue() != null ? entrepriseSnapshot.child("nom").getValue() : "");
-                                // Support ancien format (adresse) et nouveau format (rue, codePostal, ville)
-                                if (entrepriseSnapshot.hasChild("rue")) {
-                                    entreprise.put("rue", entrepriseSnapshot.child("rue").getValue() != null ? entrepriseSnapshot.child("rue").getValue() : "");
-                                    entreprise.put("codePostal", entrepriseSnapshot.child("codePostal").getValue() != null ? entrepriseSnapshot.child("codePostal").getValue() : "");
-                                    entreprise.put("ville", entrepriseSnapshot.child("ville").getValue() != null ? entrepriseSnapshot.child("ville").getValue() : "");
-                                } else if (entrepriseSnapshot.hasChild("adresse")) {
-                                    // Migration: convertir adresse en rue
-                                    String adresse = entrepriseSnapshot.child("adresse").getValue() != null ? entrepriseSnapshot.child("adresse").getValue().toString() : "";
-                                    entreprise.put("rue", adresse);
-                                    entreprise.put("codePostal", "");
-                                    entreprise.put("ville", "");
-                                } else {
-                                    entreprise.put("rue", "");
-                                    entreprise.put("codePostal", "");
-                                    entreprise.put("ville", "");
-                                }
-                                entreprise.put("email", entrepriseSnapshot.child("email").getValue() != null ? entrepriseSnapshot.child("email").getValue() : "");
-                                entreprise.put("numero", entrepriseSnapshot.child("numero").getValue() != null ? entrepriseSnapshot.child("numero").getValue() : "");
-                                entreprise.put("dateCreation", entrepriseSnapshot.child("dateCreation").getValue());
-                                entreprisesList.add(entreprise);
-                                System.out.println("Entreprise ajoutée: " + entreprise);
+                                entreprisesList.add(mapEnterpriseSnapshot(entrepriseSnapshot, entrepriseId));
                             }
                         }
+                        future.complete(entreprisesList);
                     } else {
-                        System.out.println("Aucune entreprise trouvée dans la base de données");
+                        System.out.println("Aucune entreprise trouvée sous " + node);
+                        future.complete(null);
                     }
-                    
-                    System.out.println("Nombre total d'entreprises récupérées: " + entreprisesList.size());
-                    future.complete(entreprisesList);
                 } catch (Exception e) {
                     System.err.println("ERREUR dans onDataChange: " + e.getMessage());
                     e.printStackTrace();
@@ -744,9 +822,7 @@ public class FirebaseRealtimeService {
                 System.err.println("TIMEOUT lors de la récupération des entreprises");
                 throw new Exception("Timeout lors de la récupération des entreprises (15 secondes)");
             }
-            List<Map<String, Object>> result = future.get();
-            System.out.println("=== getAllEnterprises: Résultat final: " + (result != null ? result.size() : "null") + " entreprises ===");
-            return result;
+            return future.get();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new Exception("Interruption lors de la récupération des entreprises: " + e.getMessage());
@@ -757,6 +833,94 @@ public class FirebaseRealtimeService {
         }
     }
 
+    /**
+     * Écrit les entrées de l'annuaire pour une liste d'entreprises déjà mappées
+     */
+    private void writeEnterpriseIndex(List<Map<String, Object>> entreprisesList) throws Exception {
+        if (entreprisesList.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> updates = new HashMap<>();
+        for (Map<String, Object> entreprise : entreprisesList) {
+            updates.put(ENTERPRISE_INDEX_NODE + "/" + entreprise.get("entrepriseId"), buildEnterpriseSummary(entreprise));
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        databaseReference.updateChildren(updates, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
+            } else {
+                future.complete(null);
+            }
+            latch.countDown();
+        });
+
+        try {
+            boolean completed = latch.await(15, TimeUnit.SECONDS);
+            if (!completed) {
+                throw new Exception("Timeout lors de l'écriture de l'annuaire des entreprises (15 secondes)");
+            }
+            future.get();
+            System.out.println("=== Annuaire des entreprises mis à jour: " + entreprisesList.size() + " entrée(s) ===");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Exception("Interruption lors de l'écriture de l'annuaire des entreprises: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Construit l'entrée d'annuaire (infos de base uniquement) à partir des données d'une entreprise
+     */
+    private Map<String, Object> buildEnterpriseSummary(Map<String, Object> entrepriseData) {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("nom", entrepriseData.getOrDefault("nom", ""));
+        summary.put("rue", entrepriseData.getOrDefault("rue", ""));
+        summary.put("codePostal", entrepriseData.getOrDefault("codePostal", ""));
+        summary.put("ville", entrepriseData.getOrDefault("ville", ""));
+        summary.put("email", entrepriseData.getOrDefault("email", ""));
+        summary.put("numero", entrepriseData.getOrDefault("numero", ""));
+        summary.put("dateCreation", entrepriseData.get("dateCreation"));
+        return summary;
+    }
+
+    /**
+     * Mappe un nœud entreprise (annuaire ou nœud complet) vers la Map utilisée par les contrôleurs
+     * Le nœud peut être l'entrée d'annuaire ou, en repli, l'entreprise complète (machines, tickets...) :
+     * chaque champ est lu une seule fois par child() plutôt que de matérialiser tout le sous-arbre
+     */
+    private Map<String, Object> mapEnterpriseSnapshot(DataSnapshot snapshot, String entrepriseId) {
+        Map<String, Object> entreprise = new HashMap<>();
+        entreprise.put("entrepriseId", entrepriseId);
+        entreprise.put("nom", valueOrEmpty(snapshot, "nom"));
+        // Support ancien format (adresse) et nouveau format (rue, codePostal, ville)
+        if (snapshot.hasChild("rue")) {
+            entreprise.put("rue", valueOrEmpty(snapshot, "rue"));
+            entreprise.put("codePostal", valueOrEmpty(snapshot, "codePostal"));
+            entreprise.put("ville", valueOrEmpty(snapshot, "ville"));
+        } else if (snapshot.hasChild("adresse")) {
+            // Migration: convertir adresse en rue
+            entreprise.put("rue", valueOrEmpty(snapshot, "adresse").toString());
+            entreprise.put("codePostal", "");
+            entreprise.put("ville", "");
+        } else {
+            entreprise.put("rue", "");
+            entreprise.put("codePostal", "");
+            entreprise.put("ville", "");
+        }
+        entreprise.put("email", valueOrEmpty(snapshot, "email"));
+        entreprise.put("numero", valueOrEmpty(snapshot, "numero"));
+        entreprise.put("dateCreation", snapshot.child("dateCreation").getValue());
+        return entreprise;
+    }
+
+    private static Object valueOrEmpty(DataSnapshot snapshot, String key) {
+        Object value = snapshot.child(key).getValue();
+        return value != null ? value : "";
+    }
+
     /**
      * Récupère toutes les entreprises d'un utilisateur
      * Pour l'instant, retourne toutes les entreprises (on pourra ajouter une liaison plus tard)
@@ -768,52 +932,37 @@ public class FirebaseRealtimeService {
     }
 
     /**
-     * Récupère une entreprise par son ID depuis entreprises/
+     * Récupère une entreprise par son ID depuis l'annuaire (repli sur entreprises/ si absente)
      */
     public Map<String, Object> getEnterpriseById(String entrepriseId) throws Exception {
+        Map<String, Object> entreprise = readEnterpriseNode(databaseReference.child(ENTERPRISE_INDEX_NODE).child(entrepriseId), entrepriseId);
+        if (entreprise == null) {
+            entreprise = readEnterpriseNode(databaseReference.child("entreprises").child(entrepriseId), entrepriseId);
+        }
+        return entreprise;
+    }
+
+    private Map<String, Object> readEnterpriseNode(DatabaseReference ref, String entrepriseId) throws Exception {
         CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
-        databaseReference.child("entreprises").child(entrepriseId)
-            .addListenerForSingleValueEvent(new ValueEventListener() {
-                @Override
-                public void onDataChange(DataSnapshot snapshot) {
-                    if (snapshot.exists()) {
-                        Map<String, Object> entreprise = new HashMap<>();
-                        entreprise.put("entrepriseId", entrepriseId);
-                        entreprise.put("nom", snapshot.child("nom").getValue() != null ? snapshot.child("nom").getValue() : "");
-                        // Support ancien format (adresse) et nouveau format (rue, codePostal, ville)
-                        if (snapshot.hasChild("rue")) {
-                            entreprise.put("rue", snapshot.child("rue").getValue() != null ? snapshot.child("rue").getValue() : "");
-                            entreprise.put("codePostal", snapshot.child("codePostal").getValue() != null ? snapshot.child("codePostal").getValue() : "");
-                            entreprise.put("ville", snapshot.child("ville").getValue() != null ? snapshot.child("ville").getValue() : "");
-                        } else if (snapshot.hasChild("adresse")) {
-                            // Migration: convertir adresse en rue
-                            String adresse = snapshot.child("adresse").getValue() != null ? snapshot.child("adresse").getValue().toString() : "";
-                            entreprise.put("rue", adresse);
-                            entreprise.put("codePostal", "");
-                            entreprise.put("ville", "");
-                        } else {
-                            entreprise.put("rue", "");
-                            entreprise.put("codePostal", "");
-                            entreprise.put("ville", "");
-                        }
-                        entreprise.put("email", snapshot.child("email").getValue() != null ? snapshot.child("email").getValue() : "");
-                        entreprise.put("numero", snapshot.child("numero").getValue() != null ? snapshot.child("numero").getValue() : "");
-                        entreprise.put("dateCreation", snapshot.child("dateCreation").getValue());
-                        future.complete(entreprise);
-                    } else {
-                        future.complete(null);
-                    }
-                    latch.countDown();
+        ref.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                if (snapshot.exists()) {
+                    future.complete(mapEnterpriseSnapshot(snapshot, entrepriseId));
+                } else {
+                    future.complete(null);
                 }
+                latch.countDown();
+            }
 
-                @Override
-                public void onCancelled(DatabaseError error) {
-                    future.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
-                    latch.countDown();
-                }
-            });
+            @Override
+            public void onCancelled(DatabaseError error) {
+                future.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
+                latch.countDown();
+            }
+        });
 
         try {
             latch.await(10, TimeUnit.SECONDS);
@@ -828,6 +977,13 @@ public class FirebaseRealtimeService {
      */
     public List<Machine> getMachinesForEnterprise(String entrepriseId) throws Exception {
         System.out.println("=== getMachinesForEnterprise: Début pour entrepriseId: " + entrepriseId + " ===");
+        List<Machine> replicated = replicaService.getCollection(entrepriseId, "machines");
+        if (replicated != null) {
+            // Filtrer les machines supprimées (soft delete)
+            return replicated.stream()
+                .filter(m -> m.getSupprime() == null || !m.getSupprime())
+                .collect(Collectors.toList());
+        }
         CompletableFuture<List<Machine>> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -837,45 +993,17 @@ public class FirebaseRealtimeService {
             .addListenerForSingleValueEvent(new ValueEventListener() {
                 @Override
                 public void onDataChange(DataSnapshot snapshot) {
-                    try {
-                        List<Machine> machines = new ArrayList<>();
-                        if (snapshot.exists()) {
-                            System.out.println("=== Snapshot existe, nombre d'enfants: " + snapshot.getChildrenCount() + " ===");
-                            int processedCount = 0;
-                            int skippedCount = 0;
-                            for (DataSnapshot machineSnapshot : snapshot.getChildren()) {
-                                String machineId = machineSnapshot.getKey();
-                                if (machineId != null && !machineId.startsWith("_")) {
-                                    try {
-                                        Machine machine = mapMachineSnapshot(machineSnapshot, entrepriseId, machineId);
-                                        // Filtrer les machines supprimées (soft delete)
-                                        if (machine.getSupprime() == null || !machine.getSupprime()) {
-                                            machines.add(machine);
-                                            processedCount++;
-                                        } else {
-                                            skippedCount++;
-                                            System.out.println("=== Machine " + machineId + " ignorée (supprimée) ===");
-                                        }
-                                    } catch (Exception e) {
-                                        System.err.println("=== Erreur lors du mapping de la machine " + machineId + ": " + e.getMessage() + " ===");
-                                        e.printStackTrace();
-                                        // Continuer avec les autres machines même si une échoue
-                                    }
-                                }
-                            }
-                            System.out.println("=== Machines traitées: " + processedCount + ", ignorées: " + skippedCount + " ===");
-                        } else {
-                            System.out.println("=== Aucun snapshot trouvé pour les machines ===");
+                    snapshotDecoder.execute(() -> {
+                        try {
+                            future.complete(decodeMachineList(snapshot, entrepriseId));
+                        } catch (Exception e) {
+                            System.err.println("=== Erreur dans onDataChange: " + e.getMessage() + " ===");
+                            e.printStackTrace();
+                            future.completeExceptionally(e);
+                        } finally {
+                            latch.countDown();
                         }
-                        System.out.println("=== Total de machines récupérées: " + machines.size() + " ===");
-                        future.complete(machines);
-                    } catch (Exception e) {
-                        System.err.println("=== Erreur dans onDataChange: " + e.getMessage() + " ===");
-                        e.printStackTrace();
-                        future.completeExceptionally(e);
-                    } finally {
-                        latch.countDown();
-                    }
+                    });
                 }
 
                 @Override
@@ -904,10 +1032,47 @@ public class FirebaseRealtimeService {
         }
     }
 
+    /**
+     * Décode le nœud machines/ d'une entreprise (machines supprimées exclues)
+     */
+    private List<Machine> decodeMachineList(DataSnapshot snapshot, String entrepriseId) {
+        if (!snapshot.exists()) {
+            System.out.println("=== Aucun snapshot trouvé pour les machines ===");
+            return new ArrayList<>();
+        }
+        System.out.println("=== Snapshot existe, nombre d'enfants: " + snapshot.getChildrenCount() + " ===");
+        List<Machine> machines = snapshotDecoder.decodeChildren(snapshot, machineSnapshot -> {
+            String machineId = machineSnapshot.getKey();
+            if (machineId == null || machineId.startsWith("_")) {
+                return null;
+            }
+            try {
+                Machine machine = mapMachineSnapshot(machineSnapshot, entrepriseId, machineId);
+                // Filtrer les machines supprimées (soft delete)
+                if (machine.getSupprime() == null || !machine.getSupprime()) {
+                    return machine;
+                }
+                System.out.println("=== Machine " + machineId + " ignorée (supprimée) ===");
+            } catch (Exception e) {
+                System.err.println("=== Erreur lors du mapping de la machine " + machineId + ": " + e.getMessage() + " ===");
+                e.printStackTrace();
+                // Continuer avec les autres machines même si une échoue
+            }
+            return null;
+        });
+        System.out.println("=== Machines traitées: " + machines.size() + ", ignorées: " + (snapshot.getChildrenCount() - machines.size()) + " ===");
+        System.out.println("=== Total de machines récupérées: " + machines.size() + " ===");
+        return machines;
+    }
+
     /**
      * Récupère une machine spécifique pour une entreprise
      */
     public Machine getMachineById(String entrepriseId, String machineId) throws Exception {
+        EnterpriseReplicaService.Lookup<Machine> replicated = replicaService.getItem(entrepriseId, "machines", machineId);
+        if (replicated.isFound()) {
+            return replicated.getValue();
+        }
         CompletableFuture<Machine> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -974,6 +1139,7 @@ public class FirebaseRealtimeService {
             long now = System.currentTimeMillis();
             machineData.put("dateCreation", now);
             machineData.put("dateMiseAJour", now);
+            machine.setDateCreation(now);
             
             System.out.println("=== Données de la machine sérialisées, prêt à sauvegarder ===");
 
@@ -1003,6 +1169,10 @@ public class FirebaseRealtimeService {
             try {
                 future.get();
                 System.out.println("=== Machine créée avec succès, ID: " + machineId + " ===");
+                searchIndex.machineChanged(entrepriseId, machineId, machine);
+                machineFacets.machineChanged(entrepriseId, machineId, machine);
+                secoursGraph.machineChanged(entrepriseId, machineId, machine);
+                recordChange(entrepriseId, PreviousState.ABSENT, machine);
             } catch (Exception e) {
                 System.err.println("=== Erreur lors de la création de la machine: " + e.getMessage() + " ===");
                 throw new Exception("Erreur lors de la création de la machine: " + e.getMessage());
@@ -1024,6 +1194,7 @@ public class FirebaseRealtimeService {
      */
     public void updateMachine(String entrepriseId, String machineId, Machine machine) throws Exception {
         try {
+            PreviousState avant = previousState(() -> getMachineById(entrepriseId, machineId));
             Map<String, Object> machineData = serializeMachine(machine);
             machineData.put("dateMiseAJour", System.currentTimeMillis());
 
@@ -1048,6 +1219,10 @@ public class FirebaseRealtimeService {
                 throw new Exception("Timeout lors de la mise à jour de la machine (10 secondes)");
             }
             future.get();
+            searchIndex.machineChanged(entrepriseId, machineId, machine);
+            machineFacets.machineChanged(entrepriseId, machineId, machine);
+            secoursGraph.machineChanged(entrepriseId, machineId, machine);
+            recordChange(entrepriseId, avant, machine);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new Exception("Interruption lors de la mise à jour de la machine: " + e.getMessage());
@@ -1058,6 +1233,7 @@ public class FirebaseRealtimeService {
      * Supprime une machine
      */
     public void deleteMachine(String entrepriseId, String machineId) throws Exception {
+        PreviousState avant = previousState(() -> getMachineById(entrepriseId, machineId));
         CompletableFuture<Void> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -1080,6 +1256,10 @@ public class FirebaseRealtimeService {
                 throw new Exception("Timeout lors de la suppression de la machine (10 secondes)");
             }
             future.get();
+            searchIndex.machineChanged(entrepriseId, machineId, null);
+            machineFacets.machineChanged(entrepriseId, machineId, null);
+            secoursGraph.machineChanged(entrepriseId, machineId, null);
+            recordChange(entrepriseId, avant, null);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new Exception("Interruption lors de la suppression de la machine: " + e.getMessage());
@@ -1088,135 +1268,292 @@ public class FirebaseRealtimeService {
         }
     }
 
-    private Machine mapMachineSnapshot(DataSnapshot snapshot, String entrepriseId, String machineId) {
-        Machine machine = new Machine();
-        machine.setMachineId(machineId);
-        machine.setEntrepriseId(entrepriseId);
-        machine.setNom(snapshot.child("nom").getValue() != null ? snapshot.child("nom").getValue().toString() : "");
-        machine.setNumeroSerie(snapshot.child("numeroSerie").getValue() != null ? snapshot.child("numeroSerie").getValue().toString() : "");
-        machine.setEmplacement(snapshot.child("emplacement").getValue() != null ? snapshot.child("emplacement").getValue().toString() : "");
-        machine.setNotes(snapshot.child("notes").getValue() != null ? snapshot.child("notes").getValue().toString() : "");
-        machine.setCategoryId(readLong(snapshot.child("categoryId")));
-        machine.setCategoryName(readString(snapshot.child("categoryName")));
-        machine.setCategoryDescription(readString(snapshot.child("categoryDescription")));
-        
-        Object operationnelValue = snapshot.child("operationnel").getValue();
-        if (operationnelValue instanceof Boolean) {
-            machine.setOperationnel((Boolean) operationnelValue);
-        } else if (operationnelValue != null) {
-            machine.setOperationnel(Boolean.parseBoolean(operationnelValue.toString()));
-        } else {
-            machine.setOperationnel(true); // Par défaut opérationnel
-        }
-        
-        Object enReparationValue = snapshot.child("enReparation").getValue();
-        if (enReparationValue instanceof Boolean) {
-            machine.setEnReparation((Boolean) enReparationValue);
-        } else if (enReparationValue != null) {
-            machine.setEnReparation(Boolean.parseBoolean(enReparationValue.toString()));
-        } else {
-            machine.setEnReparation(false); // Par défaut pas en réparation
-        }
+    // ========== ÉCRITURES GROUPÉES ==========
 
-        Object enProgrammationValue = snapshot.child("enProgrammation").getValue();
-        if (enProgrammationValue instanceof Boolean) {
-            machine.setEnProgrammation((Boolean) enProgrammationValue);
-        } else if (enProgrammationValue != null) {
-            machine.setEnProgrammation(Boolean.parseBoolean(enProgrammationValue.toString()));
-        } else {
-            machine.setEnProgrammation(false);
+    /**
+     * Nouveau lot d'écritures pour une entreprise (voir WriteBatch)
+     */
+    public WriteBatch batch(String entrepriseId) {
+        return new WriteBatch(entrepriseId);
+    }
+
+    /**
+     * Lot d'écritures sur plusieurs éléments d'une entreprise, envoyé en une seule mise à jour multi-chemins
+     * à la racine : une action utilisateur est un seul aller-retour, appliqué entièrement ou pas du tout.
+     * Les états précédents (compteurs statistiques, écouteurs) sont lus en parallèle dès l'ajout, servis par la
+     * réplique si possible, et attendus avant l'écriture ; les index et compteurs sont mis à jour après.
+     */
+    public final class WriteBatch {
+
+        private final String entrepriseId;
+        private final String entreprisePath;
+        private final Map<String, Object> updates = new LinkedHashMap<>();
+        private final List<CompletableFuture<?>> lectures = new ArrayList<>();
+        /** Mises à jour des index et compteurs, exécutées après l'écriture (états précédents déjà lus) */
+        private final List<Runnable> apresEcriture = new ArrayList<>();
+        private final long now = System.currentTimeMillis();
+        private boolean recorded;
+        private boolean committed;
+
+        private WriteBatch(String entrepriseId) {
+            this.entrepriseId = entrepriseId;
+            this.entreprisePath = "entreprises/" + entrepriseId;
         }
-        
-        machine.setAdresseIP(readString(snapshot.child("adresseIP")));
-        machine.setMachinePrincipaleId(readString(snapshot.child("machinePrincipaleId")));
-        
-        Object estMachineSecoursValue = snapshot.child("estMachineSecours").getValue();
-        if (estMachineSecoursValue instanceof Boolean) {
-            machine.setEstMachineSecours((Boolean) estMachineSecoursValue);
-        } else if (estMachineSecoursValue != null) {
-            machine.setEstMachineSecours(Boolean.parseBoolean(estMachineSecoursValue.toString()));
-        } else {
-            machine.setEstMachineSecours(false); // Par défaut pas une machine de secours
+
+        public WriteBatch updateMachine(String machineId, Machine machine) {
+            CompletableFuture<Machine> avant = previousAsync("machines", machineId,
+                snapshot -> mapMachineSnapshot(snapshot, entrepriseId, machineId));
+            Map<String, Object> data = serializeMachine(machine);
+            data.put("dateMiseAJour", now);
+            putFields(entreprisePath + "/machines/" + machineId, data);
+            apresEcriture.add(() -> {
+                searchIndex.machineChanged(entrepriseId, machineId, machine);
+                machineFacets.machineChanged(entrepriseId, machineId, machine);
+                secoursGraph.machineChanged(entrepriseId, machineId, machine);
+                recordChange(entrepriseId, resolved(avant, machine), machine);
+            });
+            recorded = true;
+            return this;
         }
-        
-        Object estMachineEntrepotValue = snapshot.child("estMachineEntrepot").getValue();
-        if (estMachineEntrepotValue instanceof Boolean) {
-            machine.setEstMachineEntrepot((Boolean) estMachineEntrepotValue);
-        } else if (estMachineEntrepotValue != null) {
-            machine.setEstMachineEntrepot(Boolean.parseBoolean(estMachineEntrepotValue.toString()));
-        } else {
-            machine.setEstMachineEntrepot(false); // Par défaut pas une machine entrepôt
+
+        public WriteBatch updateComponent(String componentId, Component component) {
+            Map<String, Object> data = serializeComponent(component);
+            data.put("modifieLe", now);
+            putFields(entreprisePath + "/components/" + componentId, data);
+            apresEcriture.add(() -> searchIndex.componentChanged(entrepriseId, componentId, component));
+            return this;
         }
-        
-        // Suivi des modifications
-        machine.setCreePar(readString(snapshot.child("creePar")));
-        machine.setCreeLe(readLong(snapshot.child("creeLe")));
-        machine.setModifiePar(readString(snapshot.child("modifiePar")));
-        machine.setModifieLe(readLong(snapshot.child("modifieLe")));
-        machine.setSupprimePar(readString(snapshot.child("supprimePar")));
-        machine.setSupprimeLe(readLong(snapshot.child("supprimeLe")));
-        
-        Object supprimeValue = snapshot.child("supprime").getValue();
-        if (supprimeValue instanceof Boolean) {
-            machine.setSupprime((Boolean) supprimeValue);
-        } else if (supprimeValue != null) {
-            machine.setSupprime(Boolean.parseBoolean(supprimeValue.toString()));
-        } else {
-            machine.setSupprime(false);
+
+        /**
+         * Rattache un composant à une autre machine sans réécrire ses autres champs
+         */
+        public WriteBatch reassignComponent(String componentId, String machineId) {
+            String componentPath = entreprisePath + "/components/" + componentId;
+            updates.put(componentPath + "/machineId", machineId);
+            updates.put(componentPath + "/modifieLe", now);
+            return this;
         }
 
-        Object rawPhotos = snapshot.child("photos").getValue();
-        List<String> photos = new ArrayList<>();
-        if (rawPhotos instanceof List<?> list) {
-            for (Object value : list) {
-                if (value instanceof String photo && !photo.isBlank()) {
-                    photos.add(photo);
-                }
+        public WriteBatch updateAlerte(String alerteId, com.maintenance.maintenance.model.entity.Alerte alerte) {
+            CompletableFuture<com.maintenance.maintenance.model.entity.Alerte> avant = previousAsync("alertes", alerteId,
+                FirebaseRealtimeService.this::mapAlerteSnapshot);
+            alerte.setDateModification(now);
+            putFields(entreprisePath + "/alertes/" + alerteId, serializeAlerte(alerte));
+            updates.put(EcheanceIndex.path(EcheanceIndex.ALERTES, entrepriseId, alerteId), EcheanceIndex.alerteEntry(entrepriseId, alerte));
+            apresEcriture.add(() -> recordChange(entrepriseId, resolved(avant, alerte), alerte));
+            recorded = true;
+            return this;
+        }
+
+        public WriteBatch updateRappel(String rappelId, com.maintenance.maintenance.model.entity.Rappel rappel) {
+            CompletableFuture<com.maintenance.maintenance.model.entity.Rappel> avant = previousAsync("rappels", rappelId,
+                FirebaseRealtimeService.this::mapRappelSnapshot);
+            rappel.setDateModification(now);
+            putFields(entreprisePath + "/rappels/" + rappelId, serializeRappel(rappel));
+            updates.put(EcheanceIndex.path(EcheanceIndex.RAPPELS, entrepriseId, rappelId), EcheanceIndex.rappelEntry(entrepriseId, rappel));
+            apresEcriture.add(() -> recordChange(entrepriseId, resolved(avant, rappel), rappel));
+            recorded = true;
+            return this;
+        }
+
+        /**
+         * Ajoute une entrée à l'historique des vérifications ; renvoie son identifiant
+         */
+        public String createHistoriqueVerification(com.maintenance.maintenance.model.entity.HistoriqueVerification historique) throws Exception {
+            String historiqueId = newKey("historiqueVerifications");
+            historique.setHistoriqueId(historiqueId);
+            if (historique.getDateCreation() == null) {
+                historique.setDateCreation(now);
+            }
+            updates.put(entreprisePath + "/historiqueVerifications/" + historiqueId, serializeHistoriqueVerification(historique));
+            apresEcriture.add(() -> recordChange(entrepriseId, PreviousState.ABSENT, historique));
+            recorded = true;
+            return historiqueId;
+        }
+
+        /**
+         * Ajoute une entrée à une liste de l'entreprise (journal) ; renvoie son identifiant
+         */
+        public String append(String node, Map<String, Object> entry) throws Exception {
+            String key = newKey(node);
+            updates.put(entreprisePath + "/" + node + "/" + key, entry);
+            return key;
+        }
+
+        public boolean isEmpty() {
+            return updates.isEmpty();
+        }
+
+        /**
+         * Chemins et valeurs du lot, dans l'ordre d'ajout (lecture seule)
+         */
+        Map<String, Object> updates() {
+            return Collections.unmodifiableMap(updates);
+        }
+
+        /**
+         * Envoie le lot en une seule mise à jour ; un lot ne s'envoie qu'une fois
+         */
+        public void commit() throws Exception {
+            if (committed) {
+                throw new IllegalStateException("Lot d'écritures déjà envoyé");
             }
-        } else if (rawPhotos instanceof Map<?, ?> map) {
-            List<String> keys = new ArrayList<>();
-            for (Object key : map.keySet()) {
-                if (key instanceof String stringKey) {
-                    keys.add(stringKey);
-                }
+            committed = true;
+            if (updates.isEmpty()) {
+                return;
+            }
+
+            // Les états précédents doivent être lus avant l'écriture
+            try {
+                CompletableFuture.allOf(lectures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new Exception("Interruption lors de l'écriture groupée: " + e.getMessage());
+            } catch (Exception e) {
+                System.err.println("=== États précédents illisibles, agrégats à recalculer: " + e.getMessage() + " ===");
             }
-            keys.sort(String::compareTo);
-            for (String key : keys) {
-                Object value = map.get(key);
-                if (value instanceof String photo && !photo.isBlank()) {
-                    photos.add(photo);
+
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            databaseReference.updateChildren(updates, (error, ref) -> {
+                if (error != null) {
+                    future.completeExceptionally(new Exception("Erreur Firebase: " + error.getMessage()));
+                } else {
+                    future.complete(null);
+                }
+                latch.countDown();
+            });
+
+            try {
+                boolean completed = latch.await(10, TimeUnit.SECONDS);
+                if (!completed) {
+                    throw new Exception("Timeout lors de l'écriture groupée (10 secondes)");
                 }
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new Exception("Interruption lors de l'écriture groupée: " + e.getMessage());
+            } catch (Exception e) {
+                throw new Exception("Erreur lors de l'écriture groupée: " + e.getMessage());
+            }
+
+            for (Runnable hook : apresEcriture) {
+                hook.run();
+            }
+            if (!recorded) {
+                dataVersions.bump(entrepriseId);
             }
-        } else if (rawPhotos instanceof String photo && !photo.isBlank()) {
-            photos.add(photo);
         }
-        machine.setPhotos(photos);
 
-        if (snapshot.child("dateCreation").getValue() instanceof Number numberCreation) {
-            machine.setDateCreation(numberCreation.longValue());
+        private void putFields(String basePath, Map<String, Object> data) {
+            for (Map.Entry<String, Object> field : data.entrySet()) {
+                updates.put(basePath + "/" + field.getKey(), field.getValue());
+            }
         }
-        if (snapshot.child("dateMiseAJour").getValue() instanceof Number numberUpdate) {
-            machine.setDateMiseAJour(numberUpdate.longValue());
+
+        private String newKey(String node) throws Exception {
+            String key = databaseReference.child("entreprises").child(entrepriseId).child(node).push().getKey();
+            if (key == null) {
+                throw new Exception("Impossible de générer un ID (" + node + ")");
+            }
+            return key;
         }
-        
-        // Charger les champs personnalisés
-        DataSnapshot champsPersonnalisesSnapshot = snapshot.child("champsPersonnalises");
-        if (champsPersonnalisesSnapshot.exists()) {
-            Map<String, Object> champsPersonnalises = new HashMap<>();
-            for (DataSnapshot champSnapshot : champsPersonnalisesSnapshot.getChildren()) {
-                String key = champSnapshot.getKey();
-                Object value = champSnapshot.getValue();
-                if (key != null && value != null) {
-                    champsPersonnalises.put(key, value);
-                }
+
+        private <T> CompletableFuture<T> previousAsync(String collection, String itemId, Function<DataSnapshot, T> decoder) {
+            EnterpriseReplicaService.Lookup<T> replicated = replicaService.getItem(entrepriseId, collection, itemId);
+            CompletableFuture<T> future = replicated.isFound()
+                ? CompletableFuture.completedFuture(replicated.getValue())
+                : readAsync(databaseReference.child("entreprises").child(entrepriseId).child(collection).child(itemId),
+                    "de l'état précédent", snapshot -> snapshot.exists() ? decoder.apply(snapshot) : null);
+            lectures.add(future);
+            return future;
+        }
+
+        /**
+         * État précédent lu ; inconnu si la lecture a échoué, ou si c'est l'objet écrit lui-même
+         * (modifié sur place : l'écart serait nul, les agrégats sont alors recalculés)
+         */
+        private PreviousState resolved(CompletableFuture<?> avant, Object apres) {
+            if (!avant.isDone() || avant.isCompletedExceptionally() || avant.join() == apres) {
+                return new PreviousState(false, null);
             }
-            machine.setChampsPersonnalises(champsPersonnalises);
+            return new PreviousState(true, avant.join());
+        }
+    }
+
+    // ========== BASCULEMENT VERS UNE MACHINE DE SECOURS ==========
+
+    /**
+     * Copie indépendante d'une machine : un objet lu n'est pas modifié sur place avant son écriture
+     * (l'original reste l'état précédent tant que l'écriture n'a pas réussi)
+     */
+    public Machine copyMachine(Machine machine) {
+        Machine copie = FirebaseEntityDecoder.machine(serializeMachine(machine), machine.getEntrepriseId(), machine.getMachineId());
+        copie.setDateCreation(machine.getDateCreation());
+        copie.setDateMiseAJour(machine.getDateMiseAJour());
+        return copie;
+    }
+
+    public com.maintenance.maintenance.model.entity.Alerte copyAlerte(com.maintenance.maintenance.model.entity.Alerte alerte) {
+        return FirebaseEntityDecoder.alerte(serializeAlerte(alerte), alerte.getAlerteId());
+    }
+
+    public com.maintenance.maintenance.model.entity.Rappel copyRappel(com.maintenance.maintenance.model.entity.Rappel rappel) {
+        return FirebaseEntityDecoder.rappel(serializeRappel(rappel), rappel.getRappelId());
+    }
+
+    /**
+     * Derniers basculements d'une entreprise, du plus récent au plus ancien
+     */
+    public CompletableFuture<List<Map<String, Object>>> getBasculementsAsync(String entrepriseId, int limit) {
+        return readAsync(databaseReference.child("entreprises").child(entrepriseId).child("basculements").orderByKey().limitToLast(limit),
+            "des basculements", snapshot -> {
+                List<Map<String, Object>> basculements = new ArrayList<>();
+                for (DataSnapshot child : snapshot.getChildren()) {
+                    Map<String, Object> basculement = new HashMap<>(FirebaseEntityDecoder.fields(child));
+                    basculement.put("basculementId", child.getKey());
+                    basculements.add(0, basculement);
+                }
+                return basculements;
+            });
+    }
+
+    /**
+     * Basculement automatique activé pour l'entreprise (entreprises/{id}/parametres/basculementAutomatique, désactivé par défaut)
+     */
+    public CompletableFuture<Boolean> getBasculementAutomatiqueAsync(String entrepriseId) {
+        return readAsync(databaseReference.child("entreprises").child(entrepriseId).child("parametres").child("basculementAutomatique"),
+            "du paramètre de basculement", snapshot -> Boolean.TRUE.equals(snapshot.getValue()));
+    }
+
+    public void setBasculementAutomatique(String entrepriseId, boolean active) throws Exception {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        databaseReference.child("entreprises").child(entrepriseId).child("parametres").child("basculementAutomatique")
+            .setValue(active, (error, ref) -> {
+                if (error != null) {
+                    future.completeExceptionally(new Exception("Erreur Firebase: " + error.getMessage()));
+                } else {
+                    future.complete(null);
+                }
+                latch.countDown();
+            });
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+            future.get();
+        } catch (Exception e) {
+            throw new Exception("Erreur lors de l'enregistrement du paramètre de basculement: " + e.getMessage());
         }
-        
-        return machine;
     }
 
-    private Map<String, Object> serializeMachine(Machine machine) {
+    private Machine mapMachineSnapshot(DataSnapshot snapshot, String entrepriseId, String machineId) {
+        return FirebaseEntityDecoder.machine(FirebaseEntityDecoder.fields(snapshot), entrepriseId, machineId);
+    }
+
+    /**
+     * Visibilité paquet : mesurée par les benchmarks JMH (src/jmh)
+     */
+    Map<String, Object> serializeMachine(Machine machine) {
         Map<String, Object> data = new HashMap<>();
         data.put("nom", machine.getNom());
         data.put("numeroSerie", machine.getNumeroSerie());
@@ -1267,6 +1604,10 @@ public class FirebaseRealtimeService {
     }
 
     public List<Component> getComponentsForEnterprise(String entrepriseId) throws Exception {
+        List<Component> replicated = replicaService.getCollection(entrepriseId, "components");
+        if (replicated != null) {
+            return replicated;
+        }
         CompletableFuture<List<Component>> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -1276,22 +1617,15 @@ public class FirebaseRealtimeService {
             .addListenerForSingleValueEvent(new ValueEventListener() {
                 @Override
                 public void onDataChange(DataSnapshot snapshot) {
-                    try {
-                        List<Component> components = new ArrayList<>();
-                        if (snapshot.exists()) {
-                            for (DataSnapshot componentSnapshot : snapshot.getChildren()) {
-                                String componentId = componentSnapshot.getKey();
-                                if (componentId != null && !componentId.startsWith("_")) {
-                                    components.add(mapComponentSnapshot(componentSnapshot, entrepriseId, componentId));
-                                }
-                            }
+                    snapshotDecoder.execute(() -> {
+                        try {
+                            future.complete(decodeComponentList(snapshot, entrepriseId));
+                        } catch (Exception e) {
+                            future.completeExceptionally(e);
+                        } finally {
+                            latch.countDown();
                         }
-                        future.complete(components);
-                    } catch (Exception e) {
-                        future.completeExceptionally(e);
-                    } finally {
-                        latch.countDown();
-                    }
+                    });
                 }
 
                 @Override
@@ -1313,7 +1647,20 @@ public class FirebaseRealtimeService {
         }
     }
 
+    private List<Component> decodeComponentList(DataSnapshot snapshot, String entrepriseId) {
+        return snapshotDecoder.decodeChildren(snapshot, componentSnapshot -> {
+            String componentId = componentSnapshot.getKey();
+            return componentId != null && !componentId.startsWith("_")
+                ? mapComponentSnapshot(componentSnapshot, entrepriseId, componentId)
+                : null;
+        });
+    }
+
     public Component getComponentById(String entrepriseId, String componentId) throws Exception {
+        EnterpriseReplicaService.Lookup<Component> replicated = replicaService.getItem(entrepriseId, "components", componentId);
+        if (replicated.isFound()) {
+            return replicated.getValue();
+        }
         CompletableFuture<Component> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -1394,6 +1741,8 @@ public class FirebaseRealtimeService {
                 throw new Exception("Timeout lors de la création du composant (10 secondes)");
             }
             future.get();
+            searchIndex.componentChanged(entrepriseId, componentId, component);
+            dataVersions.bump(entrepriseId);
             return componentId;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -1427,6 +1776,8 @@ public class FirebaseRealtimeService {
                 throw new Exception("Timeout lors de la mise à jour du composant (10 secondes)");
             }
             future.get();
+            searchIndex.componentChanged(entrepriseId, componentId, component);
+            dataVersions.bump(entrepriseId);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new Exception("Interruption lors de la mise à jour du composant: " + e.getMessage());
@@ -1456,6 +1807,8 @@ public class FirebaseRealtimeService {
                 throw new Exception("Timeout lors de la suppression du composant (10 secondes)");
             }
             future.get();
+            searchIndex.componentChanged(entrepriseId, componentId, null);
+            dataVersions.bump(entrepriseId);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new Exception("Interruption lors de la suppression du composant: " + e.getMessage());
@@ -1465,55 +1818,7 @@ public class FirebaseRealtimeService {
     }
 
     private Component mapComponentSnapshot(DataSnapshot snapshot, String entrepriseId, String componentId) {
-        Component component = new Component();
-        component.setComponentId(componentId);
-        component.setEntrepriseId(entrepriseId);
-        component.setMachineId(readString(snapshot.child("machineId")));
-        component.setCategoryId(readLong(snapshot.child("categoryId")));
-        component.setCategoryName(readString(snapshot.child("categoryName")));
-        component.setNom(readString(snapshot.child("nom")));
-        component.setNumeroSerie(readString(snapshot.child("numeroSerie")));
-        component.setEtat(readString(snapshot.child("etat")));
-        component.setNotes(readString(snapshot.child("notes")));
-        component.setLocation(readString(snapshot.child("location")));
-        component.setTypePeripherique(readString(snapshot.child("typePeripherique")));
-
-        Object rawPhotos = snapshot.child("photos").getValue();
-        List<String> photos = new ArrayList<>();
-        if (rawPhotos instanceof List<?> list) {
-            for (Object value : list) {
-                if (value instanceof String photo && !photo.isBlank()) {
-                    photos.add(photo);
-                }
-            }
-        } else if (rawPhotos instanceof Map<?, ?> map) {
-            List<String> keys = new ArrayList<>();
-            for (Object key : map.keySet()) {
-                if (key instanceof String stringKey) {
-                    keys.add(stringKey);
-                }
-            }
-            keys.sort(String::compareTo);
-            for (String key : keys) {
-                Object value = map.get(key);
-                if (value instanceof String photo && !photo.isBlank()) {
-                    photos.add(photo);
-                }
-            }
-        } else if (rawPhotos instanceof String photo && !photo.isBlank()) {
-            photos.add(photo);
-        }
-        component.setPhotos(photos);
-
-        if (snapshot.child("creeLe").getValue() instanceof Number numberCreation) {
-            component.setCreeLe(numberCreation.longValue());
-        }
-        if (snapshot.child("modifieLe").getValue() instanceof Number numberUpdate) {
-            component.setModifieLe(numberUpdate.longValue());
-        }
-        component.setCreePar(readString(snapshot.child("creePar")));
-        component.setModifiePar(readString(snapshot.child("modifiePar")));
-        return component;
+        return FirebaseEntityDecoder.component(FirebaseEntityDecoder.fields(snapshot), entrepriseId, componentId);
     }
 
     private Map<String, Object> serializeComponent(Component component) {
@@ -1535,32 +1840,6 @@ public class FirebaseRealtimeService {
         return data;
     }
 
-    private Long readLong(DataSnapshot snapshot) {
-        Object value = snapshot.getValue();
-        if (value instanceof Number number) {
-            return number.longValue();
-        }
-        if (value instanceof String stringValue) {
-            String trimmed = stringValue.trim();
-            if (!trimmed.isEmpty()) {
-                try {
-                    return Long.parseLong(trimmed);
-                } catch (NumberFormatException ignored) {
-                }
-            }
-        }
-        return null;
-    }
-
-    private String readString(DataSnapshot snapshot) {
-        Object value = snapshot.getValue();
-        if (value == null) {
-            return null;
-        }
-        String stringValue = value.toString().trim();
-        return stringValue.isEmpty() ? null : stringValue;
-    }
-
     /**
      * Met à jour une entreprise dans entreprises/
      */
@@ -1579,11 +1858,20 @@ public class FirebaseRealtimeService {
             }
             
             if (!updates.isEmpty()) {
+                // Écriture multi-chemins : l'entreprise et son entrée d'annuaire restent synchronisées
+                Map<String, Object> rootUpdates = new HashMap<>();
+                for (Map.Entry<String, Object> entry : updates.entrySet()) {
+                    rootUpdates.put("entreprises/" + entrepriseId + "/" + entry.getKey(), entry.getValue());
+                    if (!"adresse".equals(entry.getKey())) {
+                        rootUpdates.put(ENTERPRISE_INDEX_NODE + "/" + entrepriseId + "/" + entry.getKey(), entry.getValue());
+                    }
+                }
+
                 CompletableFuture<Void> future = new CompletableFuture<>();
                 CountDownLatch latch = new CountDownLatch(1);
 
-                databaseReference.child("entreprises").child(entrepriseId)
-                    .updateChildren(updates, new DatabaseReference.CompletionListener() {
+                databaseReference
+                    .updateChildren(rootUpdates, new DatabaseReference.CompletionListener() {
                         @Override
                         public void onComplete(DatabaseError error, DatabaseReference ref) {
                             if (error != null) {
@@ -1597,6 +1885,7 @@ public class FirebaseRealtimeService {
 
                 latch.await(10, TimeUnit.SECONDS);
                 future.get();
+                dataVersions.bumpEnterprise(entrepriseId);
             }
         } catch (Exception e) {
             throw new Exception("Erreur lors de la mise à jour de l'entreprise: " + e.getMessage());
@@ -1611,8 +1900,15 @@ public class FirebaseRealtimeService {
             CompletableFuture<Void> future = new CompletableFuture<>();
             CountDownLatch latch = new CountDownLatch(1);
 
-            databaseReference.child("entreprises").child(entrepriseId)
-                .removeValue(new DatabaseReference.CompletionListener() {
+            // Suppression multi-chemins : l'entreprise et son entrée d'annuaire
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("entreprises/" + entrepriseId, null);
+            updates.put(ENTERPRISE_INDEX_NODE + "/" + entrepriseId, null);
+            updates.put(EnterpriseStatsCounters.path(entrepriseId), null);
+            updates.put(ReportRollups.path(entrepriseId), null);
+
+            databaseReference
+                .updateChildren(updates, new DatabaseReference.CompletionListener() {
                     @Override
                     public void onComplete(DatabaseError error, DatabaseReference ref) {
                         if (error != null) {
@@ -1626,6 +1922,8 @@ public class FirebaseRealtimeService {
 
             latch.await(10, TimeUnit.SECONDS);
             future.get();
+            replicaService.evict(entrepriseId);
+            dataVersions.bumpEnterprise(entrepriseId);
         } catch (Exception e) {
             throw new Exception("Erreur lors de la suppression de l'entreprise: " + e.getMessage());
         }
@@ -1704,10 +2002,22 @@ public class FirebaseRealtimeService {
      */
     public void deleteUser(String userId) throws Exception {
         try {
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("utilisateurs/" + userId, null);
+            try {
+                Object role = readUserField(userId, "role");
+                if (role != null) {
+                    updates.put(roleIndexPath(role, userId), null);
+                }
+            } catch (Exception e) {
+                // Rôle illisible : l'utilisateur est tout de même supprimé, l'entrée d'index reste jusqu'à la prochaine reconstruction
+                System.err.println("Rôle de l'utilisateur " + userId + " illisible: " + e.getMessage());
+            }
+
             CompletableFuture<Void> future = new CompletableFuture<>();
             CountDownLatch latch = new CountDownLatch(1);
 
-            databaseReference.child("utilisateurs").child(userId).removeValue(new DatabaseReference.CompletionListener() {
+            databaseReference.updateChildren(updates, new DatabaseReference.CompletionListener() {
                 @Override
                 public void onComplete(DatabaseError error, DatabaseReference ref) {
                     if (error != null) {
@@ -1726,6 +2036,161 @@ public class FirebaseRealtimeService {
         }
     }
 
+    /**
+     * Chemin d'un utilisateur dans l'index des rôles : rolesIndex/{rôle}/{userId} = email
+     */
+    public static String roleIndexPath(Object role, String userId) {
+        return ROLE_INDEX_NODE + "/" + roleKey(role) + "/" + userId;
+    }
+
+    private static String roleKey(Object role) {
+        String key = role != null ? role.toString().trim().toLowerCase() : "";
+        // Caractères interdits dans une clé Firebase
+        key = key.replaceAll("[.#$\\[\\]/]", "_");
+        return key.isEmpty() ? "utilisateur" : key;
+    }
+
+    /**
+     * Utilisateurs d'un rôle (userId -> email), en une seule petite lecture de l'index des rôles
+     */
+    public Map<String, String> getUsersByRole(String role) throws Exception {
+        CompletableFuture<Map<String, String>> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        databaseReference.child(ROLE_INDEX_NODE).child(roleKey(role)).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                future.complete(mapRoleIndexSnapshot(snapshot));
+                latch.countDown();
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                future.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
+                latch.countDown();
+            }
+        });
+
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new Exception("délai dépassé");
+            }
+            return future.get();
+        } catch (Exception e) {
+            throw new Exception("Erreur lors de la lecture de l'index des rôles: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Décode un nœud rolesIndex/{rôle} en conservant l'ordre des clés
+     */
+    public static Map<String, String> mapRoleIndexSnapshot(DataSnapshot snapshot) {
+        Map<String, String> users = new LinkedHashMap<>();
+        for (DataSnapshot userSnapshot : snapshot.getChildren()) {
+            Object email = userSnapshot.getValue();
+            users.put(userSnapshot.getKey(), email != null ? email.toString() : "");
+        }
+        return users;
+    }
+
+    /**
+     * Indique si l'index des rôles a déjà été construit
+     */
+    public boolean roleIndexExists() throws Exception {
+        return readNodeExists(ROLE_INDEX_META_NODE + "/reconstruitLe");
+    }
+
+    /**
+     * Reconstruit l'index des rôles à partir des profils utilisateurs (migration ou réparation)
+     * @return le nombre d'utilisateurs indexés
+     */
+    public int rebuildRoleIndex() throws Exception {
+        List<Map<String, Object>> users = getAllUsers();
+        Map<String, Object> index = new HashMap<>();
+        for (Map<String, Object> user : users) {
+            String userId = (String) user.get("userId");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> role = (Map<String, Object>) index.computeIfAbsent(roleKey(user.get("role")), key -> new HashMap<String, Object>());
+            role.put(userId, user.get("email") != null ? user.get("email") : "");
+        }
+
+        // Remplacement complet de l'index et marqueur de construction en une seule écriture
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(ROLE_INDEX_NODE, index);
+        updates.put(ROLE_INDEX_META_NODE + "/reconstruitLe", System.currentTimeMillis());
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        databaseReference.updateChildren(updates, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
+            } else {
+                future.complete(null);
+            }
+            latch.countDown();
+        });
+
+        try {
+            if (!latch.await(30, TimeUnit.SECONDS)) {
+                throw new Exception("délai dépassé");
+            }
+            future.get();
+            return users.size();
+        } catch (Exception e) {
+            throw new Exception("Erreur lors de la construction de l'index des rôles: " + e.getMessage());
+        }
+    }
+
+    private Object readUserField(String userId, String field) throws Exception {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        databaseReference.child("utilisateurs").child(userId).child(field).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                future.complete(snapshot.getValue());
+                latch.countDown();
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                future.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
+                latch.countDown();
+            }
+        });
+
+        if (!latch.await(10, TimeUnit.SECONDS)) {
+            throw new Exception("Timeout lors de la lecture de l'utilisateur " + userId);
+        }
+        return future.get();
+    }
+
+    private boolean readNodeExists(String path) throws Exception {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        databaseReference.child(path).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                future.complete(snapshot.exists());
+                latch.countDown();
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                future.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
+                latch.countDown();
+            }
+        });
+
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+            return future.get();
+        } catch (Exception e) {
+            throw new Exception("Timeout ou erreur lors de la lecture de " + path);
+        }
+    }
+
     /**
      * Supprime un utilisateur de Realtime Database ET de Firebase Authentication
      */
@@ -1892,6 +2357,7 @@ public class FirebaseRealtimeService {
                 throw new Exception("Timeout lors de la création du stock (10 secondes)");
             }
             future.get();
+            dataVersions.bump(entrepriseId);
             return stockId;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -1936,6 +2402,7 @@ public class FirebaseRealtimeService {
                 throw new Exception("Timeout lors de la mise à jour du stock (10 secondes)");
             }
             future.get();
+            dataVersions.bump(entrepriseId);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new Exception("Interruption lors de la mise à jour du stock: " + e.getMessage());
@@ -1968,6 +2435,7 @@ public class FirebaseRealtimeService {
                 throw new Exception("Timeout lors de la suppression du stock (10 secondes)");
             }
             future.get();
+            dataVersions.bump(entrepriseId);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new Exception("Interruption lors de la suppression du stock: " + e.getMessage());
@@ -1977,28 +2445,7 @@ public class FirebaseRealtimeService {
     }
 
     private com.maintenance.maintenance.model.entity.Stock mapStockSnapshot(DataSnapshot snapshot, String entrepriseId, String stockId) {
-        com.maintenance.maintenance.model.entity.Stock stock = new com.maintenance.maintenance.model.entity.Stock();
-        stock.setStockId(stockId);
-        stock.setEntrepriseId(entrepriseId);
-        stock.setMachineId(readString(snapshot.child("machineId")));
-        stock.setMachineNom(readString(snapshot.child("machineNom")));
-        stock.setNomProduit(readString(snapshot.child("nomProduit")));
-        stock.setReference(readString(snapshot.child("reference")));
-        stock.setQuantite(readInteger(snapshot.child("quantite")));
-        stock.setUnite(readString(snapshot.child("unite")));
-        stock.setPrixUnitaire(readDouble(snapshot.child("prixUnitaire")));
-        stock.setEmplacement(readString(snapshot.child("emplacement")));
-        stock.setSeuilMinimum(readInteger(snapshot.child("seuilMinimum")));
-        stock.setFournisseur(readString(snapshot.child("fournisseur")));
-        stock.setNotes(readString(snapshot.child("notes")));
-
-        if (snapshot.child("dateCreation").getValue() instanceof Number numberCreation) {
-            stock.setDateCreation(numberCreation.longValue());
-        }
-        if (snapshot.child("dateMiseAJour").getValue() instanceof Number numberUpdate) {
-            stock.setDateMiseAJour(numberUpdate.longValue());
-        }
-        return stock;
+        return FirebaseEntityDecoder.stock(FirebaseEntityDecoder.fields(snapshot), entrepriseId, stockId);
     }
 
     private Map<String, Object> serializeStock(com.maintenance.maintenance.model.entity.Stock stock) {
@@ -2017,40 +2464,6 @@ public class FirebaseRealtimeService {
         return data;
     }
 
-    private Integer readInteger(DataSnapshot snapshot) {
-        Object value = snapshot.getValue();
-        if (value instanceof Number number) {
-            return number.intValue();
-        }
-        if (value instanceof String stringValue) {
-            String trimmed = stringValue.trim();
-            if (!trimmed.isEmpty()) {
-                try {
-                    return Integer.parseInt(trimmed);
-                } catch (NumberFormatException ignored) {
-                }
-            }
-        }
-        return null;
-    }
-
-    private Double readDouble(DataSnapshot snapshot) {
-        Object value = snapshot.getValue();
-        if (value instanceof Number number) {
-            return number.doubleValue();
-        }
-        if (value instanceof String stringValue) {
-            String trimmed = stringValue.trim();
-            if (!trimmed.isEmpty()) {
-                try {
-                    return Double.parseDouble(trimmed);
-                } catch (NumberFormatException ignored) {
-                }
-            }
-        }
-        return null;
-    }
-
     // ========== CATEGORIES METHODS ==========
     
     /**
@@ -2345,12 +2758,13 @@ public class FirebaseRealtimeService {
             System.out.println("=== FirebaseRealtimeService.mapCategorySnapshot: categoryId est null ===");
         }
         
+        Map<String, Object> data = FirebaseEntityDecoder.fields(snapshot);
         System.out.println("=== FirebaseRealtimeService.mapCategorySnapshot: Lecture du nom ===");
-        category.setName(readString(snapshot.child("name")));
+        category.setName(FirebaseEntityDecoder.readString(data, "name"));
         System.out.println("=== FirebaseRealtimeService.mapCategorySnapshot: Nom lu: " + category.getName() + " ===");
         
         System.out.println("=== FirebaseRealtimeService.mapCategorySnapshot: Lecture de la description ===");
-        category.setDescription(readString(snapshot.child("description")));
+        category.setDescription(FirebaseEntityDecoder.readString(data, "description"));
         System.out.println("=== FirebaseRealtimeService.mapCategorySnapshot: Description lue: " + category.getDescription() + " ===");
         
         System.out.println("=== FirebaseRealtimeService.mapCategorySnapshot: SUCCÈS - Catégorie mappée ===");
@@ -2371,6 +2785,10 @@ public class FirebaseRealtimeService {
      * Gestion des tickets
      */
     public List<com.maintenance.maintenance.model.entity.Ticket> getTicketsForEnterprise(String entrepriseId) throws Exception {
+        List<com.maintenance.maintenance.model.entity.Ticket> replicated = replicaService.getCollection(entrepriseId, "tickets");
+        if (replicated != null) {
+            return replicated;
+        }
         CompletableFuture<List<com.maintenance.maintenance.model.entity.Ticket>> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -2380,22 +2798,15 @@ public class FirebaseRealtimeService {
             .addListenerForSingleValueEvent(new ValueEventListener() {
                 @Override
                 public void onDataChange(DataSnapshot snapshot) {
-                    try {
-                        List<com.maintenance.maintenance.model.entity.Ticket> tickets = new ArrayList<>();
-                        if (snapshot.exists()) {
-                            for (DataSnapshot ticketSnapshot : snapshot.getChildren()) {
-                                String ticketId = ticketSnapshot.getKey();
-                                if (ticketId != null && !ticketId.startsWith("_")) {
-                                    tickets.add(mapTicketSnapshot(ticketSnapshot, entrepriseId, ticketId));
-                                }
-                            }
+                    snapshotDecoder.execute(() -> {
+                        try {
+                            future.complete(decodeTicketList(snapshot, entrepriseId));
+                        } catch (Exception e) {
+                            future.completeExceptionally(e);
+                        } finally {
+                            latch.countDown();
                         }
-                        future.complete(tickets);
-                    } catch (Exception e) {
-                        future.completeExceptionally(e);
-                    } finally {
-                        latch.countDown();
-                    }
+                    });
                 }
 
                 @Override
@@ -2419,7 +2830,20 @@ public class FirebaseRealtimeService {
         }
     }
 
+    private List<com.maintenance.maintenance.model.entity.Ticket> decodeTicketList(DataSnapshot snapshot, String entrepriseId) {
+        return snapshotDecoder.decodeChildren(snapshot, ticketSnapshot -> {
+            String ticketId = ticketSnapshot.getKey();
+            return ticketId != null && !ticketId.startsWith("_")
+                ? mapTicketSnapshot(ticketSnapshot, entrepriseId, ticketId)
+                : null;
+        });
+    }
+
     public com.maintenance.maintenance.model.entity.Ticket getTicketById(String entrepriseId, String ticketId) throws Exception {
+        EnterpriseReplicaService.Lookup<com.maintenance.maintenance.model.entity.Ticket> replicated = replicaService.getItem(entrepriseId, "tickets", ticketId);
+        if (replicated.isFound()) {
+            return replicated.getValue();
+        }
         CompletableFuture<com.maintenance.maintenance.model.entity.Ticket> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -2502,6 +2926,7 @@ public class FirebaseRealtimeService {
                 throw new Exception("Timeout lors de la création du ticket (10 secondes)");
             }
             future.get();
+            recordChange(entrepriseId, PreviousState.ABSENT, ticket);
             return ticketId;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -2511,6 +2936,7 @@ public class FirebaseRealtimeService {
 
     public void updateTicket(String entrepriseId, String ticketId, com.maintenance.maintenance.model.entity.Ticket ticket) throws Exception {
         try {
+            PreviousState avant = previousState(() -> getTicketById(entrepriseId, ticketId));
             Map<String, Object> ticketData = serializeTicket(ticket);
             ticketData.put("dateModification", System.currentTimeMillis());
 
@@ -2535,6 +2961,7 @@ public class FirebaseRealtimeService {
                 throw new Exception("Timeout lors de la mise à jour du ticket (10 secondes)");
             }
             future.get();
+            recordChange(entrepriseId, avant, ticket);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new Exception("Interruption lors de la mise à jour du ticket: " + e.getMessage());
@@ -2542,6 +2969,7 @@ public class FirebaseRealtimeService {
     }
 
     public void deleteTicket(String entrepriseId, String ticketId) throws Exception {
+        PreviousState avant = previousState(() -> getTicketById(entrepriseId, ticketId));
         CompletableFuture<Void> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -2564,6 +2992,7 @@ public class FirebaseRealtimeService {
                 throw new Exception("Timeout lors de la suppression du ticket (10 secondes)");
             }
             future.get();
+            recordChange(entrepriseId, avant, null);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new Exception("Interruption lors de la suppression du ticket: " + e.getMessage());
@@ -2573,62 +3002,13 @@ public class FirebaseRealtimeService {
     }
 
     private com.maintenance.maintenance.model.entity.Ticket mapTicketSnapshot(DataSnapshot snapshot, String entrepriseId, String ticketId) {
-        com.maintenance.maintenance.model.entity.Ticket ticket = new com.maintenance.maintenance.model.entity.Ticket();
-        ticket.setTicketId(ticketId);
-        ticket.setEntrepriseId(entrepriseId);
-        ticket.setTitre(readString(snapshot.child("titre")));
-        ticket.setDescription(readString(snapshot.child("description")));
-        ticket.setStatut(readString(snapshot.child("statut")));
-        ticket.setPriorite(readString(snapshot.child("priorite")));
-        ticket.setMachineId(readString(snapshot.child("machineId")));
-        ticket.setMachineNom(readString(snapshot.child("machineNom")));
-        ticket.setAssigneA(readString(snapshot.child("assigneA")));
-        ticket.setAssigneANom(readString(snapshot.child("assigneANom")));
-        ticket.setCreePar(readString(snapshot.child("creePar")));
-        ticket.setCreeParNom(readString(snapshot.child("creeParNom")));
-        ticket.setDateCreation(readLong(snapshot.child("dateCreation")));
-        ticket.setDateModification(readLong(snapshot.child("dateModification")));
-        ticket.setDateTerminaison(readLong(snapshot.child("dateTerminaison")));
-        ticket.setDateArchivage(readLong(snapshot.child("dateArchivage")));
-        ticket.setDateEcheance(readLong(snapshot.child("dateEcheance")));
-        ticket.setCategorie(readString(snapshot.child("categorie")));
-        
-        // Gérer les commentaires
-        Object rawCommentaires = snapshot.child("commentaires").getValue();
-        List<com.maintenance.maintenance.model.entity.Commentaire> commentaires = new ArrayList<>();
-        if (rawCommentaires instanceof List<?> list) {
-            for (Object value : list) {
-                if (value instanceof Map) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> commentMap = (Map<String, Object>) value;
-                    com.maintenance.maintenance.model.entity.Commentaire commentaire = new com.maintenance.maintenance.model.entity.Commentaire();
-                    commentaire.setTexte((String) commentMap.get("texte"));
-                    commentaire.setAuteurId((String) commentMap.get("auteurId"));
-                    commentaire.setAuteurNom((String) commentMap.get("auteurNom"));
-                    commentaire.setImageUrl((String) commentMap.get("imageUrl"));
-                    Object dateObj = commentMap.get("dateCreation");
-                    if (dateObj instanceof Long) {
-                        commentaire.setDateCreation((Long) dateObj);
-                    } else if (dateObj instanceof Number) {
-                        commentaire.setDateCreation(((Number) dateObj).longValue());
-                    }
-                    commentaires.add(commentaire);
-                } else if (value != null) {
-                    // Compatibilité avec l'ancien format (String)
-                    com.maintenance.maintenance.model.entity.Commentaire commentaire = new com.maintenance.maintenance.model.entity.Commentaire();
-                    commentaire.setTexte(value.toString());
-                    commentaire.setAuteurId("unknown");
-                    commentaire.setAuteurNom("Utilisateur");
-                    commentaires.add(commentaire);
-                }
-            }
-        }
-        ticket.setCommentaires(commentaires);
-        
-        return ticket;
+        return FirebaseEntityDecoder.ticket(FirebaseEntityDecoder.fields(snapshot), entrepriseId, ticketId);
     }
 
-    private Map<String, Object> serializeTicket(com.maintenance.maintenance.model.entity.Ticket ticket) {
+    /**
+     * Visibilité paquet : mesurée par les benchmarks JMH (src/jmh)
+     */
+    Map<String, Object> serializeTicket(com.maintenance.maintenance.model.entity.Ticket ticket) {
         Map<String, Object> data = new HashMap<>();
         data.put("titre", ticket.getTitre());
         data.put("description", ticket.getDescription());
@@ -2669,6 +3049,10 @@ public class FirebaseRealtimeService {
      * Récupère toutes les alertes pour une entreprise
      */
     public List<com.maintenance.maintenance.model.entity.Alerte> getAlertesForEnterprise(String entrepriseId) throws Exception {
+        List<com.maintenance.maintenance.model.entity.Alerte> replicated = replicaService.getCollection(entrepriseId, "alertes");
+        if (replicated != null) {
+            return replicated;
+        }
         CompletableFuture<List<com.maintenance.maintenance.model.entity.Alerte>> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -2676,17 +3060,15 @@ public class FirebaseRealtimeService {
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(DataSnapshot snapshot) {
-                        List<com.maintenance.maintenance.model.entity.Alerte> alertes = new ArrayList<>();
-                        if (snapshot.exists()) {
-                            for (DataSnapshot child : snapshot.getChildren()) {
-                                com.maintenance.maintenance.model.entity.Alerte alerte = mapAlerteSnapshot(child);
-                                if (alerte != null) {
-                                    alertes.add(alerte);
-                                }
+                        snapshotDecoder.execute(() -> {
+                            try {
+                                future.complete(decodeAlerteList(snapshot));
+                            } catch (Exception e) {
+                                future.completeExceptionally(e);
+                            } finally {
+                                latch.countDown();
                             }
-                        }
-                        future.complete(alertes);
-                        latch.countDown();
+                        });
                     }
 
                     @Override
@@ -2697,17 +3079,30 @@ public class FirebaseRealtimeService {
                 });
 
         try {
-            latch.await(10, TimeUnit.SECONDS);
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new Exception("Timeout (10 secondes)");
+            }
             return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Exception("Interruption lors de la récupération des alertes: " + e.getMessage());
         } catch (Exception e) {
             throw new Exception("Erreur lors de la récupération des alertes: " + e.getMessage());
         }
     }
 
+    private List<com.maintenance.maintenance.model.entity.Alerte> decodeAlerteList(DataSnapshot snapshot) {
+        return snapshotDecoder.decodeChildren(snapshot, this::mapAlerteSnapshot);
+    }
+
     /**
      * Récupère une alerte par son ID
      */
     public com.maintenance.maintenance.model.entity.Alerte getAlerteById(String entrepriseId, String alerteId) throws Exception {
+        EnterpriseReplicaService.Lookup<com.maintenance.maintenance.model.entity.Alerte> replicated = replicaService.getItem(entrepriseId, "alertes", alerteId);
+        if (replicated.isFound()) {
+            return replicated.getValue();
+        }
         CompletableFuture<com.maintenance.maintenance.model.entity.Alerte> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -2761,19 +3156,24 @@ public class FirebaseRealtimeService {
         CompletableFuture<Void> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
-        databaseReference.child("entreprises").child(entrepriseId).child("alertes").child(alerteId)
-                .setValue(data, (error, ref) -> {
-                    if (error != null) {
-                        future.completeExceptionally(new Exception("Erreur lors de la création de l'alerte: " + error.getMessage()));
-                    } else {
-                        future.complete(null);
-                    }
-                    latch.countDown();
-                });
+        // Élément et entrée d'index des échéances écrits ensemble (mise à jour multi-chemins)
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("entreprises/" + entrepriseId + "/alertes/" + alerteId, data);
+        updates.put(EcheanceIndex.path(EcheanceIndex.ALERTES, entrepriseId, alerteId), EcheanceIndex.alerteEntry(entrepriseId, alerte));
+
+        databaseReference.updateChildren(updates, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(new Exception("Erreur lors de la création de l'alerte: " + error.getMessage()));
+            } else {
+                future.complete(null);
+            }
+            latch.countDown();
+        });
 
         try {
             latch.await(10, TimeUnit.SECONDS);
             future.get();
+            recordChange(entrepriseId, PreviousState.ABSENT, alerte);
             return alerteId;
         } catch (Exception e) {
             throw new Exception("Erreur lors de la création de l'alerte: " + e.getMessage());
@@ -2784,21 +3184,29 @@ public class FirebaseRealtimeService {
      * Met à jour une alerte
      */
     public void updateAlerte(String entrepriseId, String alerteId, com.maintenance.maintenance.model.entity.Alerte alerte) throws Exception {
+        PreviousState avant = previousState(() -> getAlerteById(entrepriseId, alerteId));
         alerte.setDateModification(System.currentTimeMillis());
         Map<String, Object> data = serializeAlerte(alerte);
 
         CompletableFuture<Void> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
-        databaseReference.child("entreprises").child(entrepriseId).child("alertes").child(alerteId)
-                .updateChildren(data, (error, ref) -> {
-                    if (error != null) {
-                        future.completeExceptionally(new Exception("Erreur lors de la mise à jour de l'alerte: " + error.getMessage()));
-                    } else {
-                        future.complete(null);
-                    }
-                    latch.countDown();
-                });
+        // Champs de l'élément et entrée d'index des échéances (envoi, relance, vérification) en une seule écriture
+        String alertePath = "entreprises/" + entrepriseId + "/alertes/" + alerteId;
+        Map<String, Object> updates = new HashMap<>();
+        for (Map.Entry<String, Object> field : data.entrySet()) {
+            updates.put(alertePath + "/" + field.getKey(), field.getValue());
+        }
+        updates.put(EcheanceIndex.path(EcheanceIndex.ALERTES, entrepriseId, alerteId), EcheanceIndex.alerteEntry(entrepriseId, alerte));
+
+        databaseReference.updateChildren(updates, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(new Exception("Erreur lors de la mise à jour de l'alerte: " + error.getMessage()));
+            } else {
+                future.complete(null);
+            }
+            latch.countDown();
+        });
 
         try {
             latch.await(10, TimeUnit.SECONDS);
@@ -2806,24 +3214,30 @@ public class FirebaseRealtimeService {
         } catch (Exception e) {
             throw new Exception("Erreur lors de la mise à jour de l'alerte: " + e.getMessage());
         }
+        recordChange(entrepriseId, avant, alerte);
     }
 
     /**
      * Supprime une alerte
      */
     public void deleteAlerte(String entrepriseId, String alerteId) throws Exception {
+        PreviousState avant = previousState(() -> getAlerteById(entrepriseId, alerteId));
         CompletableFuture<Void> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
-        databaseReference.child("entreprises").child(entrepriseId).child("alertes").child(alerteId)
-                .removeValue((error, ref) -> {
-                    if (error != null) {
-                        future.completeExceptionally(new Exception("Erreur lors de la suppression de l'alerte: " + error.getMessage()));
-                    } else {
-                        future.complete(null);
-                    }
-                    latch.countDown();
-                });
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("entreprises/" + entrepriseId + "/alertes/" + alerteId, null);
+        updates.put(EcheanceIndex.path(EcheanceIndex.ALERTES, entrepriseId, alerteId), null);
+        updates.put(EcheanceIndex.leasePath(EcheanceIndex.ALERTES, entrepriseId, alerteId), null);
+
+        databaseReference.updateChildren(updates, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(new Exception("Erreur lors de la suppression de l'alerte: " + error.getMessage()));
+            } else {
+                future.complete(null);
+            }
+            latch.countDown();
+        });
 
         try {
             latch.await(10, TimeUnit.SECONDS);
@@ -2831,49 +3245,25 @@ public class FirebaseRealtimeService {
         } catch (Exception e) {
             throw new Exception("Erreur lors de la suppression de l'alerte: " + e.getMessage());
         }
+        recordChange(entrepriseId, avant, null);
     }
 
     /**
      * Récupère toutes les alertes à envoyer (date de vérification atteinte et non envoyées)
      */
     public List<com.maintenance.maintenance.model.entity.Alerte> getAlertesAEnvoyer() throws Exception {
-        CompletableFuture<List<com.maintenance.maintenance.model.entity.Alerte>> future = new CompletableFuture<>();
-        CountDownLatch latch = new CountDownLatch(1);
-        List<com.maintenance.maintenance.model.entity.Alerte> alertesAEnvoyer = new ArrayList<>();
-
-        databaseReference.child("entreprises").addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                long now = System.currentTimeMillis();
-                for (DataSnapshot entrepriseSnapshot : snapshot.getChildren()) {
-                    DataSnapshot alertesSnapshot = entrepriseSnapshot.child("alertes");
-                    if (alertesSnapshot.exists()) {
-                        for (DataSnapshot alerteSnapshot : alertesSnapshot.getChildren()) {
-                            com.maintenance.maintenance.model.entity.Alerte alerte = mapAlerteSnapshot(alerteSnapshot);
-                            if (alerte != null 
-                                && alerte.getDateVerification() != null 
-                                && alerte.getDateVerification() <= now
-                                && (alerte.getEnvoye() == null || !alerte.getEnvoye())
-                                && (alerte.getVerifie() == null || !alerte.getVerifie())) {
-                                alertesAEnvoyer.add(alerte);
-                            }
-                        }
-                    }
+        try {
+            long now = System.currentTimeMillis();
+            List<com.maintenance.maintenance.model.entity.Alerte> alertesAEnvoyer = new ArrayList<>();
+            for (com.maintenance.maintenance.model.entity.Alerte alerte : loadDueItems(EcheanceIndex.ALERTES, false, now, this::mapDueAlerte, EcheanceIndex::alerteEntry)) {
+                if (alerte.getDateVerification() != null 
+                    && alerte.getDateVerification() <= now
+                    && (alerte.getEnvoye() == null || !alerte.getEnvoye())
+                    && (alerte.getVerifie() == null || !alerte.getVerifie())) {
+                    alertesAEnvoyer.add(alerte);
                 }
-                future.complete(alertesAEnvoyer);
-                latch.countDown();
-            }
-
-            @Override
-            public void onCancelled(DatabaseError error) {
-                future.completeExceptionally(new Exception("Erreur lors de la récupération des alertes à envoyer: " + error.getMessage()));
-                latch.countDown();
             }
-        });
-
-        try {
-            latch.await(30, TimeUnit.SECONDS);
-            return future.get();
+            return alertesAEnvoyer;
         } catch (Exception e) {
             throw new Exception("Erreur lors de la récupération des alertes à envoyer: " + e.getMessage());
         }
@@ -2883,107 +3273,7 @@ public class FirebaseRealtimeService {
      * Mappe un DataSnapshot vers un objet Alerte
      */
     private com.maintenance.maintenance.model.entity.Alerte mapAlerteSnapshot(DataSnapshot snapshot) {
-        try {
-            com.maintenance.maintenance.model.entity.Alerte alerte = new com.maintenance.maintenance.model.entity.Alerte();
-            alerte.setAlerteId(snapshot.getKey());
-            
-            if (snapshot.child("entrepriseId").exists()) {
-                alerte.setEntrepriseId(snapshot.child("entrepriseId").getValue(String.class));
-            }
-            if (snapshot.child("machineId").exists()) {
-                alerte.setMachineId(snapshot.child("machineId").getValue(String.class));
-            }
-            if (snapshot.child("machineNom").exists()) {
-                alerte.setMachineNom(snapshot.child("machineNom").getValue(String.class));
-            }
-            if (snapshot.child("description").exists()) {
-                alerte.setDescription(snapshot.child("description").getValue(String.class));
-            }
-            if (snapshot.child("dateVerification").exists()) {
-                Object dateVerif = snapshot.child("dateVerification").getValue();
-                if (dateVerif instanceof Long) {
-                    alerte.setDateVerification((Long) dateVerif);
-                } else if (dateVerif instanceof Number) {
-                    alerte.setDateVerification(((Number) dateVerif).longValue());
-                }
-            }
-            if (snapshot.child("envoye").exists()) {
-                alerte.setEnvoye(snapshot.child("envoye").getValue(Boolean.class));
-            }
-            if (snapshot.child("dateEnvoi").exists()) {
-                Object dateEnvoi = snapshot.child("dateEnvoi").getValue();
-                if (dateEnvoi instanceof Long) {
-                    alerte.setDateEnvoi((Long) dateEnvoi);
-                } else if (dateEnvoi instanceof Number) {
-                    alerte.setDateEnvoi(((Number) dateEnvoi).longValue());
-                }
-            }
-            if (snapshot.child("creePar").exists()) {
-                alerte.setCreePar(snapshot.child("creePar").getValue(String.class));
-            }
-            if (snapshot.child("creeParNom").exists()) {
-                alerte.setCreeParNom(snapshot.child("creeParNom").getValue(String.class));
-            }
-            if (snapshot.child("dateCreation").exists()) {
-                Object dateCreation = snapshot.child("dateCreation").getValue();
-                if (dateCreation instanceof Long) {
-                    alerte.setDateCreation((Long) dateCreation);
-                } else if (dateCreation instanceof Number) {
-                    alerte.setDateCreation(((Number) dateCreation).longValue());
-                }
-            }
-            if (snapshot.child("dateModification").exists()) {
-                Object dateModif = snapshot.child("dateModification").getValue();
-                if (dateModif instanceof Long) {
-                    alerte.setDateModification((Long) dateModif);
-                } else if (dateModif instanceof Number) {
-                    alerte.setDateModification(((Number) dateModif).longValue());
-                }
-            }
-            if (snapshot.child("activerRelance").exists()) {
-                alerte.setActiverRelance(snapshot.child("activerRelance").getValue(Boolean.class));
-            }
-            if (snapshot.child("nombreRelances").exists()) {
-                Object nbRelances = snapshot.child("nombreRelances").getValue();
-                if (nbRelances instanceof Integer) {
-                    alerte.setNombreRelances((Integer) nbRelances);
-                } else if (nbRelances instanceof Number) {
-                    alerte.setNombreRelances(((Number) nbRelances).intValue());
-                }
-            }
-            if (snapshot.child("nombreRelancesEnvoyees").exists()) {
-                Object nbRelancesEnv = snapshot.child("nombreRelancesEnvoyees").getValue();
-                if (nbRelancesEnv instanceof Integer) {
-                    alerte.setNombreRelancesEnvoyees((Integer) nbRelancesEnv);
-                } else if (nbRelancesEnv instanceof Number) {
-                    alerte.setNombreRelancesEnvoyees(((Number) nbRelancesEnv).intValue());
-                }
-            }
-            if (snapshot.child("dateDerniereRelance").exists()) {
-                Object dateRelance = snapshot.child("dateDerniereRelance").getValue();
-                if (dateRelance instanceof Long) {
-                    alerte.setDateDerniereRelance((Long) dateRelance);
-                } else if (dateRelance instanceof Number) {
-                    alerte.setDateDerniereRelance(((Number) dateRelance).longValue());
-                }
-            }
-            if (snapshot.child("verifie").exists()) {
-                alerte.setVerifie(snapshot.child("verifie").getValue(Boolean.class));
-            }
-            if (snapshot.child("dateVerificationReelle").exists()) {
-                Object dateVerifReelle = snapshot.child("dateVerificationReelle").getValue();
-                if (dateVerifReelle instanceof Long) {
-                    alerte.setDateVerificationReelle((Long) dateVerifReelle);
-                } else if (dateVerifReelle instanceof Number) {
-                    alerte.setDateVerificationReelle(((Number) dateVerifReelle).longValue());
-                }
-            }
-            
-            return alerte;
-        } catch (Exception e) {
-            System.err.println("Erreur lors du mapping de l'alerte: " + e.getMessage());
-            return null;
-        }
+        return FirebaseEntityDecoder.alerte(FirebaseEntityDecoder.fields(snapshot), snapshot.getKey());
     }
 
     /**
@@ -3016,52 +3306,27 @@ public class FirebaseRealtimeService {
      * Récupère les alertes à relancer (envoyées mais pas vérifiées et avec relances activées)
      */
     public List<com.maintenance.maintenance.model.entity.Alerte> getAlertesARelancer() throws Exception {
-        CompletableFuture<List<com.maintenance.maintenance.model.entity.Alerte>> future = new CompletableFuture<>();
-        CountDownLatch latch = new CountDownLatch(1);
-        List<com.maintenance.maintenance.model.entity.Alerte> alertesARelancer = new ArrayList<>();
-
-        databaseReference.child("entreprises").addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                long now = System.currentTimeMillis();
-                for (DataSnapshot entrepriseSnapshot : snapshot.getChildren()) {
-                    DataSnapshot alertesSnapshot = entrepriseSnapshot.child("alertes");
-                    if (alertesSnapshot.exists()) {
-                        for (DataSnapshot alerteSnapshot : alertesSnapshot.getChildren()) {
-                            com.maintenance.maintenance.model.entity.Alerte alerte = mapAlerteSnapshot(alerteSnapshot);
-                            if (alerte != null 
-                                && alerte.getDateVerification() != null 
-                                && alerte.getDateVerification() <= now
-                                && (alerte.getEnvoye() == null || alerte.getEnvoye())
-                                && (alerte.getVerifie() == null || !alerte.getVerifie())
-                                && (alerte.getActiverRelance() != null && alerte.getActiverRelance())
-                                && (alerte.getNombreRelances() != null && alerte.getNombreRelances() > 0)
-                                && (alerte.getNombreRelancesEnvoyees() == null || 
-                                    alerte.getNombreRelancesEnvoyees() < alerte.getNombreRelances())) {
-                                // Vérifier si au moins 24h se sont écoulées depuis la dernière relance (ou l'envoi initial)
-                                Long dateDerniereAction = alerte.getDateDerniereRelance() != null ? 
-                                    alerte.getDateDerniereRelance() : alerte.getDateEnvoi();
-                                if (dateDerniereAction != null && (now - dateDerniereAction) >= 86400000) { // 24h en ms
-                                    alertesARelancer.add(alerte);
-                                }
-                            }
-                        }
+        try {
+            long now = System.currentTimeMillis();
+            List<com.maintenance.maintenance.model.entity.Alerte> alertesARelancer = new ArrayList<>();
+            for (com.maintenance.maintenance.model.entity.Alerte alerte : loadDueItems(EcheanceIndex.ALERTES, true, now, this::mapDueAlerte, EcheanceIndex::alerteEntry)) {
+                if (alerte.getDateVerification() != null 
+                    && alerte.getDateVerification() <= now
+                    && (alerte.getEnvoye() == null || alerte.getEnvoye())
+                    && (alerte.getVerifie() == null || !alerte.getVerifie())
+                    && (alerte.getActiverRelance() != null && alerte.getActiverRelance())
+                    && (alerte.getNombreRelances() != null && alerte.getNombreRelances() > 0)
+                    && (alerte.getNombreRelancesEnvoyees() == null || 
+                        alerte.getNombreRelancesEnvoyees() < alerte.getNombreRelances())) {
+                    // Vérifier si au moins 24h se sont écoulées depuis la dernière relance (ou l'envoi initial)
+                    Long dateDerniereAction = alerte.getDateDerniereRelance() != null ? 
+                        alerte.getDateDerniereRelance() : alerte.getDateEnvoi();
+                    if (dateDerniereAction != null && (now - dateDerniereAction) >= EcheanceIndex.DELAI_RELANCE_MS) {
+                        alertesARelancer.add(alerte);
                     }
                 }
-                future.complete(alertesARelancer);
-                latch.countDown();
-            }
-
-            @Override
-            public void onCancelled(DatabaseError error) {
-                future.completeExceptionally(new Exception("Erreur lors de la récupération des alertes à relancer: " + error.getMessage()));
-                latch.countDown();
             }
-        });
-
-        try {
-            latch.await(30, TimeUnit.SECONDS);
-            return future.get();
+            return alertesARelancer;
         } catch (Exception e) {
             throw new Exception("Erreur lors de la récupération des alertes à relancer: " + e.getMessage());
         }
@@ -3073,6 +3338,10 @@ public class FirebaseRealtimeService {
      * Récupère tous les rappels pour une entreprise
      */
     public List<com.maintenance.maintenance.model.entity.Rappel> getRappelsForEnterprise(String entrepriseId) throws Exception {
+        List<com.maintenance.maintenance.model.entity.Rappel> replicated = replicaService.getCollection(entrepriseId, "rappels");
+        if (replicated != null) {
+            return replicated;
+        }
         CompletableFuture<List<com.maintenance.maintenance.model.entity.Rappel>> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -3080,17 +3349,15 @@ public class FirebaseRealtimeService {
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(DataSnapshot snapshot) {
-                        List<com.maintenance.maintenance.model.entity.Rappel> rappels = new ArrayList<>();
-                        if (snapshot.exists()) {
-                            for (DataSnapshot child : snapshot.getChildren()) {
-                                com.maintenance.maintenance.model.entity.Rappel rappel = mapRappelSnapshot(child);
-                                if (rappel != null) {
-                                    rappels.add(rappel);
-                                }
+                        snapshotDecoder.execute(() -> {
+                            try {
+                                future.complete(decodeRappelList(snapshot));
+                            } catch (Exception e) {
+                                future.completeExceptionally(e);
+                            } finally {
+                                latch.countDown();
                             }
-                        }
-                        future.complete(rappels);
-                        latch.countDown();
+                        });
                     }
 
                     @Override
@@ -3101,17 +3368,30 @@ public class FirebaseRealtimeService {
                 });
 
         try {
-            latch.await(10, TimeUnit.SECONDS);
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new Exception("Timeout (10 secondes)");
+            }
             return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Exception("Interruption lors de la récupération des rappels: " + e.getMessage());
         } catch (Exception e) {
             throw new Exception("Erreur lors de la récupération des rappels: " + e.getMessage());
         }
     }
 
+    private List<com.maintenance.maintenance.model.entity.Rappel> decodeRappelList(DataSnapshot snapshot) {
+        return snapshotDecoder.decodeChildren(snapshot, this::mapRappelSnapshot);
+    }
+
     /**
      * Récupère un rappel par son ID
      */
     public com.maintenance.maintenance.model.entity.Rappel getRappelById(String entrepriseId, String rappelId) throws Exception {
+        EnterpriseReplicaService.Lookup<com.maintenance.maintenance.model.entity.Rappel> replicated = replicaService.getItem(entrepriseId, "rappels", rappelId);
+        if (replicated.isFound()) {
+            return replicated.getValue();
+        }
         CompletableFuture<com.maintenance.maintenance.model.entity.Rappel> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -3165,19 +3445,24 @@ public class FirebaseRealtimeService {
         CompletableFuture<Void> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
-        databaseReference.child("entreprises").child(entrepriseId).child("rappels").child(rappelId)
-                .setValue(data, (error, ref) -> {
-                    if (error != null) {
-                        future.completeExceptionally(new Exception("Erreur lors de la création du rappel: " + error.getMessage()));
-                    } else {
-                        future.complete(null);
-                    }
-                    latch.countDown();
-                });
+        // Élément et entrée d'index des échéances écrits ensemble (mise à jour multi-chemins)
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("entreprises/" + entrepriseId + "/rappels/" + rappelId, data);
+        updates.put(EcheanceIndex.path(EcheanceIndex.RAPPELS, entrepriseId, rappelId), EcheanceIndex.rappelEntry(entrepriseId, rappel));
+
+        databaseReference.updateChildren(updates, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(new Exception("Erreur lors de la création du rappel: " + error.getMessage()));
+            } else {
+                future.complete(null);
+            }
+            latch.countDown();
+        });
 
         try {
             latch.await(10, TimeUnit.SECONDS);
             future.get();
+            recordChange(entrepriseId, PreviousState.ABSENT, rappel);
             return rappelId;
         } catch (Exception e) {
             throw new Exception("Erreur lors de la création du rappel: " + e.getMessage());
@@ -3188,21 +3473,29 @@ public class FirebaseRealtimeService {
      * Met à jour un rappel
      */
     public void updateRappel(String entrepriseId, String rappelId, com.maintenance.maintenance.model.entity.Rappel rappel) throws Exception {
+        PreviousState avant = previousState(() -> getRappelById(entrepriseId, rappelId));
         rappel.setDateModification(System.currentTimeMillis());
         Map<String, Object> data = serializeRappel(rappel);
 
         CompletableFuture<Void> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
-        databaseReference.child("entreprises").child(entrepriseId).child("rappels").child(rappelId)
-                .updateChildren(data, (error, ref) -> {
-                    if (error != null) {
-                        future.completeExceptionally(new Exception("Erreur lors de la mise à jour du rappel: " + error.getMessage()));
-                    } else {
-                        future.complete(null);
-                    }
-                    latch.countDown();
-                });
+        // Champs de l'élément et entrée d'index des échéances (envoi, relance, vérification) en une seule écriture
+        String rappelPath = "entreprises/" + entrepriseId + "/rappels/" + rappelId;
+        Map<String, Object> updates = new HashMap<>();
+        for (Map.Entry<String, Object> field : data.entrySet()) {
+            updates.put(rappelPath + "/" + field.getKey(), field.getValue());
+        }
+        updates.put(EcheanceIndex.path(EcheanceIndex.RAPPELS, entrepriseId, rappelId), EcheanceIndex.rappelEntry(entrepriseId, rappel));
+
+        databaseReference.updateChildren(updates, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(new Exception("Erreur lors de la mise à jour du rappel: " + error.getMessage()));
+            } else {
+                future.complete(null);
+            }
+            latch.countDown();
+        });
 
         try {
             latch.await(10, TimeUnit.SECONDS);
@@ -3210,24 +3503,30 @@ public class FirebaseRealtimeService {
         } catch (Exception e) {
             throw new Exception("Erreur lors de la mise à jour du rappel: " + e.getMessage());
         }
+        recordChange(entrepriseId, avant, rappel);
     }
 
     /**
      * Supprime un rappel
      */
     public void deleteRappel(String entrepriseId, String rappelId) throws Exception {
+        PreviousState avant = previousState(() -> getRappelById(entrepriseId, rappelId));
         CompletableFuture<Void> future = new CompletableFuture<>();
         CountDownLatch latch = new CountDownLatch(1);
 
-        databaseReference.child("entreprises").child(entrepriseId).child("rappels").child(rappelId)
-                .removeValue((error, ref) -> {
-                    if (error != null) {
-                        future.completeExceptionally(new Exception("Erreur lors de la suppression du rappel: " + error.getMessage()));
-                    } else {
-                        future.complete(null);
-                    }
-                    latch.countDown();
-                });
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("entreprises/" + entrepriseId + "/rappels/" + rappelId, null);
+        updates.put(EcheanceIndex.path(EcheanceIndex.RAPPELS, entrepriseId, rappelId), null);
+        updates.put(EcheanceIndex.leasePath(EcheanceIndex.RAPPELS, entrepriseId, rappelId), null);
+
+        databaseReference.updateChildren(updates, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(new Exception("Erreur lors de la suppression du rappel: " + error.getMessage()));
+            } else {
+                future.complete(null);
+            }
+            latch.countDown();
+        });
 
         try {
             latch.await(10, TimeUnit.SECONDS);
@@ -3235,76 +3534,38 @@ public class FirebaseRealtimeService {
         } catch (Exception e) {
             throw new Exception("Erreur lors de la suppression du rappel: " + e.getMessage());
         }
+        recordChange(entrepriseId, avant, null);
     }
 
     /**
      * Récupère tous les rappels à envoyer (date de vérification atteinte et non envoyés)
      */
     public List<com.maintenance.maintenance.model.entity.Rappel> getRappelsAEnvoyer() throws Exception {
-        CompletableFuture<List<com.maintenance.maintenance.model.entity.Rappel>> future = new CompletableFuture<>();
-        CountDownLatch latch = new CountDownLatch(1);
-        List<com.maintenance.maintenance.model.entity.Rappel> rappelsAEnvoyer = new ArrayList<>();
+        try {
+            // Obtenir le début de la journée actuelle (minuit) pour comparer avec la date de vérification
+            java.util.Calendar cal = java.util.Calendar.getInstance();
+            cal.set(java.util.Calendar.HOUR_OF_DAY, 0);
+            cal.set(java.util.Calendar.MINUTE, 0);
+            cal.set(java.util.Calendar.SECOND, 0);
+            cal.set(java.util.Calendar.MILLISECOND, 0);
+            long startOfToday = cal.getTimeInMillis();
+            long now = System.currentTimeMillis();
 
-        databaseReference.child("entreprises").addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                // Obtenir le début de la journée actuelle (minuit) pour comparer avec la date de vérification
-                java.util.Calendar cal = java.util.Calendar.getInstance();
-                cal.set(java.util.Calendar.HOUR_OF_DAY, 0);
-                cal.set(java.util.Calendar.MINUTE, 0);
-                cal.set(java.util.Calendar.SECOND, 0);
-                cal.set(java.util.Calendar.MILLISECOND, 0);
-                long startOfToday = cal.getTimeInMillis();
-                
-                // Aussi obtenir le timestamp actuel pour une comparaison plus précise
-                long now = System.currentTimeMillis();
-                
-                System.out.println("🔍 [DEBUG] Début de la journée actuelle: " + startOfToday + " (" + new java.util.Date(startOfToday) + ")");
-                System.out.println("🔍 [DEBUG] Timestamp actuel: " + now + " (" + new java.util.Date(now) + ")");
-                
-                for (DataSnapshot entrepriseSnapshot : snapshot.getChildren()) {
-                    DataSnapshot rappelsSnapshot = entrepriseSnapshot.child("rappels");
-                    if (rappelsSnapshot.exists()) {
-                        for (DataSnapshot rappelSnapshot : rappelsSnapshot.getChildren()) {
-                            com.maintenance.maintenance.model.entity.Rappel rappel = mapRappelSnapshot(rappelSnapshot);
-                            if (rappel != null 
-                                && rappel.getDateVerification() != null) {
-                                // La date de vérification est stockée comme timestamp du début de la journée
-                                // Vérifier si la date de vérification est aujourd'hui ou dans le passé
-                                long dateVerif = rappel.getDateVerification();
-                                
-                                System.out.println("🔍 [DEBUG] Rappel trouvé - Machine: " + rappel.getMachineNom() 
-                                    + ", Date vérif: " + dateVerif + " (" + new java.util.Date(dateVerif) + ")"
-                                    + ", Envoyé: " + rappel.getEnvoye() + ", Vérifié: " + rappel.getVerifie());
-                                
-                                // Vérifier si la date de vérification est atteinte ou dépassée
-                                // Comparer avec le début de la journée actuelle (dateVerif est au début de sa journée)
-                                if (dateVerif <= startOfToday
-                                    && (rappel.getEnvoye() == null || !rappel.getEnvoye())
-                                    && (rappel.getVerifie() == null || !rappel.getVerifie())) {
-                                    System.out.println("✅ [DEBUG] Rappel à envoyer détecté: " + rappel.getMachineNom());
-                                    rappelsAEnvoyer.add(rappel);
-                                }
-                            }
-                        }
-                    }
+            List<com.maintenance.maintenance.model.entity.Rappel> rappelsAEnvoyer = new ArrayList<>();
+            for (com.maintenance.maintenance.model.entity.Rappel rappel : loadDueItems(EcheanceIndex.RAPPELS, false, now, this::mapDueRappel, EcheanceIndex::rappelEntry)) {
+                // La date de vérification est stockée comme timestamp du début de la journée
+                // Comparer avec le début de la journée actuelle (dateVerif est au début de sa journée)
+                if (rappel.getDateVerification() != null
+                    && rappel.getDateVerification() <= startOfToday
+                    && (rappel.getEnvoye() == null || !rappel.getEnvoye())
+                    && (rappel.getVerifie() == null || !rappel.getVerifie())) {
+                    System.out.println("✅ [DEBUG] Rappel à envoyer détecté: " + rappel.getMachineNom());
+                    rappelsAEnvoyer.add(rappel);
                 }
-                
-                System.out.println("🔍 [DEBUG] Total rappels à envoyer: " + rappelsAEnvoyer.size());
-                future.complete(rappelsAEnvoyer);
-                latch.countDown();
-            }
-
-            @Override
-            public void onCancelled(DatabaseError error) {
-                future.completeExceptionally(new Exception("Erreur lors de la récupération des rappels à envoyer: " + error.getMessage()));
-                latch.countDown();
             }
-        });
 
-        try {
-            latch.await(30, TimeUnit.SECONDS);
-            return future.get();
+            System.out.println("🔍 [DEBUG] Total rappels à envoyer: " + rappelsAEnvoyer.size());
+            return rappelsAEnvoyer;
         } catch (Exception e) {
             throw new Exception("Erreur lors de la récupération des rappels à envoyer: " + e.getMessage());
         }
@@ -3314,52 +3575,27 @@ public class FirebaseRealtimeService {
      * Récupère les rappels à relancer (envoyés mais pas vérifiés et avec relances activées)
      */
     public List<com.maintenance.maintenance.model.entity.Rappel> getRappelsARelancer() throws Exception {
-        CompletableFuture<List<com.maintenance.maintenance.model.entity.Rappel>> future = new CompletableFuture<>();
-        CountDownLatch latch = new CountDownLatch(1);
-        List<com.maintenance.maintenance.model.entity.Rappel> rappelsARelancer = new ArrayList<>();
-
-        databaseReference.child("entreprises").addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                long now = System.currentTimeMillis();
-                for (DataSnapshot entrepriseSnapshot : snapshot.getChildren()) {
-                    DataSnapshot rappelsSnapshot = entrepriseSnapshot.child("rappels");
-                    if (rappelsSnapshot.exists()) {
-                        for (DataSnapshot rappelSnapshot : rappelsSnapshot.getChildren()) {
-                            com.maintenance.maintenance.model.entity.Rappel rappel = mapRappelSnapshot(rappelSnapshot);
-                            if (rappel != null 
-                                && rappel.getDateVerification() != null 
-                                && rappel.getDateVerification() <= now
-                                && (rappel.getEnvoye() == null || rappel.getEnvoye())
-                                && (rappel.getVerifie() == null || !rappel.getVerifie())
-                                && (rappel.getActiverRelance() != null && rappel.getActiverRelance())
-                                && (rappel.getNombreRelances() != null && rappel.getNombreRelances() > 0)
-                                && (rappel.getNombreRelancesEnvoyees() == null || 
-                                    rappel.getNombreRelancesEnvoyees() < rappel.getNombreRelances())) {
-                                // Vérifier si au moins 24h se sont écoulées depuis la dernière relance (ou l'envoi initial)
-                                Long dateDerniereAction = rappel.getDateDerniereRelance() != null ? 
-                                    rappel.getDateDerniereRelance() : rappel.getDateEnvoi();
-                                if (dateDerniereAction != null && (now - dateDerniereAction) >= 86400000) { // 24h en ms
-                                    rappelsARelancer.add(rappel);
-                                }
-                            }
-                        }
+        try {
+            long now = System.currentTimeMillis();
+            List<com.maintenance.maintenance.model.entity.Rappel> rappelsARelancer = new ArrayList<>();
+            for (com.maintenance.maintenance.model.entity.Rappel rappel : loadDueItems(EcheanceIndex.RAPPELS, true, now, this::mapDueRappel, EcheanceIndex::rappelEntry)) {
+                if (rappel.getDateVerification() != null 
+                    && rappel.getDateVerification() <= now
+                    && (rappel.getEnvoye() == null || rappel.getEnvoye())
+                    && (rappel.getVerifie() == null || !rappel.getVerifie())
+                    && (rappel.getActiverRelance() != null && rappel.getActiverRelance())
+                    && (rappel.getNombreRelances() != null && rappel.getNombreRelances() > 0)
+                    && (rappel.getNombreRelancesEnvoyees() == null || 
+                        rappel.getNombreRelancesEnvoyees() < rappel.getNombreRelances())) {
+                    // Vérifier si au moins 24h se sont écoulées depuis la dernière relance (ou l'envoi initial)
+                    Long dateDerniereAction = rappel.getDateDerniereRelance() != null ? 
+                        rappel.getDateDerniereRelance() : rappel.getDateEnvoi();
+                    if (dateDerniereAction != null && (now - dateDerniereAction) >= EcheanceIndex.DELAI_RELANCE_MS) {
+                        rappelsARelancer.add(rappel);
                     }
                 }
-                future.complete(rappelsARelancer);
-                latch.countDown();
-            }
-
-            @Override
-            public void onCancelled(DatabaseError error) {
-                future.completeExceptionally(new Exception("Erreur lors de la récupération des rappels à relancer: " + error.getMessage()));
-                latch.countDown();
             }
-        });
-
-        try {
-            latch.await(30, TimeUnit.SECONDS);
-            return future.get();
+            return rappelsARelancer;
         } catch (Exception e) {
             throw new Exception("Erreur lors de la récupération des rappels à relancer: " + e.getMessage());
         }
@@ -3369,107 +3605,7 @@ public class FirebaseRealtimeService {
      * Mappe un DataSnapshot vers un objet Rappel
      */
     private com.maintenance.maintenance.model.entity.Rappel mapRappelSnapshot(DataSnapshot snapshot) {
-        try {
-            com.maintenance.maintenance.model.entity.Rappel rappel = new com.maintenance.maintenance.model.entity.Rappel();
-            rappel.setRappelId(snapshot.getKey());
-            
-            if (snapshot.child("entrepriseId").exists()) {
-                rappel.setEntrepriseId(snapshot.child("entrepriseId").getValue(String.class));
-            }
-            if (snapshot.child("machineId").exists()) {
-                rappel.setMachineId(snapshot.child("machineId").getValue(String.class));
-            }
-            if (snapshot.child("machineNom").exists()) {
-                rappel.setMachineNom(snapshot.child("machineNom").getValue(String.class));
-            }
-            if (snapshot.child("description").exists()) {
-                rappel.setDescription(snapshot.child("description").getValue(String.class));
-            }
-            if (snapshot.child("dateVerification").exists()) {
-                Object dateVerif = snapshot.child("dateVerification").getValue();
-                if (dateVerif instanceof Long) {
-                    rappel.setDateVerification((Long) dateVerif);
-                } else if (dateVerif instanceof Number) {
-                    rappel.setDateVerification(((Number) dateVerif).longValue());
-                }
-            }
-            if (snapshot.child("envoye").exists()) {
-                rappel.setEnvoye(snapshot.child("envoye").getValue(Boolean.class));
-            }
-            if (snapshot.child("dateEnvoi").exists()) {
-                Object dateEnvoi = snapshot.child("dateEnvoi").getValue();
-                if (dateEnvoi instanceof Long) {
-                    rappel.setDateEnvoi((Long) dateEnvoi);
-                } else if (dateEnvoi instanceof Number) {
-                    rappel.setDateEnvoi(((Number) dateEnvoi).longValue());
-                }
-            }
-            if (snapshot.child("creePar").exists()) {
-                rappel.setCreePar(snapshot.child("creePar").getValue(String.class));
-            }
-            if (snapshot.child("creeParNom").exists()) {
-                rappel.setCreeParNom(snapshot.child("creeParNom").getValue(String.class));
-            }
-            if (snapshot.child("dateCreation").exists()) {
-                Object dateCreation = snapshot.child("dateCreation").getValue();
-                if (dateCreation instanceof Long) {
-                    rappel.setDateCreation((Long) dateCreation);
-                } else if (dateCreation instanceof Number) {
-                    rappel.setDateCreation(((Number) dateCreation).longValue());
-                }
-            }
-            if (snapshot.child("dateModification").exists()) {
-                Object dateModif = snapshot.child("dateModification").getValue();
-                if (dateModif instanceof Long) {
-                    rappel.setDateModification((Long) dateModif);
-                } else if (dateModif instanceof Number) {
-                    rappel.setDateModification(((Number) dateModif).longValue());
-                }
-            }
-            if (snapshot.child("activerRelance").exists()) {
-                rappel.setActiverRelance(snapshot.child("activerRelance").getValue(Boolean.class));
-            }
-            if (snapshot.child("nombreRelances").exists()) {
-                Object nbRelances = snapshot.child("nombreRelances").getValue();
-                if (nbRelances instanceof Integer) {
-                    rappel.setNombreRelances((Integer) nbRelances);
-                } else if (nbRelances instanceof Number) {
-                    rappel.setNombreRelances(((Number) nbRelances).intValue());
-                }
-            }
-            if (snapshot.child("nombreRelancesEnvoyees").exists()) {
-                Object nbRelancesEnv = snapshot.child("nombreRelancesEnvoyees").getValue();
-                if (nbRelancesEnv instanceof Integer) {
-                    rappel.setNombreRelancesEnvoyees((Integer) nbRelancesEnv);
-                } else if (nbRelancesEnv instanceof Number) {
-                    rappel.setNombreRelancesEnvoyees(((Number) nbRelancesEnv).intValue());
-                }
-            }
-            if (snapshot.child("dateDerniereRelance").exists()) {
-                Object dateRelance = snapshot.child("dateDerniereRelance").getValue();
-                if (dateRelance instanceof Long) {
-                    rappel.setDateDerniereRelance((Long) dateRelance);
-                } else if (dateRelance instanceof Number) {
-                    rappel.setDateDerniereRelance(((Number) dateRelance).longValue());
-                }
-            }
-            if (snapshot.child("verifie").exists()) {
-                rappel.setVerifie(snapshot.child("verifie").getValue(Boolean.class));
-            }
-            if (snapshot.child("dateVerificationReelle").exists()) {
-                Object dateVerifReelle = snapshot.child("dateVerificationReelle").getValue();
-                if (dateVerifReelle instanceof Long) {
-                    rappel.setDateVerificationReelle((Long) dateVerifReelle);
-                } else if (dateVerifReelle instanceof Number) {
-                    rappel.setDateVerificationReelle(((Number) dateVerifReelle).longValue());
-                }
-            }
-            
-            return rappel;
-        } catch (Exception e) {
-            System.err.println("Erreur lors du mapping du rappel: " + e.getMessage());
-            return null;
-        }
+        return FirebaseEntityDecoder.rappel(FirebaseEntityDecoder.fields(snapshot), snapshot.getKey());
     }
 
     /**
@@ -3529,6 +3665,7 @@ public class FirebaseRealtimeService {
         try {
             latch.await(10, TimeUnit.SECONDS);
             future.get();
+            recordChange(entrepriseId, PreviousState.ABSENT, historique);
             return historiqueId;
         } catch (Exception e) {
             throw new Exception("Erreur lors de la création de l'historique: " + e.getMessage());
@@ -3539,58 +3676,7 @@ public class FirebaseRealtimeService {
      * Mappe un DataSnapshot vers un objet HistoriqueVerification
      */
     private com.maintenance.maintenance.model.entity.HistoriqueVerification mapHistoriqueVerificationSnapshot(DataSnapshot snapshot) {
-        try {
-            com.maintenance.maintenance.model.entity.HistoriqueVerification historique = new com.maintenance.maintenance.model.entity.HistoriqueVerification();
-            historique.setHistoriqueId(snapshot.getKey());
-            
-            if (snapshot.child("entrepriseId").exists()) {
-                historique.setEntrepriseId(snapshot.child("entrepriseId").getValue(String.class));
-            }
-            if (snapshot.child("machineId").exists()) {
-                historique.setMachineId(snapshot.child("machineId").getValue(String.class));
-            }
-            if (snapshot.child("machineNom").exists()) {
-                historique.setMachineNom(snapshot.child("machineNom").getValue(String.class));
-            }
-            if (snapshot.child("description").exists()) {
-                historique.setDescription(snapshot.child("description").getValue(String.class));
-            }
-            if (snapshot.child("dateVerificationProgrammee").exists()) {
-                Object dateProg = snapshot.child("dateVerificationProgrammee").getValue();
-                if (dateProg instanceof Long) {
-                    historique.setDateVerificationProgrammee((Long) dateProg);
-                } else if (dateProg instanceof Number) {
-                    historique.setDateVerificationProgrammee(((Number) dateProg).longValue());
-                }
-            }
-            if (snapshot.child("dateVerificationReelle").exists()) {
-                Object dateReelle = snapshot.child("dateVerificationReelle").getValue();
-                if (dateReelle instanceof Long) {
-                    historique.setDateVerificationReelle((Long) dateReelle);
-                } else if (dateReelle instanceof Number) {
-                    historique.setDateVerificationReelle(((Number) dateReelle).longValue());
-                }
-            }
-            if (snapshot.child("verifiePar").exists()) {
-                historique.setVerifiePar(snapshot.child("verifiePar").getValue(String.class));
-            }
-            if (snapshot.child("verifieParNom").exists()) {
-                historique.setVerifieParNom(snapshot.child("verifieParNom").getValue(String.class));
-            }
-            if (snapshot.child("dateCreation").exists()) {
-                Object dateCreation = snapshot.child("dateCreation").getValue();
-                if (dateCreation instanceof Long) {
-                    historique.setDateCreation((Long) dateCreation);
-                } else if (dateCreation instanceof Number) {
-                    historique.setDateCreation(((Number) dateCreation).longValue());
-                }
-            }
-            
-            return historique;
-        } catch (Exception e) {
-            System.err.println("Erreur lors du mapping de l'historique: " + e.getMessage());
-            return null;
-        }
+        return FirebaseEntityDecoder.historiqueVerification(FirebaseEntityDecoder.fields(snapshot), snapshot.getKey());
     }
 
     /**
@@ -3622,23 +3708,15 @@ public class FirebaseRealtimeService {
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(DataSnapshot snapshot) {
-                        List<com.maintenance.maintenance.model.entity.HistoriqueVerification> historiques = new ArrayList<>();
-                        if (snapshot.exists()) {
-                            for (DataSnapshot child : snapshot.getChildren()) {
-                                com.maintenance.maintenance.model.entity.HistoriqueVerification historique = mapHistoriqueVerificationSnapshot(child);
-                                if (historique != null) {
-                                    historiques.add(historique);
-                                }
+                        snapshotDecoder.execute(() -> {
+                            try {
+                                future.complete(decodeHistoriqueVerificationList(snapshot));
+                            } catch (Exception e) {
+                                future.completeExceptionally(e);
+                            } finally {
+                                latch.countDown();
                             }
-                        }
-                        // Trier par date de création décroissante (plus récent en premier)
-                        historiques.sort((h1, h2) -> {
-                            Long date1 = h1.getDateCreation() != null ? h1.getDateCreation() : 0L;
-                            Long date2 = h2.getDateCreation() != null ? h2.getDateCreation() : 0L;
-                            return date2.compareTo(date1);
                         });
-                        future.complete(historiques);
-                        latch.countDown();
                     }
 
                     @Override
@@ -3649,11 +3727,740 @@ public class FirebaseRealtimeService {
                 });
 
         try {
-            latch.await(10, TimeUnit.SECONDS);
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new Exception("Timeout (10 secondes)");
+            }
             return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Exception("Interruption lors de la récupération de l'historique: " + e.getMessage());
         } catch (Exception e) {
             throw new Exception("Erreur lors de la récupération de l'historique: " + e.getMessage());
         }
     }
+
+    private List<com.maintenance.maintenance.model.entity.HistoriqueVerification> decodeHistoriqueVerificationList(DataSnapshot snapshot) {
+        List<com.maintenance.maintenance.model.entity.HistoriqueVerification> historiques = snapshotDecoder.decodeChildren(snapshot, this::mapHistoriqueVerificationSnapshot);
+        // Trier par date de création décroissante (plus récent en premier)
+        historiques.sort((h1, h2) -> {
+            Long date1 = h1.getDateCreation() != null ? h1.getDateCreation() : 0L;
+            Long date2 = h2.getDateCreation() != null ? h2.getDateCreation() : 0L;
+            return date2.compareTo(date1);
+        });
+        return historiques;
+    }
+
+    // ========== INDEX DES ÉCHÉANCES ==========
+
+    private static final String DUE_INDEX_META_NODE = "echeancesMeta";
+
+    /**
+     * Lit les entrées échues de l'index (orderByChild("dueAt").endAt(now)) puis charge les éléments correspondants en parallèle
+     * Les entrées orphelines (élément supprimé) ou périmées sont corrigées au passage.
+     */
+    private <T> List<T> loadDueItems(String type, boolean relance, long now,
+                                     java.util.function.BiFunction<String, DataSnapshot, T> mapper,
+                                     java.util.function.BiFunction<String, T, Map<String, Object>> expectedEntry) throws Exception {
+        List<Map<String, Object>> entries = readDueEntries(type, now);
+        Map<String, Object> repairs = new HashMap<>();
+        List<Map<String, Object>> selected = new ArrayList<>();
+        List<CompletableFuture<T>> reads = new ArrayList<>();
+
+        for (Map<String, Object> entry : entries) {
+            String key = (String) entry.get("key");
+            if (!(entry.get("entrepriseId") instanceof String entrepriseId) || !(entry.get("itemId") instanceof String itemId)) {
+                repairs.put(EcheanceIndex.NODE + "/" + type + "/" + key, null);
+                continue;
+            }
+            if (EcheanceIndex.isRelance(entry) != relance) {
+                continue;
+            }
+            selected.add(entry);
+            reads.add(readAsync(databaseReference.child("entreprises").child(entrepriseId).child(type).child(itemId),
+                "de l'échéance " + key, snapshot -> snapshot.exists() ? mapper.apply(entrepriseId, snapshot) : null));
+        }
+
+        List<T> items = new ArrayList<>();
+        for (int i = 0; i < selected.size(); i++) {
+            Map<String, Object> entry = selected.get(i);
+            T item;
+            try {
+                item = reads.get(i).join();
+            } catch (java.util.concurrent.CompletionException e) {
+                System.err.println("Échéance ignorée pour ce passage (" + entry.get("key") + "): " + e.getMessage());
+                continue;
+            }
+            Map<String, Object> expected = item != null ? expectedEntry.apply((String) entry.get("entrepriseId"), item) : null;
+            if (!EcheanceIndex.sameSchedule(entry, expected)) {
+                repairs.put(EcheanceIndex.NODE + "/" + type + "/" + entry.get("key"), expected);
+            }
+            if (item != null) {
+                items.add(item);
+            }
+        }
+
+        if (!repairs.isEmpty()) {
+            databaseReference.updateChildren(repairs, (error, ref) -> {
+                if (error != null) {
+                    System.err.println("Erreur lors de la correction de l'index des échéances: " + error.getMessage());
+                }
+            });
+        }
+        System.out.println("=== Échéances " + type + (relance ? " (relances)" : " (envois)") + ": " + entries.size()
+            + " entrée(s) échue(s), " + items.size() + " élément(s) chargé(s) ===");
+        return items;
+    }
+
+    private List<Map<String, Object>> readDueEntries(String type, long now) throws Exception {
+        CompletableFuture<List<Map<String, Object>>> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        databaseReference.child(EcheanceIndex.NODE).child(type).orderByChild(EcheanceIndex.DUE_AT).endAt(now)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(DataSnapshot snapshot) {
+                        List<Map<String, Object>> entries = new ArrayList<>();
+                        for (DataSnapshot child : snapshot.getChildren()) {
+                            Map<String, Object> entry = new HashMap<>(FirebaseEntityDecoder.fields(child));
+                            entry.put("key", child.getKey());
+                            entries.add(entry);
+                        }
+                        future.complete(entries);
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onCancelled(DatabaseError error) {
+                        future.completeExceptionally(new Exception("Erreur Firebase: " + error.getMessage()));
+                        latch.countDown();
+                    }
+                });
+
+        if (!latch.await(30, TimeUnit.SECONDS)) {
+            throw new Exception("Timeout lors de la lecture de l'index des échéances");
+        }
+        return future.get();
+    }
+
+    private com.maintenance.maintenance.model.entity.Alerte mapDueAlerte(String entrepriseId, DataSnapshot snapshot) {
+        com.maintenance.maintenance.model.entity.Alerte alerte = mapAlerteSnapshot(snapshot);
+        if (alerte != null && alerte.getEntrepriseId() == null) {
+            alerte.setEntrepriseId(entrepriseId);
+        }
+        return alerte;
+    }
+
+    private com.maintenance.maintenance.model.entity.Rappel mapDueRappel(String entrepriseId, DataSnapshot snapshot) {
+        com.maintenance.maintenance.model.entity.Rappel rappel = mapRappelSnapshot(snapshot);
+        if (rappel != null && rappel.getEntrepriseId() == null) {
+            rappel.setEntrepriseId(entrepriseId);
+        }
+        return rappel;
+    }
+
+    /**
+     * Élément marqué envoyé : état lu avant le marquage et copie marquée à écrire
+     */
+    public record SentReminder<T>(T avant, T apres) {}
+
+    /**
+     * Enregistre en une seule écriture l'envoi d'un lot d'alertes et de rappels (champs d'envoi/relance,
+     * entrées d'index des échéances) avec les chemins supplémentaires fournis (baux terminés par exemple).
+     * L'état avant de chaque élément est connu : les compteurs et agrégats reçoivent l'écart élément par élément.
+     */
+    public void markRemindersSent(List<SentReminder<com.maintenance.maintenance.model.entity.Alerte>> envoisAlertes,
+                                  List<SentReminder<com.maintenance.maintenance.model.entity.Rappel>> envoisRappels,
+                                  Map<String, Object> extraUpdates) throws Exception {
+        long now = System.currentTimeMillis();
+        Map<String, Object> updates = new HashMap<>(extraUpdates);
+        for (SentReminder<com.maintenance.maintenance.model.entity.Alerte> envoi : envoisAlertes) {
+            com.maintenance.maintenance.model.entity.Alerte alerte = envoi.apres();
+            alerte.setDateModification(now);
+            String alertePath = "entreprises/" + alerte.getEntrepriseId() + "/alertes/" + alerte.getAlerteId();
+            putSentFields(updates, alertePath, alerte.getEnvoye(), alerte.getDateEnvoi(), alerte.getNombreRelancesEnvoyees(),
+                alerte.getDateDerniereRelance(), now);
+            updates.put(EcheanceIndex.path(EcheanceIndex.ALERTES, alerte.getEntrepriseId(), alerte.getAlerteId()),
+                EcheanceIndex.alerteEntry(alerte.getEntrepriseId(), alerte));
+        }
+        for (SentReminder<com.maintenance.maintenance.model.entity.Rappel> envoi : envoisRappels) {
+            com.maintenance.maintenance.model.entity.Rappel rappel = envoi.apres();
+            rappel.setDateModification(now);
+            String rappelPath = "entreprises/" + rappel.getEntrepriseId() + "/rappels/" + rappel.getRappelId();
+            putSentFields(updates, rappelPath, rappel.getEnvoye(), rappel.getDateEnvoi(), rappel.getNombreRelancesEnvoyees(),
+                rappel.getDateDerniereRelance(), now);
+            updates.put(EcheanceIndex.path(EcheanceIndex.RAPPELS, rappel.getEntrepriseId(), rappel.getRappelId()),
+                EcheanceIndex.rappelEntry(rappel.getEntrepriseId(), rappel));
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        databaseReference.updateChildren(updates, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(new Exception("Erreur lors de l'enregistrement des envois: " + error.getMessage()));
+            } else {
+                future.complete(null);
+            }
+            latch.countDown();
+        });
+
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new Exception("délai dépassé");
+            }
+            future.get();
+        } catch (Exception e) {
+            throw new Exception("Erreur lors de l'enregistrement des envois: " + e.getMessage());
+        }
+        for (SentReminder<com.maintenance.maintenance.model.entity.Alerte> envoi : envoisAlertes) {
+            recordChange(envoi.apres().getEntrepriseId(), new PreviousState(true, envoi.avant()), envoi.apres());
+        }
+        for (SentReminder<com.maintenance.maintenance.model.entity.Rappel> envoi : envoisRappels) {
+            recordChange(envoi.apres().getEntrepriseId(), new PreviousState(true, envoi.avant()), envoi.apres());
+        }
+    }
+
+    private static void putSentFields(Map<String, Object> updates, String itemPath, Boolean envoye, Long dateEnvoi,
+                                      Integer nombreRelancesEnvoyees, Long dateDerniereRelance, long now) {
+        updates.put(itemPath + "/envoye", envoye != null ? envoye : false);
+        updates.put(itemPath + "/dateEnvoi", dateEnvoi);
+        updates.put(itemPath + "/nombreRelancesEnvoyees", nombreRelancesEnvoyees != null ? nombreRelancesEnvoyees : 0);
+        updates.put(itemPath + "/dateDerniereRelance", dateDerniereRelance);
+        updates.put(itemPath + "/dateModification", now);
+    }
+
+    /**
+     * Indique si l'index des échéances a déjà été construit
+     */
+    public boolean dueIndexExists() throws Exception {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        databaseReference.child(DUE_INDEX_META_NODE).child("reconstruitLe").addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                future.complete(snapshot.exists());
+                latch.countDown();
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                future.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
+                latch.countDown();
+            }
+        });
+
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+            return future.get();
+        } catch (Exception e) {
+            throw new Exception("Timeout ou erreur lors de la vérification de l'index des échéances");
+        }
+    }
+
+    /**
+     * Reconstruit l'index des échéances à partir du nœud complet entreprises/ (migration ou réparation)
+     * @return le nombre d'entrées indexées
+     */
+    public int rebuildDueIndex() throws Exception {
+        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        databaseReference.child("entreprises").addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                snapshotDecoder.execute(() -> {
+                    try {
+                        Map<String, Object> alertes = new HashMap<>();
+                        Map<String, Object> rappels = new HashMap<>();
+                        for (DataSnapshot entrepriseSnapshot : snapshot.getChildren()) {
+                            String entrepriseId = entrepriseSnapshot.getKey();
+                            if (entrepriseId == null || entrepriseId.startsWith("_")) {
+                                continue;
+                            }
+                            for (DataSnapshot alerteSnapshot : entrepriseSnapshot.child("alertes").getChildren()) {
+                                com.maintenance.maintenance.model.entity.Alerte alerte = mapAlerteSnapshot(alerteSnapshot);
+                                Map<String, Object> entry = alerte != null ? EcheanceIndex.alerteEntry(entrepriseId, alerte) : null;
+                                if (entry != null) {
+                                    alertes.put(EcheanceIndex.key(entrepriseId, alerte.getAlerteId()), entry);
+                                }
+                            }
+                            for (DataSnapshot rappelSnapshot : entrepriseSnapshot.child("rappels").getChildren()) {
+                                com.maintenance.maintenance.model.entity.Rappel rappel = mapRappelSnapshot(rappelSnapshot);
+                                Map<String, Object> entry = rappel != null ? EcheanceIndex.rappelEntry(entrepriseId, rappel) : null;
+                                if (entry != null) {
+                                    rappels.put(EcheanceIndex.key(entrepriseId, rappel.getRappelId()), entry);
+                                }
+                            }
+                        }
+                        Map<String, Object> index = new HashMap<>();
+                        index.put(EcheanceIndex.ALERTES, alertes);
+                        index.put(EcheanceIndex.RAPPELS, rappels);
+                        future.complete(index);
+                    } catch (Exception e) {
+                        future.completeExceptionally(e);
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                future.completeExceptionally(new Exception("Erreur Firebase: " + error.getMessage()));
+                latch.countDown();
+            }
+        });
+
+        try {
+            if (!latch.await(60, TimeUnit.SECONDS)) {
+                throw new Exception("Timeout lors de la lecture des entreprises");
+            }
+            Map<String, Object> index = future.get();
+
+            // Remplacement complet de l'index et marqueur de construction en une seule écriture
+            Map<String, Object> updates = new HashMap<>();
+            updates.put(EcheanceIndex.NODE, index);
+            updates.put(DUE_INDEX_META_NODE + "/reconstruitLe", System.currentTimeMillis());
+            CompletableFuture<Void> writeFuture = new CompletableFuture<>();
+            CountDownLatch writeLatch = new CountDownLatch(1);
+            databaseReference.updateChildren(updates, (error, ref) -> {
+                if (error != null) {
+                    writeFuture.completeExceptionally(new Exception("Erreur: " + error.getMessage()));
+                } else {
+                    writeFuture.complete(null);
+                }
+                writeLatch.countDown();
+            });
+            if (!writeLatch.await(30, TimeUnit.SECONDS)) {
+                throw new Exception("Timeout lors de l'écriture de l'index");
+            }
+            writeFuture.get();
+
+            return ((Map<?, ?>) index.get(EcheanceIndex.ALERTES)).size() + ((Map<?, ?>) index.get(EcheanceIndex.RAPPELS)).size();
+        } catch (Exception e) {
+            throw new Exception("Erreur lors de la reconstruction de l'index des échéances: " + e.getMessage());
+        }
+    }
+
+    // ========== COMPTEURS STATISTIQUES ==========
+
+    /**
+     * Lit le nœud des compteurs d'une entreprise sans bloquer le thread appelant (null si absent)
+     */
+    public CompletableFuture<Map<String, Object>> getEnterpriseStatsAsync(String entrepriseId) {
+        return readAsync(databaseReference.child(EnterpriseStatsCounters.path(entrepriseId)),
+            "des statistiques", snapshot -> snapshot.exists() ? new HashMap<>(FirebaseEntityDecoder.fields(snapshot)) : null);
+    }
+
+    /**
+     * Remplace les compteurs d'une entreprise (recomptage complet)
+     */
+    public void saveEnterpriseStats(String entrepriseId, Map<String, Object> counters) throws Exception {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        databaseReference.child(EnterpriseStatsCounters.path(entrepriseId)).setValue(counters, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(new Exception("Erreur Firebase: " + error.getMessage()));
+            } else {
+                future.complete(null);
+            }
+            latch.countDown();
+        });
+
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new Exception("Timeout lors de l'écriture des statistiques (10 secondes)");
+            }
+            future.get();
+            dataVersions.bump(entrepriseId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Exception("Interruption lors de l'écriture des statistiques: " + e.getMessage());
+        } catch (Exception e) {
+            throw new Exception("Erreur lors de l'écriture des statistiques: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lit les seaux d'agrégats d'une entreprise (mois ou jours) entre deux clés incluses ; bornes null : tous les seaux
+     */
+    public CompletableFuture<Map<String, Object>> getReportRollupsAsync(String entrepriseId, String granularite,
+                                                                       String debutKey, String finKey) {
+        Query query = databaseReference.child(ReportRollups.path(entrepriseId)).child(granularite);
+        if (debutKey != null && finKey != null) {
+            query = query.orderByKey().startAt(debutKey).endAt(finKey);
+        }
+        return readAsync(query, "des agrégats des rapports", snapshot -> new HashMap<>(FirebaseEntityDecoder.fields(snapshot)));
+    }
+
+    /**
+     * Agrégats complets (backfill) : true si les seaux de l'entreprise sont complets et au format courant
+     */
+    public CompletableFuture<Boolean> isReportRollupsBackfilledAsync(String entrepriseId) {
+        return readAsync(databaseReference.child(ReportRollups.path(entrepriseId)).child(ReportRollups.META),
+            "de l'état des agrégats", snapshot -> ReportRollups.isComplete(snapshot.getValue()));
+    }
+
+    /**
+     * Remplace tous les seaux d'une entreprise (mois, jours) et les marque complets, en une écriture multi-chemins
+     */
+    public void saveReportRollups(String entrepriseId, Map<String, ?> mois, Map<String, ?> jours) throws Exception {
+        String base = ReportRollups.path(entrepriseId) + "/";
+        Map<String, Object> meta = ReportRollups.completeMeta();
+        meta.put("dateBackfill", System.currentTimeMillis());
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(base + ReportRollups.MOIS, mois);
+        updates.put(base + ReportRollups.JOURS, jours);
+        updates.put(base + ReportRollups.META, meta);
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        databaseReference.updateChildren(updates, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(new Exception("Erreur Firebase: " + error.getMessage()));
+            } else {
+                future.complete(null);
+            }
+            latch.countDown();
+        });
+
+        try {
+            if (!latch.await(30, TimeUnit.SECONDS)) {
+                throw new Exception("Timeout lors de l'écriture des agrégats (30 secondes)");
+            }
+            future.get();
+            dataVersions.bump(entrepriseId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Exception("Interruption lors de l'écriture des agrégats: " + e.getMessage());
+        } catch (Exception e) {
+            throw new Exception("Erreur lors de l'écriture des agrégats des rapports: " + e.getMessage());
+        }
+    }
+
+    /**
+     * État d'un élément avant écriture : connu (valeur, null si absent) ou illisible
+     */
+    private record PreviousState(boolean known, Object value) {
+        static final PreviousState ABSENT = new PreviousState(true, null);
+    }
+
+    private PreviousState previousState(java.util.concurrent.Callable<?> reader) {
+        try {
+            return new PreviousState(true, reader.call());
+        } catch (Exception e) {
+            System.err.println("=== État précédent illisible, agrégats à recalculer: " + e.getMessage() + " ===");
+            return new PreviousState(false, null);
+        }
+    }
+
+    /**
+     * Répercute une écriture (création : avant absent, suppression : après null) sur les compteurs
+     * statistiques et les agrégats des rapports. L'élément est déjà écrit : les transactions partent sans
+     * être attendues, un échec est signalé dans onComplete en marquant les agrégats concernés à recalculer.
+     * L'écart est calculé hors transaction, à partir de l'état lu avant l'écriture : deux modifications
+     * concurrentes du même élément lisent le même état précédent et peuvent appliquer deux fois le même écart.
+     * Cette dérive est corrigée par les réconciliations périodiques (EnterpriseStatsService.reconcileAll,
+     * ReportRollupService.reconcileAll).
+     * La version des données de l'entreprise est incrémentée tout de suite, puis à nouveau quand les compteurs
+     * sont écrits (ETag des API).
+     */
+    private void recordChange(String entrepriseId, PreviousState avant, Object apres) {
+        try {
+            updateStatsCounters(entrepriseId, avant, apres);
+            updateReportRollups(entrepriseId, avant, apres);
+        } finally {
+            dataVersions.bump(entrepriseId);
+        }
+    }
+
+    /**
+     * Applique l'écart de contribution aux compteurs de l'entreprise (runTransaction)
+     */
+    private void updateStatsCounters(String entrepriseId, PreviousState avant, Object apres) {
+        if (!avant.known()) {
+            markStatsForReconciliation(entrepriseId);
+            return;
+        }
+        Map<String, Long> delta = EnterpriseStatsCounters.delta(
+            EnterpriseStatsCounters.contribution(avant.value()), EnterpriseStatsCounters.contribution(apres));
+        if (delta.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        runCounterTransactions(entrepriseId, Map.of(EnterpriseStatsCounters.path(entrepriseId),
+                current -> EnterpriseStatsCounters.apply(current, delta, now)),
+            "compteurs statistiques de " + entrepriseId, () -> markStatsForReconciliation(entrepriseId));
+    }
+
+    /**
+     * Applique l'écart aux seaux mensuel et journalier de la date de création (une transaction par seau)
+     */
+    private void updateReportRollups(String entrepriseId, PreviousState avant, Object apres) {
+        if (!avant.known()) {
+            markRollupsForBackfill(entrepriseId);
+            return;
+        }
+        Map<String, Map<String, Long>> delta = ReportRollups.delta(
+            ReportRollups.contribution(avant.value(), null),
+            ReportRollups.contribution(apres, ReportRollups.dateCreation(avant.value())));
+        if (delta.isEmpty()) {
+            return;
+        }
+        Map<String, Function<Object, Object>> updates = new HashMap<>();
+        for (Map.Entry<String, Map<String, Long>> bucket : delta.entrySet()) {
+            updates.put(ReportRollups.path(entrepriseId) + "/" + bucket.getKey(),
+                current -> ReportRollups.apply(current, bucket.getValue()));
+        }
+        runCounterTransactions(entrepriseId, updates, "agrégats des rapports de " + entrepriseId,
+            () -> markRollupsForBackfill(entrepriseId));
+    }
+
+    /**
+     * Une transaction par chemin, sans attendre leur fin : onComplete incrémente la version des données
+     * si la transaction est validée, appelle onFailure sinon
+     */
+    private void runCounterTransactions(String entrepriseId, Map<String, Function<Object, Object>> updates,
+                                        String label, Runnable onFailure) {
+        for (Map.Entry<String, Function<Object, Object>> update : updates.entrySet()) {
+            databaseReference.child(update.getKey()).runTransaction(new Transaction.Handler() {
+                @Override
+                public Transaction.Result doTransaction(MutableData currentData) {
+                    currentData.setValue(update.getValue().apply(currentData.getValue()));
+                    return Transaction.success(currentData);
+                }
+
+                @Override
+                public void onComplete(DatabaseError error, boolean committed, DataSnapshot currentData) {
+                    if (error != null || !committed) {
+                        System.err.println("=== Mise à jour des " + label + " en échec"
+                            + (error != null ? ": " + error.getMessage() : "") + " ===");
+                        onFailure.run();
+                        return;
+                    }
+                    dataVersions.bump(entrepriseId);
+                }
+            });
+        }
+    }
+
+    private void markStatsForReconciliation(String entrepriseId) {
+        databaseReference.child(EnterpriseStatsCounters.path(entrepriseId)).child(EnterpriseStatsCounters.A_RECONCILIER)
+            .setValueAsync(true);
+    }
+
+    private void markRollupsForBackfill(String entrepriseId) {
+        databaseReference.child(ReportRollups.path(entrepriseId)).child(ReportRollups.META).child(ReportRollups.BACKFILL_TERMINE)
+            .setValueAsync(false);
+    }
+
+    // ========== API ASYNCHRONE ==========
+    // Les futurs sont complétés par le callback Firebase : aucun thread n'est bloqué pendant la lecture.
+
+    /**
+     * Récupère les machines d'une entreprise sans bloquer le thread appelant
+     */
+    public CompletableFuture<List<Machine>> getMachinesForEnterpriseAsync(String entrepriseId) {
+        List<Machine> replicated = replicaService.getCollection(entrepriseId, "machines");
+        if (replicated != null) {
+            return CompletableFuture.completedFuture(replicated.stream()
+                .filter(m -> m.getSupprime() == null || !m.getSupprime())
+                .collect(Collectors.toList()));
+        }
+        return readAsync(databaseReference.child("entreprises").child(entrepriseId).child("machines"),
+            "des machines", snapshot -> decodeMachineList(snapshot, entrepriseId));
+    }
+
+    /**
+     * Récupère un ensemble de machines par identifiant sans bloquer le thread appelant (lectures en parallèle) ;
+     * les machines introuvables ou supprimées sont omises, l'ordre des identifiants est conservé
+     */
+    public CompletableFuture<List<Machine>> getMachinesByIdsAsync(String entrepriseId, Collection<String> machineIds) {
+        List<CompletableFuture<Machine>> reads = new ArrayList<>();
+        for (String machineId : machineIds) {
+            EnterpriseReplicaService.Lookup<Machine> replicated = replicaService.getItem(entrepriseId, "machines", machineId);
+            reads.add(replicated.isFound()
+                ? CompletableFuture.completedFuture(replicated.getValue())
+                : readAsync(databaseReference.child("entreprises").child(entrepriseId).child("machines").child(machineId),
+                    "de la machine " + machineId, snapshot -> snapshot.exists() ? mapMachineSnapshot(snapshot, entrepriseId, machineId) : null));
+        }
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0]))
+            .thenApply(done -> reads.stream()
+                .map(CompletableFuture::join)
+                .filter(m -> m != null && (m.getSupprime() == null || !m.getSupprime()))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Récupère les composants d'une entreprise sans bloquer le thread appelant
+     */
+    public CompletableFuture<List<Component>> getComponentsForEnterpriseAsync(String entrepriseId) {
+        List<Component> replicated = replicaService.getCollection(entrepriseId, "components");
+        if (replicated != null) {
+            return CompletableFuture.completedFuture(replicated);
+        }
+        return readAsync(databaseReference.child("entreprises").child(entrepriseId).child("components"),
+            "des composants", snapshot -> decodeComponentList(snapshot, entrepriseId));
+    }
+
+    /**
+     * Récupère les tickets d'une entreprise sans bloquer le thread appelant
+     */
+    public CompletableFuture<List<com.maintenance.maintenance.model.entity.Ticket>> getTicketsForEnterpriseAsync(String entrepriseId) {
+        List<com.maintenance.maintenance.model.entity.Ticket> replicated = replicaService.getCollection(entrepriseId, "tickets");
+        if (replicated != null) {
+            return CompletableFuture.completedFuture(replicated);
+        }
+        return readAsync(databaseReference.child("entreprises").child(entrepriseId).child("tickets"),
+            "des tickets", snapshot -> decodeTicketList(snapshot, entrepriseId));
+    }
+
+    /**
+     * Récupère un ticket sans bloquer le thread appelant (null si introuvable)
+     */
+    public CompletableFuture<com.maintenance.maintenance.model.entity.Ticket> getTicketByIdAsync(String entrepriseId, String ticketId) {
+        EnterpriseReplicaService.Lookup<com.maintenance.maintenance.model.entity.Ticket> replicated = replicaService.getItem(entrepriseId, "tickets", ticketId);
+        if (replicated.isFound()) {
+            return CompletableFuture.completedFuture(replicated.getValue());
+        }
+        return readAsync(databaseReference.child("entreprises").child(entrepriseId).child("tickets").child(ticketId),
+            "du ticket", snapshot -> snapshot.exists() ? mapTicketSnapshot(snapshot, entrepriseId, ticketId) : null);
+    }
+
+    /**
+     * Récupère les alertes d'une entreprise sans bloquer le thread appelant
+     */
+    public CompletableFuture<List<com.maintenance.maintenance.model.entity.Alerte>> getAlertesForEnterpriseAsync(String entrepriseId) {
+        List<com.maintenance.maintenance.model.entity.Alerte> replicated = replicaService.getCollection(entrepriseId, "alertes");
+        if (replicated != null) {
+            return CompletableFuture.completedFuture(replicated);
+        }
+        return readAsync(databaseReference.child("entreprises").child(entrepriseId).child("alertes"),
+            "des alertes", this::decodeAlerteList);
+    }
+
+    /**
+     * Récupère les rappels d'une entreprise sans bloquer le thread appelant
+     */
+    public CompletableFuture<List<com.maintenance.maintenance.model.entity.Rappel>> getRappelsForEnterpriseAsync(String entrepriseId) {
+        List<com.maintenance.maintenance.model.entity.Rappel> replicated = replicaService.getCollection(entrepriseId, "rappels");
+        if (replicated != null) {
+            return CompletableFuture.completedFuture(replicated);
+        }
+        return readAsync(databaseReference.child("entreprises").child(entrepriseId).child("rappels"),
+            "des rappels", this::decodeRappelList);
+    }
+
+    /**
+     * Récupère l'historique des vérifications d'une entreprise sans bloquer le thread appelant
+     */
+    public CompletableFuture<List<com.maintenance.maintenance.model.entity.HistoriqueVerification>> getHistoriqueVerificationsForEnterpriseAsync(String entrepriseId) {
+        return readAsync(databaseReference.child("entreprises").child(entrepriseId).child("historiqueVerifications"),
+            "de l'historique", this::decodeHistoriqueVerificationList);
+    }
+
+    // ========== LECTURE PAR PAGES ==========
+    // Parcours d'une collection par clé, page par page, sans jamais charger la collection entière (exports CSV).
+
+    /**
+     * Page d'une collection : éléments décodés, dernière clé lue (à passer en afterKey pour la page suivante)
+     * et last = true quand la collection est épuisée
+     */
+    public record KeyPage<T>(List<T> items, String lastKey, boolean last) {
+    }
+
+    /**
+     * Machines d'une entreprise par pages de limit, après la clé afterKey (null : première page) ; supprimées exclues
+     */
+    public CompletableFuture<KeyPage<Machine>> getMachinesPageAsync(String entrepriseId, String afterKey, int limit) {
+        return readPageAsync(entrepriseId, "machines", afterKey, limit, "des machines", (machineId, snapshot) -> {
+            Machine machine = mapMachineSnapshot(snapshot, entrepriseId, machineId);
+            return machine.getSupprime() == null || !machine.getSupprime() ? machine : null;
+        });
+    }
+
+    public CompletableFuture<KeyPage<Component>> getComponentsPageAsync(String entrepriseId, String afterKey, int limit) {
+        return readPageAsync(entrepriseId, "components", afterKey, limit, "des composants",
+            (componentId, snapshot) -> mapComponentSnapshot(snapshot, entrepriseId, componentId));
+    }
+
+    public CompletableFuture<KeyPage<com.maintenance.maintenance.model.entity.Ticket>> getTicketsPageAsync(String entrepriseId, String afterKey, int limit) {
+        return readPageAsync(entrepriseId, "tickets", afterKey, limit, "des tickets",
+            (ticketId, snapshot) -> mapTicketSnapshot(snapshot, entrepriseId, ticketId));
+    }
+
+    /**
+     * Historique des vérifications par pages, dans l'ordre des clés push (ordre chronologique de création)
+     */
+    public CompletableFuture<KeyPage<com.maintenance.maintenance.model.entity.HistoriqueVerification>> getHistoriqueVerificationsPageAsync(String entrepriseId, String afterKey, int limit) {
+        return readPageAsync(entrepriseId, "historiqueVerifications", afterKey, limit, "de l'historique",
+            (historiqueId, snapshot) -> mapHistoriqueVerificationSnapshot(snapshot));
+    }
+
+    /**
+     * orderByKey().startAt(afterKey).limitToFirst(limit + 1) : la clé de départ est incluse par startAt puis écartée,
+     * ce qui équivaut à startAfter. Les clés techniques (préfixe "_") sont sautées, le mapper peut écarter un élément (null).
+     */
+    private <T> CompletableFuture<KeyPage<T>> readPageAsync(String entrepriseId, String collection, String afterKey, int limit, String label,
+                                                            java.util.function.BiFunction<String, DataSnapshot, T> mapper) {
+        Query query = databaseReference.child("entreprises").child(entrepriseId).child(collection).orderByKey();
+        int requested = afterKey != null ? limit + 1 : limit;
+        if (afterKey != null) {
+            query = query.startAt(afterKey);
+        }
+        return readAsync(query.limitToFirst(requested), label, snapshot -> {
+            List<T> items = new ArrayList<>();
+            String lastKey = afterKey;
+            for (DataSnapshot child : snapshot.getChildren()) {
+                String key = child.getKey();
+                if (key == null || key.equals(afterKey)) {
+                    continue;
+                }
+                lastKey = key;
+                if (key.startsWith("_")) {
+                    continue;
+                }
+                try {
+                    T item = mapper.apply(key, child);
+                    if (item != null) {
+                        items.add(item);
+                    }
+                } catch (Exception e) {
+                    System.err.println("=== Erreur lors du décodage de " + collection + "/" + key + ": " + e.getMessage() + " ===");
+                }
+            }
+            return new KeyPage<>(items, lastKey, snapshot.getChildrenCount() < requested);
+        });
+    }
+
+    /**
+     * Lecture unique d'un nœud ; le futur échoue avec un TimeoutException après firebase.async.deadline-seconds
+     */
+    private <T> CompletableFuture<T> readAsync(Query ref, String label, Function<DataSnapshot, T> decoder) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ref.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                snapshotDecoder.execute(() -> {
+                    try {
+                        future.complete(decoder.apply(snapshot));
+                    } catch (Exception e) {
+                        future.completeExceptionally(new Exception("Erreur lors de la récupération " + label + ": " + e.getMessage(), e));
+                    }
+                });
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                future.completeExceptionally(new Exception("Erreur Firebase lors de la récupération " + label + ": " + error.getMessage()));
+            }
+        });
+        return future.orTimeout(asyncDeadlineSeconds, TimeUnit.SECONDS);
+    }
 }
 
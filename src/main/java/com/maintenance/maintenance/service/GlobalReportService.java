@@ -0,0 +1,440 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.Machine;
+import com.maintenance.maintenance.model.entity.Rappel;
+import com.maintenance.maintenance.model.entity.Ticket;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Rapport global du super administrateur : disponibilité des machines, tickets en attente et échéances dépassées
+ * de chaque entreprise, et total toutes entreprises confondues.
+ * Les entreprises sont traitées en parallèle (au plus reports.global.parallelism à la fois) ; chaque résultat
+ * est publié dès qu'il est prêt (flux SSE), et le rapport complet reste en cache reports.global.cache-ttl-ms.
+ * Un calcul en cours est partagé par toutes les requêtes qui arrivent pendant son exécution.
+ */
+@Service
+public class GlobalReportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GlobalReportService.class);
+
+    private static final long JOUR_MS = 24L * 60 * 60 * 1000;
+
+    @Autowired
+    private FirebaseRealtimeService firebaseRealtimeService;
+
+    /** Entreprises calculées simultanément */
+    @Value("${reports.global.parallelism:4}")
+    private int parallelism;
+
+    @Value("${reports.global.cache-ttl-ms:60000}")
+    private long cacheTtlMs;
+
+    /** Délai de lecture des données d'une entreprise ; au-delà, elle figure en erreur dans le rapport */
+    @Value("${reports.global.enterprise-timeout-ms:20000}")
+    private long enterpriseTimeoutMs;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("global-report-", 0).factory());
+
+    private final AtomicReference<Computation> current = new AtomicReference<>();
+
+    /**
+     * Calcul courant : en cache s'il est récent, partagé s'il est en cours, relancé sinon (ou si refresh)
+     */
+    public Computation compute(boolean refresh) {
+        while (true) {
+            Computation existing = current.get();
+            long now = System.currentTimeMillis();
+            if (existing != null && !refresh && (existing.isRunning() || existing.isFresh(now))) {
+                return existing;
+            }
+            if (existing != null && refresh && existing.isRunning()) {
+                return existing;
+            }
+            Computation next = new Computation();
+            if (current.compareAndSet(existing, next)) {
+                executor.submit(() -> run(next));
+                return next;
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(Computation computation) {
+        try {
+            List<Map<String, Object>> enterprises = firebaseRealtimeService.getAllEnterprises();
+            Semaphore permits = new Semaphore(Math.max(1, parallelism));
+            List<Future<?>> tasks = new ArrayList<>();
+            for (Map<String, Object> enterprise : enterprises) {
+                Object entrepriseId = enterprise.get("entrepriseId");
+                if (entrepriseId == null) {
+                    continue;
+                }
+                tasks.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        computation.add(summarize(entrepriseId.toString(), enterprise.get("nom")));
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            computation.complete();
+            logger.info("Rapport global calculé : {} entreprise(s) en {} ms", tasks.size(), computation.durationMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            computation.fail(e);
+        } catch (Exception e) {
+            logger.error("Erreur lors du calcul du rapport global: {}", e.getMessage(), e);
+            computation.fail(e);
+        }
+    }
+
+    /**
+     * Indicateurs d'une entreprise ; une lecture en échec donne une entrée "error" sans faire échouer le rapport
+     */
+    private Map<String, Object> summarize(String entrepriseId, Object nom) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("entrepriseId", entrepriseId);
+        summary.put("nom", nom);
+
+        CompletableFuture<List<Machine>> machinesFuture = firebaseRealtimeService.getMachinesForEnterpriseAsync(entrepriseId);
+        CompletableFuture<List<Ticket>> ticketsFuture = firebaseRealtimeService.getTicketsForEnterpriseAsync(entrepriseId);
+        CompletableFuture<List<Rappel>> rappelsFuture = firebaseRealtimeService.getRappelsForEnterpriseAsync(entrepriseId);
+        CompletableFuture<List<Alerte>> alertesFuture = firebaseRealtimeService.getAlertesForEnterpriseAsync(entrepriseId);
+        try {
+            CompletableFuture.allOf(machinesFuture, ticketsFuture, rappelsFuture, alertesFuture)
+                .get(enterpriseTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            summary.put("error", "interruption");
+            return summary;
+        } catch (ExecutionException e) {
+            summary.put("error", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            return summary;
+        } catch (TimeoutException e) {
+            summary.put("error", "délai dépassé (" + enterpriseTimeoutMs + " ms)");
+            return summary;
+        }
+
+        long now = System.currentTimeMillis();
+        summary.put("machines", machineAvailability(machinesFuture.join()));
+        summary.put("tickets", ticketBacklog(ticketsFuture.join(), now));
+
+        int rappelsEnRetard = 0;
+        for (Rappel rappel : rappelsFuture.join()) {
+            if (isOverdue(rappel.getVerifie(), rappel.getDateVerification(), now)) {
+                rappelsEnRetard++;
+            }
+        }
+        int alertesEnRetard = 0;
+        for (Alerte alerte : alertesFuture.join()) {
+            if (isOverdue(alerte.getVerifie(), alerte.getDateVerification(), now)) {
+                alertesEnRetard++;
+            }
+        }
+        summary.put("rappelsEnRetard", rappelsEnRetard);
+        summary.put("alertesEnRetard", alertesEnRetard);
+        return summary;
+    }
+
+    /**
+     * Machines (hors supprimées) : disponibles = opérationnelles et pas en réparation
+     */
+    private static Map<String, Object> machineAvailability(List<Machine> machines) {
+        int total = 0;
+        int disponibles = 0;
+        int enReparation = 0;
+        for (Machine machine : machines) {
+            if (Boolean.TRUE.equals(machine.getSupprime())) {
+                continue;
+            }
+            total++;
+            if (Boolean.TRUE.equals(machine.getEnReparation())) {
+                enReparation++;
+            } else if (Boolean.TRUE.equals(machine.getOperationnel())) {
+                disponibles++;
+            }
+        }
+        Map<String, Object> availability = new LinkedHashMap<>();
+        availability.put("total", total);
+        availability.put("disponibles", disponibles);
+        availability.put("enReparation", enReparation);
+        availability.put("disponibilite", ratio(disponibles, total));
+        return availability;
+    }
+
+    /**
+     * Tickets ouverts (à faire ou en cours) : urgents, échéance dépassée, âge du plus ancien
+     */
+    private static Map<String, Object> ticketBacklog(List<Ticket> tickets, long now) {
+        int ouverts = 0;
+        int urgents = 0;
+        int enRetard = 0;
+        Long plusAncien = null;
+        for (Ticket ticket : tickets) {
+            String statut = ticket.getStatut();
+            if (!"a_faire".equals(statut) && !"en_cours".equals(statut)) {
+                continue;
+            }
+            ouverts++;
+            if ("urgente".equals(ticket.getPriorite())) {
+                urgents++;
+            }
+            if (ticket.getDateEcheance() != null && ticket.getDateEcheance() < now) {
+                enRetard++;
+            }
+            if (ticket.getDateCreation() != null && (plusAncien == null || ticket.getDateCreation() < plusAncien)) {
+                plusAncien = ticket.getDateCreation();
+            }
+        }
+        Map<String, Object> backlog = new LinkedHashMap<>();
+        backlog.put("ouverts", ouverts);
+        backlog.put("urgents", urgents);
+        backlog.put("enRetard", enRetard);
+        backlog.put("plusAncienJours", plusAncien != null ? (now - plusAncien) / JOUR_MS : 0L);
+        return backlog;
+    }
+
+    private static boolean isOverdue(Boolean verifie, Long dateVerification, long now) {
+        return !Boolean.TRUE.equals(verifie) && dateVerification != null && dateVerification < now;
+    }
+
+    /**
+     * Pourcentage arrondi à une décimale (100 si aucune machine)
+     */
+    private static double ratio(int part, int total) {
+        return total == 0 ? 100.0 : Math.round(part * 1000.0 / total) / 10.0;
+    }
+
+    /**
+     * Total toutes entreprises confondues (entreprises en erreur exclues et comptées à part)
+     */
+    private static Map<String, Object> overall(List<Map<String, Object>> entreprises) {
+        int machines = 0;
+        int disponibles = 0;
+        int enReparation = 0;
+        int ouverts = 0;
+        int urgents = 0;
+        int ticketsEnRetard = 0;
+        int rappelsEnRetard = 0;
+        int alertesEnRetard = 0;
+        int enErreur = 0;
+        for (Map<String, Object> entreprise : entreprises) {
+            if (entreprise.containsKey("error")) {
+                enErreur++;
+                continue;
+            }
+            Map<?, ?> machine = (Map<?, ?>) entreprise.get("machines");
+            Map<?, ?> ticket = (Map<?, ?>) entreprise.get("tickets");
+            machines += (Integer) machine.get("total");
+            disponibles += (Integer) machine.get("disponibles");
+            enReparation += (Integer) machine.get("enReparation");
+            ouverts += (Integer) ticket.get("ouverts");
+            urgents += (Integer) ticket.get("urgents");
+            ticketsEnRetard += (Integer) ticket.get("enRetard");
+            rappelsEnRetard += (Integer) entreprise.get("rappelsEnRetard");
+            alertesEnRetard += (Integer) entreprise.get("alertesEnRetard");
+        }
+        Map<String, Object> total = new LinkedHashMap<>();
+        total.put("entreprises", entreprises.size());
+        total.put("entreprisesEnErreur", enErreur);
+        total.put("machines", machines);
+        total.put("machinesDisponibles", disponibles);
+        total.put("machinesEnReparation", enReparation);
+        total.put("disponibilite", ratio(disponibles, machines));
+        total.put("ticketsOuverts", ouverts);
+        total.put("ticketsUrgents", urgents);
+        total.put("ticketsEnRetard", ticketsEnRetard);
+        total.put("rappelsEnRetard", rappelsEnRetard);
+        total.put("alertesEnRetard", alertesEnRetard);
+        return total;
+    }
+
+    /**
+     * Un calcul du rapport global : résultats partiels publiés au fil de l'eau, puis rapport complet
+     * Les notifications sont mises en file sous le verrou (ordre garanti par abonné) et transmises hors verrou :
+     * un abonné lent ne bloque ni le calcul ni les autres abonnés.
+     */
+    public final class Computation {
+
+        private final long dateDebut = System.currentTimeMillis();
+        private final List<Map<String, Object>> entreprises = new ArrayList<>();
+        private final List<Listener> listeners = new ArrayList<>();
+        private final CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+        private volatile long dateFin = 0L;
+
+        /**
+         * Suit le calcul : les résultats déjà obtenus sont rejoués, puis chaque nouveau résultat est transmis
+         */
+        public void subscribe(Consumer<Map<String, Object>> onEntreprise,
+                              Consumer<Map<String, Object>> onTotal,
+                              Consumer<Throwable> onError) {
+            Listener listener = new Listener(onEntreprise, onTotal, onError);
+            synchronized (this) {
+                for (Map<String, Object> entreprise : entreprises) {
+                    listener.enqueue(() -> onEntreprise.accept(entreprise));
+                }
+                if (result.isDone()) {
+                    result.whenComplete((report, e) -> {
+                        if (e != null) {
+                            listener.enqueue(() -> onError.accept(e));
+                        } else {
+                            listener.enqueue(() -> onTotal.accept(report));
+                        }
+                    });
+                } else {
+                    listeners.add(listener);
+                }
+            }
+            listener.deliver();
+        }
+
+        /**
+         * Rapport complet : entreprises, total et date de calcul
+         */
+        public CompletableFuture<Map<String, Object>> result() {
+            return result;
+        }
+
+        private void add(Map<String, Object> entreprise) {
+            List<Listener> abonnes;
+            synchronized (this) {
+                entreprises.add(entreprise);
+                abonnes = List.copyOf(listeners);
+                abonnes.forEach(listener -> listener.enqueue(() -> listener.onEntreprise().accept(entreprise)));
+            }
+            abonnes.forEach(Listener::deliver);
+        }
+
+        private void complete() {
+            List<Listener> abonnes;
+            synchronized (this) {
+                dateFin = System.currentTimeMillis();
+                Map<String, Object> report = new LinkedHashMap<>();
+                report.put("total", overall(entreprises));
+                report.put("entreprises", new ArrayList<>(entreprises));
+                report.put("dateCalcul", dateFin);
+                report.put("dureeMs", dateFin - dateDebut);
+                result.complete(report);
+                abonnes = List.copyOf(listeners);
+                abonnes.forEach(listener -> listener.enqueue(() -> listener.onTotal().accept(report)));
+                listeners.clear();
+            }
+            abonnes.forEach(Listener::deliver);
+        }
+
+        private void fail(Throwable e) {
+            List<Listener> abonnes;
+            synchronized (this) {
+                dateFin = System.currentTimeMillis();
+                result.completeExceptionally(e);
+                abonnes = List.copyOf(listeners);
+                abonnes.forEach(listener -> listener.enqueue(() -> listener.onError().accept(e)));
+                listeners.clear();
+            }
+            abonnes.forEach(Listener::deliver);
+        }
+
+        private boolean isRunning() {
+            return !result.isDone();
+        }
+
+        private boolean isFresh(long now) {
+            return result.isDone() && !result.isCompletedExceptionally() && now - dateFin < cacheTtlMs;
+        }
+
+        private long durationMs() {
+            return dateFin - dateDebut;
+        }
+    }
+
+    /**
+     * Abonné d'un calcul : notifications en attente, transmises dans l'ordre par un seul thread à la fois
+     */
+    private static final class Listener {
+
+        private final Consumer<Map<String, Object>> onEntreprise;
+        private final Consumer<Map<String, Object>> onTotal;
+        private final Consumer<Throwable> onError;
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean delivering = new AtomicBoolean();
+
+        private Listener(Consumer<Map<String, Object>> onEntreprise,
+                         Consumer<Map<String, Object>> onTotal,
+                         Consumer<Throwable> onError) {
+            this.onEntreprise = onEntreprise;
+            this.onTotal = onTotal;
+            this.onError = onError;
+        }
+
+        Consumer<Map<String, Object>> onEntreprise() {
+            return onEntreprise;
+        }
+
+        Consumer<Map<String, Object>> onTotal() {
+            return onTotal;
+        }
+
+        Consumer<Throwable> onError() {
+            return onError;
+        }
+
+        void enqueue(Runnable notification) {
+            pending.add(notification);
+        }
+
+        /**
+         * Transmet les notifications en attente ; si un autre thread transmet déjà, il reprendra celles-ci
+         */
+        void deliver() {
+            while (!pending.isEmpty() && delivering.compareAndSet(false, true)) {
+                try {
+                    Runnable notification;
+                    while ((notification = pending.poll()) != null) {
+                        // Un abonné défaillant (client parti) ne doit pas interrompre le calcul
+                        try {
+                            notification.run();
+                        } catch (Exception e) {
+                            logger.debug("Abonné du rapport global ignoré: {}", e.getMessage());
+                        }
+                    }
+                } finally {
+                    delivering.set(false);
+                }
+            }
+        }
+    }
+}
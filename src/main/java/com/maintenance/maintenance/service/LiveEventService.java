@@ -0,0 +1,589 @@
+package com.maintenance.maintenance.service;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Événements en direct (Server-Sent Events) des pages ouvertes : tickets, alertes échues, statistiques
+ * Un canal par entreprise, alimenté par des écouteurs Firebase sur le sous-arbre de l'entreprise, est partagé
+ * par tous les flux ouverts sur ce nœud ; chaque flux est servi par son propre thread virtuel (heartbeat compris).
+ * Les derniers événements du canal sont conservés dans un tampon borné : un client qui se reconnecte avec
+ * Last-Event-ID reçoit ceux qu'il a manqués, ou un événement "resync" s'ils ne sont plus disponibles.
+ */
+@Service
+public class LiveEventService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveEventService.class);
+
+    public static final String TICKET_CREE = "ticket-cree";
+    public static final String TICKET_MODIFIE = "ticket-modifie";
+    public static final String TICKET_SUPPRIME = "ticket-supprime";
+    public static final String TICKET_COMMENTAIRE = "ticket-commentaire";
+    public static final String ALERTE_ECHUE = "alerte-echue";
+    public static final String STATISTIQUES = "statistiques";
+    /** Le client doit recharger ses données : les événements manqués ne sont plus dans le tampon */
+    public static final String RESYNC = "resync";
+
+    /** Délai de reconnexion indiqué au navigateur */
+    private static final long RECONNECT_MS = 3000L;
+
+    @Autowired
+    private DatabaseReference databaseReference;
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    /** Flux simultanés au plus sur ce nœud (au-delà : 503) */
+    @Value("${events.sse.max-streams:500}")
+    private int maxStreams;
+
+    /** Événements conservés par entreprise pour la reprise (Last-Event-ID) */
+    @Value("${events.sse.buffer-size:200}")
+    private int bufferSize;
+
+    /** Événements en attente d'envoi par flux ; un client trop lent est déconnecté et reprendra par Last-Event-ID */
+    @Value("${events.sse.queue-size:100}")
+    private int queueSize;
+
+    @Value("${events.sse.heartbeat-ms:25000}")
+    private long heartbeatMs;
+
+    /** Durée de vie d'un flux ; le navigateur se reconnecte ensuite de lui-même */
+    @Value("${events.sse.timeout-ms:1800000}")
+    private long streamTimeoutMs;
+
+    /** Durée sans flux ouvert au-delà de laquelle les écouteurs d'une entreprise sont détachés */
+    @Value("${events.sse.idle-detach-ms:120000}")
+    private long idleDetachMs;
+
+    // Identifiants d'événements "{démarrage}-{séquence}" : un identifiant d'un autre démarrage impose un resync
+    private final String demarrage = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger openStreams = new AtomicInteger();
+
+    private final AtomicLong streamsOpened = new AtomicLong();
+    private final AtomicLong streamsRejected = new AtomicLong();
+    private final AtomicLong eventsPublished = new AtomicLong();
+    private final AtomicLong eventsReplayed = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+    private final AtomicLong slowClientsDropped = new AtomicLong();
+
+    /**
+     * Événement d'un canal
+     */
+    private record Event(long seq, String type, Map<String, Object> data) {
+    }
+
+    private record TicketState(String statut, String priorite, Object dateModification, long commentaires) {
+    }
+
+    private record AlerteState(boolean envoye, long relances) {
+    }
+
+    /**
+     * Ouvre un flux sur les événements d'une entreprise ; null si le nombre maximal de flux est atteint
+     * lastEventId : identifiant du dernier événement reçu par le client (reconnexion), ou null
+     */
+    public SseEmitter subscribe(String entrepriseId, String userId, String lastEventId) {
+        if (openStreams.incrementAndGet() > maxStreams) {
+            openStreams.decrementAndGet();
+            streamsRejected.incrementAndGet();
+            logger.warn("Flux d'événements refusé pour {} : {} flux déjà ouverts", entrepriseId, maxStreams);
+            return null;
+        }
+        streamsOpened.incrementAndGet();
+        Stream stream = new Stream(entrepriseId, userId, new SseEmitter(streamTimeoutMs));
+        // Enregistrement dans compute : le balayage ne peut pas détacher le canal entre-temps
+        channels.compute(entrepriseId, (id, channel) -> {
+            Channel target = channel != null ? channel : attach(id);
+            stream.channel = target;
+            target.register(stream, lastEventId);
+            return target;
+        });
+        stream.emitter.onCompletion(stream::close);
+        stream.emitter.onTimeout(stream::close);
+        stream.emitter.onError(e -> stream.close());
+        stream.start();
+        return stream.emitter;
+    }
+
+    /**
+     * Détache les écouteurs des entreprises sans flux ouvert depuis idleDetachMs
+     */
+    @Scheduled(fixedDelayString = "${events.sse.sweep-interval-ms:60000}")
+    public void detachIdleChannels() {
+        long now = System.currentTimeMillis();
+        for (String entrepriseId : channels.keySet()) {
+            channels.computeIfPresent(entrepriseId, (id, channel) -> {
+                if (!channel.isIdle(now)) {
+                    return channel;
+                }
+                detach(channel);
+                return null;
+            });
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (Channel channel : channels.values()) {
+            for (Stream stream : channel.streams()) {
+                stream.close();
+            }
+            detach(channel);
+        }
+        channels.clear();
+    }
+
+    // ========== CANAL PAR ENTREPRISE ==========
+
+    private Channel attach(String entrepriseId) {
+        Channel channel = new Channel(entrepriseId, sequence.get());
+        DatabaseReference entreprise = databaseReference.child("entreprises").child(entrepriseId);
+
+        channel.ticketsRef = entreprise.child("tickets");
+        channel.ticketsListener = childListener(channel, channel.ticketsRef, "tickets", new ChildHandler() {
+            @Override
+            public void added(DataSnapshot snapshot, boolean ready) {
+                TicketState previous = channel.tickets.put(snapshot.getKey(), ticketState(snapshot));
+                if (ready && previous == null) {
+                    publish(channel, TICKET_CREE, ticketPayload(channel.entrepriseId, snapshot));
+                }
+            }
+
+            @Override
+            public void changed(DataSnapshot snapshot, boolean ready) {
+                TicketState current = ticketState(snapshot);
+                TicketState previous = channel.tickets.put(snapshot.getKey(), current);
+                if (!ready || current.equals(previous)) {
+                    return;
+                }
+                if (previous != null && current.commentaires() > previous.commentaires()) {
+                    publish(channel, TICKET_COMMENTAIRE, ticketPayload(channel.entrepriseId, snapshot));
+                } else {
+                    publish(channel, TICKET_MODIFIE, ticketPayload(channel.entrepriseId, snapshot));
+                }
+            }
+
+            @Override
+            public void removed(DataSnapshot snapshot, boolean ready) {
+                channel.tickets.remove(snapshot.getKey());
+                if (ready) {
+                    Map<String, Object> data = new HashMap<>();
+                    data.put("entrepriseId", channel.entrepriseId);
+                    data.put("ticketId", snapshot.getKey());
+                    publish(channel, TICKET_SUPPRIME, data);
+                }
+            }
+        });
+
+        channel.alertesRef = entreprise.child("alertes");
+        channel.alertesListener = childListener(channel, channel.alertesRef, "alertes", new ChildHandler() {
+            @Override
+            public void added(DataSnapshot snapshot, boolean ready) {
+                channel.alertes.put(snapshot.getKey(), alerteState(snapshot));
+            }
+
+            @Override
+            public void changed(DataSnapshot snapshot, boolean ready) {
+                AlerteState current = alerteState(snapshot);
+                AlerteState previous = channel.alertes.put(snapshot.getKey(), current);
+                // Alerte échue : premier envoi ou nouvelle relance
+                boolean due = previous != null
+                    && ((current.envoye() && !previous.envoye()) || current.relances() > previous.relances());
+                if (ready && due) {
+                    publish(channel, ALERTE_ECHUE, alertePayload(channel.entrepriseId, snapshot));
+                }
+            }
+
+            @Override
+            public void removed(DataSnapshot snapshot, boolean ready) {
+                channel.alertes.remove(snapshot.getKey());
+            }
+        });
+
+        channel.statsRef = databaseReference.child(EnterpriseStatsCounters.path(entrepriseId));
+        channel.statsListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                Map<String, Object> node = snapshot.exists() ? new HashMap<>(FirebaseEntityDecoder.fields(snapshot)) : null;
+                Map<String, Object> previous = channel.stats;
+                channel.stats = node;
+                // Le premier appel donne l'état initial ; ensuite, seuls les compteurs modifiés sont signalés
+                if (!channel.statsReady) {
+                    channel.statsReady = true;
+                    return;
+                }
+                if (node != null && EnterpriseStatsCounters.isReliable(node) && !EnterpriseStatsCounters.sameCounters(previous, node)) {
+                    Map<String, Object> data = EnterpriseStatsCounters.toDashboard(node);
+                    data.put("entrepriseId", channel.entrepriseId);
+                    publish(channel, STATISTIQUES, data);
+                }
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                logger.warn("Écoute des statistiques de {} annulée: {}", channel.entrepriseId, error.getMessage());
+            }
+        };
+        channel.statsRef.addValueEventListener(channel.statsListener);
+
+        logger.info("Canal d'événements de l'entreprise {} attaché", entrepriseId);
+        return channel;
+    }
+
+    private void detach(Channel channel) {
+        if (channel.ticketsListener != null) {
+            channel.ticketsRef.removeEventListener(channel.ticketsListener);
+        }
+        if (channel.alertesListener != null) {
+            channel.alertesRef.removeEventListener(channel.alertesListener);
+        }
+        if (channel.statsListener != null) {
+            channel.statsRef.removeEventListener(channel.statsListener);
+        }
+        logger.info("Canal d'événements de l'entreprise {} détaché", channel.entrepriseId);
+    }
+
+    /**
+     * Réaction aux changements d'une collection ; ready est faux pendant le chargement initial
+     */
+    private interface ChildHandler {
+        void added(DataSnapshot snapshot, boolean ready);
+
+        void changed(DataSnapshot snapshot, boolean ready);
+
+        void removed(DataSnapshot snapshot, boolean ready);
+    }
+
+    private ChildEventListener childListener(Channel channel, DatabaseReference ref, String collection, ChildHandler handler) {
+        AtomicBoolean ready = new AtomicBoolean(false);
+        ChildEventListener listener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+                if (isItem(snapshot)) {
+                    handler.added(snapshot, ready.get());
+                }
+            }
+
+            @Override
+            public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+                if (isItem(snapshot)) {
+                    handler.changed(snapshot, ready.get());
+                }
+            }
+
+            @Override
+            public void onChildRemoved(DataSnapshot snapshot) {
+                if (isItem(snapshot)) {
+                    handler.removed(snapshot, ready.get());
+                }
+            }
+
+            @Override
+            public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+                // L'ordre n'est pas suivi
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                logger.warn("Écoute des {} de {} annulée: {}", collection, channel.entrepriseId, error.getMessage());
+            }
+        };
+        ref.addChildEventListener(listener);
+
+        // L'événement "value" arrive après tous les onChildAdded initiaux : les suivants sont de vraies créations
+        ref.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                ready.set(true);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                logger.warn("Chargement initial des {} de {} impossible: {}", collection, channel.entrepriseId, error.getMessage());
+            }
+        });
+        return listener;
+    }
+
+    private static boolean isItem(DataSnapshot snapshot) {
+        return snapshot.getKey() != null && !snapshot.getKey().startsWith("_");
+    }
+
+    private static TicketState ticketState(DataSnapshot snapshot) {
+        Map<String, Object> fields = FirebaseEntityDecoder.fields(snapshot);
+        return new TicketState(Objects.toString(fields.get("statut"), null), Objects.toString(fields.get("priorite"), null),
+            fields.get("dateModification"), snapshot.child("commentaires").getChildrenCount());
+    }
+
+    private static AlerteState alerteState(DataSnapshot snapshot) {
+        Map<String, Object> fields = FirebaseEntityDecoder.fields(snapshot);
+        long relances = fields.get("nombreRelancesEnvoyees") instanceof Number number ? number.longValue() : 0L;
+        return new AlerteState(Boolean.TRUE.equals(fields.get("envoye")), relances);
+    }
+
+    private static Map<String, Object> ticketPayload(String entrepriseId, DataSnapshot snapshot) {
+        Map<String, Object> fields = FirebaseEntityDecoder.fields(snapshot);
+        Map<String, Object> data = new HashMap<>();
+        data.put("entrepriseId", entrepriseId);
+        data.put("ticketId", snapshot.getKey());
+        data.put("titre", fields.get("titre"));
+        data.put("statut", fields.get("statut"));
+        data.put("priorite", fields.get("priorite"));
+        data.put("commentaires", snapshot.child("commentaires").getChildrenCount());
+        return data;
+    }
+
+    private static Map<String, Object> alertePayload(String entrepriseId, DataSnapshot snapshot) {
+        Map<String, Object> fields = FirebaseEntityDecoder.fields(snapshot);
+        Map<String, Object> data = new HashMap<>();
+        data.put("entrepriseId", entrepriseId);
+        data.put("alerteId", snapshot.getKey());
+        data.put("machineNom", fields.get("machineNom"));
+        data.put("description", fields.get("description"));
+        data.put("nombreRelancesEnvoyees", fields.get("nombreRelancesEnvoyees"));
+        return data;
+    }
+
+    /**
+     * Publie un événement (thread d'événements Firebase) : la version des données de l'entreprise est incrémentée
+     * d'abord, pour qu'un client qui relit l'API en réaction à l'événement n'obtienne pas un 304
+     */
+    private void publish(Channel channel, String type, Map<String, Object> data) {
+        dataVersionService.bump(channel.entrepriseId);
+        eventsPublished.incrementAndGet();
+        List<Stream> tooSlow = channel.publish(new Event(sequence.incrementAndGet(), type, data));
+        for (Stream stream : tooSlow) {
+            slowClientsDropped.incrementAndGet();
+            logger.warn("Flux d'événements de {} fermé : client trop lent ({} événements en attente)", stream.entrepriseId, queueSize);
+            stream.close();
+        }
+    }
+
+    private String eventId(long seq) {
+        return demarrage + "-" + seq;
+    }
+
+    /**
+     * Séquence d'un identifiant d'événement de ce démarrage ; -1 si absent, étranger ou illisible
+     */
+    private long parseEventId(String lastEventId) {
+        if (lastEventId == null || !lastEventId.startsWith(demarrage + "-")) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(lastEventId.substring(demarrage.length() + 1));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private final class Channel {
+        private final String entrepriseId;
+        // Séquence à la création : les événements antérieurs n'ont pas été observés par ce canal
+        private final long premierSeq;
+        private final ArrayDeque<Event> buffer = new ArrayDeque<>();
+        private long evinceJusqua = 0L;
+        private final Set<Stream> streams = new HashSet<>();
+        private long lastActivity = System.currentTimeMillis();
+
+        // États connus, accédés par le seul thread d'événements Firebase
+        private final Map<String, TicketState> tickets = new HashMap<>();
+        private final Map<String, AlerteState> alertes = new HashMap<>();
+        private volatile Map<String, Object> stats;
+        private volatile boolean statsReady = false;
+
+        private DatabaseReference ticketsRef;
+        private DatabaseReference alertesRef;
+        private DatabaseReference statsRef;
+        private ChildEventListener ticketsListener;
+        private ChildEventListener alertesListener;
+        private ValueEventListener statsListener;
+
+        private Channel(String entrepriseId, long premierSeq) {
+            this.entrepriseId = entrepriseId;
+            this.premierSeq = premierSeq;
+        }
+
+        /**
+         * Ajoute un flux ; les événements manqués depuis lastEventId lui sont d'abord remis (ou un resync)
+         */
+        private synchronized void register(Stream stream, String lastEventId) {
+            if (lastEventId != null && !lastEventId.isEmpty()) {
+                long last = parseEventId(lastEventId);
+                if (last < 0 || last < premierSeq || last < evinceJusqua) {
+                    resyncs.incrementAndGet();
+                    stream.offer(new Event(sequence.get(), RESYNC, Map.of("entrepriseId", entrepriseId)));
+                } else {
+                    for (Event event : buffer) {
+                        if (event.seq() > last && stream.offer(event)) {
+                            eventsReplayed.incrementAndGet();
+                        }
+                    }
+                }
+            }
+            streams.add(stream);
+            lastActivity = System.currentTimeMillis();
+        }
+
+        private synchronized void unregister(Stream stream) {
+            streams.remove(stream);
+            lastActivity = System.currentTimeMillis();
+        }
+
+        /**
+         * Ajoute l'événement au tampon et le transmet aux flux ; renvoie les flux dont la file est pleine
+         */
+        private synchronized List<Stream> publish(Event event) {
+            buffer.addLast(event);
+            while (buffer.size() > bufferSize) {
+                evinceJusqua = buffer.removeFirst().seq();
+            }
+            List<Stream> tooSlow = new ArrayList<>();
+            for (Stream stream : streams) {
+                if (!stream.offer(event)) {
+                    tooSlow.add(stream);
+                }
+            }
+            return tooSlow;
+        }
+
+        private synchronized List<Stream> streams() {
+            return new ArrayList<>(streams);
+        }
+
+        private synchronized boolean isIdle(long now) {
+            return streams.isEmpty() && now - lastActivity > idleDetachMs;
+        }
+
+        private synchronized int size() {
+            return streams.size();
+        }
+    }
+
+    // ========== FLUX ==========
+
+    private final class Stream {
+        private final String entrepriseId;
+        private final String userId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private volatile Channel channel;
+        private volatile Thread thread;
+
+        private Stream(String entrepriseId, String userId, SseEmitter emitter) {
+            this.entrepriseId = entrepriseId;
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        private boolean offer(Event event) {
+            return !closed.get() && queue.offer(event);
+        }
+
+        private void start() {
+            thread = Thread.ofVirtual().name("sse-" + entrepriseId + "-" + userId).start(this::drain);
+        }
+
+        /**
+         * Envoie les événements dans l'ordre ; un commentaire "ping" maintient la connexion en l'absence d'événement
+         */
+        private void drain() {
+            try {
+                emitter.send(SseEmitter.event().reconnectTime(RECONNECT_MS).comment("connecte"));
+                while (!closed.get()) {
+                    Event event = queue.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+                    if (closed.get()) {
+                        break;
+                    }
+                    if (event == null) {
+                        emitter.send(SseEmitter.event().comment("ping"));
+                    } else {
+                        emitter.send(SseEmitter.event()
+                            .id(eventId(event.seq()))
+                            .name(event.type())
+                            .data(event.data(), MediaType.APPLICATION_JSON));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | IllegalStateException e) {
+                // Client parti ou flux déjà terminé
+                logger.debug("Flux d'événements de {} interrompu: {}", entrepriseId, e.getMessage());
+            } finally {
+                close();
+            }
+        }
+
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            openStreams.decrementAndGet();
+            if (channel != null) {
+                channel.unregister(this);
+            }
+            try {
+                emitter.complete();
+            } catch (Exception e) {
+                // Déjà terminé
+            }
+            Thread drainer = thread;
+            if (drainer != null && drainer != Thread.currentThread()) {
+                drainer.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Indicateurs : flux ouverts et refusés, événements publiés et rejoués, resynchronisations, clients lents
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("openStreams", openStreams.get());
+        stats.put("maxStreams", maxStreams);
+        stats.put("streamsOpened", streamsOpened.get());
+        stats.put("streamsRejected", streamsRejected.get());
+        stats.put("eventsPublished", eventsPublished.get());
+        stats.put("eventsReplayed", eventsReplayed.get());
+        stats.put("resyncs", resyncs.get());
+        stats.put("slowClientsDropped", slowClientsDropped.get());
+        Map<String, Integer> parEntreprise = new LinkedHashMap<>();
+        channels.forEach((entrepriseId, channel) -> parEntreprise.put(entrepriseId, channel.size()));
+        stats.put("channels", parEntreprise);
+        return stats;
+    }
+}
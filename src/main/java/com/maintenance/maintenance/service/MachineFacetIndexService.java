@@ -0,0 +1,361 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Machine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index des filtres de la liste des machines (/machines), par entreprise
+ * Un bitset par catégorie, par état (opérationnelle, machine de secours, rattachée, matériel neuf) : une combinaison
+ * de filtres se résout par ET / OU NON sur les bitsets, et le nombre de machines de chaque valeur de filtre
+ * (« Catégorie X (42) ») se compte sans parcourir les objets Machine.
+ * Tenu à jour par les écritures de FirebaseRealtimeService ; à chaque requête, chaque machine de la liste chargée
+ * par la page est comparée à son entrée (écritures d'une autre instance) : les machines modifiées ou nouvelles
+ * sont réindexées, les absentes retirées. Reconstruit après search.index.max-age-minutes (numéros libérés).
+ */
+@Service
+public class MachineFacetIndexService {
+
+    /** Valeurs du filtre "type" (paramètre estSecours) */
+    public static final String TYPE_PRINCIPALE = "false";
+    public static final String TYPE_SECOURS = "true";
+    public static final String TYPE_ENTREPOT = "entrepot";
+
+    /**
+     * Filtres demandés ; searchIds : machines retenues par la recherche (null sans recherche)
+     */
+    public record Filter(Long categoryId, String operationnel, String type, Set<String> searchIds) {
+    }
+
+    /**
+     * Machines retenues (ordre de la liste) et nombre de machines pour chaque valeur de chaque filtre,
+     * les autres filtres étant appliqués
+     */
+    public record Result(List<String> machineIds, Map<String, Integer> categories,
+                         Map<String, Integer> operationnel, Map<String, Integer> types) {
+    }
+
+    @Value("${search.index.max-age-minutes:10}")
+    private long maxAgeMinutes;
+
+    @Value("${search.index.idle-minutes:30}")
+    private long idleMinutes;
+
+    private final Map<String, FacetIndex> indexes = new ConcurrentHashMap<>();
+
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * Applique les filtres ; machines : liste des machines non supprimées déjà chargée par la page
+     * (construction de l'index si nécessaire)
+     */
+    public Result filter(String entrepriseId, List<Machine> machines, Filter filter) {
+        queries.incrementAndGet();
+        long now = System.currentTimeMillis();
+        FacetIndex index = indexes.get(entrepriseId);
+        if (index == null || now - index.dateConstruction > maxAgeMinutes * 60_000L) {
+            index = new FacetIndex();
+            for (Machine machine : machines) {
+                if (machine != null && machine.getMachineId() != null && isIndexable(machine)) {
+                    index.put(machine.getMachineId(), Facets.of(machine));
+                }
+            }
+            builds.incrementAndGet();
+            indexes.put(entrepriseId, index);
+        } else if (index.refresh(machines) > 0) {
+            refreshes.incrementAndGet();
+        }
+        index.derniereUtilisation = now;
+        return index.filter(filter);
+    }
+
+    /**
+     * Met à jour la machine dans l'index de l'entreprise s'il est construit (machine null : suppression)
+     */
+    public void machineChanged(String entrepriseId, String machineId, Machine machine) {
+        if (entrepriseId == null || machineId == null) {
+            return;
+        }
+        FacetIndex index = indexes.get(entrepriseId);
+        if (index == null) {
+            return;
+        }
+        if (machine == null || !isIndexable(machine)) {
+            index.remove(machineId);
+        } else {
+            index.put(machineId, Facets.of(machine));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${search.index.sweep-interval-ms:300000}")
+    public void evictIdleIndexes() {
+        long limite = System.currentTimeMillis() - idleMinutes * 60_000L;
+        indexes.entrySet().removeIf(entry -> entry.getValue().derniereUtilisation < limite);
+    }
+
+    private static boolean isIndexable(Machine machine) {
+        return machine.getSupprime() == null || !machine.getSupprime();
+    }
+
+    /**
+     * Valeurs indexées d'une machine : deux machines aux mêmes valeurs occupent les mêmes bitsets
+     */
+    private record Facets(boolean operationnelle, boolean secours, boolean rattachee, boolean entrepot, Long categoryId) {
+
+        static Facets of(Machine machine) {
+            boolean estSecours = Boolean.TRUE.equals(machine.getEstMachineSecours());
+            return new Facets(
+                Boolean.TRUE.equals(machine.getOperationnel()) && !Boolean.TRUE.equals(machine.getEnReparation()),
+                estSecours,
+                estSecours && machine.getMachinePrincipaleId() != null && !machine.getMachinePrincipaleId().isEmpty(),
+                Boolean.TRUE.equals(machine.getEstMachineEntrepot()),
+                machine.getCategoryId());
+        }
+    }
+
+    /**
+     * Bitsets d'une entreprise ; chaque machine a un numéro (bit) stable, attribué à sa première indexation
+     */
+    private static final class FacetIndex {
+
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final List<String> slotIds = new ArrayList<>();
+        private final List<Facets> slotFacets = new ArrayList<>();
+        private final BitSet live = new BitSet();
+        /** operationnel == true et pas en réparation */
+        private final BitSet operationnelles = new BitSet();
+        /** estMachineSecours == true */
+        private final BitSet secours = new BitSet();
+        /** machine de secours rattachée à une machine principale (masquée sauf filtre "Secours") */
+        private final BitSet rattachees = new BitSet();
+        private final BitSet entrepot = new BitSet();
+        private final Map<Long, BitSet> categories = new HashMap<>();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final long dateConstruction = System.currentTimeMillis();
+        private volatile long derniereUtilisation = dateConstruction;
+
+        /**
+         * Aligne l'index sur la liste chargée : machines nouvelles ou dont les valeurs diffèrent réindexées,
+         * machines absentes de la liste retirées ; retourne le nombre de machines corrigées
+         */
+        private int refresh(List<Machine> machines) {
+            Map<String, Facets> modifiees = new HashMap<>();
+            Set<String> ids = new HashSet<>();
+            List<String> absentes = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                for (Machine machine : machines) {
+                    if (machine == null || machine.getMachineId() == null || !isIndexable(machine)) {
+                        continue;
+                    }
+                    ids.add(machine.getMachineId());
+                    Facets facets = Facets.of(machine);
+                    Integer slot = slots.get(machine.getMachineId());
+                    if (slot == null || !facets.equals(slotFacets.get(slot))) {
+                        modifiees.put(machine.getMachineId(), facets);
+                    }
+                }
+                if (slots.size() + modifiees.size() > ids.size()) {
+                    for (String machineId : slots.keySet()) {
+                        if (!ids.contains(machineId)) {
+                            absentes.add(machineId);
+                        }
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            absentes.forEach(this::remove);
+            modifiees.forEach(this::put);
+            return absentes.size() + modifiees.size();
+        }
+
+        private void put(String machineId, Facets facets) {
+            lock.writeLock().lock();
+            try {
+                Integer slot = slots.get(machineId);
+                if (slot == null) {
+                    slot = slotIds.size();
+                    slotIds.add(machineId);
+                    slotFacets.add(facets);
+                    slots.put(machineId, slot);
+                } else {
+                    clear(slot);
+                    slotFacets.set(slot, facets);
+                }
+                live.set(slot);
+                operationnelles.set(slot, facets.operationnelle());
+                secours.set(slot, facets.secours());
+                rattachees.set(slot, facets.rattachee());
+                entrepot.set(slot, facets.entrepot());
+                if (facets.categoryId() != null) {
+                    categories.computeIfAbsent(facets.categoryId(), id -> new BitSet()).set(slot);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void remove(String machineId) {
+            lock.writeLock().lock();
+            try {
+                Integer slot = slots.remove(machineId);
+                if (slot != null) {
+                    clear(slot);
+                    slotIds.set(slot, null);
+                    slotFacets.set(slot, null);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void clear(int slot) {
+            live.clear(slot);
+            operationnelles.clear(slot);
+            secours.clear(slot);
+            rattachees.clear(slot);
+            entrepot.clear(slot);
+            categories.values().removeIf(bits -> {
+                bits.clear(slot);
+                return bits.isEmpty();
+            });
+        }
+
+        private Result filter(Filter filter) {
+            lock.readLock().lock();
+            try {
+                BitSet recherche = live;
+                if (filter.searchIds() != null) {
+                    recherche = new BitSet();
+                    for (String machineId : filter.searchIds()) {
+                        Integer slot = slots.get(machineId);
+                        if (slot != null) {
+                            recherche.set(slot);
+                        }
+                    }
+                }
+
+                BitSet categorie = filter.categoryId() != null ? categories.getOrDefault(filter.categoryId(), new BitSet()) : null;
+                BitSet selection = and(typeBits(filter.type()), recherche);
+                if (categorie != null) {
+                    selection.and(categorie);
+                }
+                applyOperationnel(selection, filter.operationnel());
+
+                List<String> machineIds = new ArrayList<>(selection.cardinality());
+                for (int slot = selection.nextSetBit(0); slot >= 0; slot = selection.nextSetBit(slot + 1)) {
+                    machineIds.add(slotIds.get(slot));
+                }
+
+                // Compteurs d'un filtre : tous les autres filtres appliqués, celui-ci laissé libre
+                BitSet sansCategorie = and(typeBits(filter.type()), recherche);
+                applyOperationnel(sansCategorie, filter.operationnel());
+                Map<String, Integer> categoryCounts = new LinkedHashMap<>();
+                for (Map.Entry<Long, BitSet> entry : categories.entrySet()) {
+                    categoryCounts.put(String.valueOf(entry.getKey()), countAnd(sansCategorie, entry.getValue()));
+                }
+
+                BitSet sansOperationnel = and(typeBits(filter.type()), recherche);
+                if (categorie != null) {
+                    sansOperationnel.and(categorie);
+                }
+                Map<String, Integer> operationnelCounts = new LinkedHashMap<>();
+                int operationnels = countAnd(sansOperationnel, operationnelles);
+                operationnelCounts.put("true", operationnels);
+                operationnelCounts.put("false", sansOperationnel.cardinality() - operationnels);
+
+                Map<String, Integer> typeCounts = new LinkedHashMap<>();
+                for (String type : List.of(TYPE_PRINCIPALE, TYPE_SECOURS, TYPE_ENTREPOT)) {
+                    BitSet sansType = and(typeBits(type), recherche);
+                    if (categorie != null) {
+                        sansType.and(categorie);
+                    }
+                    applyOperationnel(sansType, filter.operationnel());
+                    typeCounts.put(type, sansType.cardinality());
+                }
+
+                return new Result(machineIds, categoryCounts, operationnelCounts, typeCounts);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Machines d'un type ; sans filtre "Secours", les machines de secours rattachées sont masquées
+         */
+        private BitSet typeBits(String type) {
+            BitSet bits = (BitSet) live.clone();
+            if (!TYPE_SECOURS.equalsIgnoreCase(type)) {
+                bits.andNot(rattachees);
+            }
+            if (type == null || type.isEmpty()) {
+                return bits;
+            }
+            if (TYPE_ENTREPOT.equals(type)) {
+                bits.and(entrepot);
+            } else if (TYPE_SECOURS.equalsIgnoreCase(type)) {
+                bits.andNot(entrepot);
+                bits.and(secours);
+            } else {
+                bits.andNot(entrepot);
+                bits.andNot(secours);
+            }
+            return bits;
+        }
+
+        /**
+         * "true" : opérationnelle et pas en réparation ; toute autre valeur non vide : le complément
+         */
+        private void applyOperationnel(BitSet bits, String operationnel) {
+            if (operationnel == null || operationnel.isEmpty()) {
+                return;
+            }
+            if ("true".equalsIgnoreCase(operationnel)) {
+                bits.and(operationnelles);
+            } else {
+                bits.andNot(operationnelles);
+            }
+        }
+
+        private static BitSet and(BitSet bits, BitSet other) {
+            if (other != null) {
+                bits.and(other);
+            }
+            return bits;
+        }
+
+        private static int countAnd(BitSet bits, BitSet other) {
+            BitSet copy = (BitSet) bits.clone();
+            copy.and(other);
+            return copy.cardinality();
+        }
+    }
+
+    /**
+     * Indicateurs : index en mémoire, constructions et requêtes
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("indexes", indexes.size());
+        stats.put("builds", builds.get());
+        stats.put("queries", queries.get());
+        stats.put("refreshes", refreshes.get());
+        return stats;
+    }
+}
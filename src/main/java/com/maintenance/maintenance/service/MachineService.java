@@ -4,6 +4,7 @@ import com.maintenance.maintenance.model.entity.Machine;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
 
 @Service
@@ -20,6 +21,13 @@ public class MachineService {
         return firebaseRealtimeService.getMachineById(entrepriseId, machineId);
     }
 
+    public List<Machine> getMachines(String entrepriseId, Collection<String> machineIds) throws Exception {
+        if (machineIds.isEmpty()) {
+            return List.of();
+        }
+        return firebaseRealtimeService.getMachinesByIdsAsync(entrepriseId, machineIds).get();
+    }
+
     public String createMachine(String entrepriseId, Machine machine) throws Exception {
         return firebaseRealtimeService.createMachine(entrepriseId, machine);
     }
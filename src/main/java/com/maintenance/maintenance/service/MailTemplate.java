@@ -0,0 +1,54 @@
+package com.maintenance.maintenance.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gabarit de texte à variables {nom}, découpé une seule fois en segments
+ * Le rendu se contente d'enchaîner les segments dans un StringBuilder (pas de String.format par envoi).
+ */
+public final class MailTemplate {
+
+    private final List<String> literals = new ArrayList<>();
+    private final List<String> variables = new ArrayList<>();
+
+    private MailTemplate() {
+    }
+
+    public static MailTemplate compile(String source) {
+        MailTemplate template = new MailTemplate();
+        int position = 0;
+        while (true) {
+            int start = source.indexOf('{', position);
+            int end = start >= 0 ? source.indexOf('}', start + 1) : -1;
+            if (start < 0 || end < 0) {
+                template.literals.add(source.substring(position));
+                return template;
+            }
+            template.literals.add(source.substring(position, start));
+            template.variables.add(source.substring(start + 1, end));
+            position = end + 1;
+        }
+    }
+
+    /**
+     * Ajoute le rendu au texte en cours ; une variable absente est rendue vide
+     */
+    public void renderTo(StringBuilder out, Map<String, String> values) {
+        for (int i = 0; i < variables.size(); i++) {
+            out.append(literals.get(i));
+            String value = values.get(variables.get(i));
+            if (value != null) {
+                out.append(value);
+            }
+        }
+        out.append(literals.get(literals.size() - 1));
+    }
+
+    public String render(Map<String, String> values) {
+        StringBuilder out = new StringBuilder();
+        renderTo(out, values);
+        return out.toString();
+    }
+}
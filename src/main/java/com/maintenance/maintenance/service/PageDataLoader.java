@@ -0,0 +1,219 @@
+package com.maintenance.maintenance.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chargement parallèle des données d'une page
+ * Les lectures indépendantes d'un contrôleur (entreprises, tickets, utilisateurs, machines...) partent ensemble
+ * sur des threads virtuels : la page attend la lecture la plus lente au lieu de la somme des lectures.
+ * Toutes les lectures d'un chargement partagent la même échéance ; une lecture en échec ou hors délai rend
+ * sa valeur de repli sans faire échouer les autres. La fermeture du chargement (try-with-resources) annule
+ * les lectures encore en cours : aucune ne survit à la requête.
+ */
+@Service
+public class PageDataLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageDataLoader.class);
+
+    /**
+     * Lecture d'une donnée de la page (appel de service pouvant lever une exception)
+     */
+    @FunctionalInterface
+    public interface Read<T> {
+        T read() throws Exception;
+    }
+
+    /** Échéance commune à toutes les lectures d'un chargement */
+    @Value("${page.loader.deadline-ms:10000}")
+    private long deadlineMs;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("page-loader-", 0).factory());
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * Ouvre un chargement ; l'échéance court à partir de maintenant
+     */
+    public Load open() {
+        loads.incrementAndGet();
+        return new Load(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Ensemble des lectures d'une requête
+     */
+    public final class Load implements AutoCloseable {
+
+        private final long deadlineNanos;
+        private final List<Part<?>> parts = new ArrayList<>();
+
+        private Load(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Lance une lecture ; un résultat null, une erreur ou un dépassement d'échéance donnent la valeur de repli
+         */
+        public <T> Part<T> fork(String label, Read<T> read, T fallback) {
+            reads.incrementAndGet();
+            Part<T> part = new Part<>(label, fallback, deadlineNanos, executor.submit(read::read));
+            parts.add(part);
+            return part;
+        }
+
+        /**
+         * Attend toutes les lectures lancées, au plus jusqu'à l'échéance commune
+         */
+        public Load join() {
+            for (Part<?> part : parts) {
+                part.get();
+            }
+            return this;
+        }
+
+        /**
+         * Lectures en échec : libellé et cause
+         */
+        public Map<String, String> failures() {
+            Map<String, String> failed = new LinkedHashMap<>();
+            for (Part<?> part : parts) {
+                if (part.failed()) {
+                    failed.put(part.label, part.error);
+                }
+            }
+            return failed;
+        }
+
+        @Override
+        public void close() {
+            for (Part<?> part : parts) {
+                part.future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Résultat d'une lecture, résolu au premier accès
+     */
+    public final class Part<T> {
+
+        private final String label;
+        private final T fallback;
+        private final long deadlineNanos;
+        private final Future<T> future;
+
+        private boolean resolved;
+        private T value;
+        private String error;
+
+        private Part(String label, T fallback, long deadlineNanos, Future<T> future) {
+            this.label = label;
+            this.fallback = fallback;
+            this.deadlineNanos = deadlineNanos;
+            this.future = future;
+        }
+
+        /**
+         * Valeur lue, ou valeur de repli si la lecture a échoué
+         */
+        public synchronized T get() {
+            if (!resolved) {
+                resolve();
+            }
+            return value;
+        }
+
+        /**
+         * Valeur lue ; lève l'erreur de la lecture si elle a échoué (donnée indispensable à la page)
+         */
+        public T require() throws Exception {
+            T result = get();
+            if (failed()) {
+                throw new Exception("Erreur lors de la récupération " + label + ": " + error);
+            }
+            return result;
+        }
+
+        public synchronized boolean failed() {
+            get();
+            return error != null;
+        }
+
+        public synchronized String getError() {
+            get();
+            return error;
+        }
+
+        private void resolve() {
+            resolved = true;
+            value = fallback;
+            try {
+                T result = future.get(Math.max(0L, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (result != null) {
+                    value = result;
+                }
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                timeouts.incrementAndGet();
+                error = "délai dépassé (" + deadlineMs + " ms)";
+            } catch (ExecutionException e) {
+                failures.incrementAndGet();
+                error = describe(e.getCause() != null ? e.getCause() : e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                error = "interruption";
+            } catch (Exception e) {
+                error = describe(e);
+            }
+            if (error != null) {
+                logger.warn("Lecture {} de la page en échec: {}", label, error);
+            }
+        }
+    }
+
+    /**
+     * Indicateurs : chargements, lectures lancées, échecs et dépassements d'échéance
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("loads", loads.get());
+        stats.put("reads", reads.get());
+        stats.put("failures", failures.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("deadlineMs", deadlineMs);
+        return stats;
+    }
+
+    /**
+     * Message d'erreur jamais null : une exception sans message (NullPointerException...) reste un échec
+     */
+    private static String describe(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+}
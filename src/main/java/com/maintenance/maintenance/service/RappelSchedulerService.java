@@ -4,10 +4,12 @@ import com.maintenance.maintenance.model.entity.Rappel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
 import java.util.List;
 
 @Service
@@ -21,6 +23,19 @@ public class RappelSchedulerService implements CommandLineRunner {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
+    @Autowired
+    private ReminderLeaseService reminderLeaseService;
+
+    @Autowired
+    private ReminderDigestService reminderDigestService;
+
+    // Mode digest : un seul e-mail par entreprise et par passage pour les alertes, rappels et relances
+    @Value("${mail.digest.enabled:false}")
+    private boolean digestEnabled;
+
     /**
      * S'exécute au démarrage de l'application via CommandLineRunner
      * Cela garantit que toutes les dépendances sont injectées avant l'exécution
@@ -28,16 +43,22 @@ public class RappelSchedulerService implements CommandLineRunner {
     @Override
     public void run(String... args) throws Exception {
         logger.info("🚀 RappelSchedulerService démarré - Vérification automatique des rappels activée");
-        logger.info("📅 Le scheduler va vérifier les rappels toutes les 5 minutes");
+        logger.info("📅 Les rappels partent à leur échéance ; réconciliation périodique toutes les 30 minutes");
         logger.info("⚡ Première vérification immédiate dans quelques secondes...");
     }
 
     /**
-     * Vérifie toutes les 5 minutes les rappels à envoyer
+     * Dépose les rappels et relances échus dans la file d'envoi durable
+     * Déclenché à l'échéance par ReminderTimerService ; le passage périodique sert de réconciliation.
      * initialDelay = 60000 pour s'exécuter 1 minute après le démarrage (le temps que tout soit initialisé)
+     * synchronized : un passage de la minuterie et un passage périodique ne doivent pas envoyer deux fois.
      */
-    @Scheduled(fixedRate = 300000, initialDelay = 60000) // Toutes les 5 minutes (300000 ms = 5 minutes), démarrage après 1 minute
-    public void checkAndSendRappels() {
+    @Scheduled(fixedRateString = "${reminders.rappels.reconciliation-ms:1800000}", initialDelay = 60000) // Toutes les 30 minutes par défaut
+    public synchronized void checkAndSendRappels() {
+        if (digestEnabled) {
+            reminderDigestService.runDigest();
+            return;
+        }
         try {
             logger.info("🔍 [SCHEDULER] Vérification des rappels à envoyer...");
             List<Rappel> rappelsAEnvoyer = rappelService.getRappelsAEnvoyer();
@@ -46,28 +67,38 @@ public class RappelSchedulerService implements CommandLineRunner {
                 logger.info("📧 [SCHEDULER] {} rappel(s) à envoyer trouvé(s)", rappelsAEnvoyer.size());
                 String superAdminEmail = emailService.getSuperAdminEmail();
                 
+                // Ordre aléatoire : les instances se répartissent les éléments au lieu de se disputer les mêmes
+                Collections.shuffle(rappelsAEnvoyer);
                 for (Rappel rappel : rappelsAEnvoyer) {
+                    String cle = EmailOutboxService.cleRappel(rappel.getEntrepriseId(), rappel.getRappelId(), rappel.getDateVerification(), 0);
+                    if (!reminderLeaseService.claim(EcheanceIndex.RAPPELS, rappel.getEntrepriseId(), rappel.getRappelId(), cle)) {
+                        continue; // Pris en charge par une autre instance
+                    }
                     try {
-                        // Envoyer l'email
-                        emailService.sendRappelEmail(
-                            superAdminEmail,
-                            rappel.getMachineNom() != null ? rappel.getMachineNom() : "Machine inconnue",
-                            rappel.getDescription(),
-                            rappel.getDateVerification(),
-                            false
-                        );
+                        // Mettre l'email en file (une seule fois par rappel et date de vérification)
+                        emailOutboxService.enqueue(
+                            cle, "rappel", rappel.getEntrepriseId(), rappel.getRappelId(), 0,
+                            emailService.buildRappelMessage(
+                                superAdminEmail,
+                                rappel.getMachineNom() != null ? rappel.getMachineNom() : "Machine inconnue",
+                                rappel.getDescription(),
+                                rappel.getDateVerification(),
+                                false
+                            ));
                         
-                        // Marquer le rappel comme envoyé seulement si l'email a été envoyé avec succès
+                        // Marquer le rappel comme envoyé : la file d'envoi se charge des nouvelles tentatives
                         rappel.setEnvoye(true);
                         rappel.setDateEnvoi(System.currentTimeMillis());
                         rappelService.updateRappel(rappel.getEntrepriseId(), rappel.getRappelId(), rappel);
+                        reminderLeaseService.complete(EcheanceIndex.RAPPELS, rappel.getEntrepriseId(), rappel.getRappelId(), cle);
                         
-                        logger.info("✅ Rappel envoyé avec succès pour la machine: {} à {}", 
+                        logger.info("✅ Rappel mis en file d'envoi pour la machine: {} à {}", 
                             rappel.getMachineNom(), superAdminEmail);
                     } catch (Exception e) {
+                        reminderLeaseService.release(EcheanceIndex.RAPPELS, rappel.getEntrepriseId(), rappel.getRappelId(), cle);
                         logger.error("❌ Erreur lors de l'envoi du rappel pour la machine {}: {}", 
                             rappel.getMachineNom(), e.getMessage(), e);
-                        // Ne pas marquer comme envoyé si l'email a échoué
+                        // Ne pas marquer comme envoyé si la mise en file a échoué
                         // Le scheduler réessayera lors de la prochaine vérification
                     }
                 }
@@ -81,29 +112,38 @@ public class RappelSchedulerService implements CommandLineRunner {
                 logger.info("📧 [SCHEDULER] {} rappel(s) à relancer trouvé(s)", rappelsARelancer.size());
                 String superAdminEmail = emailService.getSuperAdminEmail();
                 
+                Collections.shuffle(rappelsARelancer);
                 for (Rappel rappel : rappelsARelancer) {
+                    int nbRelancesEnvoyees = (rappel.getNombreRelancesEnvoyees() != null ? rappel.getNombreRelancesEnvoyees() : 0) + 1;
+                    String cle = EmailOutboxService.cleRappel(rappel.getEntrepriseId(), rappel.getRappelId(), rappel.getDateVerification(), nbRelancesEnvoyees);
+                    if (!reminderLeaseService.claim(EcheanceIndex.RAPPELS, rappel.getEntrepriseId(), rappel.getRappelId(), cle)) {
+                        continue; // Pris en charge par une autre instance
+                    }
                     try {
-                        // Envoyer la relance
-                        emailService.sendRappelEmail(
-                            superAdminEmail,
-                            rappel.getMachineNom() != null ? rappel.getMachineNom() : "Machine inconnue",
-                            rappel.getDescription(),
-                            rappel.getDateVerification(),
-                            true
-                        );
+                        // Mettre la relance en file (clé propre au numéro de relance)
+                        emailOutboxService.enqueue(
+                            cle, "rappel", rappel.getEntrepriseId(), rappel.getRappelId(), nbRelancesEnvoyees,
+                            emailService.buildRappelMessage(
+                                superAdminEmail,
+                                rappel.getMachineNom() != null ? rappel.getMachineNom() : "Machine inconnue",
+                                rappel.getDescription(),
+                                rappel.getDateVerification(),
+                                true
+                            ));
                         
-                        // Mettre à jour le nombre de relances envoyées seulement si l'email a été envoyé avec succès
-                        int nbRelancesEnvoyees = (rappel.getNombreRelancesEnvoyees() != null ? rappel.getNombreRelancesEnvoyees() : 0) + 1;
+                        // Mettre à jour le nombre de relances envoyées seulement si la relance est en file
                         rappel.setNombreRelancesEnvoyees(nbRelancesEnvoyees);
                         rappel.setDateDerniereRelance(System.currentTimeMillis());
                         rappelService.updateRappel(rappel.getEntrepriseId(), rappel.getRappelId(), rappel);
+                        reminderLeaseService.complete(EcheanceIndex.RAPPELS, rappel.getEntrepriseId(), rappel.getRappelId(), cle);
                         
-                        logger.info("✅ Relance envoyée avec succès pour la machine: {} ({}/{}) à {}", 
+                        logger.info("✅ Relance mise en file d'envoi pour la machine: {} ({}/{}) à {}", 
                             rappel.getMachineNom(), nbRelancesEnvoyees, rappel.getNombreRelances(), superAdminEmail);
                     } catch (Exception e) {
+                        reminderLeaseService.release(EcheanceIndex.RAPPELS, rappel.getEntrepriseId(), rappel.getRappelId(), cle);
                         logger.error("❌ Erreur lors de l'envoi de la relance pour la machine {}: {}", 
                             rappel.getMachineNom(), e.getMessage(), e);
-                        // Ne pas mettre à jour le compteur si l'email a échoué
+                        // Ne pas mettre à jour le compteur si la mise en file a échoué
                         // Le scheduler réessayera lors de la prochaine vérification
                     }
                 }
@@ -112,10 +152,12 @@ public class RappelSchedulerService implements CommandLineRunner {
             }
         } catch (Exception e) {
             logger.error("❌ [SCHEDULER] Erreur lors de la vérification des rappels: {}", e.getMessage(), e);
+        } finally {
+            emailOutboxService.wakeUp();
         }
         
         // Log pour confirmer que le scheduler s'est exécuté
-        logger.info("✅ [SCHEDULER] Vérification terminée - Prochaine vérification dans 5 minutes");
+        logger.info("✅ [SCHEDULER] Vérification terminée");
     }
 }
 
@@ -0,0 +1,117 @@
+package com.maintenance.maintenance.service;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Résolution des destinataires des e-mails à partir de l'index des rôles (rolesIndex/)
+ * Les emails des super admins sont gardés en cache et tenus à jour par un listener sur rolesIndex/superadmin :
+ * toute création, modification ou suppression d'utilisateur invalide le cache sans relecture explicite.
+ */
+@Service
+public class RecipientResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecipientResolver.class);
+
+    private static final String SUPERADMIN = "superadmin";
+
+    @Autowired
+    private DatabaseReference databaseReference;
+
+    @Autowired
+    private FirebaseRealtimeService firebaseRealtimeService;
+
+    // null tant que le listener n'a pas livré l'état initial
+    private volatile List<String> superAdminEmails;
+    private ValueEventListener listener;
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    @PostConstruct
+    void watch() {
+        listener = databaseReference.child(FirebaseRealtimeService.ROLE_INDEX_NODE).child(SUPERADMIN)
+            .addValueEventListener(new ValueEventListener() {
+                @Override
+                public void onDataChange(DataSnapshot snapshot) {
+                    superAdminEmails = emails(FirebaseRealtimeService.mapRoleIndexSnapshot(snapshot));
+                }
+
+                @Override
+                public void onCancelled(DatabaseError error) {
+                    superAdminEmails = null;
+                    logger.warn("Écoute de l'index des rôles interrompue: {}", error.getMessage());
+                }
+            });
+    }
+
+    @PreDestroy
+    void stop() {
+        if (listener != null) {
+            databaseReference.child(FirebaseRealtimeService.ROLE_INDEX_NODE).child(SUPERADMIN).removeEventListener(listener);
+        }
+    }
+
+    /**
+     * Email du premier super admin : aucune lecture si le cache est prêt, sinon une petite lecture de l'index
+     * Index vide (base non migrée) : repli sur le parcours de tous les utilisateurs.
+     */
+    public String getSuperAdminEmail() throws Exception {
+        List<String> emails = superAdminEmails;
+        if (emails != null && !emails.isEmpty()) {
+            cacheHits.incrementAndGet();
+            return emails.get(0);
+        }
+        reads.incrementAndGet();
+        emails = emails(firebaseRealtimeService.getUsersByRole(SUPERADMIN));
+        if (!emails.isEmpty()) {
+            return emails.get(0);
+        }
+        fallbacks.incrementAndGet();
+        for (Map<String, Object> user : firebaseRealtimeService.getAllUsers()) {
+            String role = (String) user.get("role");
+            String email = (String) user.get("email");
+            if (SUPERADMIN.equalsIgnoreCase(role) && email != null && !email.isEmpty()) {
+                return email;
+            }
+        }
+        throw new Exception("Aucun super admin trouvé avec un email valide");
+    }
+
+    private static List<String> emails(Map<String, String> users) {
+        List<String> emails = new ArrayList<>();
+        for (String email : users.values()) {
+            if (email != null && !email.isEmpty()) {
+                emails.add(email);
+            }
+        }
+        return emails;
+    }
+
+    /**
+     * Indicateurs : réponses depuis le cache, lectures de l'index, replis sur la liste complète
+     */
+    public Map<String, Object> getStats() {
+        List<String> emails = superAdminEmails;
+        return Map.of(
+            "cacheReady", emails != null,
+            "superAdmins", emails != null ? emails.size() : 0,
+            "cacheHits", cacheHits.get(),
+            "reads", reads.get(),
+            "fallbacks", fallbacks.get());
+    }
+}
@@ -0,0 +1,227 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.Rappel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mode digest : un seul e-mail par destinataire et par entreprise pour tous les éléments échus du passage
+ * (alertes, rappels et relances). Les éléments inclus sont marqués envoyés en une seule écriture Firebase,
+ * avec leurs baux, après le dépôt du digest dans la file d'envoi durable.
+ */
+@Service
+public class ReminderDigestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReminderDigestService.class);
+
+    // Gabarits compilés une seule fois
+    private static final MailTemplate SUJET = MailTemplate.compile("Récapitulatif maintenance - {entreprise} : {total} élément(s) à traiter");
+    private static final MailTemplate ENTETE = MailTemplate.compile(
+        "Bonjour,\n\nVoici les vérifications de machines en attente pour {entreprise}.\n");
+    private static final MailTemplate SECTION = MailTemplate.compile("\n{titre} ({nombre}) :\n");
+    private static final MailTemplate LIGNE = MailTemplate.compile("- {machine} - vérification le {date}{relance} : {description}\n");
+    private static final MailTemplate PIED = MailTemplate.compile(
+        "\nVeuillez procéder aux vérifications de ces machines.\n\nCordialement,\nSystème de maintenance");
+
+    @Autowired
+    private AlertService alertService;
+
+    @Autowired
+    private RappelService rappelService;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
+    @Autowired
+    private ReminderLeaseService reminderLeaseService;
+
+    @Autowired
+    private FirebaseRealtimeService firebaseRealtimeService;
+
+    private record DigestItem(String type, String entrepriseId, String itemId, String cle, int numeroRelance,
+                              String machineNom, String description, Long dateVerification, Object source) {
+    }
+
+    /**
+     * Regroupe toutes les alertes, rappels et relances échus, puis dépose un digest par entreprise
+     */
+    public synchronized void runDigest() {
+        try {
+            List<DigestItem> items = new ArrayList<>();
+            for (Alerte alerte : alertService.getAlertesAEnvoyer()) {
+                items.add(alerteItem(alerte, 0));
+            }
+            for (Alerte alerte : alertService.getAlertesARelancer()) {
+                items.add(alerteItem(alerte, relancesEnvoyees(alerte.getNombreRelancesEnvoyees()) + 1));
+            }
+            for (Rappel rappel : rappelService.getRappelsAEnvoyer()) {
+                items.add(rappelItem(rappel, 0));
+            }
+            for (Rappel rappel : rappelService.getRappelsARelancer()) {
+                items.add(rappelItem(rappel, relancesEnvoyees(rappel.getNombreRelancesEnvoyees()) + 1));
+            }
+            if (items.isEmpty()) {
+                return;
+            }
+
+            // Réservation de chaque élément (plusieurs instances), regroupement par entreprise
+            Map<String, List<DigestItem>> parEntreprise = new LinkedHashMap<>();
+            for (DigestItem item : items) {
+                if (reminderLeaseService.claim(item.type(), item.entrepriseId(), item.itemId(), item.cle())) {
+                    parEntreprise.computeIfAbsent(item.entrepriseId(), key -> new ArrayList<>()).add(item);
+                }
+            }
+            if (parEntreprise.isEmpty()) {
+                return;
+            }
+
+            String destinataire = emailService.getSuperAdminEmail();
+            for (Map.Entry<String, List<DigestItem>> groupe : parEntreprise.entrySet()) {
+                deliverGroup(destinataire, groupe.getKey(), groupe.getValue());
+            }
+        } catch (Exception e) {
+            logger.error("Erreur lors de la préparation du digest des rappels: {}", e.getMessage(), e);
+        } finally {
+            emailOutboxService.wakeUp();
+        }
+    }
+
+    private void deliverGroup(String destinataire, String entrepriseId, List<DigestItem> groupe) {
+        try {
+            // Éléments déjà en file, par un digest ou un envoi individuel (arrêt avant la mise à jour Firebase, changement
+            // de mode) : pas de second envoi
+            List<String> cles = groupe.stream().map(DigestItem::cle).toList();
+            Set<String> dejaEnFile = emailOutboxService.clesDejaEnFile(cles);
+            List<DigestItem> nouveaux = groupe.stream().filter(item -> !dejaEnFile.contains(item.cle())).toList();
+            if (!nouveaux.isEmpty()) {
+                SimpleMailMessage message = render(destinataire, entrepriseNom(entrepriseId), nouveaux);
+                emailOutboxService.enqueueDigest("digest:" + entrepriseId + ":" + System.currentTimeMillis(), entrepriseId,
+                    nouveaux.stream().map(DigestItem::cle).toList(), message);
+            }
+
+            // Tous les éléments du groupe sont couverts : marquage atomique des envois et des baux
+            long now = System.currentTimeMillis();
+            // Copies marquées : l'élément lu reste l'état avant, pour les compteurs et agrégats
+            List<FirebaseRealtimeService.SentReminder<Alerte>> alertes = new ArrayList<>();
+            List<FirebaseRealtimeService.SentReminder<Rappel>> rappels = new ArrayList<>();
+            Map<String, Object> baux = new HashMap<>();
+            for (DigestItem item : groupe) {
+                if (item.source() instanceof Alerte lue) {
+                    Alerte alerte = firebaseRealtimeService.copyAlerte(lue);
+                    if (item.numeroRelance() == 0) {
+                        alerte.setEnvoye(true);
+                        alerte.setDateEnvoi(now);
+                    } else {
+                        alerte.setNombreRelancesEnvoyees(item.numeroRelance());
+                        alerte.setDateDerniereRelance(now);
+                    }
+                    alertes.add(new FirebaseRealtimeService.SentReminder<>(lue, alerte));
+                } else if (item.source() instanceof Rappel lu) {
+                    Rappel rappel = firebaseRealtimeService.copyRappel(lu);
+                    if (item.numeroRelance() == 0) {
+                        rappel.setEnvoye(true);
+                        rappel.setDateEnvoi(now);
+                    } else {
+                        rappel.setNombreRelancesEnvoyees(item.numeroRelance());
+                        rappel.setDateDerniereRelance(now);
+                    }
+                    rappels.add(new FirebaseRealtimeService.SentReminder<>(lu, rappel));
+                }
+                baux.putAll(reminderLeaseService.completedLeaseUpdate(item.type(), item.entrepriseId(), item.itemId(), item.cle()));
+            }
+            firebaseRealtimeService.markRemindersSent(alertes, rappels, baux);
+            logger.info("Digest de {} élément(s) mis en file pour l'entreprise {} ({} déjà couvert(s))",
+                nouveaux.size(), entrepriseId, groupe.size() - nouveaux.size());
+        } catch (Exception e) {
+            for (DigestItem item : groupe) {
+                reminderLeaseService.release(item.type(), item.entrepriseId(), item.itemId(), item.cle());
+            }
+            logger.error("Erreur lors de l'envoi du digest pour l'entreprise {}: {}", entrepriseId, e.getMessage(), e);
+        }
+    }
+
+    private SimpleMailMessage render(String destinataire, String entreprise, List<DigestItem> items) {
+        Map<String, String> values = new HashMap<>();
+        values.put("entreprise", entreprise);
+        values.put("total", String.valueOf(items.size()));
+
+        StringBuilder corps = new StringBuilder(256 + items.size() * 96);
+        ENTETE.renderTo(corps, values);
+        renderSection(corps, "Alertes de vérification", items, EcheanceIndex.ALERTES, false);
+        renderSection(corps, "Relances d'alertes", items, EcheanceIndex.ALERTES, true);
+        renderSection(corps, "Rappels de vérification", items, EcheanceIndex.RAPPELS, false);
+        renderSection(corps, "Relances de rappels", items, EcheanceIndex.RAPPELS, true);
+        PIED.renderTo(corps, values);
+
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(destinataire);
+        message.setSubject(SUJET.render(values));
+        message.setText(corps.toString());
+        message.setFrom(EmailService.EXPEDITEUR);
+        return message;
+    }
+
+    private static void renderSection(StringBuilder corps, String titre, List<DigestItem> items, String type, boolean relance) {
+        List<DigestItem> section = items.stream()
+            .filter(item -> item.type().equals(type) && (item.numeroRelance() > 0) == relance)
+            .toList();
+        if (section.isEmpty()) {
+            return;
+        }
+        Map<String, String> values = new HashMap<>();
+        values.put("titre", titre);
+        values.put("nombre", String.valueOf(section.size()));
+        SECTION.renderTo(corps, values);
+        for (DigestItem item : section) {
+            values.put("machine", item.machineNom() != null ? item.machineNom() : "Machine inconnue");
+            values.put("date", item.dateVerification() != null
+                ? EmailService.DATE_VERIFICATION.format(Instant.ofEpochMilli(item.dateVerification())) : "non définie");
+            values.put("relance", relance ? " (relance n°" + item.numeroRelance() + ")" : "");
+            values.put("description", item.description() != null ? item.description() : "Aucune description");
+            LIGNE.renderTo(corps, values);
+        }
+    }
+
+    private String entrepriseNom(String entrepriseId) {
+        try {
+            Map<String, Object> entreprise = firebaseRealtimeService.getEnterpriseById(entrepriseId);
+            if (entreprise != null && entreprise.get("nom") instanceof String nom && !nom.isBlank()) {
+                return nom;
+            }
+        } catch (Exception e) {
+            logger.debug("Nom de l'entreprise {} indisponible: {}", entrepriseId, e.getMessage());
+        }
+        return entrepriseId;
+    }
+
+    private static DigestItem alerteItem(Alerte alerte, int numeroRelance) {
+        return new DigestItem(EcheanceIndex.ALERTES, alerte.getEntrepriseId(), alerte.getAlerteId(),
+            EmailOutboxService.cleAlerte(alerte.getEntrepriseId(), alerte.getAlerteId(), alerte.getDateVerification(), numeroRelance),
+            numeroRelance, alerte.getMachineNom(), alerte.getDescription(), alerte.getDateVerification(), alerte);
+    }
+
+    private static DigestItem rappelItem(Rappel rappel, int numeroRelance) {
+        return new DigestItem(EcheanceIndex.RAPPELS, rappel.getEntrepriseId(), rappel.getRappelId(),
+            EmailOutboxService.cleRappel(rappel.getEntrepriseId(), rappel.getRappelId(), rappel.getDateVerification(), numeroRelance),
+            numeroRelance, rappel.getMachineNom(), rappel.getDescription(), rappel.getDateVerification(), rappel);
+    }
+
+    private static int relancesEnvoyees(Integer nombre) {
+        return nombre != null ? nombre : 0;
+    }
+}
@@ -0,0 +1,188 @@
+package com.maintenance.maintenance.service;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Réservation des envois de rappels entre plusieurs instances de l'application
+ * Avant d'envoyer, une instance prend un bail sur l'élément (runTransaction sur echeancesBaux/{type}/{clé}).
+ * Le bail porte la clé d'idempotence de l'envoi : une fois l'envoi terminé il reste marqué "fait",
+ * si bien qu'une instance qui aurait lu l'élément avant sa mise à jour ne peut pas l'envoyer une seconde fois.
+ * Un bail non terminé expire : l'envoi est alors repris par une autre instance.
+ */
+@Service
+public class ReminderLeaseService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReminderLeaseService.class);
+
+    @Autowired
+    private DatabaseReference databaseReference;
+
+    @Value("${reminders.lease.duration-ms:300000}")
+    private long leaseDurationMs;
+
+    @Value("${reminders.lease.timeout-seconds:10}")
+    private long timeoutSeconds;
+
+    @Value("${reminders.node-id:}")
+    private String configuredNodeId;
+
+    private volatile String nodeId;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+
+    /**
+     * Identifiant de cette instance (propriétaire des baux)
+     */
+    public String getNodeId() {
+        if (nodeId == null) {
+            nodeId = configuredNodeId != null && !configuredNodeId.isBlank()
+                ? configuredNodeId
+                : ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        }
+        return nodeId;
+    }
+
+    /**
+     * Tente de réserver l'envoi identifié par la clé ; false si une autre instance le détient ou l'a déjà fait
+     */
+    public boolean claim(String type, String entrepriseId, String itemId, String cle) {
+        String owner = getNodeId();
+        AtomicBoolean won = new AtomicBoolean(false);
+        boolean done = runTransaction(type, entrepriseId, itemId, new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                long now = System.currentTimeMillis();
+                Object value = currentData.getValue();
+                if (value instanceof Map<?, ?> bail && cle.equals(bail.get("cle"))) {
+                    if (Boolean.TRUE.equals(bail.get("fait"))) {
+                        return Transaction.abort();
+                    }
+                    boolean expire = !(bail.get("expireLe") instanceof Number expireLe) || expireLe.longValue() <= now;
+                    if (!owner.equals(bail.get("proprietaire")) && !expire) {
+                        return Transaction.abort();
+                    }
+                }
+                // Aucun bail, bail d'un envoi précédent, bail expiré ou déjà à nous
+                currentData.setValue(lease(cle, owner, now + leaseDurationMs, false));
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot currentData) {
+                won.set(error == null && committed);
+            }
+        });
+        if (done && won.get()) {
+            claimed.incrementAndGet();
+            return true;
+        }
+        refused.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Marque l'envoi comme fait : le bail n'expire plus pour cette clé
+     */
+    public void complete(String type, String entrepriseId, String itemId, String cle) {
+        String owner = getNodeId();
+        databaseReference.child(EcheanceIndex.leasePath(type, entrepriseId, itemId))
+            .setValueAsync(lease(cle, owner, 0L, true));
+    }
+
+    /**
+     * Chemin et valeur d'un bail terminé, à inclure dans une écriture multi-chemins
+     */
+    public Map<String, Object> completedLeaseUpdate(String type, String entrepriseId, String itemId, String cle) {
+        Map<String, Object> update = new HashMap<>();
+        update.put(EcheanceIndex.leasePath(type, entrepriseId, itemId), lease(cle, getNodeId(), 0L, true));
+        return update;
+    }
+
+    /**
+     * Libère un bail après un échec : l'envoi peut être repris aussitôt (par cette instance ou une autre)
+     */
+    public void release(String type, String entrepriseId, String itemId, String cle) {
+        String owner = getNodeId();
+        runTransaction(type, entrepriseId, itemId, new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                Object value = currentData.getValue();
+                if (value instanceof Map<?, ?> bail && cle.equals(bail.get("cle")) && owner.equals(bail.get("proprietaire"))
+                        && !Boolean.TRUE.equals(bail.get("fait"))) {
+                    currentData.setValue(null);
+                    return Transaction.success(currentData);
+                }
+                return Transaction.abort();
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot currentData) {
+            }
+        });
+    }
+
+    private boolean runTransaction(String type, String entrepriseId, String itemId, Transaction.Handler handler) {
+        CountDownLatch latch = new CountDownLatch(1);
+        databaseReference.child(EcheanceIndex.leasePath(type, entrepriseId, itemId)).runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                return handler.doTransaction(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot currentData) {
+                if (error != null) {
+                    logger.warn("Bail {} {}:{} non obtenu: {}", type, entrepriseId, itemId, error.getMessage());
+                }
+                handler.onComplete(error, committed, currentData);
+                latch.countDown();
+            }
+        });
+        try {
+            return latch.await(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static Map<String, Object> lease(String cle, String owner, long expireLe, boolean fait) {
+        Map<String, Object> bail = new HashMap<>();
+        bail.put("cle", cle);
+        bail.put("proprietaire", owner);
+        bail.put("expireLe", expireLe);
+        bail.put("fait", fait);
+        return bail;
+    }
+
+    /**
+     * Indicateurs : instance, baux obtenus et refusés
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", getNodeId());
+        stats.put("claimed", claimed.get());
+        stats.put("refused", refused.get());
+        return stats;
+    }
+}
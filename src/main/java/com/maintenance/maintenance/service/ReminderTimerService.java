@@ -0,0 +1,182 @@
+package com.maintenance.maintenance.service;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Déclenchement des alertes et rappels à l'heure exacte de leur échéance
+ * Des listeners sur l'index echeances/ alimentent une file de minuteries (file de priorité du
+ * ScheduledThreadPoolExecutor) : à l'attachement, Firebase rejoue toutes les entrées existantes,
+ * ce qui reconstruit la file au démarrage. À l'échéance, le passage d'envoi du scheduler concerné
+ * est lancé ; les passages périodiques ne servent plus qu'à la réconciliation.
+ */
+@Service
+@Order(4) // Après la construction de l'index des échéances (DatabaseMigrationComponent)
+public class ReminderTimerService implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReminderTimerService.class);
+
+    @Autowired
+    private DatabaseReference databaseReference;
+
+    @Autowired
+    private AlertSchedulerService alertSchedulerService;
+
+    @Autowired
+    private RappelSchedulerService rappelSchedulerService;
+
+    @Value("${reminders.timer.enabled:true}")
+    private boolean enabled;
+
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "reminder-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Passages d'envoi (e-mails, écritures Firebase) hors du fil de la minuterie
+    private final ExecutorService delivery = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reminder-delivery");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Minuterie en attente par entrée d'index (type + clé)
+    private final Map<String, PendingTimer> pending = new ConcurrentHashMap<>();
+
+    // Un seul passage d'envoi en file par type : les échéances simultanées sont regroupées
+    private final Map<String, AtomicBoolean> runQueued = Map.of(
+        EcheanceIndex.ALERTES, new AtomicBoolean(false),
+        EcheanceIndex.RAPPELS, new AtomicBoolean(false));
+
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong runs = new AtomicLong();
+
+    private record PendingTimer(long dueAt, ScheduledFuture<?> future) {
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            logger.info("Minuteries des rappels désactivées, envoi par scrutation uniquement");
+            return;
+        }
+        timer.setRemoveOnCancelPolicy(true);
+        listen(EcheanceIndex.ALERTES);
+        listen(EcheanceIndex.RAPPELS);
+        logger.info("Minuteries des alertes et rappels actives (alimentées par l'index des échéances)");
+    }
+
+    @PreDestroy
+    void stop() {
+        timer.shutdownNow();
+        delivery.shutdownNow();
+    }
+
+    private void listen(String type) {
+        databaseReference.child(EcheanceIndex.NODE).child(type).addChildEventListener(new ChildEventListener() {
+            @Override
+            public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+                schedule(type, snapshot);
+            }
+
+            @Override
+            public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+                schedule(type, snapshot);
+            }
+
+            @Override
+            public void onChildRemoved(DataSnapshot snapshot) {
+                cancel(type + "/" + snapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                logger.error("Écoute de l'index des échéances {} interrompue: {}", type, error.getMessage());
+            }
+        });
+    }
+
+    private void schedule(String type, DataSnapshot snapshot) {
+        String timerKey = type + "/" + snapshot.getKey();
+        if (!(snapshot.child(EcheanceIndex.DUE_AT).getValue() instanceof Number due)) {
+            cancel(timerKey);
+            return;
+        }
+        long dueAt = due.longValue();
+        pending.compute(timerKey, (key, current) -> {
+            if (current != null) {
+                if (current.dueAt() == dueAt && !current.future().isDone()) {
+                    return current;
+                }
+                current.future().cancel(false);
+            }
+            long delay = Math.max(0L, dueAt - System.currentTimeMillis());
+            return new PendingTimer(dueAt, timer.schedule(() -> onDue(type, timerKey, dueAt), delay, TimeUnit.MILLISECONDS));
+        });
+    }
+
+    private void cancel(String timerKey) {
+        PendingTimer current = pending.remove(timerKey);
+        if (current != null) {
+            current.future().cancel(false);
+        }
+    }
+
+    private void onDue(String type, String timerKey, long dueAt) {
+        pending.computeIfPresent(timerKey, (key, current) -> current.dueAt() == dueAt ? null : current);
+        fired.incrementAndGet();
+        AtomicBoolean queued = runQueued.get(type);
+        if (queued.compareAndSet(false, true)) {
+            // Les échéances atteintes pendant un passage en attente sont traitées par ce même passage
+            delivery.execute(() -> {
+                queued.set(false);
+                runs.incrementAndGet();
+                if (EcheanceIndex.ALERTES.equals(type)) {
+                    alertSchedulerService.checkAndSendAlertes();
+                } else {
+                    rappelSchedulerService.checkAndSendRappels();
+                }
+            });
+        }
+    }
+
+    /**
+     * Indicateurs : minuteries en attente, échéances atteintes, passages d'envoi lancés
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("pendingTimers", pending.size());
+        stats.put("fired", fired.get());
+        stats.put("runs", runs.get());
+        long next = pending.values().stream().mapToLong(PendingTimer::dueAt).min().orElse(0L);
+        stats.put("nextDueAt", next > 0 ? next : null);
+        return stats;
+    }
+}
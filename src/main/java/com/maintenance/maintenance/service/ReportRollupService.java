@@ -0,0 +1,273 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.HistoriqueVerification;
+import com.maintenance.maintenance.model.entity.Machine;
+import com.maintenance.maintenance.model.entity.Rappel;
+import com.maintenance.maintenance.model.entity.Ticket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Données des rapports servies par les agrégats rapportsAgreges/{entrepriseId}
+ * Les totaux sont la somme des seaux mensuels ; la série temporelle d'une plage quelconque se lit
+ * par une requête sur les clés des seaux (mois ou jours). Une entreprise dont les agrégats ne sont pas
+ * complets (jamais calculés, ou une écriture n'a pas pu être répercutée) est recalculée une fois
+ * à partir des données brutes (backfill), puis servie par les seaux. Un réconciliateur périodique recalcule
+ * les seaux de chaque entreprise et les remplace s'ils ont dérivé (écritures concurrentes d'un même élément).
+ */
+@Service
+public class ReportRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportRollupService.class);
+
+    public static final String GRANULARITE_MOIS = "mois";
+    public static final String GRANULARITE_JOUR = "jour";
+
+    /** Bornes des séries : au-delà, la plage est refusée */
+    private static final int MAX_MOIS = 120;
+    private static final int MAX_JOURS = 366;
+
+    private static final DateTimeFormatter LIBELLE_MOIS = DateTimeFormatter.ofPattern("MM/yyyy");
+    private static final DateTimeFormatter LIBELLE_JOUR = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    @Autowired
+    private FirebaseRealtimeService firebaseRealtimeService;
+
+    // Un seul backfill à la fois par entreprise
+    private final Map<String, CompletableFuture<Void>> backfills = new ConcurrentHashMap<>();
+
+    /**
+     * Données du rapport : totaux, répartitions et série de la plage demandée
+     * Plage par défaut : les 6 derniers mois (mois courant inclus)
+     */
+    public CompletableFuture<Map<String, Object>> getReportData(String entrepriseId, LocalDate debut, LocalDate fin, String granularite) {
+        if (!StringUtils.hasText(entrepriseId)) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+        boolean parJour = GRANULARITE_JOUR.equals(granularite);
+        LocalDate finPlage = fin != null ? fin : LocalDate.now();
+        LocalDate debutPlage = debut != null ? debut : YearMonth.from(finPlage).minusMonths(5).atDay(1);
+        if (debutPlage.isAfter(finPlage)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("La date de début doit précéder la date de fin"));
+        }
+        long taille = parJour
+            ? finPlage.toEpochDay() - debutPlage.toEpochDay() + 1
+            : YearMonth.from(debutPlage).until(YearMonth.from(finPlage), ChronoUnit.MONTHS) + 1;
+        if (taille > (parJour ? MAX_JOURS : MAX_MOIS)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                "Plage trop longue (" + (parJour ? MAX_JOURS + " jours" : MAX_MOIS + " mois") + " au maximum)"));
+        }
+
+        return ensureBackfilled(entrepriseId)
+            .thenCompose(v -> {
+                // Tous les seaux mensuels (totaux) ; seaux journaliers de la plage seulement
+                CompletableFuture<Map<String, Object>> moisFuture =
+                    firebaseRealtimeService.getReportRollupsAsync(entrepriseId, ReportRollups.MOIS, null, null);
+                CompletableFuture<Map<String, Object>> joursFuture = parJour
+                    ? firebaseRealtimeService.getReportRollupsAsync(entrepriseId, ReportRollups.JOURS,
+                        ReportRollups.dayKey(debutPlage), ReportRollups.dayKey(finPlage))
+                    : CompletableFuture.completedFuture(Map.of());
+                return moisFuture.thenCombine(joursFuture, (mois, jours) ->
+                    buildReportData(mois, jours, debutPlage, finPlage, parJour));
+            });
+    }
+
+    /**
+     * Recalcule les agrégats d'une entreprise à partir des données brutes (historique compris)
+     */
+    public CompletableFuture<Void> backfill(String entrepriseId) {
+        CompletableFuture<Void> created = new CompletableFuture<>();
+        CompletableFuture<Void> existing = backfills.putIfAbsent(entrepriseId, created);
+        if (existing != null) {
+            return existing;
+        }
+        runBackfill(entrepriseId).whenComplete((v, e) -> {
+            backfills.remove(entrepriseId, created);
+            if (e != null) {
+                created.completeExceptionally(e);
+            } else {
+                created.complete(null);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Réconciliation périodique : recalcule les seaux de chaque entreprise et corrige ceux qui ont dérivé
+     */
+    @Scheduled(initialDelayString = "${reports.rollups.reconcile.initial-delay-ms:300000}",
+               fixedDelayString = "${reports.rollups.reconcile.interval-ms:3600000}")
+    public void reconcileAll() {
+        try {
+            int corriges = 0;
+            List<Map<String, Object>> enterprises = firebaseRealtimeService.getAllEnterprises();
+            for (Map<String, Object> enterprise : enterprises) {
+                Object entrepriseId = enterprise.get("entrepriseId");
+                if (entrepriseId != null && reconcile(entrepriseId.toString())) {
+                    corriges++;
+                }
+            }
+            if (corriges > 0) {
+                logger.info("Réconciliation des agrégats des rapports : {} entreprise(s) corrigée(s) sur {}", corriges, enterprises.size());
+            }
+        } catch (Exception e) {
+            logger.error("Erreur lors de la réconciliation des agrégats des rapports: {}", e.getMessage(), e);
+        }
+    }
+
+    private boolean reconcile(String entrepriseId) {
+        try {
+            if (!firebaseRealtimeService.isReportRollupsBackfilledAsync(entrepriseId).get()) {
+                backfill(entrepriseId).get();
+                return true;
+            }
+            Map<String, Map<String, Map<String, Long>>> seaux = compute(entrepriseId).get();
+            Map<String, Object> mois = firebaseRealtimeService.getReportRollupsAsync(entrepriseId, ReportRollups.MOIS, null, null).get();
+            Map<String, Object> jours = firebaseRealtimeService.getReportRollupsAsync(entrepriseId, ReportRollups.JOURS, null, null).get();
+            if (ReportRollups.sameBuckets(mois, seaux.get(ReportRollups.MOIS))
+                && ReportRollups.sameBuckets(jours, seaux.get(ReportRollups.JOURS))) {
+                return false;
+            }
+            firebaseRealtimeService.saveReportRollups(entrepriseId, seaux.get(ReportRollups.MOIS), seaux.get(ReportRollups.JOURS));
+            logger.info("Agrégats des rapports de {} corrigés", entrepriseId);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            logger.warn("Réconciliation des agrégats des rapports de {} impossible: {}", entrepriseId, e.getMessage());
+            return false;
+        }
+    }
+
+    private CompletableFuture<Void> ensureBackfilled(String entrepriseId) {
+        return firebaseRealtimeService.isReportRollupsBackfilledAsync(entrepriseId)
+            .thenCompose(complete -> complete ? CompletableFuture.<Void>completedFuture(null) : backfill(entrepriseId));
+    }
+
+    private CompletableFuture<Void> runBackfill(String entrepriseId) {
+        long start = System.currentTimeMillis();
+        return compute(entrepriseId).thenApply(seaux -> {
+            try {
+                firebaseRealtimeService.saveReportRollups(entrepriseId, seaux.get(ReportRollups.MOIS), seaux.get(ReportRollups.JOURS));
+            } catch (Exception e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            logger.info("Agrégats des rapports de {} recalculés : {} mois, {} jours en {} ms", entrepriseId,
+                seaux.get(ReportRollups.MOIS).size(), seaux.get(ReportRollups.JOURS).size(), System.currentTimeMillis() - start);
+            return null;
+        });
+    }
+
+    /**
+     * Seaux recalculés à partir des données brutes (historique compris)
+     */
+    private CompletableFuture<Map<String, Map<String, Map<String, Long>>>> compute(String entrepriseId) {
+        CompletableFuture<List<Machine>> machinesFuture = firebaseRealtimeService.getMachinesForEnterpriseAsync(entrepriseId);
+        CompletableFuture<List<Ticket>> ticketsFuture = firebaseRealtimeService.getTicketsForEnterpriseAsync(entrepriseId);
+        CompletableFuture<List<Rappel>> rappelsFuture = firebaseRealtimeService.getRappelsForEnterpriseAsync(entrepriseId);
+        CompletableFuture<List<Alerte>> alertesFuture = firebaseRealtimeService.getAlertesForEnterpriseAsync(entrepriseId);
+        CompletableFuture<List<HistoriqueVerification>> historiquesFuture =
+            firebaseRealtimeService.getHistoriqueVerificationsForEnterpriseAsync(entrepriseId);
+
+        return CompletableFuture.allOf(machinesFuture, ticketsFuture, rappelsFuture, alertesFuture, historiquesFuture)
+            .thenApply(v -> ReportRollups.compute(machinesFuture.join(), ticketsFuture.join(), rappelsFuture.join(),
+                alertesFuture.join(), historiquesFuture.join()));
+    }
+
+    private Map<String, Object> buildReportData(Map<String, Object> mois, Map<String, Object> jours,
+                                                LocalDate debut, LocalDate fin, boolean parJour) {
+        // Totaux : somme de tous les seaux mensuels
+        Map<String, Long> totaux = new HashMap<>();
+        for (Object seau : mois.values()) {
+            if (seau instanceof Map<?, ?> compteurs) {
+                compteurs.forEach((compteur, valeur) -> {
+                    if (valeur instanceof Number nombre) {
+                        totaux.merge(String.valueOf(compteur), nombre.longValue(), Long::sum);
+                    }
+                });
+            }
+        }
+
+        Map<String, Integer> ticketsByStatus = new HashMap<>();
+        Map<String, Integer> ticketsByPriority = new HashMap<>();
+        for (Map.Entry<String, Long> total : totaux.entrySet()) {
+            if (total.getKey().startsWith(ReportRollups.TICKETS_STATUT)) {
+                ticketsByStatus.put(total.getKey().substring(ReportRollups.TICKETS_STATUT.length()), total.getValue().intValue());
+            } else if (total.getKey().startsWith(ReportRollups.TICKETS_PRIORITE)) {
+                ticketsByPriority.put(total.getKey().substring(ReportRollups.TICKETS_PRIORITE.length()), total.getValue().intValue());
+            }
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("totalMachines", total(totaux, ReportRollups.MACHINES));
+        data.put("machinesOperationnelles", total(totaux, ReportRollups.MACHINES_OPERATIONNELLES));
+        data.put("machinesEnReparation", total(totaux, ReportRollups.MACHINES_EN_REPARATION));
+        data.put("totalVerifications", total(totaux, ReportRollups.VERIFICATIONS));
+        data.put("ticketsByStatus", ticketsByStatus);
+        data.put("ticketsByPriority", ticketsByPriority);
+        data.put("rappelsByStatus", reminderStates(totaux, ReportRollups.RAPPELS));
+        data.put("alertesByStatus", reminderStates(totaux, ReportRollups.ALERTES));
+
+        // Série de la plage : un point par mois ou par jour, seaux absents comptés à zéro
+        Map<String, Map<String, Integer>> series = new LinkedHashMap<>();
+        if (parJour) {
+            for (LocalDate jour = debut; !jour.isAfter(fin); jour = jour.plusDays(1)) {
+                series.put(LIBELLE_JOUR.format(jour), point(jours.get(ReportRollups.dayKey(jour))));
+            }
+            data.put("dailyStats", series);
+        } else {
+            YearMonth dernier = YearMonth.from(fin);
+            for (YearMonth moisCourant = YearMonth.from(debut); !moisCourant.isAfter(dernier); moisCourant = moisCourant.plusMonths(1)) {
+                series.put(LIBELLE_MOIS.format(moisCourant), point(mois.get(ReportRollups.monthKey(moisCourant))));
+            }
+            data.put("monthlyStats", series);
+        }
+        data.put("debut", debut.toString());
+        data.put("fin", fin.toString());
+        data.put("granularite", parJour ? GRANULARITE_JOUR : GRANULARITE_MOIS);
+        return data;
+    }
+
+    private static Map<String, Integer> point(Object seau) {
+        Map<String, Integer> point = new HashMap<>();
+        point.put("tickets", counter(seau, ReportRollups.TICKETS));
+        point.put("rappels", counter(seau, ReportRollups.RAPPELS));
+        point.put("alertes", counter(seau, ReportRollups.ALERTES));
+        point.put("machines", counter(seau, ReportRollups.MACHINES));
+        point.put("verifications", counter(seau, ReportRollups.VERIFICATIONS));
+        return point;
+    }
+
+    private static Map<String, Integer> reminderStates(Map<String, Long> totaux, String type) {
+        Map<String, Integer> states = new HashMap<>();
+        for (String state : new String[] {ReportRollups.ENVOYE, ReportRollups.NON_ENVOYE, ReportRollups.VERIFIE}) {
+            states.put(state, total(totaux, type + "_" + state));
+        }
+        return states;
+    }
+
+    private static int total(Map<String, Long> totaux, String compteur) {
+        return totaux.getOrDefault(compteur, 0L).intValue();
+    }
+
+    private static int counter(Object seau, String compteur) {
+        return seau instanceof Map<?, ?> compteurs && compteurs.get(compteur) instanceof Number nombre ? nombre.intValue() : 0;
+    }
+}
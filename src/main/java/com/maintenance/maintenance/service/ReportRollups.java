@@ -0,0 +1,274 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.HistoriqueVerification;
+import com.maintenance.maintenance.model.entity.Machine;
+import com.maintenance.maintenance.model.entity.Rappel;
+import com.maintenance.maintenance.model.entity.Ticket;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Agrégats des rapports par entreprise : rapportsAgreges/{entrepriseId}/{mois|jours}/{clé}/{compteur}
+ * Chaque ticket, rappel, alerte et machine est compté dans le seau de son mois et de son jour de création,
+ * avec son état courant (statut et priorité du ticket, rappel envoyé / vérifié, machine opérationnelle...) ;
+ * une entrée d'historique compte une vérification effectuée, dans le seau de sa date de vérification.
+ * Une écriture applique l'écart entre l'état avant et après dans les seaux concernés ; la somme des seaux
+ * mensuels donne les totaux, une plage de dates se lit sans reparcourir les données brutes.
+ * Clés triables : mois "yyyy-MM", jours "yyyy-MM-dd" ; les éléments sans date vont dans le seau mensuel "sans-date".
+ */
+public final class ReportRollups {
+
+    public static final String NODE = "rapportsAgreges";
+    public static final String MOIS = "mois";
+    public static final String JOURS = "jours";
+    public static final String META = "meta";
+    public static final String BACKFILL_TERMINE = "backfillTermine";
+    public static final String VERSION = "version";
+    /** Format des seaux : des agrégats d'une version antérieure sont recalculés (2 : vérifications comptées) */
+    public static final int FORMAT = 2;
+    public static final String SANS_DATE = "sans-date";
+
+    public static final String TICKETS = "tickets";
+    public static final String TICKETS_STATUT = "tickets_statut_";
+    public static final String TICKETS_PRIORITE = "tickets_priorite_";
+    public static final String RAPPELS = "rappels";
+    public static final String ALERTES = "alertes";
+    public static final String MACHINES = "machines";
+    public static final String MACHINES_OPERATIONNELLES = "machines_operationnelles";
+    public static final String MACHINES_EN_REPARATION = "machines_enReparation";
+    public static final String VERIFICATIONS = "verifications";
+
+    // États des rappels et alertes (mêmes libellés que le rapport)
+    public static final String VERIFIE = "verifie";
+    public static final String ENVOYE = "envoye";
+    public static final String NON_ENVOYE = "non_envoye";
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private ReportRollups() {
+    }
+
+    public static String path(String entrepriseId) {
+        return NODE + "/" + entrepriseId;
+    }
+
+    /**
+     * Métadonnées d'agrégats complets au format courant
+     */
+    public static Map<String, Object> completeMeta() {
+        Map<String, Object> meta = new HashMap<>();
+        meta.put(BACKFILL_TERMINE, true);
+        meta.put(VERSION, FORMAT);
+        return meta;
+    }
+
+    /**
+     * Agrégats complets et au format courant : sinon un backfill est nécessaire
+     */
+    public static boolean isComplete(Object meta) {
+        return meta instanceof Map<?, ?> values
+            && Boolean.TRUE.equals(values.get(BACKFILL_TERMINE))
+            && values.get(VERSION) instanceof Number version && version.intValue() >= FORMAT;
+    }
+
+    public static String monthKey(YearMonth month) {
+        return month.toString();
+    }
+
+    public static String dayKey(LocalDate day) {
+        return day.toString();
+    }
+
+    /**
+     * Date de création de l'élément (null si absente ou type non agrégé)
+     * Historique : date réelle de la vérification, à défaut date de création de l'entrée
+     */
+    public static Long dateCreation(Object item) {
+        if (item instanceof Ticket ticket) {
+            return ticket.getDateCreation();
+        }
+        if (item instanceof Rappel rappel) {
+            return rappel.getDateCreation();
+        }
+        if (item instanceof Alerte alerte) {
+            return alerte.getDateCreation();
+        }
+        if (item instanceof Machine machine) {
+            return machine.getDateCreation();
+        }
+        if (item instanceof HistoriqueVerification historique) {
+            return historique.getDateVerificationReelle() != null
+                ? historique.getDateVerificationReelle() : historique.getDateCreation();
+        }
+        return null;
+    }
+
+    /**
+     * Compteurs de l'élément, par seau relatif ("mois/2025-03", "jours/2025-03-14")
+     * dateRepli : date de création déjà enregistrée, utilisée si l'objet modifié ne la porte pas
+     */
+    public static Map<String, Map<String, Long>> contribution(Object item, Long dateRepli) {
+        Map<String, Long> counters = counters(item);
+        Map<String, Map<String, Long>> buckets = new HashMap<>();
+        if (counters.isEmpty()) {
+            return buckets;
+        }
+        Long date = dateCreation(item);
+        if (date == null) {
+            date = dateRepli;
+        }
+        if (date == null) {
+            buckets.put(MOIS + "/" + SANS_DATE, counters);
+            return buckets;
+        }
+        LocalDate day = Instant.ofEpochMilli(date).atZone(ZONE).toLocalDate();
+        buckets.put(MOIS + "/" + monthKey(YearMonth.from(day)), counters);
+        buckets.put(JOURS + "/" + dayKey(day), counters);
+        return buckets;
+    }
+
+    private static Map<String, Long> counters(Object item) {
+        Map<String, Long> counters = new HashMap<>();
+        if (item instanceof Ticket ticket) {
+            counters.put(TICKETS, 1L);
+            counters.put(TICKETS_STATUT + keyPart(ticket.getStatut()), 1L);
+            counters.put(TICKETS_PRIORITE + keyPart(ticket.getPriorite()), 1L);
+        } else if (item instanceof Rappel rappel) {
+            counters.put(RAPPELS, 1L);
+            counters.put(RAPPELS + "_" + reminderState(rappel.getVerifie(), rappel.getEnvoye()), 1L);
+        } else if (item instanceof Alerte alerte) {
+            counters.put(ALERTES, 1L);
+            counters.put(ALERTES + "_" + reminderState(alerte.getVerifie(), alerte.getEnvoye()), 1L);
+        } else if (item instanceof Machine machine && !Boolean.TRUE.equals(machine.getSupprime())) {
+            counters.put(MACHINES, 1L);
+            if (Boolean.TRUE.equals(machine.getOperationnel())) {
+                counters.put(MACHINES_OPERATIONNELLES, 1L);
+            }
+            if (Boolean.TRUE.equals(machine.getEnReparation())) {
+                counters.put(MACHINES_EN_REPARATION, 1L);
+            }
+        } else if (item instanceof HistoriqueVerification) {
+            counters.put(VERIFICATIONS, 1L);
+        }
+        return counters;
+    }
+
+    private static String reminderState(Boolean verifie, Boolean envoye) {
+        if (Boolean.TRUE.equals(verifie)) {
+            return VERIFIE;
+        }
+        return Boolean.TRUE.equals(envoye) ? ENVOYE : NON_ENVOYE;
+    }
+
+    /**
+     * Valeur utilisable dans une clé Firebase (caractères . $ # [ ] / interdits) ; null devient "unknown"
+     */
+    private static String keyPart(String value) {
+        if (value == null || value.isEmpty()) {
+            return "unknown";
+        }
+        return value.replaceAll("[.$#\\[\\]/]", "_");
+    }
+
+    /**
+     * Écart par seau entre deux contributions (seuls les compteurs modifiés sont présents)
+     */
+    public static Map<String, Map<String, Long>> delta(Map<String, Map<String, Long>> avant, Map<String, Map<String, Long>> apres) {
+        Set<String> buckets = new HashSet<>(avant.keySet());
+        buckets.addAll(apres.keySet());
+        Map<String, Map<String, Long>> delta = new HashMap<>();
+        for (String bucket : buckets) {
+            Map<String, Long> before = avant.getOrDefault(bucket, Map.of());
+            Map<String, Long> after = apres.getOrDefault(bucket, Map.of());
+            Set<String> counters = new HashSet<>(before.keySet());
+            counters.addAll(after.keySet());
+            Map<String, Long> bucketDelta = new HashMap<>();
+            for (String counter : counters) {
+                long ecart = after.getOrDefault(counter, 0L) - before.getOrDefault(counter, 0L);
+                if (ecart != 0) {
+                    bucketDelta.put(counter, ecart);
+                }
+            }
+            if (!bucketDelta.isEmpty()) {
+                delta.put(bucket, bucketDelta);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Applique un écart au contenu d'un seau ; les compteurs à zéro sont retirés (seau vide = supprimé)
+     */
+    public static Map<String, Object> apply(Object current, Map<String, Long> delta) {
+        Map<String, Object> bucket = new HashMap<>();
+        if (current instanceof Map<?, ?> existing) {
+            for (Map.Entry<?, ?> entry : existing.entrySet()) {
+                bucket.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, Long> entry : delta.entrySet()) {
+            long value = bucket.get(entry.getKey()) instanceof Number number ? number.longValue() : 0L;
+            long updated = Math.max(0L, value + entry.getValue());
+            if (updated == 0L) {
+                bucket.remove(entry.getKey());
+            } else {
+                bucket.put(entry.getKey(), updated);
+            }
+        }
+        return bucket.isEmpty() ? null : bucket;
+    }
+
+    /**
+     * Mêmes seaux et mêmes compteurs (seaux enregistrés tels que lus, seaux recalculés par compute)
+     */
+    public static boolean sameBuckets(Map<String, ?> stored, Map<String, Map<String, Long>> expected) {
+        Map<String, ?> buckets = stored != null ? stored : Map.of();
+        Set<String> keys = new HashSet<>(buckets.keySet());
+        keys.addAll(expected.keySet());
+        for (String key : keys) {
+            Map<String, Long> attendu = expected.getOrDefault(key, Map.of());
+            Map<?, ?> enregistre = buckets.get(key) instanceof Map<?, ?> bucket ? bucket : Map.of();
+            Set<Object> counters = new HashSet<>(enregistre.keySet());
+            counters.addAll(attendu.keySet());
+            for (Object counter : counters) {
+                long value = enregistre.get(counter) instanceof Number number ? number.longValue() : 0L;
+                if (value != attendu.getOrDefault(String.valueOf(counter), 0L)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Agrégation complète (backfill) : seaux mensuels et journaliers de toutes les collections
+     */
+    public static Map<String, Map<String, Map<String, Long>>> compute(List<?>... collections) {
+        Map<String, Map<String, Map<String, Long>>> result = new HashMap<>();
+        result.put(MOIS, new HashMap<>());
+        result.put(JOURS, new HashMap<>());
+        for (List<?> collection : collections) {
+            if (collection == null) {
+                continue;
+            }
+            for (Object item : collection) {
+                for (Map.Entry<String, Map<String, Long>> bucket : contribution(item, null).entrySet()) {
+                    int slash = bucket.getKey().indexOf('/');
+                    Map<String, Long> totals = result.get(bucket.getKey().substring(0, slash))
+                        .computeIfAbsent(bucket.getKey().substring(slash + 1), key -> new HashMap<>());
+                    bucket.getValue().forEach((counter, value) -> totals.merge(counter, value, Long::sum));
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,445 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Component;
+import com.maintenance.maintenance.model.entity.Machine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Index de recherche en mémoire des machines et composants, par entreprise
+ * Index inversé de trigrammes sur les champs texte normalisés (minuscules, sans accents), complété par les
+ * préfixes de 1 et 2 caractères de chaque mot pour les recherches courtes. Un terme de 3 caractères ou plus
+ * trouve toute sous-chaîne, un terme plus court les mots qui commencent par lui ; tous les termes doivent correspondre.
+ * L'index est construit à la première recherche à partir de la liste déjà chargée, tenu à jour par les écritures
+ * de FirebaseRealtimeService, reconstruit après search.index.max-age-minutes (écritures d'autres instances)
+ * et libéré après search.index.idle-minutes sans recherche.
+ */
+@Service
+public class SearchIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchIndexService.class);
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+    private static final Pattern ESPACES = Pattern.compile("\\s+");
+
+    /** Marqueurs des clés de préfixe (les trigrammes n'utilisent que les 48 bits de poids faible) */
+    private static final long PREFIXE_1 = 1L << 50;
+    private static final long PREFIXE_2 = 2L << 50;
+
+    /**
+     * Champs indexés d'un type d'élément et leur poids dans le classement (même ordre)
+     */
+    private record Kind<T>(String name, Function<T, String> id, Predicate<T> indexable,
+                           Function<T, String[]> fields, int[] weights) {
+    }
+
+    private static final Kind<Machine> MACHINES = new Kind<>("machines", Machine::getMachineId,
+        machine -> machine.getSupprime() == null || !machine.getSupprime(),
+        machine -> new String[]{machine.getNom(), machine.getNumeroSerie(), machine.getAdresseIP(),
+            machine.getEmplacement(), machine.getCategoryName(), machine.getNotes()},
+        new int[]{5, 4, 3, 2, 2, 1});
+
+    private static final Kind<Component> COMPONENTS = new Kind<>("components", Component::getComponentId,
+        component -> true,
+        component -> new String[]{component.getNom(), component.getNumeroSerie(), component.getCategoryName(),
+            component.getLocation(), component.getTypePeripherique(), component.getNotes()},
+        new int[]{5, 4, 2, 2, 1, 1});
+
+    @Value("${search.index.max-age-minutes:10}")
+    private long maxAgeMinutes;
+
+    @Value("${search.index.idle-minutes:30}")
+    private long idleMinutes;
+
+    private final Map<String, EntityIndex> indexes = new ConcurrentHashMap<>();
+
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+
+    // ========== RECHERCHE ==========
+
+    /**
+     * Identifiants des machines correspondant à la recherche, du plus pertinent au moins pertinent
+     * source : liste complète des machines, lue seulement si l'index de l'entreprise doit être (re)construit
+     */
+    public List<String> searchMachines(String entrepriseId, String query, Callable<List<Machine>> source) throws Exception {
+        return search(MACHINES, entrepriseId, query, source);
+    }
+
+    public List<String> searchComponents(String entrepriseId, String query, Callable<List<Component>> source) throws Exception {
+        return search(COMPONENTS, entrepriseId, query, source);
+    }
+
+    private <T> List<String> search(Kind<T> kind, String entrepriseId, String query, Callable<List<T>> source) throws Exception {
+        searches.incrementAndGet();
+        String key = key(kind, entrepriseId);
+        long now = System.currentTimeMillis();
+        EntityIndex index = indexes.get(key);
+        if (index == null || now - index.dateConstruction > maxAgeMinutes * 60_000L) {
+            index = build(kind, source.call());
+            indexes.put(key, index);
+        }
+        index.derniereRecherche = now;
+        return index.search(query);
+    }
+
+    private <T> EntityIndex build(Kind<T> kind, List<T> items) {
+        long debut = System.nanoTime();
+        EntityIndex index = new EntityIndex(kind.weights());
+        for (T item : items) {
+            if (item != null && kind.id().apply(item) != null && kind.indexable().test(item)) {
+                index.put(kind.id().apply(item), kind.fields().apply(item));
+            }
+        }
+        builds.incrementAndGet();
+        logger.debug("Index de recherche {} construit : {} élément(s) en {} ms", kind.name(), index.size(),
+            (System.nanoTime() - debut) / 1_000_000);
+        return index;
+    }
+
+    // ========== MISE À JOUR (appelée après chaque écriture réussie) ==========
+
+    public void machineChanged(String entrepriseId, String machineId, Machine machine) {
+        changed(MACHINES, entrepriseId, machineId, machine);
+    }
+
+    public void componentChanged(String entrepriseId, String componentId, Component component) {
+        changed(COMPONENTS, entrepriseId, componentId, component);
+    }
+
+    /**
+     * Met à jour l'élément dans l'index de l'entreprise s'il est construit (item null : suppression)
+     */
+    private <T> void changed(Kind<T> kind, String entrepriseId, String id, T item) {
+        if (entrepriseId == null || id == null) {
+            return;
+        }
+        EntityIndex index = indexes.get(key(kind, entrepriseId));
+        if (index == null) {
+            return;
+        }
+        updates.incrementAndGet();
+        if (item == null || !kind.indexable().test(item)) {
+            index.remove(id);
+        } else {
+            index.put(id, kind.fields().apply(item));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${search.index.sweep-interval-ms:300000}")
+    public void evictIdleIndexes() {
+        long limite = System.currentTimeMillis() - idleMinutes * 60_000L;
+        indexes.entrySet().removeIf(entry -> entry.getValue().derniereRecherche < limite);
+    }
+
+    private static String key(Kind<?> kind, String entrepriseId) {
+        return kind.name() + ":" + entrepriseId;
+    }
+
+    /**
+     * Minuscules, sans accents, espaces réduits ; la ponctuation est conservée (adresses IP, numéros de série)
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String normalized = ACCENTS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+        return ESPACES.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    private static long trigram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    private static long prefix(String word) {
+        return word.length() == 1
+            ? PREFIXE_1 | word.charAt(0)
+            : PREFIXE_2 | ((long) word.charAt(0) << 16) | word.charAt(1);
+    }
+
+    /**
+     * Clés d'un texte normalisé : trigrammes et préfixes (1 et 2 caractères) de chaque mot
+     */
+    private static void grams(String text, Set<Long> out) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            out.add(trigram(text, i));
+        }
+        for (String word : text.split(" ")) {
+            if (!word.isEmpty()) {
+                out.add(prefix(word.substring(0, 1)));
+                if (word.length() >= 2) {
+                    out.add(prefix(word.substring(0, 2)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Index d'une entreprise pour un type d'élément ; lectures concurrentes, écritures exclusives
+     * Chaque élément occupe un numéro (slot) attribué dans l'ordre croissant : les listes de l'index restent
+     * triées par simple ajout en fin et s'intersectent par fusion. Un élément modifié reçoit un nouveau numéro ;
+     * les numéros libérés sont récupérés à la reconstruction périodique.
+     */
+    private static final class EntityIndex {
+
+        private final int[] weights;
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final List<String> slotIds = new ArrayList<>();
+        private final List<String[]> slotFields = new ArrayList<>();
+        private final Map<Long, Posting> postings = new HashMap<>();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final long dateConstruction = System.currentTimeMillis();
+        private volatile long derniereRecherche = dateConstruction;
+
+        private EntityIndex(int[] weights) {
+            this.weights = weights;
+        }
+
+        private int size() {
+            lock.readLock().lock();
+            try {
+                return slots.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void put(String id, String[] rawFields) {
+            String[] fields = new String[rawFields.length];
+            Set<Long> keys = new HashSet<>();
+            for (int i = 0; i < rawFields.length; i++) {
+                fields[i] = normalize(rawFields[i]);
+                grams(fields[i], keys);
+            }
+            lock.writeLock().lock();
+            try {
+                unindex(id);
+                int slot = slotIds.size();
+                slotIds.add(id);
+                slotFields.add(fields);
+                slots.put(id, slot);
+                for (Long gram : keys) {
+                    postings.computeIfAbsent(gram, g -> new Posting()).append(slot);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void remove(String id) {
+            lock.writeLock().lock();
+            try {
+                unindex(id);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void unindex(String id) {
+            Integer slot = slots.remove(id);
+            if (slot == null) {
+                return;
+            }
+            Set<Long> keys = new HashSet<>();
+            for (String field : slotFields.get(slot)) {
+                grams(field, keys);
+            }
+            for (Long gram : keys) {
+                Posting posting = postings.get(gram);
+                if (posting != null && posting.remove(slot) && posting.size == 0) {
+                    postings.remove(gram);
+                }
+            }
+            slotIds.set(slot, null);
+            slotFields.set(slot, null);
+        }
+
+        /**
+         * Candidats : intersection des listes de toutes les clés de tous les termes (la plus courte en premier),
+         * puis vérification sur le texte (des trigrammes présents ne garantissent pas la sous-chaîne) et score
+         */
+        private List<String> search(String query) {
+            String normalized = normalize(query);
+            if (normalized.isEmpty()) {
+                return List.of();
+            }
+            String[] terms = normalized.split(" ");
+            lock.readLock().lock();
+            try {
+                List<Posting> lists = new ArrayList<>();
+                for (String term : terms) {
+                    if (term.length() < 3) {
+                        Posting posting = postings.get(prefix(term));
+                        if (posting == null) {
+                            return List.of();
+                        }
+                        lists.add(posting);
+                    } else {
+                        for (int i = 0; i + 3 <= term.length(); i++) {
+                            Posting posting = postings.get(trigram(term, i));
+                            if (posting == null) {
+                                return List.of();
+                            }
+                            lists.add(posting);
+                        }
+                    }
+                }
+                lists.sort(Comparator.comparingInt(posting -> posting.size));
+
+                int[] candidates = java.util.Arrays.copyOf(lists.get(0).slots, lists.get(0).size);
+                int count = candidates.length;
+                for (int i = 1; i < lists.size() && count > 0; i++) {
+                    count = lists.get(i).retain(candidates, count);
+                }
+
+                int[] scores = new int[count];
+                Integer[] order = new Integer[count];
+                int matched = 0;
+                candidates:
+                for (int c = 0; c < count; c++) {
+                    String[] fields = slotFields.get(candidates[c]);
+                    int total = 0;
+                    for (String term : terms) {
+                        int score = score(fields, term);
+                        if (score == 0) {
+                            continue candidates;
+                        }
+                        total += score;
+                    }
+                    scores[matched] = total;
+                    order[matched] = candidates[c];
+                    matched++;
+                }
+
+                Map<Integer, Integer> scoreBySlot = new HashMap<>(matched * 2);
+                for (int i = 0; i < matched; i++) {
+                    scoreBySlot.put(order[i], scores[i]);
+                }
+                Integer[] ranked = java.util.Arrays.copyOf(order, matched);
+                java.util.Arrays.sort(ranked, Comparator.<Integer>comparingInt(scoreBySlot::get).reversed()
+                    .thenComparing(slot -> slotFields.get(slot)[0]));
+                List<String> ids = new ArrayList<>(matched);
+                for (Integer slot : ranked) {
+                    ids.add(slotIds.get(slot));
+                }
+                return ids;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Meilleur score parmi les champs : poids du champ x 4 (champ égal au terme), 3 (début du champ),
+         * 2 (début d'un mot) ou 1 (ailleurs) ; 0 si aucun champ ne correspond
+         */
+        private int score(String[] fields, String term) {
+            int best = 0;
+            for (int i = 0; i < fields.length; i++) {
+                String field = fields[i];
+                int position = field.indexOf(term);
+                if (position < 0) {
+                    continue;
+                }
+                int kind;
+                if (field.length() == term.length()) {
+                    kind = 4;
+                } else if (position == 0) {
+                    kind = 3;
+                } else if (field.contains(" " + term)) {
+                    kind = 2;
+                } else if (term.length() < 3) {
+                    // Terme court : seuls les débuts de mot sont retenus
+                    continue;
+                } else {
+                    kind = 1;
+                }
+                best = Math.max(best, weights[i] * kind);
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Liste triée des numéros d'éléments contenant une clé
+     */
+    private static final class Posting {
+
+        private int[] slots = new int[4];
+        private int size;
+
+        private void append(int slot) {
+            if (size == slots.length) {
+                slots = java.util.Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        private boolean remove(int slot) {
+            int position = java.util.Arrays.binarySearch(slots, 0, size, slot);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(slots, position + 1, slots, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        /**
+         * Garde dans candidates (triés, count premiers) ceux présents dans cette liste ; retourne le nouveau nombre
+         */
+        private int retain(int[] candidates, int count) {
+            int kept = 0;
+            int j = 0;
+            for (int i = 0; i < count && j < size; i++) {
+                int candidate = candidates[i];
+                while (j < size && slots[j] < candidate) {
+                    j++;
+                }
+                if (j < size && slots[j] == candidate) {
+                    candidates[kept++] = candidate;
+                }
+            }
+            return kept;
+        }
+    }
+
+    /**
+     * Indicateurs : index en mémoire, constructions, recherches et mises à jour incrémentales
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long documents = 0;
+        for (EntityIndex index : indexes.values()) {
+            documents += index.size();
+        }
+        stats.put("indexes", indexes.size());
+        stats.put("documents", documents);
+        stats.put("builds", builds.get());
+        stats.put("searches", searches.get());
+        stats.put("updates", updates.get());
+        return stats;
+    }
+}
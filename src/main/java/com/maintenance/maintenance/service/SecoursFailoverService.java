@@ -0,0 +1,419 @@
+package com.maintenance.maintenance.service;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.maintenance.maintenance.model.entity.Component;
+import com.maintenance.maintenance.model.entity.Machine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Basculement vers une machine de secours : la machine de secours choisie devient principale, l'ancienne
+ * principale et les autres machines de secours rattachées passent en réparation, les périphériques suivent
+ * la nouvelle principale. Le tout est écrit en un seul lot (FirebaseRealtimeService.WriteBatch) avec son entrée
+ * de journal (entreprises/{id}/basculements).
+ * Automatique pour les entreprises qui l'ont activé (paramètre basculementAutomatique) : un écouteur Firebase
+ * sur entreprises/{id}/machines détecte qu'une machine principale opérationnelle passe non opérationnelle, quelle
+ * que soit l'origine de l'écriture (cette instance, une autre instance, écriture directe dans Firebase).
+ * Le basculement s'exécute sur un thread dédié, jamais sur le thread de la requête ni sur celui de Firebase ;
+ * chaque instance reçoit l'événement, un bail (ReminderLeaseService) garantit qu'une seule l'exécute.
+ * La machine de secours est choisie dans le graphe des machines de secours (SecoursGraphService) puis revérifiée
+ * sur sa version relue.
+ */
+@Service
+public class SecoursFailoverService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SecoursFailoverService.class);
+
+    public static final String DECLENCHEUR_AUTOMATIQUE = "automatique";
+    public static final String DECLENCHEUR_MANUEL = "manuel";
+
+    /**
+     * Résultat d'un basculement écrit
+     */
+    public record Basculement(String basculementId, Machine nouvellePrincipale, int secoursMisEnReparation,
+                              int peripheriquesTransferes) {
+    }
+
+    @Autowired
+    private FirebaseRealtimeService firebaseRealtimeService;
+
+    @Autowired
+    private SecoursGraphService secoursGraphService;
+
+    @Autowired
+    private ReminderLeaseService leaseService;
+
+    @Autowired
+    private DatabaseReference databaseReference;
+
+    /** Type des baux de basculement (echeancesBaux/basculements/...) */
+    private static final String BAIL_BASCULEMENT = "basculements";
+
+    /** Durée de conservation en mémoire du paramètre basculementAutomatique d'une entreprise */
+    @Value("${failover.policy-cache-ms:60000}")
+    private long policyCacheMs;
+
+    /** Délai des lectures d'un basculement (machines de secours, périphériques) */
+    @Value("${failover.read-timeout-ms:10000}")
+    private long readTimeoutMs;
+
+    private record Policy(boolean active, long dateLecture) {
+    }
+
+    private final Map<String, Policy> policies = new ConcurrentHashMap<>();
+
+    /** Machines principales en cours de basculement (entrepriseId/machineId) : un seul basculement à la fois */
+    private final Set<String> enCours = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong automatiques = new AtomicLong();
+    private final AtomicLong manuels = new AtomicLong();
+    private final AtomicLong sansSecours = new AtomicLong();
+    private final AtomicLong echecs = new AtomicLong();
+
+    /** Écouteurs des machines des entreprises en basculement automatique */
+    private final Map<String, MachinesListener> listeners = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "secours-failover");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    void stop() {
+        listeners.values().forEach(listener -> listener.ref.removeEventListener(listener));
+        listeners.clear();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Attache l'écouteur des machines des entreprises qui ont activé le basculement automatique et détache
+     * les autres (paramètre modifié par une autre instance)
+     */
+    @Scheduled(initialDelay = 10000, fixedDelayString = "${failover.listener.refresh-ms:300000}")
+    public void refreshListeners() {
+        try {
+            Set<String> actives = new HashSet<>();
+            for (Map<String, Object> enterprise : firebaseRealtimeService.getAllEnterprises()) {
+                Object entrepriseId = enterprise.get("entrepriseId");
+                if (entrepriseId != null && isAutomatique(entrepriseId.toString())) {
+                    actives.add(entrepriseId.toString());
+                }
+            }
+            actives.forEach(this::listen);
+            for (String entrepriseId : List.copyOf(listeners.keySet())) {
+                if (!actives.contains(entrepriseId)) {
+                    unlisten(entrepriseId);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Écouteurs de basculement automatique non mis à jour : {}", e.getMessage());
+        }
+    }
+
+    private void listen(String entrepriseId) {
+        listeners.computeIfAbsent(entrepriseId, id -> {
+            MachinesListener listener = new MachinesListener(id,
+                databaseReference.child("entreprises").child(id).child("machines"));
+            listener.ref.addChildEventListener(listener);
+            return listener;
+        });
+    }
+
+    private void unlisten(String entrepriseId) {
+        MachinesListener listener = listeners.remove(entrepriseId);
+        if (listener != null) {
+            listener.ref.removeEventListener(listener);
+        }
+    }
+
+    /**
+     * Basculement automatique activé pour l'entreprise (paramètre mis en cache failover.policy-cache-ms)
+     */
+    public boolean isAutomatique(String entrepriseId) {
+        Policy policy = policies.get(entrepriseId);
+        long now = System.currentTimeMillis();
+        if (policy == null || now - policy.dateLecture() > policyCacheMs) {
+            try {
+                policy = new Policy(firebaseRealtimeService.getBasculementAutomatiqueAsync(entrepriseId)
+                    .get(readTimeoutMs, TimeUnit.MILLISECONDS), now);
+            } catch (Exception e) {
+                logger.warn("Paramètre de basculement de l'entreprise {} illisible, basculement automatique ignoré : {}", entrepriseId, e.getMessage());
+                return false;
+            }
+            policies.put(entrepriseId, policy);
+        }
+        return policy.active();
+    }
+
+    public void setAutomatique(String entrepriseId, boolean active) throws Exception {
+        firebaseRealtimeService.setBasculementAutomatique(entrepriseId, active);
+        policies.put(entrepriseId, new Policy(active, System.currentTimeMillis()));
+        if (active) {
+            listen(entrepriseId);
+        } else {
+            unlisten(entrepriseId);
+        }
+    }
+
+    /**
+     * Principale devenue non opérationnelle (thread de basculement) : bascule vers sa meilleure machine de secours
+     * disponible si l'entreprise l'a toujours activé et si aucune autre instance ne s'en charge.
+     * Bail par machine et par version (dateMiseAJour) : une nouvelle panne de la même machine rebascule.
+     */
+    void machineHorsService(String entrepriseId, Machine apres) {
+        if (!isAutomatique(entrepriseId)) {
+            return;
+        }
+        String machineId = apres.getMachineId();
+        String cle = machineId + ":" + apres.getDateMiseAJour();
+        if (!leaseService.claim(BAIL_BASCULEMENT, entrepriseId, machineId, cle)) {
+            return;
+        }
+        try {
+            Machine secours = meilleureMachineSecours(entrepriseId, apres);
+            if (secours == null) {
+                sansSecours.incrementAndGet();
+                logger.info("Machine principale {} ({}) hors service : aucune machine de secours disponible", machineId, entrepriseId);
+                leaseService.complete(BAIL_BASCULEMENT, entrepriseId, machineId, cle);
+                return;
+            }
+            Basculement basculement = basculer(entrepriseId, apres, secours, DECLENCHEUR_AUTOMATIQUE, apres.getModifiePar());
+            leaseService.complete(BAIL_BASCULEMENT, entrepriseId, machineId, cle);
+            if (basculement != null) {
+                automatiques.incrementAndGet();
+                logger.info("Basculement automatique {} : machine {} remplacée par {} ({})", basculement.basculementId(),
+                    machineId, secours.getMachineId(), entrepriseId);
+            }
+        } catch (Exception e) {
+            echecs.incrementAndGet();
+            leaseService.release(BAIL_BASCULEMENT, entrepriseId, machineId, cle);
+            logger.error("Basculement automatique de la machine {} ({}) impossible : {}", machineId, entrepriseId, e.getMessage());
+        }
+    }
+
+    /**
+     * Machine de secours rattachée, opérationnelle et pas en réparation : hors programmation d'abord,
+     * puis même catégorie que la principale, puis la plus récemment modifiée
+     */
+    public Machine meilleureMachineSecours(String entrepriseId, Machine principale) throws Exception {
+        String machinePrincipaleId = principale.getMachineId();
+        Long categoryId = principale.getCategoryId();
+        SecoursGraphService.Graph graph = secoursGraphService.freshGraph(entrepriseId,
+            () -> firebaseRealtimeService.getMachinesForEnterprise(entrepriseId));
+        Set<String> disponibles = graph.disponibles(machinePrincipaleId);
+        if (disponibles.isEmpty()) {
+            return null;
+        }
+        return firebaseRealtimeService.getMachinesByIdsAsync(entrepriseId, disponibles)
+            .get(readTimeoutMs, TimeUnit.MILLISECONDS).stream()
+            .filter(m -> isDisponible(m, machinePrincipaleId))
+            .min(Comparator.comparing((Machine m) -> Boolean.TRUE.equals(m.getEnProgrammation()))
+                .thenComparing(m -> categoryId == null || !categoryId.equals(m.getCategoryId()))
+                .thenComparing(m -> m.getModifieLe() != null ? m.getModifieLe() : 0L, Comparator.reverseOrder()))
+            .orElse(null);
+    }
+
+    /**
+     * Promeut la machine de secours à la place de la principale (une seule écriture) ; null si un autre
+     * basculement de cette principale est en cours
+     */
+    public Basculement basculer(String entrepriseId, Machine principale, Machine secours, String declencheur,
+                                String utilisateur) throws Exception {
+        String principaleId = principale.getMachineId();
+        String cle = entrepriseId + "/" + principaleId;
+        if (!enCours.add(cle)) {
+            logger.info("Basculement de la machine {} ({}) déjà en cours", principaleId, entrepriseId);
+            return null;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            SecoursGraphService.Graph graph = secoursGraphService.freshGraph(entrepriseId,
+                () -> firebaseRealtimeService.getMachinesForEnterprise(entrepriseId));
+
+            // Autres machines de secours rattachées, revérifiées sur leur version relue ; copies modifiées
+            // (les objets de la réplique ne sont jamais modifiés sur place)
+            List<String> rattachees = new ArrayList<>(graph.rattachees(principaleId));
+            rattachees.remove(secours.getMachineId());
+            List<Machine> autresSecours = firebaseRealtimeService.getMachinesByIdsAsync(entrepriseId, rattachees)
+                .get(readTimeoutMs, TimeUnit.MILLISECONDS).stream()
+                .filter(m -> Boolean.TRUE.equals(m.getEstMachineSecours()) && principaleId.equals(m.getMachinePrincipaleId()))
+                .map(firebaseRealtimeService::copyMachine)
+                .collect(Collectors.toList());
+
+            List<String> peripheriques = firebaseRealtimeService.getComponentsForEnterpriseAsync(entrepriseId)
+                .get(readTimeoutMs, TimeUnit.MILLISECONDS).stream()
+                .filter(c -> c != null && c.getComponentId() != null && principaleId.equals(c.getMachineId()))
+                .map(Component::getComponentId)
+                .collect(Collectors.toList());
+
+            Machine nouvellePrincipale = firebaseRealtimeService.copyMachine(secours);
+            nouvellePrincipale.setEstMachineSecours(false);
+            nouvellePrincipale.setMachinePrincipaleId(null);
+            nouvellePrincipale.setOperationnel(true);
+            nouvellePrincipale.setEnReparation(false);
+            nouvellePrincipale.setModifieLe(now);
+
+            for (Machine autre : autresSecours) {
+                autre.setEnReparation(true);
+                autre.setOperationnel(false);
+                autre.setEstMachineSecours(false); // Plus une machine de secours
+                autre.setMachinePrincipaleId(null); // Plus rattachée
+                autre.setModifieLe(now);
+            }
+
+            Machine anciennePrincipale = firebaseRealtimeService.copyMachine(principale);
+            anciennePrincipale.setEnReparation(true);
+            anciennePrincipale.setOperationnel(false);
+            anciennePrincipale.setEstMachineSecours(false);
+            anciennePrincipale.setMachinePrincipaleId(null);
+            anciennePrincipale.setModifieLe(now);
+
+            Map<String, Object> journal = new HashMap<>();
+            journal.put("date", now);
+            journal.put("declencheur", declencheur);
+            journal.put("utilisateur", utilisateur);
+            journal.put("anciennePrincipaleId", principaleId);
+            journal.put("anciennePrincipaleNom", principale.getNom());
+            journal.put("nouvellePrincipaleId", nouvellePrincipale.getMachineId());
+            journal.put("nouvellePrincipaleNom", nouvellePrincipale.getNom());
+            journal.put("secoursMisEnReparation", autresSecours.stream().map(Machine::getMachineId).collect(Collectors.toList()));
+            journal.put("peripheriquesTransferes", peripheriques);
+
+            // Machines, périphériques et entrée du journal : une seule écriture
+            FirebaseRealtimeService.WriteBatch batch = firebaseRealtimeService.batch(entrepriseId);
+            batch.updateMachine(nouvellePrincipale.getMachineId(), nouvellePrincipale);
+            for (Machine autre : autresSecours) {
+                batch.updateMachine(autre.getMachineId(), autre);
+            }
+            batch.updateMachine(principaleId, anciennePrincipale);
+            for (String componentId : peripheriques) {
+                batch.reassignComponent(componentId, nouvellePrincipale.getMachineId());
+            }
+            String basculementId = batch.append("basculements", journal);
+            batch.commit();
+            logger.info("Basculement {} écrit : {} machine(s), {} périphérique(s)", basculementId, autresSecours.size() + 2, peripheriques.size());
+            if (DECLENCHEUR_MANUEL.equals(declencheur)) {
+                manuels.incrementAndGet();
+            }
+            return new Basculement(basculementId, nouvellePrincipale, autresSecours.size(), peripheriques.size());
+        } finally {
+            enCours.remove(cle);
+        }
+    }
+
+    /**
+     * Machine principale opérationnelle, non supprimée : sa panne déclenche un basculement
+     */
+    private static boolean isPrincipaleEnService(Machine machine) {
+        return isPrincipale(machine) && Boolean.TRUE.equals(machine.getOperationnel())
+            && !Boolean.TRUE.equals(machine.getSupprime());
+    }
+
+    private static boolean isPrincipaleHorsService(Machine machine) {
+        return isPrincipale(machine) && !Boolean.TRUE.equals(machine.getOperationnel())
+            && !Boolean.TRUE.equals(machine.getSupprime());
+    }
+
+    private static boolean isPrincipale(Machine machine) {
+        return machine != null && !Boolean.TRUE.equals(machine.getEstMachineSecours())
+            && !Boolean.TRUE.equals(machine.getEstMachineEntrepot());
+    }
+
+    private static boolean isDisponible(Machine machine, String machinePrincipaleId) {
+        return Boolean.TRUE.equals(machine.getEstMachineSecours())
+            && machinePrincipaleId.equals(machine.getMachinePrincipaleId())
+            && Boolean.TRUE.equals(machine.getOperationnel())
+            && !Boolean.TRUE.equals(machine.getEnReparation());
+    }
+
+    /**
+     * Indicateurs : basculements automatiques et manuels, pannes sans machine de secours, échecs
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("automatiques", automatiques.get());
+        stats.put("manuels", manuels.get());
+        stats.put("sansSecours", sansSecours.get());
+        stats.put("echecs", echecs.get());
+        stats.put("entreprisesEcoutees", listeners.size());
+        return stats;
+    }
+
+    /**
+     * Écouteur des machines d'une entreprise : retient pour chaque machine si elle est une principale en service
+     * (le premier chargement ne fait que remplir cet état) et confie chaque passage hors service au thread de basculement
+     */
+    private final class MachinesListener implements ChildEventListener {
+        private final String entrepriseId;
+        private final DatabaseReference ref;
+        private final Map<String, Boolean> enService = new ConcurrentHashMap<>();
+
+        private MachinesListener(String entrepriseId, DatabaseReference ref) {
+            this.entrepriseId = entrepriseId;
+            this.ref = ref;
+        }
+
+        @Override
+        public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+            enService.put(snapshot.getKey(), isPrincipaleEnService(decode(snapshot)));
+        }
+
+        @Override
+        public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+            Machine apres = decode(snapshot);
+            Boolean avant = enService.put(snapshot.getKey(), isPrincipaleEnService(apres));
+            if (Boolean.TRUE.equals(avant) && isPrincipaleHorsService(apres)) {
+                executor.execute(() -> machineHorsService(entrepriseId, apres));
+            }
+        }
+
+        @Override
+        public void onChildRemoved(DataSnapshot snapshot) {
+            enService.remove(snapshot.getKey());
+        }
+
+        @Override
+        public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+        }
+
+        @Override
+        public void onCancelled(DatabaseError error) {
+            // Réattaché au prochain rafraîchissement des écouteurs
+            listeners.remove(entrepriseId, this);
+            logger.error("Écoute des machines de l'entreprise {} interrompue : {}", entrepriseId, error.getMessage());
+        }
+
+        private Machine decode(DataSnapshot snapshot) {
+            try {
+                return FirebaseEntityDecoder.machine(FirebaseEntityDecoder.fields(snapshot), entrepriseId, snapshot.getKey());
+            } catch (Exception e) {
+                logger.warn("Machine {} ({}) illisible : {}", snapshot.getKey(), entrepriseId, e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Machine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Graphe des machines de secours, par entreprise : machinePrincipaleId -> machines de secours rattachées,
+ * séparées en disponibles (opérationnelles, pas en réparation) et indisponibles, plus les machines de secours libres.
+ * Remplace les parcours de toutes les machines (liste, rattachement, détachement, promotion) par des accès directs.
+ * Tenu à jour par les écritures de FirebaseRealtimeService ; reconstruit depuis la liste complète lorsque son nombre
+ * de machines diffère de celle chargée par la page, ou après search.index.max-age-minutes (écritures d'autres instances).
+ * Le graphe ne donne que des identifiants : les flux qui modifient des machines relisent les objets à jour,
+ * à partir d'un graphe reconstruit sur une lecture fraîche (freshGraph) et non du graphe en mémoire.
+ */
+@Service
+public class SecoursGraphService {
+
+    @Value("${search.index.max-age-minutes:10}")
+    private long maxAgeMinutes;
+
+    @Value("${search.index.idle-minutes:30}")
+    private long idleMinutes;
+
+    private final Map<String, Graph> graphs = new ConcurrentHashMap<>();
+
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+
+    /**
+     * Graphe de l'entreprise ; source : liste complète des machines, lue seulement s'il doit être (re)construit
+     */
+    public Graph graph(String entrepriseId, Callable<List<Machine>> source) throws Exception {
+        Graph graph = graphs.get(entrepriseId);
+        long now = System.currentTimeMillis();
+        if (graph == null || now - graph.dateConstruction > maxAgeMinutes * 60_000L) {
+            graph = build(entrepriseId, source.call());
+        }
+        graph.derniereUtilisation = now;
+        return graph;
+    }
+
+    /**
+     * Graphe reconstruit depuis une lecture de la liste complète, pour les flux qui modifient des machines
+     * (promotion, basculement, mise hors service) : le graphe en mémoire peut ignorer les écritures
+     * d'autres instances jusqu'à sa reconstruction. Remplace le graphe en mémoire de l'entreprise.
+     */
+    public Graph freshGraph(String entrepriseId, Callable<List<Machine>> source) throws Exception {
+        Graph graph = build(entrepriseId, source.call());
+        graph.derniereUtilisation = System.currentTimeMillis();
+        return graph;
+    }
+
+    /**
+     * Graphe de l'entreprise à partir de la liste déjà chargée par la page (machines non supprimées)
+     */
+    public Graph graph(String entrepriseId, List<Machine> machines) {
+        Graph graph = graphs.get(entrepriseId);
+        long now = System.currentTimeMillis();
+        if (graph == null || graph.size() != machines.size() || now - graph.dateConstruction > maxAgeMinutes * 60_000L) {
+            graph = build(entrepriseId, machines);
+        }
+        graph.derniereUtilisation = now;
+        return graph;
+    }
+
+    private Graph build(String entrepriseId, List<Machine> machines) {
+        Graph graph = new Graph();
+        for (Machine machine : machines) {
+            if (machine != null && machine.getMachineId() != null) {
+                graph.put(machine.getMachineId(), machine);
+            }
+        }
+        builds.incrementAndGet();
+        graphs.put(entrepriseId, graph);
+        return graph;
+    }
+
+    /**
+     * Répercute une écriture sur le graphe de l'entreprise s'il est construit (machine null : suppression)
+     */
+    public void machineChanged(String entrepriseId, String machineId, Machine machine) {
+        if (entrepriseId == null || machineId == null) {
+            return;
+        }
+        Graph graph = graphs.get(entrepriseId);
+        if (graph == null) {
+            return;
+        }
+        updates.incrementAndGet();
+        graph.put(machineId, machine);
+    }
+
+    @Scheduled(fixedDelayString = "${search.index.sweep-interval-ms:300000}")
+    public void evictIdleGraphs() {
+        long limite = System.currentTimeMillis() - idleMinutes * 60_000L;
+        graphs.entrySet().removeIf(entry -> entry.getValue().derniereUtilisation < limite);
+    }
+
+    /**
+     * Adjacence d'une entreprise ; les accesseurs renvoient des copies (ordre d'indexation)
+     */
+    public static final class Graph {
+
+        private static final Set<String> AUCUNE = Set.of();
+
+        /** Machines connues (non supprimées), pour détecter une liste qui a changé ailleurs */
+        private final Set<String> machines = new HashSet<>();
+        /** Machine de secours -> machine principale (null : libre) */
+        private final Map<String, String> principaleDe = new HashMap<>();
+        private final Map<String, Set<String>> disponibles = new HashMap<>();
+        private final Map<String, Set<String>> indisponibles = new HashMap<>();
+        private final Set<String> libres = new LinkedHashSet<>();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final long dateConstruction = System.currentTimeMillis();
+        private volatile long derniereUtilisation = dateConstruction;
+
+        private int size() {
+            lock.readLock().lock();
+            try {
+                return machines.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void put(String machineId, Machine machine) {
+            lock.writeLock().lock();
+            try {
+                unlink(machineId);
+                if (machine == null || Boolean.TRUE.equals(machine.getSupprime())) {
+                    machines.remove(machineId);
+                    return;
+                }
+                machines.add(machineId);
+                if (!Boolean.TRUE.equals(machine.getEstMachineSecours())) {
+                    return;
+                }
+                String principaleId = machine.getMachinePrincipaleId();
+                if (principaleId == null || principaleId.isEmpty()) {
+                    principaleDe.put(machineId, null);
+                    libres.add(machineId);
+                    return;
+                }
+                principaleDe.put(machineId, principaleId);
+                boolean disponible = Boolean.TRUE.equals(machine.getOperationnel()) && !Boolean.TRUE.equals(machine.getEnReparation());
+                (disponible ? disponibles : indisponibles).computeIfAbsent(principaleId, id -> new LinkedHashSet<>()).add(machineId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void unlink(String machineId) {
+            if (!principaleDe.containsKey(machineId)) {
+                return;
+            }
+            String principaleId = principaleDe.remove(machineId);
+            if (principaleId == null) {
+                libres.remove(machineId);
+                return;
+            }
+            removeFrom(disponibles, principaleId, machineId);
+            removeFrom(indisponibles, principaleId, machineId);
+        }
+
+        private static void removeFrom(Map<String, Set<String>> adjacence, String principaleId, String machineId) {
+            Set<String> ids = adjacence.get(principaleId);
+            if (ids != null && ids.remove(machineId) && ids.isEmpty()) {
+                adjacence.remove(principaleId);
+            }
+        }
+
+        /**
+         * Machines de secours rattachées à la principale, opérationnelles et pas en réparation
+         */
+        public Set<String> disponibles(String principaleId) {
+            lock.readLock().lock();
+            try {
+                return new LinkedHashSet<>(disponibles.getOrDefault(principaleId, AUCUNE));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Toutes les machines de secours rattachées à la principale (disponibles d'abord)
+         */
+        public Set<String> rattachees(String principaleId) {
+            lock.readLock().lock();
+            try {
+                Set<String> ids = new LinkedHashSet<>(disponibles.getOrDefault(principaleId, AUCUNE));
+                ids.addAll(indisponibles.getOrDefault(principaleId, AUCUNE));
+                return ids;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Machines de secours rattachées à aucune principale
+         */
+        public Set<String> libres() {
+            lock.readLock().lock();
+            try {
+                return new LinkedHashSet<>(libres);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Nombre de machines de secours rattachées, par machine principale
+         */
+        public Map<String, Long> counts() {
+            lock.readLock().lock();
+            try {
+                Map<String, Long> counts = new HashMap<>();
+                disponibles.forEach((principaleId, ids) -> counts.merge(principaleId, (long) ids.size(), Long::sum));
+                indisponibles.forEach((principaleId, ids) -> counts.merge(principaleId, (long) ids.size(), Long::sum));
+                return counts;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        public boolean hasDisponibles(String principaleId) {
+            lock.readLock().lock();
+            try {
+                return disponibles.containsKey(principaleId);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Indicateurs : graphes en mémoire, constructions et mises à jour incrémentales
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("graphs", graphs.size());
+        stats.put("builds", builds.get());
+        stats.put("updates", updates.get());
+        return stats;
+    }
+}
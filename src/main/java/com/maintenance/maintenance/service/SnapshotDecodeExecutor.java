@@ -0,0 +1,256 @@
+package com.maintenance.maintenance.service;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Pool borné dédié au décodage des snapshots Firebase
+ * Le SDK délivre tous les callbacks sur un seul thread d'événements : les callbacks y transfèrent
+ * le snapshot brut et le décodage (mapXSnapshot) s'exécute ici, sans bloquer les autres lectures/écritures.
+ */
+@Service
+public class SnapshotDecodeExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotDecodeExecutor.class);
+
+    @Autowired
+    private DatabaseReference databaseReference;
+
+    @Value("${firebase.decode.threads:0}")
+    private int threads;
+
+    @Value("${firebase.decode.queue-capacity:1000}")
+    private int queueCapacity;
+
+    /** Décodage parallèle des enfants pour les grandes listes */
+    @Value("${firebase.decode.parallel-children:true}")
+    private boolean parallelChildren;
+
+    @Value("${firebase.decode.parallel-threshold:500}")
+    private int parallelThreshold;
+
+    @Value("${firebase.decode.chunk-size:250}")
+    private int chunkSize;
+
+    private ThreadPoolExecutor executor;
+
+    // Temps passé sur le thread appelant (thread d'événements Firebase) par les callbacks
+    private final AtomicLong eventThreadBusyNanos = new AtomicLong();
+    private final AtomicLong eventThreadMaxNanos = new AtomicLong();
+    private final AtomicLong callbacks = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+
+    // Sonde de latence du thread d'événements
+    private final AtomicBoolean probePending = new AtomicBoolean(false);
+    private volatile long lastEventThreadLagMs = 0L;
+    private final AtomicLong maxEventThreadLagMs = new AtomicLong();
+
+    @PostConstruct
+    void start() {
+        int poolSize = threads > 0 ? threads : Math.max(2, Runtime.getRuntime().availableProcessors());
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "firebase-decode-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+        logger.info("Pool de décodage Firebase démarré ({} threads, file de {})", poolSize, queueCapacity);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Exécute le traitement d'un callback sur le pool de décodage
+     * Si la file est pleine, le traitement s'exécute sur le thread appelant (contre-pression).
+     */
+    public void execute(Runnable task) {
+        long start = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long decodeStart = System.nanoTime();
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.error("Erreur lors du décodage d'un snapshot: {}", e.getMessage(), e);
+                } finally {
+                    decodeNanos.addAndGet(System.nanoTime() - decodeStart);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            task.run();
+        } finally {
+            recordCallerTime(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Décode les enfants d'un snapshot dans l'ordre (les résultats null sont ignorés)
+     * Au-delà du seuil, les enfants sont découpés en blocs décodés en parallèle ;
+     * le thread appelant traite lui aussi des blocs, il n'attend donc que des blocs déjà en cours.
+     */
+    public <T> List<T> decodeChildren(DataSnapshot snapshot, Function<DataSnapshot, T> childDecoder) {
+        List<DataSnapshot> children = new ArrayList<>();
+        if (snapshot != null && snapshot.exists()) {
+            for (DataSnapshot child : snapshot.getChildren()) {
+                children.add(child);
+            }
+        }
+
+        int size = children.size();
+        if (!parallelChildren || size < parallelThreshold || chunkSize <= 0) {
+            List<T> results = new ArrayList<>(size);
+            for (DataSnapshot child : children) {
+                T value = childDecoder.apply(child);
+                if (value != null) {
+                    results.add(value);
+                }
+            }
+            return results;
+        }
+
+        Object[] decoded = new Object[size];
+        int chunks = (size + chunkSize - 1) / chunkSize;
+        AtomicInteger nextChunk = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(chunks);
+        List<RuntimeException> failures = new ArrayList<>();
+
+        Runnable worker = () -> {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                try {
+                    int end = Math.min(size, (chunk + 1) * chunkSize);
+                    for (int i = chunk * chunkSize; i < end; i++) {
+                        decoded[i] = childDecoder.apply(children.get(i));
+                    }
+                } catch (RuntimeException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        int helpers = Math.min(chunks, executor.getMaximumPoolSize()) - 1;
+        for (int i = 0; i < helpers; i++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        worker.run();
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interruption lors du décodage parallèle", e);
+        }
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+
+        List<T> results = new ArrayList<>(size);
+        for (Object value : decoded) {
+            if (value != null) {
+                @SuppressWarnings("unchecked")
+                T typed = (T) value;
+                results.add(typed);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Mesure le délai de remise d'un callback local : reflète l'occupation du thread d'événements Firebase
+     */
+    @Scheduled(fixedRate = 10000, initialDelay = 10000)
+    public void probeEventThread() {
+        if (!probePending.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        databaseReference.child(".info/serverTimeOffset").addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                recordLag(System.currentTimeMillis() - start);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                recordLag(System.currentTimeMillis() - start);
+            }
+        });
+    }
+
+    /**
+     * Indicateurs : temps passé sur le thread d'événements, latence mesurée, activité du pool
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long callbackCount = callbacks.get();
+        stats.put("callbacks", callbackCount);
+        stats.put("eventThreadBusyMs", TimeUnit.NANOSECONDS.toMillis(eventThreadBusyNanos.get()));
+        stats.put("eventThreadAvgMicros", callbackCount > 0 ? TimeUnit.NANOSECONDS.toMicros(eventThreadBusyNanos.get() / callbackCount) : 0L);
+        stats.put("eventThreadMaxMs", TimeUnit.NANOSECONDS.toMillis(eventThreadMaxNanos.get()));
+        stats.put("eventThreadLagMs", lastEventThreadLagMs);
+        stats.put("eventThreadMaxLagMs", maxEventThreadLagMs.get());
+        stats.put("decodeMs", TimeUnit.NANOSECONDS.toMillis(decodeNanos.get()));
+        stats.put("rejectedToCaller", rejected.get());
+        if (executor != null) {
+            stats.put("poolSize", executor.getMaximumPoolSize());
+            stats.put("activeThreads", executor.getActiveCount());
+            stats.put("queueDepth", executor.getQueue().size());
+            stats.put("completedTasks", executor.getCompletedTaskCount());
+        }
+        return stats;
+    }
+
+    private void recordCallerTime(long nanos) {
+        callbacks.incrementAndGet();
+        eventThreadBusyNanos.addAndGet(nanos);
+        eventThreadMaxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private void recordLag(long lagMs) {
+        lastEventThreadLagMs = lagMs;
+        maxEventThreadLagMs.accumulateAndGet(lagMs, Math::max);
+        probePending.set(false);
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class TicketService {
@@ -20,6 +21,10 @@ public class TicketService {
         return firebaseRealtimeService.getTicketById(entrepriseId, ticketId);
     }
 
+    public CompletableFuture<Ticket> getTicketAsync(String entrepriseId, String ticketId) {
+        return firebaseRealtimeService.getTicketByIdAsync(entrepriseId, ticketId);
+    }
+
     public String createTicket(String entrepriseId, Ticket ticket) throws Exception {
         return firebaseRealtimeService.createTicket(entrepriseId, ticket);
     }
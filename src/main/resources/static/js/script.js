@@ -958,8 +958,8 @@ document.addEventListener('DOMContentLoaded', function() {
     // Vérifier les notifications de tickets au chargement
     checkTicketNotifications();
     
-    // Vérifier les notifications toutes les 30 secondes
-    setInterval(checkTicketNotifications, 30000);
+    // Notifications et statistiques poussées par le serveur (repli : vérification toutes les 30 secondes)
+    connectLiveEvents();
     } else {
         // Sur les pages séparées (users.html, enterprises.html), juste initialiser les événements de base
         setupBasicEventListeners();
@@ -1407,6 +1407,20 @@ function navigateToPage(pageName) {
 }
 
 // Dashboard
+function renderDashboardStats(data) {
+    const totalMachines = document.getElementById('totalMachines');
+    if (!totalMachines) return;
+    totalMachines.textContent = data.totalMachines || 0;
+    document.getElementById('openTickets').textContent = data.openTickets || 0;
+    document.getElementById('pendingMaintenance').textContent = data.pendingMaintenance || 0;
+    document.getElementById('activeRepairs').textContent = data.activeRepairs || 0;
+    document.getElementById('completedMaintenance').textContent = data.completedMaintenance || 0;
+    document.getElementById('urgentTickets').textContent = data.urgentTickets || 0;
+    
+    // Mettre à jour le badge de notification mobile
+    updateNotificationBadge();
+}
+
 function updateDashboard() {
     const dashboard = document.getElementById('dashboard');
     if (!dashboard) return; // Pas sur la page dashboard
@@ -1435,15 +1449,7 @@ function updateDashboard() {
                 return;
             }
             
-            document.getElementById('totalMachines').textContent = data.totalMachines || 0;
-            document.getElementById('openTickets').textContent = data.openTickets || 0;
-            document.getElementById('pendingMaintenance').textContent = data.pendingMaintenance || 0;
-            document.getElementById('activeRepairs').textContent = data.activeRepairs || 0;
-            document.getElementById('completedMaintenance').textContent = data.completedMaintenance || 0;
-            document.getElementById('urgentTickets').textContent = data.urgentTickets || 0;
-            
-            // Mettre à jour le badge de notification mobile
-            updateNotificationBadge();
+            renderDashboardStats(data);
         })
         .catch(error => {
             console.error('Erreur lors du chargement des statistiques:', error);
@@ -1457,6 +1463,75 @@ function updateDashboard() {
         });
 }
 
+// Événements en direct (Server-Sent Events) de l'entreprise affichée sur le dashboard
+// EventSource se reconnecte seul et renvoie Last-Event-ID : le serveur rejoue les événements manqués
+let liveEventSource = null;
+let liveEventsFallbackInterval = null;
+
+function connectLiveEvents() {
+    const entrepriseSelect = document.getElementById('dashboardEntrepriseSelect');
+    const entrepriseId = entrepriseSelect ? entrepriseSelect.value : null;
+    
+    if (!entrepriseId || typeof EventSource === 'undefined') {
+        startLiveEventsFallback();
+        return;
+    }
+    if (liveEventSource) {
+        liveEventSource.close();
+    }
+    
+    liveEventSource = new EventSource('/api/events/' + encodeURIComponent(entrepriseId));
+    
+    liveEventSource.addEventListener('statistiques', event => {
+        renderDashboardStats(JSON.parse(event.data));
+    });
+    liveEventSource.addEventListener('ticket-cree', event => {
+        const ticket = JSON.parse(event.data);
+        if (typeof showNotification === 'function') {
+            showNotification('Nouveau Ticket', ticket.titre || 'Un ticket vient d\'être créé', 'info', 5000);
+        }
+        checkTicketNotifications();
+    });
+    liveEventSource.addEventListener('ticket-commentaire', event => {
+        const ticket = JSON.parse(event.data);
+        if (typeof showNotification === 'function') {
+            showNotification('Nouveau Message', 'Nouveau commentaire sur ' + (ticket.titre || 'un ticket'), 'info', 5000);
+        }
+    });
+    liveEventSource.addEventListener('ticket-modifie', () => checkTicketNotifications());
+    liveEventSource.addEventListener('alerte-echue', event => {
+        const alerte = JSON.parse(event.data);
+        if (typeof showNotification === 'function') {
+            showNotification('Alerte', (alerte.machineNom ? alerte.machineNom + ' : ' : '') + (alerte.description || 'Alerte échue'), 'warning', 7000);
+        }
+    });
+    // Événements manqués trop anciens : tout recharger
+    liveEventSource.addEventListener('resync', () => {
+        updateDashboard();
+        checkTicketNotifications();
+    });
+    liveEventSource.onopen = () => stopLiveEventsFallback();
+    liveEventSource.onerror = () => {
+        // Flux refusé (trop de flux ouverts) ou non autorisé : EventSource abandonne, on revient à l'interrogation
+        if (liveEventSource.readyState === EventSource.CLOSED) {
+            startLiveEventsFallback();
+        }
+    };
+}
+
+function startLiveEventsFallback() {
+    if (!liveEventsFallbackInterval) {
+        liveEventsFallbackInterval = setInterval(checkTicketNotifications, 30000);
+    }
+}
+
+function stopLiveEventsFallback() {
+    if (liveEventsFallbackInterval) {
+        clearInterval(liveEventsFallbackInterval);
+        liveEventsFallbackInterval = null;
+    }
+}
+
 // Fonction pour charger les stats du dashboard quand l'entreprise change
 function loadDashboardStats() {
     const entrepriseSelect = document.getElementById('dashboardEntrepriseSelect');
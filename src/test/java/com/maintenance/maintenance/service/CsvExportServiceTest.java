@@ -0,0 +1,112 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvExportServiceTest {
+
+	private final List<Object> tickets = new ArrayList<>();
+	private CsvExportService service;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		service = new CsvExportService();
+		// Collection servie par la réplique : l'export ne lit pas Firebase
+		EnterpriseReplicaService replica = new EnterpriseReplicaService() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public <T> Stream<T> streamCollection(String entrepriseId, String collection) {
+				return (Stream<T>) tickets.stream();
+			}
+		};
+		Field field = CsvExportService.class.getDeclaredField("replicaService");
+		field.setAccessible(true);
+		field.set(service, replica);
+		Field pageSize = CsvExportService.class.getDeclaredField("pageSize");
+		pageSize.setAccessible(true);
+		pageSize.setInt(service, 2);
+	}
+
+	@Test
+	void exportStartsWithBomAndHeader() throws Exception {
+		String csv = export();
+
+		assertTrue(csv.startsWith("\uFEFFid,titre,statut,priorite,"));
+		assertEquals(1, csv.split("\r\n").length);
+	}
+
+	@Test
+	void cellsWithSeparatorsQuotesOrLineBreaksAreQuoted() throws Exception {
+		tickets.add(ticket("t1", "Panne, imprimante", "Écran \"noir\"\nau démarrage"));
+
+		String row = row(export());
+
+		assertTrue(row.startsWith("t1,\"Panne, imprimante\",a_faire,"));
+		assertTrue(row.endsWith(",\"Écran \"\"noir\"\"\nau démarrage\""));
+	}
+
+	@Test
+	void textStartingLikeAFormulaIsPrefixed() throws Exception {
+		tickets.add(ticket("t1", "=HYPERLINK(\"http://x\")", "@SUM(A1)"));
+		tickets.add(ticket("t2", "+33 1 23", "-2"));
+
+		String csv = export();
+
+		assertTrue(csv.contains("t1,\"'=HYPERLINK(\"\"http://x\"\")\","));
+		assertTrue(csv.contains(",'@SUM(A1)\r\n"));
+		assertTrue(csv.contains("t2,'+33 1 23,"));
+		assertTrue(csv.contains(",'-2\r\n"));
+	}
+
+	@Test
+	void plainValuesAndNullsAreWrittenAsIs() throws Exception {
+		tickets.add(ticket("t1", "Imprimante", null));
+
+		String row = row(export());
+
+		// Catégorie et machine absentes : cellules vides
+		assertTrue(row.startsWith("t1,Imprimante,a_faire,haute,,,"));
+		assertFalse(row.contains("'"));
+		assertFalse(row.contains("\""));
+	}
+
+	@Test
+	void unknownExportIsRejected() {
+		assertFalse(service.supports("utilisateurs"));
+		assertThrows(IllegalArgumentException.class, () -> service.export("utilisateurs", "e1", new ByteArrayOutputStream()));
+	}
+
+	private String export() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		service.export("tickets", "e1", out);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	private static String row(String csv) {
+		String corps = csv.substring(csv.indexOf("\r\n") + 2);
+		return corps.substring(0, corps.lastIndexOf("\r\n"));
+	}
+
+	private static Ticket ticket(String id, String titre, String description) {
+		Ticket ticket = new Ticket();
+		ticket.setTicketId(id);
+		ticket.setTitre(titre);
+		ticket.setStatut("a_faire");
+		ticket.setPriorite("haute");
+		ticket.setDescription(description);
+		return ticket;
+	}
+}
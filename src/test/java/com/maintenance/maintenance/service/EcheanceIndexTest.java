@@ -0,0 +1,119 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.Rappel;
+import org.junit.jupiter.api.Test;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EcheanceIndexTest {
+
+	private static final long DATE_VERIFICATION = 1_700_000_000_000L;
+
+	@Test
+	void pathsUseEnterpriseAndItemKey() {
+		assertEquals("e1:a1", EcheanceIndex.key("e1", "a1"));
+		assertEquals("echeances/alertes/e1:a1", EcheanceIndex.path(EcheanceIndex.ALERTES, "e1", "a1"));
+		assertEquals("echeancesBaux/rappels/e1:r1", EcheanceIndex.leasePath(EcheanceIndex.RAPPELS, "e1", "r1"));
+	}
+
+	@Test
+	void unsentAlerteIsDueAtItsVerificationDate() {
+		Map<String, Object> entry = EcheanceIndex.alerteEntry("e1", alerte());
+
+		assertEquals(DATE_VERIFICATION, entry.get(EcheanceIndex.DUE_AT));
+		assertEquals("a1", entry.get("itemId"));
+		assertFalse(EcheanceIndex.isRelance(entry));
+	}
+
+	@Test
+	void verifiedOrUndatedAlerteHasNoEntry() {
+		Alerte verifiee = alerte();
+		verifiee.setVerifie(true);
+		Alerte sansDate = alerte();
+		sansDate.setDateVerification(null);
+
+		assertNull(EcheanceIndex.alerteEntry("e1", verifiee));
+		assertNull(EcheanceIndex.alerteEntry("e1", sansDate));
+	}
+
+	@Test
+	void sentAlerteIsRemindedOneDayAfterLastAction() {
+		Alerte alerte = alerte();
+		alerte.setEnvoye(true);
+		alerte.setDateEnvoi(DATE_VERIFICATION + 1000);
+		alerte.setActiverRelance(true);
+		alerte.setNombreRelances(2);
+		alerte.setNombreRelancesEnvoyees(1);
+		alerte.setDateDerniereRelance(DATE_VERIFICATION + 5000);
+
+		Map<String, Object> entry = EcheanceIndex.alerteEntry("e1", alerte);
+
+		assertEquals(DATE_VERIFICATION + 5000 + EcheanceIndex.DELAI_RELANCE_MS, entry.get(EcheanceIndex.DUE_AT));
+		assertTrue(EcheanceIndex.isRelance(entry));
+	}
+
+	@Test
+	void sentAlerteWithoutRemainingRemindersHasNoEntry() {
+		Alerte sansRelance = alerte();
+		sansRelance.setEnvoye(true);
+		sansRelance.setDateEnvoi(DATE_VERIFICATION);
+		Alerte relancesEpuisees = alerte();
+		relancesEpuisees.setEnvoye(true);
+		relancesEpuisees.setDateEnvoi(DATE_VERIFICATION);
+		relancesEpuisees.setActiverRelance(true);
+		relancesEpuisees.setNombreRelances(2);
+		relancesEpuisees.setNombreRelancesEnvoyees(2);
+
+		assertNull(EcheanceIndex.alerteEntry("e1", sansRelance));
+		assertNull(EcheanceIndex.alerteEntry("e1", relancesEpuisees));
+	}
+
+	@Test
+	void unsentRappelIsDueAtTheFollowingMidnight() {
+		Rappel rappel = new Rappel();
+		rappel.setRappelId("r1");
+		rappel.setDateVerification(DATE_VERIFICATION);
+
+		long dueAt = (Long) EcheanceIndex.rappelEntry("e1", rappel).get(EcheanceIndex.DUE_AT);
+
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(dueAt);
+		assertEquals(0, cal.get(Calendar.HOUR_OF_DAY));
+		assertEquals(0, cal.get(Calendar.MINUTE));
+		assertTrue(dueAt >= DATE_VERIFICATION && dueAt - DATE_VERIFICATION < EcheanceIndex.DELAI_RELANCE_MS + 3_600_000L);
+	}
+
+	@Test
+	void startOfDayKeepsAnExactMidnight() {
+		long midnight = EcheanceIndex.startOfDayOnOrAfter(DATE_VERIFICATION);
+
+		assertEquals(midnight, EcheanceIndex.startOfDayOnOrAfter(midnight));
+	}
+
+	@Test
+	void sameScheduleComparesDueDateAndActionType() {
+		Map<String, Object> expected = EcheanceIndex.alerteEntry("e1", alerte());
+		Map<String, Object> stored = new HashMap<>(expected);
+
+		assertTrue(EcheanceIndex.sameSchedule(stored, expected));
+		stored.put("relance", true);
+		assertFalse(EcheanceIndex.sameSchedule(stored, expected));
+		assertFalse(EcheanceIndex.sameSchedule(null, expected));
+		assertTrue(EcheanceIndex.sameSchedule(null, null));
+	}
+
+	private static Alerte alerte() {
+		Alerte alerte = new Alerte();
+		alerte.setAlerteId("a1");
+		alerte.setDateVerification(DATE_VERIFICATION);
+		return alerte;
+	}
+}
@@ -0,0 +1,106 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.HistoriqueVerification;
+import com.maintenance.maintenance.model.entity.Machine;
+import com.maintenance.maintenance.model.entity.Rappel;
+import com.maintenance.maintenance.model.entity.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnterpriseStatsCountersTest {
+
+	@Test
+	void creatingAnUrgentOpenTicketCountsItTwice() {
+		Map<String, Long> delta = EnterpriseStatsCounters.delta(
+			EnterpriseStatsCounters.contribution(null), EnterpriseStatsCounters.contribution(ticket("a_faire", "urgente")));
+
+		assertEquals(Map.of(EnterpriseStatsCounters.OPEN_TICKETS, 1L, EnterpriseStatsCounters.URGENT_TICKETS, 1L), delta);
+	}
+
+	@Test
+	void closingATicketRemovesItsContribution() {
+		Map<String, Long> delta = EnterpriseStatsCounters.delta(
+			EnterpriseStatsCounters.contribution(ticket("en_cours", "urgente")),
+			EnterpriseStatsCounters.contribution(ticket("termine", "urgente")));
+
+		assertEquals(Map.of(EnterpriseStatsCounters.OPEN_TICKETS, -1L, EnterpriseStatsCounters.URGENT_TICKETS, -1L), delta);
+	}
+
+	@Test
+	void unchangedStateGivesAnEmptyDelta() {
+		assertTrue(EnterpriseStatsCounters.delta(
+			EnterpriseStatsCounters.contribution(ticket("a_faire", "basse")),
+			EnterpriseStatsCounters.contribution(ticket("en_cours", "basse"))).isEmpty());
+	}
+
+	@Test
+	void softDeletedMachineAndVerifiedRappelStopCounting() {
+		Machine supprimee = new Machine();
+		supprimee.setSupprime(true);
+		Rappel verifie = new Rappel();
+		verifie.setVerifie(true);
+
+		assertEquals(Map.of(EnterpriseStatsCounters.TOTAL_MACHINES, -1L),
+			EnterpriseStatsCounters.delta(EnterpriseStatsCounters.contribution(new Machine()), EnterpriseStatsCounters.contribution(supprimee)));
+		assertEquals(Map.of(EnterpriseStatsCounters.PENDING_RAPPELS, -1L),
+			EnterpriseStatsCounters.delta(EnterpriseStatsCounters.contribution(new Rappel()), EnterpriseStatsCounters.contribution(verifie)));
+	}
+
+	@Test
+	void applyAddsDeltaAndClampsAtZero() {
+		Map<String, Object> current = new HashMap<>();
+		current.put(EnterpriseStatsCounters.OPEN_TICKETS, 3L);
+		current.put(EnterpriseStatsCounters.URGENT_TICKETS, 0L);
+		current.put(EnterpriseStatsCounters.A_RECONCILIER, false);
+
+		Map<String, Object> node = EnterpriseStatsCounters.apply(current,
+			Map.of(EnterpriseStatsCounters.OPEN_TICKETS, 2L, EnterpriseStatsCounters.URGENT_TICKETS, -1L), 42L);
+
+		assertEquals(5L, node.get(EnterpriseStatsCounters.OPEN_TICKETS));
+		assertEquals(0L, node.get(EnterpriseStatsCounters.URGENT_TICKETS));
+		assertEquals(42L, node.get(EnterpriseStatsCounters.DATE_MISE_A_JOUR));
+		assertTrue(EnterpriseStatsCounters.isReliable(node));
+	}
+
+	@Test
+	void applyOnMissingNodeMarksItForReconciliation() {
+		Map<String, Object> node = EnterpriseStatsCounters.apply(null, Map.of(EnterpriseStatsCounters.TOTAL_MACHINES, 1L), 42L);
+
+		assertEquals(1L, node.get(EnterpriseStatsCounters.TOTAL_MACHINES));
+		assertFalse(EnterpriseStatsCounters.isReliable(node));
+	}
+
+	@Test
+	void computeCountsEveryCollection() {
+		Alerte alerte = new Alerte();
+		Map<String, Object> node = EnterpriseStatsCounters.compute(
+			List.of(new Machine(), new Machine()),
+			List.of(ticket("a_faire", "urgente"), ticket("termine", "haute")),
+			List.of(new Rappel()),
+			List.of(alerte),
+			List.of(new HistoriqueVerification()));
+
+		Map<String, Object> stats = EnterpriseStatsCounters.toDashboard(node);
+		assertEquals(2, stats.get("totalMachines"));
+		assertEquals(1, stats.get("openTickets"));
+		assertEquals(1, stats.get("urgentTickets"));
+		assertEquals(2, stats.get("pendingMaintenance"));
+		assertEquals(1, stats.get("completedMaintenance"));
+		assertTrue(EnterpriseStatsCounters.sameCounters(node, EnterpriseStatsCounters.apply(node, Map.of(), 0L)));
+	}
+
+	private static Ticket ticket(String statut, String priorite) {
+		Ticket ticket = new Ticket();
+		ticket.setStatut(statut);
+		ticket.setPriorite(priorite);
+		return ticket;
+	}
+}
@@ -0,0 +1,118 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.Machine;
+import com.maintenance.maintenance.model.entity.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FirebaseEntityDecoderTest {
+
+	@Test
+	void machineAppliesDefaultsWhenFieldsAreMissing() {
+		Machine machine = FirebaseEntityDecoder.machine(new HashMap<>(), "e1", "m1");
+
+		assertEquals("m1", machine.getMachineId());
+		assertEquals("e1", machine.getEntrepriseId());
+		assertEquals("", machine.getNom());
+		assertTrue(machine.getOperationnel());
+		assertFalse(machine.getEnReparation());
+		assertFalse(machine.getEstMachineSecours());
+		assertNull(machine.getCategoryId());
+		assertTrue(machine.getChampsPersonnalises().isEmpty());
+		assertTrue(machine.getPhotos().isEmpty());
+	}
+
+	@Test
+	void machineToleratesNumbersAndFlagsStoredAsText() {
+		Map<String, Object> data = new HashMap<>();
+		data.put("nom", "Presse");
+		data.put("categoryId", " 42 ");
+		data.put("operationnel", "false");
+		data.put("machinePrincipaleId", "   ");
+		data.put("dateMiseAJour", 1700000000000L);
+
+		Machine machine = FirebaseEntityDecoder.machine(data, "e1", "m1");
+
+		assertEquals("Presse", machine.getNom());
+		assertEquals(42L, machine.getCategoryId());
+		assertFalse(machine.getOperationnel());
+		assertNull(machine.getMachinePrincipaleId());
+		assertEquals(1700000000000L, machine.getDateMiseAJour());
+	}
+
+	@Test
+	void photosAcceptListLegacyObjectAndSingleUrl() {
+		assertEquals(List.of("a", "b"), FirebaseEntityDecoder.photos(List.of("a", " ", "b")));
+		assertEquals(List.of("first", "second"), FirebaseEntityDecoder.photos(Map.of("k2", "second", "k1", "first")));
+		assertEquals(List.of("url"), FirebaseEntityDecoder.photos("url"));
+		assertTrue(FirebaseEntityDecoder.photos(null).isEmpty());
+	}
+
+	@Test
+	void champsPersonnalisesStoredAsListAreKeyedByIndex() {
+		Map<String, Object> data = new HashMap<>();
+		data.put("champsPersonnalises", java.util.Arrays.asList("zero", null, "deux"));
+
+		Machine machine = FirebaseEntityDecoder.machine(data, "e1", "m1");
+
+		assertEquals(Map.of("0", "zero", "2", "deux"), machine.getChampsPersonnalises());
+	}
+
+	@Test
+	void ticketDecodesCurrentAndLegacyComments() {
+		Map<String, Object> comment = new HashMap<>();
+		comment.put("texte", "Pièce changée");
+		comment.put("auteurId", "u1");
+		comment.put("dateCreation", 5L);
+		Map<String, Object> data = new HashMap<>();
+		data.put("titre", "Panne");
+		data.put("dateCreation", "12");
+		data.put("commentaires", List.of(comment, "ancien commentaire"));
+
+		Ticket ticket = FirebaseEntityDecoder.ticket(data, "e1", "t1");
+
+		assertEquals("Panne", ticket.getTitre());
+		assertEquals(12L, ticket.getDateCreation());
+		assertEquals(2, ticket.getCommentaires().size());
+		assertEquals("u1", ticket.getCommentaires().get(0).getAuteurId());
+		assertEquals(5L, ticket.getCommentaires().get(0).getDateCreation());
+		assertEquals("ancien commentaire", ticket.getCommentaires().get(1).getTexte());
+		assertEquals("unknown", ticket.getCommentaires().get(1).getAuteurId());
+	}
+
+	@Test
+	void alerteWithUnexpectedTypeIsRejected() {
+		Map<String, Object> data = new HashMap<>();
+		data.put("description", "Contrôle");
+		data.put("dateVerification", 100L);
+		data.put("envoye", false);
+		Alerte alerte = FirebaseEntityDecoder.alerte(data, "a1");
+
+		assertEquals("a1", alerte.getAlerteId());
+		assertEquals(100L, alerte.getDateVerification());
+
+		data.put("envoye", "false");
+		assertNull(FirebaseEntityDecoder.alerte(data, "a1"));
+	}
+
+	@Test
+	void fieldReadersIgnoreUnparseableValues() {
+		Map<String, Object> data = Map.of("n", "abc", "d", "2.5", "t", " x ", "v", "");
+
+		assertNull(FirebaseEntityDecoder.readLong(data, "n"));
+		assertEquals(2.5, FirebaseEntityDecoder.readDouble(data, "d"));
+		assertNull(FirebaseEntityDecoder.number(data, "d"));
+		assertEquals("x", FirebaseEntityDecoder.readString(data, "t"));
+		assertNull(FirebaseEntityDecoder.readString(data, "v"));
+		assertEquals("", FirebaseEntityDecoder.text(data, "absent"));
+	}
+}
@@ -0,0 +1,110 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Machine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MachineFacetIndexServiceTest {
+
+	private final List<Machine> machines = new ArrayList<>();
+	private MachineFacetIndexService service;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		service = new MachineFacetIndexService();
+		Field maxAge = MachineFacetIndexService.class.getDeclaredField("maxAgeMinutes");
+		maxAge.setAccessible(true);
+		maxAge.setLong(service, 10L);
+
+		machines.add(machine("m1", 1L, true, false, null, false));
+		machines.add(machine("m2", 1L, false, false, null, false));
+		machines.add(machine("m3", 2L, true, false, null, false));
+		machines.add(machine("s1", 1L, true, true, null, false));
+		machines.add(machine("s2", 2L, true, true, "m1", false));
+		machines.add(machine("e1", 2L, false, false, null, true));
+	}
+
+	@Test
+	void noFilterHidesAttachedBackups() {
+		assertEquals(List.of("m1", "m2", "m3", "s1", "e1"), filter(null, null, null, null).machineIds());
+	}
+
+	@Test
+	void filtersCombine() {
+		assertEquals(List.of("m1", "s1"), filter(1L, "true", null, null).machineIds());
+		assertEquals(List.of("m2"), filter(1L, "false", MachineFacetIndexService.TYPE_PRINCIPALE, null).machineIds());
+		assertEquals(List.of("s1", "s2"), filter(null, null, MachineFacetIndexService.TYPE_SECOURS, null).machineIds());
+		assertEquals(List.of("e1"), filter(null, null, MachineFacetIndexService.TYPE_ENTREPOT, null).machineIds());
+		assertEquals(List.of("m3"), filter(null, null, null, Set.of("m3", "s2", "inconnue")).machineIds());
+	}
+
+	@Test
+	void countsLeaveTheirOwnFilterFree() {
+		MachineFacetIndexService.Result result = filter(1L, "true", null, null);
+
+		assertEquals(Map.of("1", 2, "2", 1), result.categories());
+		assertEquals(Map.of("true", 2, "false", 1), result.operationnel());
+		assertEquals(Map.of(MachineFacetIndexService.TYPE_PRINCIPALE, 1,
+			MachineFacetIndexService.TYPE_SECOURS, 1, MachineFacetIndexService.TYPE_ENTREPOT, 0), result.types());
+	}
+
+	@Test
+	void writesUpdateTheIndex() {
+		filter(null, null, null, null);
+
+		service.machineChanged("ent", "m2", machine("m2", 2L, true, false, null, false));
+		service.machineChanged("ent", "m3", null);
+
+		// La liste chargée reflète les mêmes écritures
+		machines.set(1, machine("m2", 2L, true, false, null, false));
+		machines.remove(2);
+		assertEquals(List.of("m2"), filter(2L, "true", null, null).machineIds());
+	}
+
+	@Test
+	void changesFromAnotherInstanceAreSeenWithTheSameMachineCount() {
+		filter(null, null, null, null);
+
+		// Même nombre de machines : m2 modifiée, m3 remplacée par m4, sans écriture locale
+		machines.set(1, machine("m2", 2L, true, false, null, false));
+		machines.set(2, machine("m4", 1L, true, false, null, false));
+
+		assertEquals(List.of("m1", "s1", "m4"), filter(1L, "true", null, null).machineIds());
+		assertEquals(List.of("m2"), filter(2L, "true", MachineFacetIndexService.TYPE_PRINCIPALE, null).machineIds());
+		assertEquals(1L, service.getStats().get("builds"));
+	}
+
+	@Test
+	void deletedMachinesAreNotIndexed() {
+		Machine supprimee = machine("m9", 1L, true, false, null, false);
+		supprimee.setSupprime(true);
+		machines.add(supprimee);
+
+		assertEquals(List.of("m1", "s1"), filter(1L, "true", null, null).machineIds());
+	}
+
+	private MachineFacetIndexService.Result filter(Long categoryId, String operationnel, String type, Set<String> searchIds) {
+		return service.filter("ent", List.copyOf(machines), new MachineFacetIndexService.Filter(categoryId, operationnel, type, searchIds));
+	}
+
+	private static Machine machine(String id, Long categoryId, boolean operationnel, boolean secours,
+								   String principaleId, boolean entrepot) {
+		Machine machine = new Machine();
+		machine.setMachineId(id);
+		machine.setCategoryId(categoryId);
+		machine.setOperationnel(operationnel);
+		machine.setEnReparation(false);
+		machine.setEstMachineSecours(secours);
+		machine.setMachinePrincipaleId(principaleId);
+		machine.setEstMachineEntrepot(entrepot);
+		return machine;
+	}
+}
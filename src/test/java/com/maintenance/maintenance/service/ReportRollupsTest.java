@@ -0,0 +1,138 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.HistoriqueVerification;
+import com.maintenance.maintenance.model.entity.Rappel;
+import com.maintenance.maintenance.model.entity.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReportRollupsTest {
+
+	private static final LocalDate JOUR = LocalDate.of(2025, 3, 14);
+
+	@Test
+	void ticketIsCountedInItsCreationMonthAndDay() {
+		Map<String, Map<String, Long>> buckets = ReportRollups.contribution(ticket("a_faire", "haute", JOUR), null);
+
+		Map<String, Long> counters = Map.of(ReportRollups.TICKETS, 1L,
+			ReportRollups.TICKETS_STATUT + "a_faire", 1L, ReportRollups.TICKETS_PRIORITE + "haute", 1L);
+		assertEquals(Map.of("mois/2025-03", counters, "jours/2025-03-14", counters), buckets);
+	}
+
+	@Test
+	void itemWithoutDateUsesFallbackThenUndatedBucket() {
+		Ticket sansDate = ticket("a_faire", "basse", null);
+
+		assertTrue(ReportRollups.contribution(sansDate, millis(JOUR)).containsKey("jours/2025-03-14"));
+		assertEquals(List.of("mois/" + ReportRollups.SANS_DATE), List.copyOf(ReportRollups.contribution(sansDate, null).keySet()));
+	}
+
+	@Test
+	void statusChangeMovesOnlyTheStatusCounters() {
+		Map<String, Map<String, Long>> delta = ReportRollups.delta(
+			ReportRollups.contribution(ticket("a_faire", "haute", JOUR), null),
+			ReportRollups.contribution(ticket("termine", "haute", JOUR), null));
+
+		Map<String, Long> ecart = Map.of(ReportRollups.TICKETS_STATUT + "a_faire", -1L, ReportRollups.TICKETS_STATUT + "termine", 1L);
+		assertEquals(Map.of("mois/2025-03", ecart, "jours/2025-03-14", ecart), delta);
+	}
+
+	@Test
+	void verifiedRappelMovesBetweenReminderStates() {
+		Rappel avant = rappel(false, true);
+		Rappel apres = rappel(true, true);
+
+		Map<String, Long> ecart = ReportRollups.delta(ReportRollups.contribution(avant, null), ReportRollups.contribution(apres, null))
+			.get("mois/2025-03");
+
+		assertEquals(Map.of("rappels_" + ReportRollups.ENVOYE, -1L, "rappels_" + ReportRollups.VERIFIE, 1L), ecart);
+	}
+
+	@Test
+	void historyIsCountedOnItsVerificationDate() {
+		HistoriqueVerification historique = new HistoriqueVerification();
+		historique.setDateCreation(millis(JOUR));
+		historique.setDateVerificationReelle(millis(JOUR.plusMonths(1)));
+
+		Map<String, Map<String, Long>> buckets = ReportRollups.contribution(historique, null);
+
+		assertEquals(Map.of(ReportRollups.VERIFICATIONS, 1L), buckets.get("mois/2025-04"));
+		assertFalse(buckets.containsKey("mois/2025-03"));
+	}
+
+	@Test
+	void applyDropsCountersThatReachZero() {
+		Map<String, Object> bucket = new HashMap<>(Map.of(ReportRollups.TICKETS, 2L, ReportRollups.RAPPELS, 1L));
+
+		Map<String, Object> updated = ReportRollups.apply(bucket, Map.of(ReportRollups.TICKETS, 1L, ReportRollups.RAPPELS, -1L));
+
+		assertEquals(Map.of(ReportRollups.TICKETS, 3L), updated);
+		assertNull(ReportRollups.apply(updated, Map.of(ReportRollups.TICKETS, -5L)));
+	}
+
+	@Test
+	void computeSumsEveryCollectionPerBucket() {
+		Map<String, Map<String, Map<String, Long>>> seaux = ReportRollups.compute(
+			List.of(ticket("a_faire", "haute", JOUR), ticket("termine", "basse", JOUR.plusDays(1))),
+			List.of(rappel(false, false)),
+			null);
+
+		Map<String, Long> mars = seaux.get(ReportRollups.MOIS).get("2025-03");
+		assertEquals(2L, mars.get(ReportRollups.TICKETS));
+		assertEquals(1L, mars.get(ReportRollups.RAPPELS));
+		assertEquals(1L, seaux.get(ReportRollups.JOURS).get("2025-03-15").get(ReportRollups.TICKETS));
+	}
+
+	@Test
+	void onlyCompleteMetaOfTheCurrentFormatSkipsBackfill() {
+		assertTrue(ReportRollups.isComplete(ReportRollups.completeMeta()));
+		assertFalse(ReportRollups.isComplete(Map.of(ReportRollups.BACKFILL_TERMINE, true)));
+		assertFalse(ReportRollups.isComplete(Map.of(ReportRollups.BACKFILL_TERMINE, false, ReportRollups.VERSION, ReportRollups.FORMAT)));
+		assertFalse(ReportRollups.isComplete(null));
+	}
+
+	@Test
+	void storedBucketsAreComparedToRecomputedOnes() {
+		Map<String, Map<String, Long>> mois = ReportRollups.compute(List.of(rappel(false, true))).get(ReportRollups.MOIS);
+		Map<String, Object> lus = new HashMap<>();
+		mois.forEach((cle, seau) -> lus.put(cle, new HashMap<>(seau)));
+
+		assertTrue(ReportRollups.sameBuckets(lus, mois));
+
+		// Écart appliqué deux fois (modifications concurrentes) : dérive détectée
+		lus.put("2025-03", Map.of(ReportRollups.RAPPELS, 1L, "rappels_envoye", 2L));
+		assertFalse(ReportRollups.sameBuckets(lus, mois));
+		assertFalse(ReportRollups.sameBuckets(null, mois));
+		assertTrue(ReportRollups.sameBuckets(null, Map.of()));
+	}
+
+	private static Ticket ticket(String statut, String priorite, LocalDate creation) {
+		Ticket ticket = new Ticket();
+		ticket.setStatut(statut);
+		ticket.setPriorite(priorite);
+		ticket.setDateCreation(creation != null ? millis(creation) : null);
+		return ticket;
+	}
+
+	private static Rappel rappel(boolean verifie, boolean envoye) {
+		Rappel rappel = new Rappel();
+		rappel.setVerifie(verifie);
+		rappel.setEnvoye(envoye);
+		rappel.setDateCreation(millis(JOUR));
+		return rappel;
+	}
+
+	private static long millis(LocalDate day) {
+		return day.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+}
@@ -0,0 +1,111 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Machine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchIndexServiceTest {
+
+	private final List<Machine> machines = new ArrayList<>();
+	private final AtomicInteger lectures = new AtomicInteger();
+	private SearchIndexService service;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		service = new SearchIndexService();
+		Field maxAge = SearchIndexService.class.getDeclaredField("maxAgeMinutes");
+		maxAge.setAccessible(true);
+		maxAge.setLong(service, 10L);
+
+		machines.add(machine("m1", "Imprimante HP", "SN-4411", "Bureau 12", null));
+		machines.add(machine("m2", "Scanner Épson", "SN-9000", "Accueil", "près de l'imprimante"));
+		machines.add(machine("m3", "Poste comptabilité", "PC-0042", "Étage 2", null));
+	}
+
+	@Test
+	void normalizeRemovesCaseAccentsAndExtraSpaces() {
+		assertEquals("etage 2 comptabilite", SearchIndexService.normalize("  Étage   2 COMPTABILITÉ "));
+		assertEquals("", SearchIndexService.normalize(null));
+	}
+
+	@Test
+	void longTermMatchesAnySubstring() throws Exception {
+		assertEquals(List.of("m3"), search("mptab"));
+		assertEquals(List.of("m2"), search("epson"));
+		assertEquals(List.of("m1"), search("4411"));
+	}
+
+	@Test
+	void shortTermMatchesOnlyWordStarts() throws Exception {
+		assertEquals(List.of("m1"), search("hp"));
+		// "pc" n'est qu'en début de numéro de série de m3, "sc" seulement en début du nom de m2
+		assertEquals(List.of("m3"), search("pc"));
+		assertEquals(List.of("m2"), search("sc"));
+		assertEquals(List.of(), search("nn"));
+	}
+
+	@Test
+	void everyTermMustMatch() throws Exception {
+		assertEquals(List.of("m1"), search("imprimante bureau"));
+		assertEquals(List.of(), search("imprimante etage"));
+	}
+
+	@Test
+	void nameMatchesRankAboveNotes() throws Exception {
+		// m1 : début du nom (poids 5 x 3) ; m2 : mot des notes (poids 1 x 2)
+		assertEquals(List.of("m1", "m2"), search("imprimante"));
+	}
+
+	@Test
+	void exactFieldRanksAboveFieldPrefix() throws Exception {
+		machines.add(machine("m4", "Imprimante", "SN-1", "Réserve", null));
+
+		assertEquals(List.of("m4", "m1", "m2"), search("imprimante"));
+	}
+
+	@Test
+	void writesUpdateTheBuiltIndexWithoutReloading() throws Exception {
+		search("imprimante");
+
+		service.machineChanged("e1", "m5", machine("m5", "Traceur", "SN-5", "Atelier", null));
+		service.machineChanged("e1", "m1", null);
+		Machine supprimee = machine("m3", "Poste comptabilité", "PC-0042", "Étage 2", null);
+		supprimee.setSupprime(true);
+		service.machineChanged("e1", "m3", supprimee);
+
+		assertEquals(List.of("m5"), search("traceur"));
+		assertEquals(List.of("m2"), search("imprimante"));
+		assertEquals(List.of(), search("comptabilite"));
+		assertEquals(1, lectures.get());
+	}
+
+	@Test
+	void emptyQueryReturnsNothing() throws Exception {
+		assertTrue(search("   ").isEmpty());
+	}
+
+	private List<String> search(String query) throws Exception {
+		return service.searchMachines("e1", query, () -> {
+			lectures.incrementAndGet();
+			return List.copyOf(machines);
+		});
+	}
+
+	private static Machine machine(String id, String nom, String numeroSerie, String emplacement, String notes) {
+		Machine machine = new Machine();
+		machine.setMachineId(id);
+		machine.setNom(nom);
+		machine.setNumeroSerie(numeroSerie);
+		machine.setEmplacement(emplacement);
+		machine.setNotes(notes);
+		return machine;
+	}
+}
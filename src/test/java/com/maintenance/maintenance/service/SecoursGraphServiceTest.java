@@ -0,0 +1,140 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Machine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SecoursGraphServiceTest {
+
+	private final List<Machine> machines = new ArrayList<>();
+	private final AtomicInteger lectures = new AtomicInteger();
+	private SecoursGraphService service;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		service = new SecoursGraphService();
+		Field maxAge = SecoursGraphService.class.getDeclaredField("maxAgeMinutes");
+		maxAge.setAccessible(true);
+		maxAge.setLong(service, 10L);
+
+		machines.add(principale("p1"));
+		machines.add(principale("p2"));
+		machines.add(secours("s1", "p1", true));
+		machines.add(secours("s2", "p1", false));
+		machines.add(secours("s3", null, true));
+	}
+
+	@Test
+	void backupsAreGroupedByMainMachine() throws Exception {
+		SecoursGraphService.Graph graph = graph();
+
+		assertEquals(Set.of("s1"), graph.disponibles("p1"));
+		assertEquals(List.of("s1", "s2"), List.copyOf(graph.rattachees("p1")));
+		assertEquals(Set.of("s3"), graph.libres());
+		assertEquals(Map.of("p1", 2L), graph.counts());
+		assertTrue(graph.hasDisponibles("p1"));
+		assertFalse(graph.hasDisponibles("p2"));
+	}
+
+	@Test
+	void relinkingMovesTheBackup() throws Exception {
+		SecoursGraphService.Graph graph = graph();
+
+		service.machineChanged("ent", "s1", secours("s1", "p2", true));
+		service.machineChanged("ent", "s3", secours("s3", "p1", true));
+
+		assertEquals(Set.of("s3"), graph.disponibles("p1"));
+		assertEquals(Set.of("s1"), graph.disponibles("p2"));
+		assertTrue(graph.libres().isEmpty());
+	}
+
+	@Test
+	void repairDetachAndPromotionUpdateTheGraph() throws Exception {
+		SecoursGraphService.Graph graph = graph();
+
+		Machine enReparation = secours("s1", "p1", true);
+		enReparation.setEnReparation(true);
+		service.machineChanged("ent", "s1", enReparation);
+		service.machineChanged("ent", "s2", secours("s2", null, true));
+		service.machineChanged("ent", "s3", principale("s3"));
+
+		assertFalse(graph.hasDisponibles("p1"));
+		assertEquals(Set.of("s1"), graph.rattachees("p1"));
+		assertEquals(Set.of("s2"), graph.libres());
+	}
+
+	@Test
+	void deletedBackupLeavesTheGraph() throws Exception {
+		SecoursGraphService.Graph graph = graph();
+
+		Machine supprimee = secours("s2", "p1", false);
+		supprimee.setSupprime(true);
+		service.machineChanged("ent", "s2", supprimee);
+		service.machineChanged("ent", "s3", null);
+
+		assertEquals(Set.of("s1"), graph.rattachees("p1"));
+		assertTrue(graph.libres().isEmpty());
+	}
+
+	@Test
+	void cachedGraphIsReusedAndFreshGraphRereads() throws Exception {
+		graph();
+		graph();
+		assertEquals(1, lectures.get());
+
+		// Écriture d'une autre instance : seule une relecture la voit
+		machines.set(3, secours("s2", "p2", true));
+		assertFalse(graph().hasDisponibles("p2"));
+
+		SecoursGraphService.Graph fresh = service.freshGraph("ent", this::read);
+		assertEquals(2, lectures.get());
+		assertTrue(fresh.hasDisponibles("p2"));
+		assertTrue(graph().hasDisponibles("p2"));
+	}
+
+	@Test
+	void loadedListWithAnotherSizeRebuilds() {
+		service.graph("ent", List.copyOf(machines));
+		machines.add(secours("s4", "p2", true));
+
+		assertEquals(Set.of("s4"), service.graph("ent", List.copyOf(machines)).disponibles("p2"));
+	}
+
+	private SecoursGraphService.Graph graph() throws Exception {
+		return service.graph("ent", this::read);
+	}
+
+	private List<Machine> read() {
+		lectures.incrementAndGet();
+		return List.copyOf(machines);
+	}
+
+	private static Machine principale(String id) {
+		Machine machine = new Machine();
+		machine.setMachineId(id);
+		machine.setEstMachineSecours(false);
+		machine.setOperationnel(true);
+		return machine;
+	}
+
+	private static Machine secours(String id, String principaleId, boolean operationnel) {
+		Machine machine = new Machine();
+		machine.setMachineId(id);
+		machine.setEstMachineSecours(true);
+		machine.setMachinePrincipaleId(principaleId);
+		machine.setOperationnel(operationnel);
+		machine.setEnReparation(false);
+		return machine;
+	}
+}
@@ -0,0 +1,115 @@
+package com.maintenance.maintenance.service;
+
+import com.maintenance.maintenance.model.entity.Alerte;
+import com.maintenance.maintenance.model.entity.Machine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBatchTest {
+
+	private FirebaseRealtimeService firebase;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		firebase = new FirebaseRealtimeService();
+		// États précédents servis par la réplique : aucune lecture Firebase pendant la construction du lot
+		EnterpriseReplicaService replica = new EnterpriseReplicaService() {
+			@Override
+			public <T> Lookup<T> getItem(String entrepriseId, String collection, String itemId) {
+				return Lookup.found(null);
+			}
+		};
+		Field field = FirebaseRealtimeService.class.getDeclaredField("replicaService");
+		field.setAccessible(true);
+		field.set(firebase, replica);
+	}
+
+	@Test
+	void machineFieldsAreWrittenOneByOne() {
+		Machine machine = new Machine();
+		machine.setMachineId("m1");
+		machine.setNom("Imprimante");
+		machine.setMachinePrincipaleId("p1");
+
+		Map<String, Object> updates = firebase.batch("e1").updateMachine("m1", machine).updates();
+
+		assertEquals("Imprimante", updates.get("entreprises/e1/machines/m1/nom"));
+		assertEquals("p1", updates.get("entreprises/e1/machines/m1/machinePrincipaleId"));
+		assertTrue(updates.get("entreprises/e1/machines/m1/dateMiseAJour") instanceof Long);
+		// Écriture champ par champ : jamais le nœud entier de la machine
+		assertFalse(updates.containsKey("entreprises/e1/machines/m1"));
+		assertTrue(updates.keySet().stream().allMatch(path -> path.startsWith("entreprises/e1/machines/m1/")));
+	}
+
+	@Test
+	void reassignedComponentOnlyTouchesItsMachineAndDate() {
+		Map<String, Object> updates = firebase.batch("e1").reassignComponent("c1", "m2").updates();
+
+		assertEquals(List.of("entreprises/e1/components/c1/machineId", "entreprises/e1/components/c1/modifieLe"),
+			List.copyOf(updates.keySet()));
+		assertEquals("m2", updates.get("entreprises/e1/components/c1/machineId"));
+	}
+
+	@Test
+	void alerteUpdateAlsoWritesItsDueIndexEntry() {
+		Alerte alerte = new Alerte();
+		alerte.setAlerteId("a1");
+		alerte.setMachineId("m1");
+		alerte.setVerifie(true);
+
+		Map<String, Object> updates = firebase.batch("e1").updateAlerte("a1", alerte).updates();
+
+		assertEquals(true, updates.get("entreprises/e1/alertes/a1/verifie"));
+		assertTrue(updates.containsKey(EcheanceIndex.path(EcheanceIndex.ALERTES, "e1", "a1")));
+	}
+
+	@Test
+	void severalItemsShareOneBatch() {
+		Machine machine = new Machine();
+		machine.setMachineId("m1");
+
+		Map<String, Object> updates = firebase.batch("e1")
+			.updateMachine("m1", machine)
+			.reassignComponent("c1", "m1")
+			.updates();
+
+		assertTrue(updates.containsKey("entreprises/e1/machines/m1/dateMiseAJour"));
+		assertTrue(updates.containsKey("entreprises/e1/components/c1/machineId"));
+	}
+
+	@Test
+	void emptyBatchCommitsOnce() throws Exception {
+		FirebaseRealtimeService.WriteBatch batch = firebase.batch("e1");
+		assertTrue(batch.isEmpty());
+
+		batch.commit();
+
+		assertThrows(IllegalStateException.class, batch::commit);
+	}
+
+	@Test
+	void copiesAreIndependentOfTheReadObject() {
+		Machine machine = new Machine();
+		machine.setMachineId("m1");
+		machine.setEntrepriseId("e1");
+		machine.setNom("Imprimante");
+
+		Machine copie = firebase.copyMachine(machine);
+		copie.setMachinePrincipaleId("p1");
+
+		assertNotSame(machine, copie);
+		assertEquals("Imprimante", copie.getNom());
+		assertNull(machine.getMachinePrincipaleId());
+	}
+}